@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.wings.benchmark;
+
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks, and writes the results as JSON to a file named 
+ * after the Wings version, so that the results of two versions can be 
+ * compared with CompareResults.
+ *
+ * Usage: BenchmarkRunner [benchmark regex] [result file]
+ *   (default: all benchmarks, written to jmh-[version].json)
+ */
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws Exception {
+    String include = args.length > 0 ? args[0] : ".*";
+    String result = args.length > 1 ? args[1] : "jmh-" + getVersion() + ".json";
+
+    Options options = new OptionsBuilder()
+        .include(include)
+        .resultFormat(ResultFormatType.JSON)
+        .result(result)
+        .build();
+    new Runner(options).run();
+    System.out.println("Results written to " + result);
+  }
+
+  public static String getVersion() {
+    Properties props = new Properties();
+    try {
+      InputStream in = BenchmarkRunner.class.getResourceAsStream("/benchmark.properties");
+      if(in != null) {
+        props.load(in);
+        in.close();
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+    }
+    return props.getProperty("version", "dev");
+  }
+}
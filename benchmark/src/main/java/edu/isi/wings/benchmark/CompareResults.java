@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.wings.benchmark;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Compares two JMH JSON result files, and lists the benchmarks whose scores
+ * changed by more than a threshold. Exits with status 1 if any benchmark 
+ * regressed, so it can be used in a build.
+ *
+ * Usage: CompareResults [baseline.json] [current.json] [threshold %]
+ *   (default threshold: 10%)
+ */
+public class CompareResults {
+
+  public static void main(String[] args) throws IOException {
+    if(args.length < 2) {
+      System.err.println("Usage: CompareResults [baseline.json] [current.json] [threshold %]");
+      System.exit(2);
+    }
+    double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+    Map<String, Score> baseline = readScores(args[0]);
+    Map<String, Score> current = readScores(args[1]);
+
+    int regressions = 0;
+    System.out.println(String.format("%-80s %12s %12s %8s", 
+        "Benchmark", "Baseline", "Current", "Change"));
+    for(String key : current.keySet()) {
+      Score cur = current.get(key);
+      Score base = baseline.get(key);
+      if(base == null) {
+        System.out.println(String.format("%-80s %12s %12.3f %8s", 
+            key, "-", cur.score, "new"));
+        continue;
+      }
+      double change = base.score != 0 ? 
+          (cur.score - base.score) * 100 / base.score : 0;
+      // Higher is better for throughput, lower is better for time
+      boolean regressed = cur.higherIsBetter ? 
+          change < -threshold : change > threshold;
+      if(regressed)
+        regressions++;
+      System.out.println(String.format("%-80s %12.3f %12.3f %+7.1f%%%s", 
+          key, base.score, cur.score, change, regressed ? "  REGRESSION" : ""));
+    }
+    System.out.println(regressions + " regression(s) above " + threshold + "%");
+    if(regressions > 0)
+      System.exit(1);
+  }
+
+  static class Score {
+    double score;
+    String unit;
+    boolean higherIsBetter;
+  }
+
+  private static Map<String, Score> readScores(String file) throws IOException {
+    Map<String, Score> scores = new LinkedHashMap<String, Score>();
+    Reader reader = new FileReader(file);
+    try {
+      JsonArray results = new JsonParser().parse(reader).getAsJsonArray();
+      for(JsonElement el : results) {
+        JsonObject result = el.getAsJsonObject();
+        String key = result.get("benchmark").getAsString();
+        if(result.has("params")) {
+          Map<String, String> params = new TreeMap<String, String>();
+          for(Map.Entry<String, JsonElement> entry : 
+              result.getAsJsonObject("params").entrySet())
+            params.put(entry.getKey(), entry.getValue().getAsString());
+          key += params.toString();
+        }
+        JsonObject metric = result.getAsJsonObject("primaryMetric");
+        Score score = new Score();
+        score.score = metric.get("score").getAsDouble();
+        score.unit = metric.get("scoreUnit").getAsString();
+        score.higherIsBetter = result.get("mode").getAsString().equals("thrpt");
+        scores.put(key, score);
+      }
+    }
+    finally {
+      reader.close();
+    }
+    return scores;
+  }
+}
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.wings.benchmark.domain;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Random;
+
+import edu.isi.kcap.ontapi.KBTriple;
+import edu.isi.wings.catalog.component.ComponentFactory;
+import edu.isi.wings.catalog.component.api.ComponentCreationAPI;
+import edu.isi.wings.catalog.component.classes.Component;
+import edu.isi.wings.catalog.component.classes.ComponentRole;
+import edu.isi.wings.catalog.data.DataFactory;
+import edu.isi.wings.catalog.data.api.DataCreationAPI;
+import edu.isi.wings.common.kb.KBUtils;
+import edu.isi.wings.common.kb.PropertiesHelper;
+import edu.isi.wings.workflow.template.TemplateFactory;
+import edu.isi.wings.workflow.template.api.ConstraintEngine;
+import edu.isi.wings.workflow.template.api.Template;
+import edu.isi.wings.workflow.template.api.TemplateCreationAPI;
+import edu.isi.wings.workflow.template.classes.Node;
+import edu.isi.wings.workflow.template.classes.Port;
+import edu.isi.wings.workflow.template.classes.Role;
+import edu.isi.wings.workflow.template.classes.sets.Binding;
+import edu.isi.wings.workflow.template.classes.variables.ComponentVariable;
+import edu.isi.wings.workflow.template.classes.variables.Variable;
+import edu.isi.wings.workflow.template.classes.variables.VariableType;
+
+/**
+ * Fills a domain with synthetic data types, datasets, components and
+ * templates of a given size (see SyntheticDomainSpec). Everything is written
+ * through the creation APIs, as the portal would.
+ *
+ * - Data types form a tree below DataObject. Datasets are spread over the
+ *   leaf types, and have a random value for every metadata property.
+ * - Component categories form a tree below Component. Abstract components
+ *   are spread over the leaf categories, and each has one input and one 
+ *   output of a leaf data type. Each concrete component has a rule that
+ *   copies a metadata property from its input to its output.
+ * - Templates are [width] chains of [depth] abstract components, where the
+ *   output type of each component is the input type of the next.
+ * 
+ * Usage: SyntheticDomainGenerator [wings.properties] [spec.properties]
+ *   Fills the (legacy, file based) domain with the given wings.properties
+ */
+public class SyntheticDomainGenerator {
+  static String XSD_INT = KBUtils.XSD + "int";
+
+  Properties props;
+  SyntheticDomainSpec spec;
+  Random random;
+
+  DataCreationAPI dc;
+  ComponentCreationAPI acc;
+  ComponentCreationAPI ccc;
+  TemplateCreationAPI tc;
+
+  String dcns, dcdomns, dclibns;
+  String pcns, pcdomns;
+  String wflowdirurl;
+
+  ArrayList<String> leafTypes = new ArrayList<String>();
+  ArrayList<String> metadataProperties = new ArrayList<String>();
+  HashMap<String, ArrayList<String>> typeDatasets = 
+      new HashMap<String, ArrayList<String>>();
+  ArrayList<String> leafCategories = new ArrayList<String>();
+  ArrayList<Component> abstractComponents = new ArrayList<Component>();
+  HashMap<String, ArrayList<Component>> componentsByInputType = 
+      new HashMap<String, ArrayList<Component>>();
+
+  public SyntheticDomainGenerator(Properties props, SyntheticDomainSpec spec) {
+    this.props = props;
+    this.spec = spec;
+    this.random = new Random(spec.seed);
+
+    this.dc = DataFactory.getCreationAPI(props);
+    this.acc = ComponentFactory.getCreationAPI(props, false);
+    this.ccc = ComponentFactory.getCreationAPI(props, true);
+    this.tc = TemplateFactory.getCreationAPI(props);
+
+    this.dcns = props.getProperty("ont.data.url") + "#";
+    this.dcdomns = props.getProperty("ont.domain.data.url") + "#";
+    this.dclibns = props.getProperty("lib.domain.data.url") + "#";
+    this.pcns = props.getProperty("ont.component.url") + "#";
+    this.pcdomns = props.getProperty("ont.domain.component.ns");
+    this.wflowdirurl = props.getProperty("domain.workflows.dir.url");
+  }
+
+  public void generate() {
+    long start = System.currentTimeMillis();
+    this.generateDatatypes();
+    this.generateDatasets();
+    System.out.println("Data: " + leafTypes.size() + " leaf types, " 
+        + spec.datasets + " datasets (" + (System.currentTimeMillis() - start) + " ms)");
+
+    start = System.currentTimeMillis();
+    this.generateComponents();
+    System.out.println("Components: " + abstractComponents.size() + " abstract, "
+        + abstractComponents.size() * spec.concreteComponents + " concrete ("
+        + (System.currentTimeMillis() - start) + " ms)");
+
+    start = System.currentTimeMillis();
+    int numTemplates = this.generateTemplates();
+    System.out.println("Templates: " + numTemplates + " ("
+        + (System.currentTimeMillis() - start) + " ms)");
+  }
+
+  private void generateDatatypes() {
+    this.addDatatypes(dcns + "DataObject", "Type", 1);
+    for(int i=0; i<spec.metadataProperties; i++) {
+      String propid = dcdomns + "prop" + i;
+      dc.addMetadataProperty(propid, dcns + "DataObject", XSD_INT);
+      metadataProperties.add(propid);
+    }
+  }
+
+  private void addDatatypes(String parentid, String prefix, int level) {
+    if(level > spec.datatypeDepth) {
+      leafTypes.add(parentid);
+      typeDatasets.put(parentid, new ArrayList<String>());
+      return;
+    }
+    for(int i=1; i<=spec.datatypeBranching; i++) {
+      String typeid = dcdomns + prefix + "_" + i;
+      dc.addDatatype(typeid, parentid);
+      this.addDatatypes(typeid, prefix + "_" + i, level + 1);
+    }
+  }
+
+  private void generateDatasets() {
+    for(int i=0; i<spec.datasets; i++) {
+      String typeid = leafTypes.get(i % leafTypes.size());
+      String dataid = dclibns + "data" + i;
+      dc.addData(dataid, typeid);
+      for(String propid : metadataProperties)
+        dc.addDatatypePropertyValue(dataid, propid, random.nextInt(100));
+      typeDatasets.get(typeid).add(dataid);
+    }
+    dc.save();
+  }
+
+  private void generateComponents() {
+    this.addCategories(pcns + "Component", "Category", 1);
+
+    for(int i=0; i<spec.abstractComponents; i++) {
+      String intype = leafTypes.get(i % leafTypes.size());
+      String outtype = leafTypes.get((i + 1) % leafTypes.size());
+      String cid = pcdomns + "Abstract" + i;
+      Component comp = this.createComponent(cid, Component.ABSTRACT, intype, outtype);
+      acc.addComponent(comp, leafCategories.get(i % leafCategories.size()));
+      abstractComponents.add(comp);
+      if(!componentsByInputType.containsKey(intype))
+        componentsByInputType.put(intype, new ArrayList<Component>());
+      componentsByInputType.get(intype).add(comp);
+
+      for(int j=0; j<spec.concreteComponents; j++) {
+        String ccid = pcdomns + "Concrete" + i + "_" + j;
+        Component ccomp = this.createComponent(ccid, Component.CONCRETE, intype, outtype);
+        if(!metadataProperties.isEmpty())
+          ccomp.setRulesText(this.createForwardRule(ccid, 
+              metadataProperties.get(j % metadataProperties.size())));
+        ccc.addComponent(ccomp, acc.getComponentHolderId(cid));
+      }
+    }
+    acc.save();
+    ccc.save();
+  }
+
+  private void addCategories(String parentid, String prefix, int level) {
+    if(level > spec.componentDepth) {
+      leafCategories.add(parentid);
+      return;
+    }
+    for(int i=1; i<=spec.componentBranching; i++) {
+      String catid = pcdomns + prefix + "_" + i;
+      acc.addComponentHolder(catid, parentid);
+      this.addCategories(catid, prefix + "_" + i, level + 1);
+    }
+  }
+
+  private Component createComponent(String cid, int type, String intype, 
+      String outtype) {
+    Component comp = new Component(cid, type);
+    comp.addInput(this.createRole(cid, "Input1", "-i1", intype));
+    comp.addOutput(this.createRole(cid, "Output1", "-o1", outtype));
+    return comp;
+  }
+
+  private ComponentRole createRole(String cid, String name, String prefix, 
+      String type) {
+    ComponentRole role = new ComponentRole(cid + "_" + name);
+    role.setRoleName(name);
+    role.setPrefix(prefix);
+    role.setType(type);
+    role.setDimensionality(0);
+    role.setParam(false);
+    return role;
+  }
+
+  // Copy a metadata property from the input to the output
+  private String createForwardRule(String cid, String propid) {
+    String name = cid.substring(cid.lastIndexOf('#') + 1);
+    return "[" + name + "Forward:\n"
+        + "  (?c rdf:type <" + acc.getComponentHolderId(cid) + ">)\n"
+        + "  (?c <" + pcns + "hasInput> ?idv) (?idv <" + pcns + "hasArgumentID> \"Input1\")\n"
+        + "  (?c <" + pcns + "hasOutput> ?odv) (?odv <" + pcns + "hasArgumentID> \"Output1\")\n"
+        + "  (?idv <" + propid + "> ?val)\n"
+        + "  -> (?odv <" + propid + "> ?val)\n"
+        + "]";
+  }
+
+  private int generateTemplates() {
+    int num = 0;
+    for(int i=0; i<spec.templates; i++) {
+      String name = "Synthetic" + i;
+      String ns = wflowdirurl + "/" + name + ".owl#";
+      Template tpl = tc.createTemplate(ns + name);
+      if(tpl == null)
+        continue;
+      ConstraintEngine engine = tpl.getConstraintEngine();
+      ArrayList<KBTriple> constraints = new ArrayList<KBTriple>();
+
+      for(int c=0; c<spec.templateWidth; c++) {
+        Component comp = abstractComponents.get(random.nextInt(abstractComponents.size()));
+        String intype = comp.getInputs().get(0).getType();
+
+        Variable data = tpl.addVariable(ns + "Input" + c, VariableType.DATA, false);
+        constraints.add(engine.createNewConstraint(data.getID(), 
+            KBUtils.RDF + "type", intype));
+        if(c == 0 && spec.collectionSize > 0)
+          tpl.setVariableBinding(data, this.createCollection(intype));
+
+        Node previous = null;
+        Port previousPort = null;
+        for(int d=0; d<spec.templateDepth && comp != null; d++) {
+          String step = "Step" + c + "_" + d;
+          ComponentVariable cv = new ComponentVariable(ns + step);
+          cv.setBinding(new Binding(comp.getID()));
+          cv.setConcrete(false);
+          Node node = tpl.addNode(cv);
+
+          Port inport = this.createPort(ns + step + "_Input1", "Input1");
+          if(previous == null)
+            tpl.addLink(null, node, null, inport, data);
+          else
+            tpl.addLink(previous, node, previousPort, inport, data);
+
+          data = tpl.addVariable(ns + "Data" + c + "_" + d, VariableType.DATA, false);
+          previous = node;
+          previousPort = this.createPort(ns + step + "_Output1", "Output1");
+
+          // Next component has to take this one's output type as input
+          ArrayList<Component> next = componentsByInputType.get(
+              comp.getOutputs().get(0).getType());
+          comp = next != null ? next.get(random.nextInt(next.size())) : null;
+        }
+        tpl.addLink(previous, null, previousPort, null, data);
+      }
+      engine.addConstraints(constraints);
+      tpl.fillInDefaultSetCreationRules();
+      tpl.autoUpdateTemplateRoles();
+      if(tpl.save() && tc.registerTemplate(tpl))
+        num++;
+    }
+    return num;
+  }
+
+  private Port createPort(String portid, String roleid) {
+    Port port = new Port(portid);
+    Role role = new Role(portid + "Role");
+    role.setRoleId(roleid);
+    role.setType(Role.DATA);
+    role.setDimensionality(0);
+    port.setRole(role);
+    return port;
+  }
+
+  // Collection of (up to) [collectionSize] datasets of the given type
+  private Binding createCollection(String typeid) {
+    ArrayList<String> datasets = typeDatasets.get(typeid);
+    int size = Math.min(spec.collectionSize, datasets.size());
+    return new Binding(datasets.subList(0, size).toArray(new String[size]));
+  }
+
+  public static void main(String[] args) throws IOException {
+    if(args.length < 1) {
+      System.err.println("Usage: SyntheticDomainGenerator [wings.properties] [spec.properties]");
+      System.exit(1);
+    }
+    Properties specProps = new Properties();
+    if(args.length > 1) {
+      FileInputStream in = new FileInputStream(args[1]);
+      specProps.load(in);
+      in.close();
+    }
+
+    PropertiesHelper.resetProperties();
+    PropertiesHelper.loadWingsProperties(args[0]);
+    Properties props = TemplateFactory.createLegacyConfiguration();
+    props.putAll(DataFactory.createLegacyConfiguration());
+    props.putAll(ComponentFactory.createLegacyConfiguration());
+
+    new SyntheticDomainGenerator(props, 
+        SyntheticDomainSpec.fromProperties(specProps)).generate();
+  }
+}
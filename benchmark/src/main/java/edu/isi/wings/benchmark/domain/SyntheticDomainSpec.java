@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.wings.benchmark.domain;
+
+import java.util.Properties;
+
+/**
+ * Size of a synthetic domain. Read from properties (defaults in brackets):
+ *   datatype.depth = 3            levels of data types below DataObject
+ *   datatype.branching = 3        subtypes of each data type
+ *   metadata.properties = 5       integer metadata properties of all data
+ *   datasets = 1000               spread over the leaf data types
+ *   component.depth = 2           levels of component categories
+ *   component.branching = 3       subcategories of each category
+ *   abstract.components = 20      spread over the leaf categories
+ *   concrete.components = 5       per abstract component
+ *   templates = 10
+ *   template.width = 3            parallel chains of steps in a template
+ *   template.depth = 4            steps in each chain
+ *   collection.size = 0           if > 0, the first input of each template
+ *                                 is bound to a collection of this many 
+ *                                 datasets
+ *   seed = 1                      for metadata values and component choices
+ */
+public class SyntheticDomainSpec {
+  int datatypeDepth = 3;
+  int datatypeBranching = 3;
+  int metadataProperties = 5;
+  int datasets = 1000;
+  int componentDepth = 2;
+  int componentBranching = 3;
+  int abstractComponents = 20;
+  int concreteComponents = 5;
+  int templates = 10;
+  int templateWidth = 3;
+  int templateDepth = 4;
+  int collectionSize = 0;
+  long seed = 1;
+
+  public static SyntheticDomainSpec fromProperties(Properties props) {
+    SyntheticDomainSpec spec = new SyntheticDomainSpec();
+    spec.datatypeDepth = getInt(props, "datatype.depth", spec.datatypeDepth);
+    spec.datatypeBranching = getInt(props, "datatype.branching", spec.datatypeBranching);
+    spec.metadataProperties = getInt(props, "metadata.properties", spec.metadataProperties);
+    spec.datasets = getInt(props, "datasets", spec.datasets);
+    spec.componentDepth = getInt(props, "component.depth", spec.componentDepth);
+    spec.componentBranching = getInt(props, "component.branching", spec.componentBranching);
+    spec.abstractComponents = getInt(props, "abstract.components", spec.abstractComponents);
+    spec.concreteComponents = getInt(props, "concrete.components", spec.concreteComponents);
+    spec.templates = getInt(props, "templates", spec.templates);
+    spec.templateWidth = getInt(props, "template.width", spec.templateWidth);
+    spec.templateDepth = getInt(props, "template.depth", spec.templateDepth);
+    spec.collectionSize = getInt(props, "collection.size", spec.collectionSize);
+    spec.seed = props.containsKey("seed") ? 
+        Long.parseLong(props.getProperty("seed").trim()) : spec.seed;
+    return spec;
+  }
+
+  private static int getInt(Properties props, String key, int def) {
+    return props.containsKey(key) ?
+        Integer.parseInt(props.getProperty(key).trim()) : def;
+  }
+
+  public int getDatatypeDepth() {
+    return datatypeDepth;
+  }
+
+  public void setDatatypeDepth(int datatypeDepth) {
+    this.datatypeDepth = datatypeDepth;
+  }
+
+  public int getDatatypeBranching() {
+    return datatypeBranching;
+  }
+
+  public void setDatatypeBranching(int datatypeBranching) {
+    this.datatypeBranching = datatypeBranching;
+  }
+
+  public int getMetadataProperties() {
+    return metadataProperties;
+  }
+
+  public void setMetadataProperties(int metadataProperties) {
+    this.metadataProperties = metadataProperties;
+  }
+
+  public int getDatasets() {
+    return datasets;
+  }
+
+  public void setDatasets(int datasets) {
+    this.datasets = datasets;
+  }
+
+  public int getComponentDepth() {
+    return componentDepth;
+  }
+
+  public void setComponentDepth(int componentDepth) {
+    this.componentDepth = componentDepth;
+  }
+
+  public int getComponentBranching() {
+    return componentBranching;
+  }
+
+  public void setComponentBranching(int componentBranching) {
+    this.componentBranching = componentBranching;
+  }
+
+  public int getAbstractComponents() {
+    return abstractComponents;
+  }
+
+  public void setAbstractComponents(int abstractComponents) {
+    this.abstractComponents = abstractComponents;
+  }
+
+  public int getConcreteComponents() {
+    return concreteComponents;
+  }
+
+  public void setConcreteComponents(int concreteComponents) {
+    this.concreteComponents = concreteComponents;
+  }
+
+  public int getTemplates() {
+    return templates;
+  }
+
+  public void setTemplates(int templates) {
+    this.templates = templates;
+  }
+
+  public int getTemplateWidth() {
+    return templateWidth;
+  }
+
+  public void setTemplateWidth(int templateWidth) {
+    this.templateWidth = templateWidth;
+  }
+
+  public int getTemplateDepth() {
+    return templateDepth;
+  }
+
+  public void setTemplateDepth(int templateDepth) {
+    this.templateDepth = templateDepth;
+  }
+
+  public int getCollectionSize() {
+    return collectionSize;
+  }
+
+  public void setCollectionSize(int collectionSize) {
+    this.collectionSize = collectionSize;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.wings.benchmark.execution;
+
+import java.util.Random;
+
+/**
+ * Synthetic step durations, given as [kind]:[parameters] in milliseconds:
+ *   fixed:5          every step takes 5 ms
+ *   uniform:1,10     between 1 and 10 ms
+ *   exp:5            exponential, with a mean of 5 ms
+ *   lognormal:5,1    log-normal, with a median of 5 ms and sigma 1
+ */
+public class DurationDistribution {
+  enum Kind { FIXED, UNIFORM, EXP, LOGNORMAL }
+
+  Kind kind;
+  double a;
+  double b;
+  Random random;
+
+  public DurationDistribution(Kind kind, double a, double b, long seed) {
+    this.kind = kind;
+    this.a = a;
+    this.b = b;
+    this.random = new Random(seed);
+  }
+
+  public static DurationDistribution parse(String spec, long seed) {
+    String[] parts = spec.split(":", 2);
+    Kind kind = Kind.valueOf(parts[0].trim().toUpperCase());
+    String[] params = parts.length > 1 ? parts[1].split(",") : new String[0];
+    double a = params.length > 0 ? Double.parseDouble(params[0].trim()) : 0;
+    double b = params.length > 1 ? Double.parseDouble(params[1].trim()) : 0;
+    if(kind == Kind.UNIFORM && params.length < 2)
+      b = a;
+    if(kind == Kind.LOGNORMAL && params.length < 2)
+      b = 1;
+    return new DurationDistribution(kind, a, b, seed);
+  }
+
+  /**
+   * Draw the next duration
+   * @return duration in nanoseconds
+   */
+  public synchronized long next() {
+    double millis;
+    switch(kind) {
+    case UNIFORM:
+      millis = a + (b - a) * random.nextDouble();
+      break;
+    case EXP:
+      millis = -a * Math.log(1 - random.nextDouble());
+      break;
+    case LOGNORMAL:
+      millis = a * Math.exp(b * random.nextGaussian());
+      break;
+    default:
+      millis = a;
+    }
+    return (long) (Math.max(0, millis) * 1000000);
+  }
+
+  @Override
+  public String toString() {
+    return kind.name().toLowerCase() + ":" + a + (kind == Kind.FIXED || kind == Kind.EXP ? "" : "," + b);
+  }
+}
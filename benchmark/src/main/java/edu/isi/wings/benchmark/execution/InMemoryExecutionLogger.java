@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.wings.benchmark.execution;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import edu.isi.kcap.ontapi.KBAPI;
+import edu.isi.wings.catalog.resource.classes.Machine;
+import edu.isi.wings.execution.engine.classes.RuntimeInfo;
+import edu.isi.wings.execution.engine.classes.RuntimePlan;
+import edu.isi.wings.execution.engine.classes.RuntimeStep;
+import edu.isi.wings.execution.tools.api.ExecutionLoggerAPI;
+import edu.isi.wings.execution.tools.api.ExecutionMonitorAPI;
+import edu.isi.wings.execution.tools.api.ExecutionResourceAPI;
+
+/**
+ * Logger, monitor and resource catalog that don't store anything, so that
+ * benchmarks only measure the engines. Keeps track of when the run ends
+ */
+public class InMemoryExecutionLogger 
+implements ExecutionLoggerAPI, ExecutionMonitorAPI, ExecutionResourceAPI {
+  CountDownLatch finished = new CountDownLatch(1);
+  String storageFolder;
+
+  /**
+   * Wait for the run to finish
+   * @return false if it didn't finish in time
+   */
+  public boolean awaitEnd(long timeout, TimeUnit unit) 
+      throws InterruptedException {
+    return finished.await(timeout, unit);
+  }
+
+  // ExecutionLoggerAPI functions
+  @Override
+  public void startLogging(RuntimePlan plan) {
+    // Nothing to set up
+  }
+
+  @Override
+  public void updateRuntimeInfo(RuntimePlan plan) {
+    RuntimeInfo.Status status = plan.getRuntimeInfo().getStatus();
+    if(status == RuntimeInfo.Status.SUCCESS || 
+        status == RuntimeInfo.Status.FAILURE)
+      finished.countDown();
+  }
+
+  @Override
+  public void updateRuntimeInfo(RuntimeStep step) {
+    // Not stored
+  }
+
+  @Override
+  public void updateRuntimeInfo(ArrayList<RuntimeStep> steps) {
+    // Not stored
+  }
+
+  // ExecutionMonitorAPI functions
+  @Override
+  public ArrayList<RuntimePlan> getRunList() {
+    return new ArrayList<RuntimePlan>();
+  }
+
+  @Override
+  public RuntimePlan getRunDetails(String runid) {
+    return null;
+  }
+
+  @Override
+  public boolean runExists(String runid) {
+    return false;
+  }
+
+  @Override
+  public boolean deleteRun(String runid) {
+    return false;
+  }
+
+  @Override
+  public RuntimePlan rePlan(RuntimePlan planexe) {
+    // Synthetic plans are never incomplete
+    planexe.getRuntimeInfo().setStatus(RuntimeInfo.Status.FAILURE);
+    return planexe;
+  }
+
+  // ExecutionResourceAPI functions
+  @Override
+  public void setLocalStorageFolder(String path) {
+    this.storageFolder = path;
+  }
+
+  @Override
+  public String getLocalStorageFolder() {
+    return this.storageFolder;
+  }
+
+  @Override
+  public Machine getMachine(String machineId) {
+    return null;
+  }
+
+  // Save/Delete
+  @Override
+  public boolean save() {
+    return true;
+  }
+
+  @Override
+  public boolean delete() {
+    return true;
+  }
+
+  // TransactionsAPI functions
+  @Override
+  public boolean start_read() {
+    return true;
+  }
+
+  @Override
+  public boolean start_write() {
+    return true;
+  }
+
+  @Override
+  public boolean save(KBAPI kb) {
+    return true;
+  }
+
+  @Override
+  public boolean saveAll() {
+    return true;
+  }
+
+  @Override
+  public boolean end() {
+    return true;
+  }
+
+  @Override
+  public boolean start_batch_operation() {
+    return true;
+  }
+
+  @Override
+  public void stop_batch_operation() {
+    // Nothing to do
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.wings.benchmark.execution;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.TimeUnit;
+
+import edu.isi.wings.benchmark.execution.SyntheticPlans.Shape;
+import edu.isi.wings.workflow.plan.api.ExecutionPlan;
+
+/**
+ * Drives the LocalExecutionEngine with synthetic plans, and reports per step
+ * scheduling latency, throughput and memory use.
+ *
+ * Usage: SchedulerBenchmark [shape|all] [size] [parallel] [durations] [seed]
+ *   shape: chain, fan or collection (default: all, with sizes of 1000, 
+ *          10000 and 100000 steps)
+ *   parallel: number of simulated workers (default: 8)
+ *   durations: step durations, see DurationDistribution (default: fixed:0)
+ *   
+ * A run that takes longer than the timeout (system property 
+ * "benchmark.timeout", in minutes, default 60) is aborted.
+ */
+public class SchedulerBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    String shapeArg = args.length > 0 ? args[0] : "all";
+    int size = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+    int parallel = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+    String durations = args.length > 3 ? args[3] : "fixed:0";
+    long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+    long timeout = Long.getLong("benchmark.timeout", 60);
+
+    Shape[] shapes = shapeArg.equalsIgnoreCase("all") ? Shape.values() 
+        : new Shape[] { Shape.valueOf(shapeArg.toUpperCase()) };
+
+    System.out.println("Workers: " + parallel + ", durations: " 
+        + DurationDistribution.parse(durations, seed));
+    System.out.println(String.format("%-10s %7s %8s %10s %10s | %9s %9s %9s | %9s %9s | %8s %8s %4s",
+        "Shape", "Steps", "Status", "Time (ms)", "Steps/s", 
+        "Disp p50", "Disp p99", "Disp max", "Start p50", "Start p99",
+        "Plan MB", "Peak MB", "Dups"));
+    for(Shape shape : shapes) {
+      int n = size > 0 ? size : defaultSize(shape);
+      run(shape, n, parallel, DurationDistribution.parse(durations, seed), timeout);
+    }
+  }
+
+  private static int defaultSize(Shape shape) {
+    switch(shape) {
+    case CHAIN:
+      return 1000;
+    case FAN:
+      return 10000;
+    default:
+      return 100000;
+    }
+  }
+
+  private static void run(Shape shape, int size, int parallel, 
+      DurationDistribution durations, long timeout) throws Exception {
+    long baseHeap = usedHeap();
+    ExecutionPlan plan = SyntheticPlans.create(shape, size);
+    SchedulerRun run = new SchedulerRun(plan, parallel, durations);
+    long planHeap = usedHeap() - baseHeap;
+
+    resetPeakHeap();
+    boolean finished = run.execute(timeout, TimeUnit.MINUTES);
+    long peakHeap = peakHeap() - baseHeap;
+    run.shutdown();
+
+    long[] dispatch = run.getDispatchLatencies();
+    long[] start = run.getStartLatencies();
+    double millis = run.getWallTime() / 1e6;
+    System.out.println(String.format("%-10s %7d %8s %10.1f %10.0f | %9s %9s %9s | %9s %9s | %8.1f %8.1f %4d",
+        shape.name().toLowerCase(), run.getNumSteps(), 
+        finished ? run.getStatus() : "TIMEOUT",
+        millis, run.getNumFinishedSteps() / (millis / 1000), 
+        micros(SchedulerRun.percentile(dispatch, 50)),
+        micros(SchedulerRun.percentile(dispatch, 99)),
+        micros(SchedulerRun.percentile(dispatch, 100)),
+        micros(SchedulerRun.percentile(start, 50)),
+        micros(SchedulerRun.percentile(start, 99)),
+        planHeap / 1048576.0, peakHeap / 1048576.0,
+        run.getDuplicateSubmissions()));
+  }
+
+  private static String micros(long nanos) {
+    return String.format("%.0fus", nanos / 1e3);
+  }
+
+  private static long usedHeap() {
+    for(int i=0; i<3; i++)
+      System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static void resetPeakHeap() {
+    for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if(pool.getType() == MemoryType.HEAP)
+        pool.resetPeakUsage();
+    }
+  }
+
+  // Upper bound, as the pools don't all peak at the same time
+  private static long peakHeap() {
+    long peak = 0;
+    for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if(pool.getType() == MemoryType.HEAP)
+        peak += pool.getPeakUsage().getUsed();
+    }
+    return peak;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.wings.benchmark.execution;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.isi.wings.benchmark.execution.SyntheticPlans.Shape;
+
+/**
+ * Time taken by the LocalExecutionEngine to run synthetic plans of steps 
+ * that finish immediately, i.e. its scheduling overhead. Use 
+ * SchedulerBenchmark for per step latencies and larger plans
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SchedulerJmhBenchmark {
+  @Param({"CHAIN", "FAN", "COLLECTION"})
+  public Shape shape;
+
+  @Param({"1000"})
+  public int size;
+
+  @Param({"8"})
+  public int parallel;
+
+  SchedulerRun run;
+
+  @Setup(Level.Invocation)
+  public void setup() {
+    run = new SchedulerRun(SyntheticPlans.create(shape, size), parallel, 
+        DurationDistribution.parse("fixed:0", 1));
+  }
+
+  @Benchmark
+  public boolean execute() throws InterruptedException {
+    return run.execute(10, TimeUnit.MINUTES);
+  }
+
+  @TearDown(Level.Invocation)
+  public void tearDown() {
+    run.shutdown();
+  }
+}
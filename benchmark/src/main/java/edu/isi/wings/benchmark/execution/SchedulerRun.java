@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.wings.benchmark.execution;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import edu.isi.wings.benchmark.execution.SimulatedStepExecutionEngine.StepTiming;
+import edu.isi.wings.execution.engine.api.impl.local.LocalExecutionEngine;
+import edu.isi.wings.execution.engine.classes.RuntimeInfo;
+import edu.isi.wings.execution.engine.classes.RuntimePlan;
+import edu.isi.wings.execution.engine.classes.RuntimeStep;
+import edu.isi.wings.workflow.plan.api.ExecutionPlan;
+
+/**
+ * One run of a plan by the LocalExecutionEngine, with steps executed by the
+ * SimulatedStepExecutionEngine.
+ *
+ * The latency of a step is measured from the moment it became ready to run
+ * (its last parent ended, or the run started):
+ *   dispatch latency: until the plan engine submitted it to the step engine
+ *   start latency: until it started, which includes waiting for a free worker
+ */
+public class SchedulerRun {
+  RuntimePlan planexe;
+  LocalExecutionEngine planEngine;
+  SimulatedStepExecutionEngine stepEngine;
+  InMemoryExecutionLogger logger;
+
+  long startTime;
+  long endTime;
+
+  public SchedulerRun(ExecutionPlan plan, int parallel, 
+      DurationDistribution durations) {
+    Properties props = new Properties();
+    props.setProperty("parallel", String.valueOf(parallel));
+
+    this.planexe = new RuntimePlan(plan);
+    this.logger = new InMemoryExecutionLogger();
+    this.stepEngine = new SimulatedStepExecutionEngine(parallel, durations);
+    this.planEngine = new LocalExecutionEngine(props);
+    this.planEngine.setStepExecutionEngine(stepEngine);
+    this.stepEngine.setPlanExecutionEngine(planEngine);
+    this.planEngine.setExecutionLogger(logger);
+    this.planEngine.setExecutionMonitor(logger);
+    this.planEngine.setExecutionResource(logger);
+  }
+
+  /**
+   * Run the plan, and wait for it to finish
+   * @return false if it didn't finish in time
+   */
+  public boolean execute(long timeout, TimeUnit unit) 
+      throws InterruptedException {
+    this.startTime = System.nanoTime();
+    this.planEngine.execute(planexe);
+    boolean finished = logger.awaitEnd(timeout, unit);
+    this.endTime = System.nanoTime();
+    if(!finished)
+      this.planEngine.abort(planexe);
+    return finished;
+  }
+
+  public void shutdown() {
+    this.stepEngine.shutdown();
+  }
+
+  public RuntimePlan getRuntimePlan() {
+    return this.planexe;
+  }
+
+  public RuntimeInfo.Status getStatus() {
+    return this.planexe.getRuntimeInfo().getStatus();
+  }
+
+  public int getNumSteps() {
+    return this.planexe.getQueue().getAllSteps().size();
+  }
+
+  public int getNumFinishedSteps() {
+    return this.planexe.getQueue().getFinishedSteps().size();
+  }
+
+  /**
+   * Wall clock time of the run in nanoseconds
+   */
+  public long getWallTime() {
+    return this.endTime - this.startTime;
+  }
+
+  public int getDuplicateSubmissions() {
+    return this.stepEngine.getDuplicateSubmissions();
+  }
+
+  /**
+   * Sorted dispatch latencies (in nanoseconds) of all submitted steps
+   */
+  public long[] getDispatchLatencies() {
+    return this.getLatencies(false);
+  }
+
+  /**
+   * Sorted start latencies (in nanoseconds) of all started steps
+   */
+  public long[] getStartLatencies() {
+    return this.getLatencies(true);
+  }
+
+  private long[] getLatencies(boolean start) {
+    long[] latencies = new long[this.getNumSteps()];
+    int num = 0;
+    for(RuntimeStep step : this.planexe.getQueue().getAllSteps()) {
+      StepTiming timing = stepEngine.getTiming(step);
+      if(timing == null || (start && timing.started == 0))
+        continue;
+      long ready = this.startTime;
+      for(RuntimeStep parent : step.getParents()) {
+        StepTiming ptiming = stepEngine.getTiming(parent);
+        if(ptiming != null)
+          ready = Math.max(ready, ptiming.ended);
+      }
+      latencies[num++] = (start ? timing.started : timing.submitted) - ready;
+    }
+    latencies = Arrays.copyOf(latencies, num);
+    Arrays.sort(latencies);
+    return latencies;
+  }
+
+  /**
+   * @param sorted Sorted values
+   * @param percentile Between 0 and 100
+   */
+  public static long percentile(long[] sorted, double percentile) {
+    if(sorted.length == 0)
+      return 0;
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+  }
+}
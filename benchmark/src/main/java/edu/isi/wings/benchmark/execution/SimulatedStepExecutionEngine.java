@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.wings.benchmark.execution;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.isi.wings.execution.engine.api.PlanExecutionEngine;
+import edu.isi.wings.execution.engine.api.StepExecutionEngine;
+import edu.isi.wings.execution.engine.classes.RuntimeInfo;
+import edu.isi.wings.execution.engine.classes.RuntimePlan;
+import edu.isi.wings.execution.engine.classes.RuntimeStep;
+import edu.isi.wings.execution.tools.api.ExecutionLoggerAPI;
+import edu.isi.wings.execution.tools.api.ExecutionMonitorAPI;
+import edu.isi.wings.execution.tools.api.ExecutionResourceAPI;
+
+/**
+ * Step engine that doesn't run anything. Each step "runs" for a duration
+ * drawn from a distribution, on one of [parallel] worker threads, and then
+ * succeeds. The time at which each step was submitted, started and ended
+ * is recorded, so that the plan engine's scheduling overhead can be measured
+ */
+public class SimulatedStepExecutionEngine implements StepExecutionEngine {
+  protected final ExecutorService workers;
+  protected DurationDistribution durations;
+
+  protected PlanExecutionEngine planEngine;
+  protected ExecutionLoggerAPI logger;
+  protected ExecutionMonitorAPI monitor;
+  protected ExecutionResourceAPI resource;
+
+  ConcurrentHashMap<String, StepTiming> timings;
+  AtomicInteger duplicates = new AtomicInteger();
+
+  /**
+   * Times (from System.nanoTime) at which a step went through the engine
+   */
+  public static class StepTiming {
+    public final long submitted;
+    public volatile long started;
+    public volatile long ended;
+
+    StepTiming(long submitted) {
+      this.submitted = submitted;
+    }
+  }
+
+  public SimulatedStepExecutionEngine(int parallel, 
+      DurationDistribution durations) {
+    this.workers = Executors.newFixedThreadPool(parallel);
+    this.durations = durations;
+    this.timings = new ConcurrentHashMap<String, StepTiming>();
+  }
+
+  @Override
+  public void execute(RuntimeStep exe, RuntimePlan planexe) {
+    StepTiming timing = new StepTiming(System.nanoTime());
+    // The same step being submitted twice is a scheduling bug
+    if(timings.putIfAbsent(exe.getID(), timing) != null) {
+      duplicates.incrementAndGet();
+      return;
+    }
+    exe.setRuntimePlan(planexe);
+    Future<?> job = workers.submit(new SimulatedStepThread(exe, planexe, timing));
+    exe.setProcess(job);
+  }
+
+  public StepTiming getTiming(RuntimeStep exe) {
+    return timings.get(exe.getID());
+  }
+
+  /**
+   * Number of times that an already submitted step was submitted again
+   */
+  public int getDuplicateSubmissions() {
+    return duplicates.get();
+  }
+
+  public void shutdown() {
+    workers.shutdownNow();
+    try {
+      workers.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      // Do nothing
+    }
+  }
+
+  class SimulatedStepThread implements Runnable {
+    RuntimeStep exe;
+    RuntimePlan planexe;
+    StepTiming timing;
+
+    SimulatedStepThread(RuntimeStep exe, RuntimePlan planexe, 
+        StepTiming timing) {
+      this.exe = exe;
+      this.planexe = planexe;
+      this.timing = timing;
+    }
+
+    @Override
+    public void run() {
+      try {
+        timing.started = System.nanoTime();
+        exe.onStart(logger);
+        long duration = durations.next();
+        if(duration > 0)
+          LockSupport.parkNanos(duration);
+        timing.ended = System.nanoTime();
+        if(Thread.interrupted())
+          exe.onEnd(logger, RuntimeInfo.Status.FAILURE, 
+              "!! Stopping !! .. " + exe.getName() + " interrupted");
+        else
+          exe.onEnd(logger, RuntimeInfo.Status.SUCCESS, "");
+      }
+      finally {
+        planEngine.onStepEnd(planexe);
+      }
+    }
+  }
+
+  @Override
+  public void abort(RuntimeStep exe) {
+    exe.abort();
+  }
+
+  @Override
+  public void setPlanExecutionEngine(PlanExecutionEngine engine) {
+    this.planEngine = engine;
+  }
+
+  @Override
+  public PlanExecutionEngine getPlanExecutionEngine() {
+    return this.planEngine;
+  }
+
+  @Override
+  public void setExecutionLogger(ExecutionLoggerAPI logger) {
+    this.logger = logger;
+  }
+
+  @Override
+  public void setExecutionMonitor(ExecutionMonitorAPI monitor) {
+    this.monitor = monitor;
+  }
+
+  @Override
+  public void setExecutionResource(ExecutionResourceAPI resource) {
+    this.resource = resource;
+  }
+
+  @Override
+  public ExecutionLoggerAPI getExecutionLogger() {
+    return this.logger;
+  }
+
+  @Override
+  public ExecutionMonitorAPI getExecutionMonitor() {
+    return this.monitor;
+  }
+
+  @Override
+  public ExecutionResourceAPI getExecutionResource() {
+    return this.resource;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.wings.benchmark.execution;
+
+import java.util.Properties;
+
+import edu.isi.wings.workflow.plan.api.ExecutionPlan;
+import edu.isi.wings.workflow.plan.api.ExecutionStep;
+import edu.isi.wings.workflow.plan.api.impl.pplan.PPlan;
+import edu.isi.wings.workflow.plan.api.impl.pplan.PPlanStep;
+import edu.isi.wings.workflow.plan.classes.ExecutionCode;
+
+/**
+ * In-memory execution plans of a given shape. The plans are not backed by
+ * a KB, so they can only be executed, not saved
+ */
+public class SyntheticPlans {
+  public static final String NS = "http://www.wings-workflows.org/benchmark/";
+
+  public enum Shape { CHAIN, FAN, COLLECTION }
+
+  public static ExecutionPlan create(Shape shape, int size) {
+    switch(shape) {
+    case CHAIN:
+      return chain(size);
+    case FAN:
+      return fanOutFanIn(size);
+    default:
+      return collection(size);
+    }
+  }
+
+  /**
+   * [size] steps, each depending on the previous one
+   */
+  public static ExecutionPlan chain(int size) {
+    Builder builder = new Builder("chain", size);
+    ExecutionStep previous = null;
+    for(int i=0; i<size; i++) {
+      ExecutionStep step = builder.addStep("Step" + (i % 10));
+      if(previous != null)
+        step.addParentStep(previous);
+      previous = step;
+    }
+    return builder.plan;
+  }
+
+  /**
+   * A step that fans out into [size] parallel steps, which are joined by a
+   * final step
+   */
+  public static ExecutionPlan fanOutFanIn(int size) {
+    Builder builder = new Builder("fan", size);
+    ExecutionStep split = builder.addStep("Split");
+    ExecutionStep join = builder.createStep("Join");
+    for(int i=0; i<size; i++) {
+      ExecutionStep step = builder.addStep("Process");
+      step.addParentStep(split);
+      join.addParentStep(step);
+    }
+    builder.plan.addExecutionStep(join);
+    return builder.plan;
+  }
+
+  /**
+   * A component run over a collection of [size] files. Like the steps that
+   * the planner creates for a collection input: independent steps of the
+   * same component, and a step that collects all of their outputs
+   */
+  public static ExecutionPlan collection(int size) {
+    Builder builder = new Builder("collection", size);
+    ExecutionStep collect = builder.createStep("Collect");
+    for(int i=0; i<size; i++) {
+      ExecutionStep step = builder.addStep("Process");
+      collect.addParentStep(step);
+    }
+    builder.plan.addExecutionStep(collect);
+    return builder.plan;
+  }
+
+  static class Builder {
+    Properties props = new Properties();
+    PPlan plan;
+    int count = 0;
+
+    Builder(String name, int size) {
+      this.plan = new PPlan(NS + name + size + ".owl#" + name + size, props);
+    }
+
+    ExecutionStep createStep(String component) {
+      PPlanStep step = new PPlanStep(plan.getNamespace() + component + "_" + (count++), props);
+      step.setCodeBinding(new ExecutionCode(NS + "components.owl#" + component));
+      return step;
+    }
+
+    ExecutionStep addStep(String component) {
+      ExecutionStep step = createStep(component);
+      plan.addExecutionStep(step);
+      return step;
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.wings.benchmark.planner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import edu.isi.wings.catalog.data.classes.VariableBindingsListSet;
+import edu.isi.wings.common.kb.PropertiesHelper;
+import edu.isi.wings.planner.api.WorkflowGenerationAPI;
+import edu.isi.wings.planner.cli.Wings;
+import edu.isi.wings.workflow.plan.api.ExecutionPlan;
+import edu.isi.wings.workflow.template.api.Seed;
+import edu.isi.wings.workflow.template.api.Template;
+
+/**
+ * Time taken by each phase of workflow generation, for the seeds used by
+ * the planner tests.
+ *
+ * The inputs of a phase are generated before each invocation, by running
+ * the earlier phases. With "warm" catalogs, the phase is run by the same
+ * catalogs that generated its inputs (and that have been used for earlier
+ * invocations). With "cold" catalogs, the component, data and resource
+ * catalogs and the workflow generator are created anew for every invocation.
+ *
+ * The test domains are read from planner/src/test/resources/domains, or from
+ * the directory given in the "wings.benchmark.domains" system property.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class PlannerPhaseBenchmark {
+  enum Phase { INFER, SPECIALIZE, SELECT_DATA, CONFIGURE, EXPAND, PLAN }
+
+  @Param({"DMDomain", "drugome"})
+  public String domain;
+
+  @Param({"warm", "cold"})
+  public String catalogs;
+
+  File domdir;
+  File tempdir;
+  String seedName;
+
+  // Generates the inputs of the phases
+  Wings prep;
+  // Runs the measured phase
+  WorkflowGenerationAPI wg;
+
+  Seed seed;
+  Template inferred;
+  ArrayList<Template> candidates;
+  ArrayList<Template> bound;
+  ArrayList<Template> configured;
+  ArrayList<Template> expanded;
+
+  @Setup(Level.Trial)
+  public void setupTrial() throws IOException {
+    this.domdir = getDomainDirectory(domain);
+    this.seedName = getSeedName(domain);
+    this.tempdir = File.createTempFile("wings-benchmark-", "");
+    this.tempdir.delete();
+    this.tempdir.mkdirs();
+
+    PropertiesHelper.resetProperties();
+    PropertiesHelper.loadWingsProperties(domdir + "/wings.properties");
+    PropertiesHelper.setOntologyDir(domdir + "/ontology");
+    PropertiesHelper.setLogDir(tempdir + "/logs");
+    PropertiesHelper.setOutputDir(tempdir + "/output");
+    PropertiesHelper.disableLogging();
+
+    this.prep = this.createWings();
+  }
+
+  @Setup(Level.Invocation)
+  public void setupInvocation(BenchmarkParams params) {
+    String method = params.getBenchmark();
+    method = method.substring(method.lastIndexOf('.') + 1);
+    Phase phase = getPhase(method);
+
+    WorkflowGenerationAPI pwg = prep.getWG();
+    seed = pwg.loadSeed(seedName);
+    if(phase.compareTo(Phase.SPECIALIZE) >= 0)
+      inferred = pwg.getInferredTemplate(seed);
+    if(phase.compareTo(Phase.SELECT_DATA) >= 0)
+      candidates = prep.backwardSweep(seed);
+    if(phase.compareTo(Phase.CONFIGURE) >= 0) {
+      bound = prep.selectInputData(candidates);
+      prep.getDataMetricsForInputData(bound);
+    }
+    if(phase.compareTo(Phase.EXPAND) >= 0)
+      configured = prep.forwardSweep(bound);
+    if(phase.compareTo(Phase.PLAN) >= 0)
+      expanded = prep.getExpandedTemplates(configured);
+
+    if(catalogs.equals("cold"))
+      wg = this.createWings().getWG();
+    else
+      wg = pwg;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownTrial() throws IOException {
+    PropertiesHelper.resetProperties();
+    FileUtils.deleteDirectory(tempdir);
+  }
+
+  @Benchmark
+  public Template getInferredTemplate() {
+    return wg.getInferredTemplate(seed);
+  }
+
+  @Benchmark
+  public ArrayList<Template> specializeTemplates() {
+    return wg.specializeTemplates(inferred);
+  }
+
+  @Benchmark
+  public ArrayList<VariableBindingsListSet> selectInputDataObjects() {
+    ArrayList<VariableBindingsListSet> bindings = 
+        new ArrayList<VariableBindingsListSet>();
+    for(Template candidate : candidates) {
+      if(candidate.getInputDataVariables().length > 0)
+        bindings.add(wg.selectInputDataObjects(candidate));
+    }
+    return bindings;
+  }
+
+  @Benchmark
+  public ArrayList<Template> configureTemplates() {
+    ArrayList<Template> templates = new ArrayList<Template>();
+    for(Template template : bound) {
+      ArrayList<Template> instances = wg.configureTemplates(template);
+      if(instances != null)
+        templates.addAll(instances);
+    }
+    return templates;
+  }
+
+  @Benchmark
+  public ArrayList<Template> getExpandedTemplate() {
+    ArrayList<Template> templates = new ArrayList<Template>();
+    for(Template template : configured)
+      templates.add(wg.getExpandedTemplate(template));
+    return templates;
+  }
+
+  @Benchmark
+  public ArrayList<ExecutionPlan> getExecutionPlan() {
+    ArrayList<ExecutionPlan> plans = new ArrayList<ExecutionPlan>();
+    for(Template template : expanded)
+      plans.add(wg.getExecutionPlan(template));
+    return plans;
+  }
+
+  private Wings createWings() {
+    Wings wings = new Wings(seedName, UUID.randomUUID().toString(), 
+        domdir + "/wings.properties");
+    wings.initializePC();
+    wings.initializeRC();
+    wings.initializeWorkflowGenerator();
+    wings.setDC(wings.initializeDC());
+    return wings;
+  }
+
+  private static Phase getPhase(String method) {
+    if(method.equals("getInferredTemplate"))
+      return Phase.INFER;
+    else if(method.equals("specializeTemplates"))
+      return Phase.SPECIALIZE;
+    else if(method.equals("selectInputDataObjects"))
+      return Phase.SELECT_DATA;
+    else if(method.equals("configureTemplates"))
+      return Phase.CONFIGURE;
+    else if(method.equals("getExpandedTemplate"))
+      return Phase.EXPAND;
+    return Phase.PLAN;
+  }
+
+  private static String getSeedName(String domain) {
+    if(domain.equals("drugome"))
+      return "http://www.isi.edu/drugome/seeds/DrugomeSeed.owl#DrugomeSeed";
+    return "http://www.isi.edu/" + domain + "/seeds/Test2Seed.owl#Test2Seed";
+  }
+
+  static File getDomainDirectory(String domain) throws IOException {
+    String dir = System.getProperty("wings.benchmark.domains");
+    if(dir != null)
+      return new File(dir, domain);
+    for(String path : new String[] { "planner/src/test/resources/domains", 
+        "../planner/src/test/resources/domains" }) {
+      File f = new File(path, domain);
+      if(f.isDirectory())
+        return f.getCanonicalFile();
+    }
+    throw new IOException("Cannot find domain " + domain 
+        + ". Set the wings.benchmark.domains system property");
+  }
+}
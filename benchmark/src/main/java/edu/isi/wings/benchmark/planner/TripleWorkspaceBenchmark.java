@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.benchmark.planner;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.isi.kcap.ontapi.KBAPI;
+import edu.isi.kcap.ontapi.KBObject;
+import edu.isi.kcap.ontapi.KBTriple;
+import edu.isi.kcap.ontapi.OntFactory;
+import edu.isi.kcap.ontapi.OntSpec;
+import edu.isi.wings.common.kb.KBUtils;
+import edu.isi.wings.common.kb.TripleWorkspace;
+
+/**
+ * Time taken to set up the temporary kb of one component invocation, the
+ * way ComponentReasoningKB.findDataDetails does: a shared base (redbox and
+ * domain knowledge), the component's classes, and for each argument its 
+ * classes, a type check and a few literal properties.
+ * 
+ * "kb" builds a new plain KBAPI for every invocation (the old path), 
+ * "workspace" rewinds and reuses a TripleWorkspace, and "workspaceToKB" 
+ * also loads the workspace into a KBAPI, as is done before running rules.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TripleWorkspaceBenchmark {
+  static final String NS = "http://www.wings-workflows.org/benchmark#";
+
+  @Param({"100", "2000"})
+  public int baseTriples;
+
+  @Param({"4", "16"})
+  public int arguments;
+
+  @Param({"3"})
+  public int classesPerArgument;
+
+  OntFactory factory;
+  ArrayList<KBTriple> base;
+  ArrayList<KBTriple> componentTriples;
+  KBObject rdftype, hasInput, hasArgumentID, hasBindingID, hasValue;
+  TripleWorkspace ws;
+
+  @Setup
+  public void setup() {
+    factory = new OntFactory(OntFactory.JENA);
+    rdftype = factory.getObject(KBUtils.RDF + "type");
+    hasInput = factory.getObject(NS + "hasInput");
+    hasArgumentID = factory.getObject(NS + "hasArgumentID");
+    hasBindingID = factory.getObject(NS + "hasBindingID");
+    hasValue = factory.getObject(NS + "hasValue");
+
+    base = new ArrayList<KBTriple>();
+    for(int i = 0; i < baseTriples; i++) {
+      base.add(factory.getTriple(factory.getObject(NS + "Var" + (i % 50)), 
+          factory.getObject(NS + "metric" + (i % 7)), 
+          factory.getObject(NS + "Value" + i)));
+    }
+    componentTriples = new ArrayList<KBTriple>();
+    for(int i = 0; i < 4; i++) {
+      componentTriples.add(factory.getTriple(factory.getObject(NS + "comp"), 
+          rdftype, factory.getObject(NS + "CompClass" + i)));
+    }
+
+    ws = new TripleWorkspace(factory);
+    ws.addTriples(base);
+    ws.mark();
+  }
+
+  @Benchmark
+  public KBAPI kb() {
+    KBAPI tkb = factory.getKB(OntSpec.PLAIN);
+    tkb.addTriples(base);
+    for(KBTriple t : componentTriples)
+      tkb.addTriple(t);
+    KBObject tcomp = tkb.getIndividual(NS + "comp");
+    for(int i = 0; i < arguments; i++) {
+      String varid = NS + "Var" + i;
+      tkb.genericTripleQuery(tkb.getResource(varid), 
+          tkb.getProperty(KBUtils.RDF + "type"), null);
+      for(int j = 0; j < classesPerArgument; j++) {
+        tkb.addTriple(factory.getTriple(factory.getObject(varid), rdftype, 
+            factory.getObject(NS + "DataClass" + j)));
+      }
+      KBObject varobj = tkb.getIndividual(varid);
+      tkb.addTriple(varobj, hasArgumentID, tkb.createLiteral("arg" + i));
+      tkb.addTriple(varobj, hasBindingID, tkb.createLiteral(""));
+      tkb.setPropertyValue(varobj, hasValue, tkb.createXSDLiteral("" + i, 
+          KBUtils.XSD + "int"));
+      tkb.addTriple(tcomp, hasInput, varobj);
+    }
+    return tkb;
+  }
+
+  @Benchmark
+  public int workspace() {
+    return this.fillWorkspace();
+  }
+
+  @Benchmark
+  public KBAPI workspaceToKB() {
+    this.fillWorkspace();
+    return ws.toKB();
+  }
+
+  private int fillWorkspace() {
+    ws.rewind();
+    ws.addTriples(componentTriples);
+    KBObject tcomp = ws.getResource(NS + "comp");
+    for(int i = 0; i < arguments; i++) {
+      String varid = NS + "Var" + i;
+      ws.genericTripleQuery(ws.getResource(varid), rdftype, null);
+      for(int j = 0; j < classesPerArgument; j++) {
+        ws.addTriple(factory.getObject(varid), rdftype, 
+            factory.getObject(NS + "DataClass" + j));
+      }
+      KBObject varobj = ws.getResource(varid);
+      ws.addTriple(varobj, hasArgumentID, ws.createLiteral("arg" + i));
+      ws.addTriple(varobj, hasBindingID, ws.createLiteral(""));
+      ws.setPropertyValue(varobj, hasValue, ws.createXSDLiteral("" + i, 
+          KBUtils.XSD + "int"));
+      ws.addTriple(tcomp, hasInput, varobj);
+    }
+    return ws.size();
+  }
+}
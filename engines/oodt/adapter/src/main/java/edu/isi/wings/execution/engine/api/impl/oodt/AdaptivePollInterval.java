@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.execution.engine.api.impl.oodt;
+
+/**
+ * Poll interval that follows the observed rate of status changes. It aims 
+ * for about [targetChanges] changes per poll: it shortens when many tasks 
+ * change between polls, and backs off while nothing changes.
+ */
+public class AdaptivePollInterval {
+  long minInterval;
+  long maxInterval;
+  double targetChanges = 1;
+  long interval;
+  // Smoothed changes per second
+  double rate = 0;
+
+  public AdaptivePollInterval(long minInterval, long maxInterval) {
+    this.minInterval = minInterval;
+    this.maxInterval = maxInterval;
+    this.interval = minInterval;
+  }
+
+  /**
+   * @param changes
+   *          Number of status changes seen in the last poll
+   * @param elapsed
+   *          Milliseconds since the previous poll
+   * @return Milliseconds to wait before the next poll
+   */
+  public long next(int changes, long elapsed) {
+    double observed = elapsed > 0 ? changes * 1000.0 / elapsed : 0;
+    this.rate = 0.5 * this.rate + 0.5 * observed;
+    if(changes == 0)
+      this.interval = (long) (this.interval * 1.5);
+    else if(this.rate > 0)
+      this.interval = (long) (this.targetChanges * 1000 / this.rate);
+    this.interval = Math.max(minInterval, Math.min(maxInterval, this.interval));
+    return this.interval;
+  }
+
+  public long getInterval() {
+    return interval;
+  }
+}
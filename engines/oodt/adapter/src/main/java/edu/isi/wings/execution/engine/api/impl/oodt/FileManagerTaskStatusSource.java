@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.execution.engine.api.impl.oodt;
+
+import java.io.File;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.oodt.cas.filemgr.datatransfer.DataTransfer;
+import org.apache.oodt.cas.filemgr.datatransfer.RemoteDataTransferFactory;
+import org.apache.oodt.cas.filemgr.structs.Product;
+import org.apache.oodt.cas.filemgr.system.XmlRpcFileManagerClient;
+
+import edu.isi.wings.execution.engine.classes.RuntimeInfo;
+
+/**
+ * Reads task statuses from the workflow log that Wings tasks keep in the
+ * OODT file manager. Each task appends "JobN (task): STATUS" lines to it, so
+ * one retrieval of the log gives the status of every task.
+ */
+public class FileManagerTaskStatusSource implements TaskStatusSource {
+  private static Pattern pattern = 
+      Pattern.compile("^(Job\\d+)\\s+\\((.+)\\)\\s*:\\s+(.+)$");
+
+  XmlRpcFileManagerClient fmclient;
+  DataTransfer dt;
+  String jobdir;
+  String wlogfile;
+  Product prod;
+
+  public FileManagerTaskStatusSource(String fmurl, String jobdir, 
+      String wlogfile) throws Exception {
+    this.fmclient = new XmlRpcFileManagerClient(new URL(fmurl));
+    this.dt = new RemoteDataTransferFactory().createDataTransfer();
+    this.dt.setFileManagerUrl(new URL(fmurl));
+    this.jobdir = jobdir;
+    this.wlogfile = wlogfile;
+  }
+
+  @Override
+  public Map<String, RuntimeInfo.Status> getTaskStatuses() throws Exception {
+    if(this.prod == null) {
+      Product p = fmclient.getProductById(this.wlogfile);
+      p.setProductReferences(fmclient.getProductReferences(p));
+      this.prod = p;
+    }
+    dt.retrieveProduct(this.prod, new File(jobdir));
+
+    HashMap<String, RuntimeInfo.Status> statuses = 
+        new HashMap<String, RuntimeInfo.Status>();
+    for(String line : FileUtils.readLines(new File(this.jobdir + this.wlogfile))) {
+      Matcher mat = pattern.matcher(line);
+      if(mat.find()) {
+        try {
+          statuses.put(mat.group(2), RuntimeInfo.Status.valueOf(mat.group(3).trim()));
+        }
+        catch (IllegalArgumentException e) {
+          // Not a status line
+        }
+      }
+    }
+    return statuses;
+  }
+
+  @Override
+  public void close() {
+    try {
+      if(this.prod != null)
+        fmclient.removeProduct(this.prod);
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -21,9 +21,9 @@ import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.oodt.cas.filemgr.datatransfer.DataTransfer;
@@ -60,11 +60,30 @@ public class OODTExecutionEngine implements PlanExecutionEngine, StepExecutionEn
 
   String jobdir;
   String wlogfile;
+  
+  // Task statuses are polled every [minPollTime] to [maxPollTime] ms,
+  // depending on how often they change
+  long minPollTime = 500;
+  long maxPollTime = 10000;
+  int maxPollFailures = 40;
+  TaskStatusSource statusSource;
 
   public OODTExecutionEngine(Properties props) {
     this.props = props;
     this.stepEngine = this;
     this.planEngine = this;
+    if(props.containsKey("oodt.poll.min"))
+      this.minPollTime = Long.parseLong(props.getProperty("oodt.poll.min"));
+    if(props.containsKey("oodt.poll.max"))
+      this.maxPollTime = Long.parseLong(props.getProperty("oodt.poll.max"));
+  }
+  
+  /**
+   * Use a different source of task statuses than the file manager's
+   * workflow log (e.g. an InProcessTaskStatusSource in tests)
+   */
+  public void setTaskStatusSource(TaskStatusSource source) {
+    this.statusSource = source;
   }
 
   @Override
@@ -189,6 +208,10 @@ public class OODTExecutionEngine implements PlanExecutionEngine, StepExecutionEn
     PlanExecutionEngine planEngine;
     ExecutionLoggerAPI logger;
     ExecutionMonitorAPI monitor;
+    
+    // Used to fetch the logs and outputs of finished steps
+    XmlRpcFileManagerClient fmclient;
+    DataTransfer dt;
 
     public ExecutionMonitoringThread(PlanExecutionEngine planEngine,
         RuntimePlan planexe, ExecutionLoggerAPI logger, ExecutionMonitorAPI monitor,
@@ -207,126 +230,97 @@ public class OODTExecutionEngine implements PlanExecutionEngine, StepExecutionEn
     @Override
     public void run() {
       planexe.onStart(this.logger);
+      TaskStatusSource source = statusSource;
       try {
+        if(source == null) {
+          try {
+            source = new FileManagerTaskStatusSource(fmurl, jobdir, wlogfile);
+          }
+          catch (Exception e) {
+            e.printStackTrace();
+            planexe.onEnd(this.logger, RuntimeInfo.Status.FAILURE, 
+                "Could not connect to the file manager: " + e.getMessage());
+            return;
+          }
+        }
+        
+        // Steps by job name
+        HashMap<String, RuntimeStep> stepmap = new HashMap<String, RuntimeStep>();
+        for(RuntimeStep stepexe : planexe.getQueue().getAllSteps())
+          stepmap.put(stepexe.getStep().getName(), stepexe);
+        
+        // Last seen status of each job
         HashMap<String, RuntimeInfo.Status> jobstatus = 
             new HashMap<String, RuntimeInfo.Status>();
-            
-        int osleeptime = 1000;
-        int maxsleeptime = 4*osleeptime;
-        int sleeptime = osleeptime;
-
-        XmlRpcFileManagerClient fmclient = null;
-        DataTransfer dt = null;
-        try {
-          fmclient = new XmlRpcFileManagerClient(new URL(fmurl));
-          dt = new RemoteDataTransferFactory().createDataTransfer();
-          dt.setFileManagerUrl(new URL(fmurl));
-        }
-        catch (Exception e) {
-          e.printStackTrace();
-          return;
-        }
         
-        Product prod = null;
-        int count = 0;
+        // Successful steps whose outputs haven't all been retrieved yet
+        ArrayList<RuntimeStep> unfetched = new ArrayList<RuntimeStep>();
+        
+        AdaptivePollInterval poll = new AdaptivePollInterval(minPollTime, maxPollTime);
+        long lastPoll = System.currentTimeMillis();
+        int failures = 0;
+        int fetchFailures = 0;
+        boolean first = true;
         while(true) {
+          // Fetch statuses of all tasks in one call
+          Map<String, RuntimeInfo.Status> statuses;
           try {
-            prod = fmclient.getProductById(this.wlogfile);
-            prod.setProductReferences(fmclient.getProductReferences(prod));
-            break;
+            statuses = source.getTaskStatuses();
+            failures = 0;
           }
           catch (Exception e) {
-            Thread.sleep(2000);
-            count++;
-            if(count == 20)
+            // The workflow log may not have been created yet
+            if(++failures == maxPollFailures) {
+              planexe.onEnd(this.logger, RuntimeInfo.Status.FAILURE, 
+                  "Could not get task statuses: " + e.getMessage());
               return;
-          }
-        }
-          
-        Pattern pattern = Pattern.compile("^(Job\\d+)\\s+\\((.+)\\)\\s*:\\s+(.+)$");
-        while(true) {
-          dt.retrieveProduct(prod, new File(jobdir));
-          
-          for(String line : FileUtils.readLines(
-              new File(this.jobdir + this.wlogfile))) {
-            Matcher mat = pattern.matcher(line);
-            if(mat.find()) {
-              String jobname = mat.group(2);
-              RuntimeInfo.Status status = RuntimeInfo.Status.valueOf(mat.group(3));
-              jobstatus.put(jobname, status);
             }
+            statuses = jobstatus;
           }
-
-          ArrayList<RuntimeStep> steps = new ArrayList<RuntimeStep>();
-          steps.addAll(planexe.getQueue().getNextStepsToExecute());
-          steps.addAll(planexe.getQueue().getRunningSteps());
-
-          boolean shortsleep = false;
-          for(RuntimeStep stepexe : steps) {
-            String jobname = stepexe.getStep().getName();
-            if(jobstatus.containsKey(jobname)) {
-              if(stepexe.getRuntimeInfo().getStatus() == 
-                  RuntimeInfo.Status.QUEUED) {
-                stepexe.setRuntimePlan(planexe);
-                stepexe.onStart(logger);
-                shortsleep = true;
-              }
-
-              RuntimeInfo.Status status = jobstatus.get(jobname);
-              if(status == RuntimeInfo.Status.SUCCESS ||
-                  status == RuntimeInfo.Status.FAILURE) {
-                // Fetch log file
-                File f = new File(this.jobdir + jobname + ".log");
-                String log = "";
-                if(!f.exists()) {
-                  try {
-                    Product logprod = fmclient.getProductById(
-                        planexe.getName() + "-" + f.getName());
-                    logprod.setProductReferences(fmclient.getProductReferences(logprod));
-                    dt.retrieveProduct(logprod, new File(this.jobdir));
-                    log = FileUtils.readFileToString(f);
-                    fmclient.removeProduct(logprod);
-                  }
-                  catch (Exception e) {}
-                }
-                stepexe.onEnd(logger, status, log);
-                shortsleep = true;
-              }
-            }
+          
+          // Only pass on status changes
+          int changes = 0;
+          for(String jobname : statuses.keySet()) {
+            RuntimeInfo.Status status = statuses.get(jobname);
+            if(status == jobstatus.get(jobname))
+              continue;
+            jobstatus.put(jobname, status);
+            RuntimeStep stepexe = stepmap.get(jobname);
+            if(stepexe == null)
+              continue;
+            changes++;
+            this.updateStep(stepexe, status);
+            if(status == RuntimeInfo.Status.SUCCESS)
+              unfetched.add(stepexe);
           }
-
-          // Retrieve output files (and metafiles)
-          for(RuntimeStep stepexe : planexe.getQueue().getFinishedSteps()) {
-            for(ExecutionFile file : stepexe.getStep().getOutputFiles()) {
-              File f = new File(datadir + file.getName());
-              if(!f.exists()) {
-                try {
-                  String outprodid = this.libns + file.getBinding();
-                  Product outprod = fmclient.getProductById(outprodid);
-                  outprod.setProductReferences(fmclient.getProductReferences(outprod));
-                  dt.retrieveProduct(outprod, new File(datadir));
-
-                  Product metprod = fmclient.getProductById(outprodid + ".met");
-                  if(metprod != null) {
-                    metprod.setProductReferences(fmclient.getProductReferences(metprod));
-                    dt.retrieveProduct(metprod, new File(datadir));
-                  }
-                }
-                catch (Exception e) {
-                  //e.printStackTrace();
-                }
-              }
-            }
+          
+          // Retry outputs that couldn't be retrieved on earlier polls
+          boolean fetching = !unfetched.isEmpty();
+          for(Iterator<RuntimeStep> it = unfetched.iterator(); it.hasNext(); ) {
+            if(this.retrieveOutputs(it.next()))
+              it.remove();
           }
 
-          steps = planexe.getQueue().getNextStepsToExecute();
-          if(steps.size() == 0) {
-            // Nothing to execute. Check if finished
-            if(planexe.getQueue().getRunningSteps().size() == 0) {
+          if(changes > 0 || first || fetching) {
+            first = false;
+            ArrayList<RuntimeStep> steps = planexe.getQueue().getNextStepsToExecute();
+            if(steps.size() == 0 && 
+                planexe.getQueue().getRunningSteps().size() == 0) {
+              // Nothing to execute, and nothing running. Finished
               RuntimeInfo.Status status = RuntimeInfo.Status.FAILURE;
               if(planexe.getQueue().getFinishedSteps().size() == 
                   planexe.getQueue().getAllSteps().size()) {
-                if(planexe.getPlan().isIncomplete()) {
+                if(!unfetched.isEmpty()) {
+                  // Keep polling until the outputs have been retrieved
+                  if(++fetchFailures == maxPollFailures) {
+                    planexe.onEnd(this.logger, status, 
+                        "Could not retrieve the outputs of " + 
+                        unfetched.get(0).getStep().getName());
+                    source.close();
+                    break;
+                  }
+                }
+                else if(planexe.getPlan().isIncomplete()) {
                   // If the plan is incomplete, then replan and continue
                   System.out.println("Replanning, and re-executing");
                   planexe = this.monitor.rePlan(planexe);
@@ -334,12 +328,12 @@ public class OODTExecutionEngine implements PlanExecutionEngine, StepExecutionEn
                       RuntimeInfo.Status.FAILURE) {
                     status = RuntimeInfo.Status.FAILURE;
                     planexe.onEnd(this.logger, status, "Finished");
-                    fmclient.removeProduct(prod);
+                    source.close();
                     break;
                   }
                   else {
                     // Quit monitoring and run the new plan
-                    fmclient.removeProduct(prod);
+                    source.close();
                     this.planEngine.execute(planexe);
                     break;
                   }
@@ -347,15 +341,22 @@ public class OODTExecutionEngine implements PlanExecutionEngine, StepExecutionEn
                 else {
                   status = RuntimeInfo.Status.SUCCESS;
                   planexe.onEnd(this.logger, status, "Finished");
-                  fmclient.removeProduct(prod);
+                  source.close();
                   break;
                 }
               }
+              else {
+                // Some steps failed, and nothing else can run
+                planexe.onEnd(this.logger, status, "Finished");
+                source.close();
+                break;
+              }
             }
           }
           
-          sleeptime = shortsleep ? osleeptime : 
-            (sleeptime >= maxsleeptime ? maxsleeptime : sleeptime*2);
+          long now = System.currentTimeMillis();
+          long sleeptime = poll.next(changes, now - lastPoll);
+          lastPoll = now;
           Thread.sleep(sleeptime);
         }
       }
@@ -363,6 +364,85 @@ public class OODTExecutionEngine implements PlanExecutionEngine, StepExecutionEn
         this.planexe.onEnd(this.logger, RuntimeInfo.Status.FAILURE, e.getMessage());
       }
     }
+    
+    /**
+     * Connect to the file manager, if that hasn't been done yet
+     * @return false if it can't be reached
+     */
+    private boolean connectFileManager() {
+      if(this.fmclient != null)
+        return true;
+      try {
+        DataTransfer transfer = new RemoteDataTransferFactory().createDataTransfer();
+        transfer.setFileManagerUrl(new URL(fmurl));
+        this.fmclient = new XmlRpcFileManagerClient(new URL(fmurl));
+        this.dt = transfer;
+        return true;
+      }
+      catch (Exception e) {
+        return false;
+      }
+    }
+    
+    private void updateStep(RuntimeStep stepexe, RuntimeInfo.Status status) {
+      if(stepexe.getRuntimeInfo().getStatus() == RuntimeInfo.Status.WAITING ||
+          stepexe.getRuntimeInfo().getStatus() == RuntimeInfo.Status.QUEUED) {
+        stepexe.setRuntimePlan(planexe);
+        stepexe.onStart(logger);
+      }
+      if(status != RuntimeInfo.Status.SUCCESS &&
+          status != RuntimeInfo.Status.FAILURE)
+        return;
+      
+      String jobname = stepexe.getStep().getName();
+      // Fetch log file
+      File f = new File(this.jobdir + jobname + ".log");
+      String log = "";
+      if(!f.exists() && this.connectFileManager()) {
+        try {
+          Product logprod = fmclient.getProductById(
+              planexe.getName() + "-" + f.getName());
+          logprod.setProductReferences(fmclient.getProductReferences(logprod));
+          dt.retrieveProduct(logprod, new File(this.jobdir));
+          log = FileUtils.readFileToString(f);
+          fmclient.removeProduct(logprod);
+        }
+        catch (Exception e) {}
+      }
+      stepexe.onEnd(logger, status, log);
+    }
+    
+    /**
+     * Retrieve output files (and metafiles) that aren't in the data
+     * directory yet
+     * @return false if some output could not be retrieved
+     */
+    private boolean retrieveOutputs(RuntimeStep stepexe) {
+      boolean fetched = true;
+      for(ExecutionFile file : stepexe.getStep().getOutputFiles()) {
+        File f = new File(datadir + file.getName());
+        if(!f.exists() && this.connectFileManager()) {
+          try {
+            String outprodid = this.libns + file.getBinding();
+            Product outprod = fmclient.getProductById(outprodid);
+            outprod.setProductReferences(fmclient.getProductReferences(outprod));
+            dt.retrieveProduct(outprod, new File(datadir));
+
+            Product metprod = fmclient.getProductById(outprodid + ".met");
+            if(metprod != null) {
+              metprod.setProductReferences(fmclient.getProductReferences(metprod));
+              dt.retrieveProduct(metprod, new File(datadir));
+            }
+          }
+          catch (Exception e) {
+            //e.printStackTrace();
+          }
+        }
+        if(!f.exists())
+          fetched = false;
+      }
+      return fetched;
+    }
   }
 
   @Override
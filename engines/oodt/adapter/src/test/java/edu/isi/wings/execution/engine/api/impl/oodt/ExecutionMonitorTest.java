@@ -0,0 +1,387 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.execution.engine.api.impl.oodt;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.isi.kcap.ontapi.KBAPI;
+import edu.isi.wings.execution.engine.classes.RuntimeInfo;
+import edu.isi.wings.execution.engine.classes.RuntimePlan;
+import edu.isi.wings.execution.engine.classes.RuntimeStep;
+import edu.isi.wings.execution.tools.api.ExecutionLoggerAPI;
+import edu.isi.wings.execution.tools.api.ExecutionMonitorAPI;
+import edu.isi.wings.workflow.plan.api.impl.pplan.PPlan;
+import edu.isi.wings.workflow.plan.api.impl.pplan.PPlanStep;
+import edu.isi.wings.workflow.plan.classes.ExecutionFile;
+
+/**
+ * Runs the OODT execution monitor against an InProcessTaskStatusSource. The
+ * step logs are already in the job directory, and step outputs are put in
+ * the data directory by the tests, so the monitor never needs the file
+ * manager (which isn't reachable).
+ */
+public class ExecutionMonitorTest {
+  static final String NS = "http://www.wings-workflows.org/test/run.owl#";
+
+  OODTExecutionEngine engine;
+  InProcessTaskStatusSource source;
+  RecordingLogger logger;
+  RuntimePlan planexe;
+  Thread monitor;
+  File jobdir;
+
+  @Before
+  public void setUp() throws IOException {
+    jobdir = File.createTempFile("oodt-test-", "");
+    jobdir.delete();
+    jobdir.mkdirs();
+    FileUtils.writeStringToFile(new File(jobdir, "Job1.log"), "");
+    FileUtils.writeStringToFile(new File(jobdir, "Job2.log"), "");
+
+    Properties props = new Properties();
+    props.setProperty("oodt.poll.min", "10");
+    props.setProperty("oodt.poll.max", "100");
+    engine = new OODTExecutionEngine(props);
+    source = new InProcessTaskStatusSource();
+    engine.setTaskStatusSource(source);
+    logger = new RecordingLogger();
+    engine.setExecutionLogger(logger);
+    engine.setExecutionMonitor(logger);
+
+    // Job1 -> Job2
+    PPlan plan = new PPlan(NS + "Plan", props);
+    PPlanStep step1 = new PPlanStep(NS + "Job1", props);
+    PPlanStep step2 = new PPlanStep(NS + "Job2", props);
+    step2.addParentStep(step1);
+    plan.addExecutionStep(step1);
+    plan.addExecutionStep(step2);
+    planexe = new RuntimePlan(plan);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException, IOException {
+    if(monitor != null && monitor.isAlive()) {
+      monitor.interrupt();
+      monitor.join(5000);
+    }
+    FileUtils.deleteDirectory(jobdir);
+  }
+
+  @Test
+  public void testStatusTransitions() throws InterruptedException {
+    startMonitor();
+    RuntimeStep job1 = getStep("Job1");
+    RuntimeStep job2 = getStep("Job2");
+
+    source.setStatus("Job1", RuntimeInfo.Status.RUNNING);
+    awaitStatus(job1, RuntimeInfo.Status.RUNNING);
+    Assert.assertEquals(RuntimeInfo.Status.WAITING, 
+        job2.getRuntimeInfo().getStatus());
+
+    source.setStatus("Job1", RuntimeInfo.Status.SUCCESS);
+    awaitStatus(job1, RuntimeInfo.Status.SUCCESS);
+    Assert.assertFalse(source.isClosed());
+
+    // A status change that is only seen once it has already finished
+    source.setStatus("Job2", RuntimeInfo.Status.SUCCESS);
+    Assert.assertTrue(logger.awaitEnd(5, TimeUnit.SECONDS));
+    Assert.assertEquals(RuntimeInfo.Status.SUCCESS, 
+        planexe.getRuntimeInfo().getStatus());
+    Assert.assertEquals(RuntimeInfo.Status.SUCCESS, 
+        job2.getRuntimeInfo().getStatus());
+    Assert.assertEquals(1, job1.getRuntimeInfo().getAttempts());
+    Assert.assertEquals(1, job2.getRuntimeInfo().getAttempts());
+    // The source is closed right after the run ends
+    monitor.join(5000);
+    Assert.assertTrue(source.isClosed());
+
+    // Every status change was passed on once
+    Assert.assertEquals(2, logger.getUpdates(job1));
+    Assert.assertEquals(2, logger.getUpdates(job2));
+  }
+
+  @Test
+  public void testStepFailure() throws InterruptedException {
+    startMonitor();
+    source.setStatus("Job1", RuntimeInfo.Status.FAILURE);
+    Assert.assertTrue(logger.awaitEnd(5, TimeUnit.SECONDS));
+    Assert.assertEquals(RuntimeInfo.Status.FAILURE, 
+        planexe.getRuntimeInfo().getStatus());
+    Assert.assertEquals(RuntimeInfo.Status.FAILURE, 
+        getStep("Job1").getRuntimeInfo().getStatus());
+    Assert.assertEquals(RuntimeInfo.Status.WAITING, 
+        getStep("Job2").getRuntimeInfo().getStatus());
+    monitor.join(5000);
+    Assert.assertTrue(source.isClosed());
+  }
+
+  @Test
+  public void testAdaptiveBackoff() throws InterruptedException {
+    startMonitor();
+    source.setStatus("Job1", RuntimeInfo.Status.RUNNING);
+    awaitStatus(getStep("Job1"), RuntimeInfo.Status.RUNNING);
+
+    // Nothing changes: polls back off to the maximum interval
+    int calls = source.getCallCount();
+    Thread.sleep(1000);
+    int idleCalls = source.getCallCount() - calls;
+    Assert.assertTrue("Polled " + idleCalls + " times", idleCalls < 40);
+    Assert.assertTrue(idleCalls >= 5);
+
+    // A change is still picked up
+    source.setStatus("Job1", RuntimeInfo.Status.SUCCESS);
+    awaitStatus(getStep("Job1"), RuntimeInfo.Status.SUCCESS);
+  }
+
+  @Test
+  public void testIntervalFollowsChanges() {
+    AdaptivePollInterval poll = new AdaptivePollInterval(100, 1000);
+    Assert.assertEquals(150, poll.next(0, 100));
+    Assert.assertEquals(225, poll.next(0, 150));
+    for(int i=0; i<10; i++)
+      poll.next(0, poll.getInterval());
+    Assert.assertEquals(1000, poll.getInterval());
+
+    // Many changes per poll: back to the minimum
+    Assert.assertEquals(100, poll.next(50, 1000));
+    // About one change per poll
+    for(int i=0; i<20; i++)
+      poll.next(1, 500);
+    Assert.assertTrue(Math.abs(poll.getInterval() - 500) <= 5);
+  }
+
+  @Test
+  public void testFailureLimit() throws InterruptedException {
+    engine.maxPollFailures = 5;
+    source.setFailing(true);
+    startMonitor();
+    Assert.assertTrue(logger.awaitEnd(5, TimeUnit.SECONDS));
+    Assert.assertEquals(RuntimeInfo.Status.FAILURE, 
+        planexe.getRuntimeInfo().getStatus());
+    Assert.assertTrue(planexe.getRuntimeInfo().getLog()
+        .contains("Could not get task statuses"));
+    Assert.assertEquals(5, source.getCallCount());
+  }
+
+  @Test
+  public void testFailuresBelowLimit() throws InterruptedException {
+    engine.maxPollFailures = 5;
+    source.setFailing(true);
+    source.setStatus("Job1", RuntimeInfo.Status.SUCCESS);
+    source.setStatus("Job2", RuntimeInfo.Status.SUCCESS);
+    startMonitor();
+    while(source.getCallCount() < 3)
+      Thread.sleep(5);
+    // The log shows up before the limit is reached
+    source.setFailing(false);
+    Assert.assertTrue(logger.awaitEnd(5, TimeUnit.SECONDS));
+    Assert.assertEquals(RuntimeInfo.Status.SUCCESS, 
+        planexe.getRuntimeInfo().getStatus());
+  }
+
+  @Test
+  public void testOutputsRetriedUntilPresent() throws InterruptedException, 
+      IOException {
+    addOutput("Job2", "out.txt");
+    startMonitor();
+    source.setStatus("Job1", RuntimeInfo.Status.SUCCESS);
+    source.setStatus("Job2", RuntimeInfo.Status.SUCCESS);
+    awaitStatus(getStep("Job2"), RuntimeInfo.Status.SUCCESS);
+
+    // The run doesn't end while the output is missing
+    Assert.assertFalse(logger.awaitEnd(300, TimeUnit.MILLISECONDS));
+    FileUtils.writeStringToFile(new File(jobdir, "out.txt"), "");
+    Assert.assertTrue(logger.awaitEnd(5, TimeUnit.SECONDS));
+    Assert.assertEquals(RuntimeInfo.Status.SUCCESS, 
+        planexe.getRuntimeInfo().getStatus());
+  }
+
+  @Test
+  public void testMissingOutputsFailRun() throws InterruptedException {
+    engine.maxPollFailures = 5;
+    addOutput("Job1", "out.txt");
+    startMonitor();
+    source.setStatus("Job1", RuntimeInfo.Status.SUCCESS);
+    source.setStatus("Job2", RuntimeInfo.Status.SUCCESS);
+    Assert.assertTrue(logger.awaitEnd(5, TimeUnit.SECONDS));
+    Assert.assertEquals(RuntimeInfo.Status.FAILURE, 
+        planexe.getRuntimeInfo().getStatus());
+    Assert.assertTrue(planexe.getRuntimeInfo().getLog()
+        .contains("Could not retrieve the outputs of Job1"));
+    monitor.join(5000);
+    Assert.assertTrue(source.isClosed());
+  }
+
+  private void addOutput(String stepname, String filename) {
+    ExecutionFile file = new ExecutionFile(NS + filename);
+    file.setBinding(filename);
+    getStep(stepname).getStep().addOutputFile(file);
+  }
+
+  private void startMonitor() {
+    String dir = jobdir.getAbsolutePath() + File.separator;
+    monitor = new Thread(engine.new ExecutionMonitoringThread(engine, planexe, 
+        logger, logger, dir, dir, "run.log", "http://localhost:1", NS));
+    monitor.start();
+  }
+
+  private RuntimeStep getStep(String name) {
+    for(RuntimeStep step : planexe.getQueue().getAllSteps())
+      if(step.getStep().getName().equals(name))
+        return step;
+    return null;
+  }
+
+  private void awaitStatus(RuntimeStep step, RuntimeInfo.Status status) 
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while(step.getRuntimeInfo().getStatus() != status) {
+      Assert.assertTrue(step.getName() + " is not " + status, 
+          System.currentTimeMillis() < deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  /**
+   * Logger and monitor that keep track of step updates and of the end of
+   * the run
+   */
+  static class RecordingLogger implements ExecutionLoggerAPI, ExecutionMonitorAPI {
+    CountDownLatch finished = new CountDownLatch(1);
+    ArrayList<String> stepUpdates = new ArrayList<String>();
+
+    boolean awaitEnd(long timeout, TimeUnit unit) throws InterruptedException {
+      return finished.await(timeout, unit);
+    }
+
+    synchronized int getUpdates(RuntimeStep step) {
+      int count = 0;
+      for(String id : stepUpdates)
+        if(id.equals(step.getID()))
+          count++;
+      return count;
+    }
+
+    @Override
+    public void startLogging(RuntimePlan plan) {
+      // Nothing to set up
+    }
+
+    @Override
+    public void updateRuntimeInfo(RuntimePlan plan) {
+      RuntimeInfo.Status status = plan.getRuntimeInfo().getStatus();
+      if(status == RuntimeInfo.Status.SUCCESS || 
+          status == RuntimeInfo.Status.FAILURE)
+        finished.countDown();
+    }
+
+    @Override
+    public synchronized void updateRuntimeInfo(RuntimeStep step) {
+      stepUpdates.add(step.getID());
+    }
+
+    @Override
+    public synchronized void updateRuntimeInfo(ArrayList<RuntimeStep> steps) {
+      for(RuntimeStep step : steps)
+        stepUpdates.add(step.getID());
+    }
+
+    @Override
+    public ArrayList<RuntimePlan> getRunList() {
+      return new ArrayList<RuntimePlan>();
+    }
+
+    @Override
+    public RuntimePlan getRunDetails(String runid) {
+      return null;
+    }
+
+    @Override
+    public boolean runExists(String runid) {
+      return false;
+    }
+
+    @Override
+    public boolean deleteRun(String runid) {
+      return false;
+    }
+
+    @Override
+    public RuntimePlan rePlan(RuntimePlan planexe) {
+      planexe.getRuntimeInfo().setStatus(RuntimeInfo.Status.FAILURE);
+      return planexe;
+    }
+
+    @Override
+    public boolean save() {
+      return true;
+    }
+
+    @Override
+    public boolean delete() {
+      return true;
+    }
+
+    @Override
+    public boolean start_read() {
+      return true;
+    }
+
+    @Override
+    public boolean start_write() {
+      return true;
+    }
+
+    @Override
+    public boolean save(KBAPI kb) {
+      return true;
+    }
+
+    @Override
+    public boolean saveAll() {
+      return true;
+    }
+
+    @Override
+    public boolean end() {
+      return true;
+    }
+
+    @Override
+    public boolean start_batch_operation() {
+      return true;
+    }
+
+    @Override
+    public void stop_batch_operation() {
+      // Nothing to do
+    }
+  }
+}
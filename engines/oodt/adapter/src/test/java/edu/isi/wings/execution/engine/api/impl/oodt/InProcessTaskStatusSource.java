@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.execution.engine.api.impl.oodt;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.isi.wings.execution.engine.classes.RuntimeInfo;
+
+/**
+ * An in-process stand-in for the OODT workflow manager, for testing the
+ * execution monitor without a running OODT installation. Task statuses are
+ * set directly, and the number of status calls is counted. While failing,
+ * status calls throw like the file manager does before the workflow log
+ * exists.
+ */
+public class InProcessTaskStatusSource implements TaskStatusSource {
+  ConcurrentHashMap<String, RuntimeInfo.Status> statuses = 
+      new ConcurrentHashMap<String, RuntimeInfo.Status>();
+  AtomicInteger calls = new AtomicInteger();
+  volatile boolean failing = false;
+  volatile boolean closed = false;
+
+  public void setStatus(String taskName, RuntimeInfo.Status status) {
+    this.statuses.put(taskName, status);
+  }
+
+  public void setFailing(boolean failing) {
+    this.failing = failing;
+  }
+
+  public int getCallCount() {
+    return this.calls.get();
+  }
+
+  public boolean isClosed() {
+    return this.closed;
+  }
+
+  @Override
+  public Map<String, RuntimeInfo.Status> getTaskStatuses() throws Exception {
+    this.calls.incrementAndGet();
+    if(this.failing)
+      throw new Exception("No workflow log yet");
+    return new HashMap<String, RuntimeInfo.Status>(this.statuses);
+  }
+
+  @Override
+  public void close() {
+    this.closed = true;
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.execution.engine.api.impl.pegasus;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes a Pegasus DAX (version 3.6) incrementally, without keeping the workflow in memory.
+ *
+ * The DAX schema requires files, executables, transformations and jobs to come in that order. Each of
+ * these sections is streamed to its own temporary file, and the sections are appended to the DAX on close.
+ */
+public class DaxWriter {
+    public static final Set<String> PROFILE_NAMESPACES = new HashSet<String>(Arrays.asList(
+            "pegasus", "condor", "dagman", "env", "globus", "hints", "selector", "stat"));
+
+    private static final String[] SECTIONS = {"files", "executables", "transformations", "jobs"};
+
+    private Writer dax;
+    private File[] sectionFiles;
+    private Writer files;
+    private Writer executables;
+    private Writer transformations;
+    private Writer jobs;
+    private int jobCount = 0;
+
+    public DaxWriter(String daxPath, String name) throws IOException {
+        this.dax = openWriter(new File(daxPath));
+        this.sectionFiles = new File[SECTIONS.length];
+        for (int i = 0; i < SECTIONS.length; i++) {
+            this.sectionFiles[i] = new File(daxPath + "." + SECTIONS[i]);
+        }
+        this.files = openWriter(sectionFiles[0]);
+        this.executables = openWriter(sectionFiles[1]);
+        this.transformations = openWriter(sectionFiles[2]);
+        this.jobs = openWriter(sectionFiles[3]);
+
+        dax.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        dax.write("<!-- generated by Wings -->\n");
+        dax.write("<adag xmlns=\"http://pegasus.isi.edu/schema/DAX\""
+                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+                + " xsi:schemaLocation=\"http://pegasus.isi.edu/schema/DAX"
+                + " http://pegasus.isi.edu/schema/dax-3.6.xsd\""
+                + " version=\"3.6\" name=\"" + escape(name) + "\" index=\"0\" count=\"1\">\n");
+    }
+
+    /**
+     * Replica catalog entry
+     */
+    public void addFile(String lfn, String url, String site) throws IOException {
+        files.write("  <file name=\"" + escape(lfn) + "\">\n");
+        writePfn(files, url, site);
+        files.write("  </file>\n");
+    }
+
+    /**
+     * Transformation catalog entry for an executable
+     *
+     * @param profiles [namespace, key, value] triples
+     */
+    public void addExecutable(String name, String url, List<String[]> profiles) throws IOException {
+        executables.write("  <executable name=\"" + escape(name) + "\" arch=\"x86_64\" os=\"linux\" installed=\"false\">\n");
+        if (profiles != null) {
+            for (String[] profile : profiles) {
+                writeProfile(executables, profile[0], profile[1], profile[2]);
+            }
+        }
+        writePfn(executables, url, null);
+        executables.write("  </executable>\n");
+    }
+
+    /**
+     * Transformation made up of executables and data files
+     */
+    public void addTransformation(String name, List<String> usedExecutables, List<String> usedFiles)
+            throws IOException {
+        transformations.write("  <transformation name=\"" + escape(name) + "\">\n");
+        for (String executable : usedExecutables) {
+            transformations.write("    <uses name=\"" + escape(executable) + "\" executable=\"true\"/>\n");
+        }
+        for (String file : usedFiles) {
+            transformations.write("    <uses name=\"" + escape(file) + "\"/>\n");
+        }
+        transformations.write("  </transformation>\n");
+    }
+
+    /**
+     * Start a job. It has to be followed by its arguments, profiles and uses, and then endJob.
+     */
+    public void startJob(String id, String transformation) throws IOException {
+        jobs.write("  <job id=\"" + escape(id) + "\" name=\"" + escape(transformation) + "\">\n");
+        jobCount++;
+    }
+
+    /**
+     * A logical file name used in job arguments
+     */
+    public static class Lfn {
+        String name;
+
+        public Lfn(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * @param arguments Strings are written as is, and file names are passed as Lfn objects
+     */
+    public void writeArguments(List<Object> arguments) throws IOException {
+        if (arguments.isEmpty()) {
+            return;
+        }
+        jobs.write("    <argument>");
+        boolean first = true;
+        for (Object arg : arguments) {
+            if (!first) {
+                jobs.write(" ");
+            }
+            if (arg instanceof Lfn) {
+                jobs.write("<file name=\"" + escape(((Lfn) arg).name) + "\"/>");
+            } else {
+                jobs.write(escape(arg.toString()));
+            }
+            first = false;
+        }
+        jobs.write("</argument>\n");
+    }
+
+    public void writeJobProfile(String namespace, String key, String value) throws IOException {
+        writeProfile(jobs, namespace, key, value);
+    }
+
+    public void writeUses(String lfn, String link) throws IOException {
+        jobs.write("    <uses name=\"" + escape(lfn) + "\" link=\"" + link + "\"/>\n");
+    }
+
+    public void endJob() throws IOException {
+        jobs.write("  </job>\n");
+    }
+
+    public int getJobCount() {
+        return jobCount;
+    }
+
+    /**
+     * Append the sections to the DAX, and close it
+     */
+    public void close() throws IOException {
+        try {
+            files.close();
+            executables.close();
+            transformations.close();
+            jobs.close();
+            char[] buffer = new char[64 * 1024];
+            for (File sectionFile : sectionFiles) {
+                Reader reader = new InputStreamReader(new FileInputStream(sectionFile), StandardCharsets.UTF_8);
+                try {
+                    int read;
+                    while ((read = reader.read(buffer)) > 0) {
+                        dax.write(buffer, 0, read);
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+            dax.write("</adag>\n");
+        } finally {
+            dax.close();
+            for (File sectionFile : sectionFiles) {
+                sectionFile.delete();
+            }
+        }
+    }
+
+    private static Writer openWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    private void writePfn(Writer out, String url, String site) throws IOException {
+        out.write("    <pfn url=\"" + escape(url) + "\"");
+        if (site != null) {
+            out.write(" site=\"" + escape(site) + "\"");
+        }
+        out.write("/>\n");
+    }
+
+    private void writeProfile(Writer out, String namespace, String key, String value) throws IOException {
+        out.write("    <profile namespace=\"" + escape(namespace) + "\" key=\"" + escape(key) + "\">"
+                + escape(value) + "</profile>\n");
+    }
+
+    static String escape(String s) {
+        if (s == null) {
+            return "";
+        }
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String rep = null;
+            switch (c) {
+                case '&': rep = "&amp;"; break;
+                case '<': rep = "&lt;"; break;
+                case '>': rep = "&gt;"; break;
+                case '"': rep = "&quot;"; break;
+                case '\'': rep = "&apos;"; break;
+                default: break;
+            }
+            if (rep != null && sb == null) {
+                sb = new StringBuilder(s.length() + 16);
+                sb.append(s, 0, i);
+            }
+            if (sb != null) {
+                if (rep != null) {
+                    sb.append(rep);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb != null ? sb.toString() : s;
+    }
+}
@@ -42,7 +42,19 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class PegasusExecutionEngine implements PlanExecutionEngine, StepExecutionEngine {
     String baseDir;
@@ -271,6 +283,10 @@ public class PegasusExecutionEngine implements PlanExecutionEngine, StepExecutio
     class ExecutionMonitoringThread implements Runnable {
         int sleepTime = 5000;
         int jobstateLogMark = 0;
+        // Byte offset up to which jobstate.log has been read, and any
+        // partially written line at the end of it
+        long jobstateLogOffset = 0;
+        String jobstateLogPartial = "";
         String submitDir = null;
         RuntimePlan plan = null;
         String pegasusHome = null;
@@ -318,6 +334,114 @@ public class PegasusExecutionEngine implements PlanExecutionEngine, StepExecutio
             }
         }
 
+        /**
+         * Read the lines that have been appended to the jobstate log since the last call.
+         * Only the new bytes are read. A trailing line without a newline is kept until it's complete.
+         */
+        private List<String> readNewJobstateLines() throws IOException {
+            List<String> lines = new ArrayList<String>();
+            File file = new File(submitDir + "jobstate.log");
+            if (!file.exists()) {
+                return lines;
+            }
+
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                long size = channel.size();
+                if (size < jobstateLogOffset) {
+                    // Log was truncated or rewritten. Start over
+                    log.debug("jobstate.log shrank, reading it from the start");
+                    jobstateLogOffset = 0;
+                    jobstateLogPartial = "";
+                }
+                if (size == jobstateLogOffset) {
+                    return lines;
+                }
+
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - jobstateLogOffset, 1024 * 1024));
+                StringBuilder text = new StringBuilder(jobstateLogPartial);
+                while (jobstateLogOffset < size) {
+                    buffer.clear();
+                    int read = channel.read(buffer, jobstateLogOffset);
+                    if (read <= 0) {
+                        break;
+                    }
+                    jobstateLogOffset += read;
+                    text.append(new String(buffer.array(), 0, read, StandardCharsets.ISO_8859_1));
+                }
+
+                int start = 0;
+                int end;
+                while ((end = text.indexOf("\n", start)) >= 0) {
+                    String line = text.substring(start, end).trim();
+                    if (!line.isEmpty()) {
+                        lines.add(line);
+                    }
+                    start = end + 1;
+                }
+                jobstateLogPartial = text.substring(start);
+            } finally {
+                raf.close();
+            }
+            return lines;
+        }
+
+        /**
+         * Watch the submit directory for changes to jobstate.log and the creation of monitord.done.
+         * Returns null if the directory can't be watched, in which case the monitor falls back to polling.
+         */
+        private WatchService watchSubmitDir() {
+            try {
+                WatchService watcher = FileSystems.getDefault().newWatchService();
+                Paths.get(submitDir).register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                return watcher;
+            } catch (Exception e) {
+                log.warn("Cannot watch " + submitDir + ", polling instead: " + e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Wait until jobstate.log or monitord.done change, or for at most the sleep time.
+         * The timeout covers file systems (e.g. NFS) that don't report changes.
+         */
+        private void waitForChanges(WatchService watcher) throws InterruptedException {
+            if (watcher == null) {
+                Thread.sleep(getSleepTime());
+                return;
+            }
+            // Other files of the submit directory (job .out/.err files, condor logs) change all the time
+            long deadline = System.currentTimeMillis() + getSleepTime();
+            boolean changed = false;
+            long wait;
+            while (!changed && (wait = deadline - System.currentTimeMillis()) > 0) {
+                WatchKey key = watcher.poll(wait, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= isWatchedChange(event);
+                    }
+                    key.reset();
+                    // Drain events that arrived together
+                    key = watcher.poll();
+                }
+            }
+        }
+
+        private boolean isWatchedChange(WatchEvent<?> event) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, so check the files
+                return true;
+            }
+            Object context = event.context();
+            if (!(context instanceof Path)) {
+                return false;
+            }
+            String name = ((Path) context).getFileName().toString();
+            return name.equals("jobstate.log") || name.equals("monitord.done");
+        }
+
         /**
          * Get most recent job retry count. i.e. If <job-name>.out.002 then return 002.
          */
@@ -396,15 +520,16 @@ public class PegasusExecutionEngine implements PlanExecutionEngine, StepExecutio
          */
         private void updateJobStatus() {
             try {
-                String line;
                 String[] lineParts;
-                Iterator<String> it = lineIterator(submitDir + "jobstate.log", jobstateLogMark);
+                List<String> lines = readNewJobstateLines();
 
-                log.debug("Skipping " + jobstateLogMark + " line(s) of jobstate.log");
+                log.debug("Read " + lines.size() + " new line(s) of jobstate.log after line " + jobstateLogMark);
 
-                while (it.hasNext()) {
-                    line = it.next();
+                for (String line : lines) {
                     lineParts = line.split("\\s+");
+                    if (lineParts.length < 3) {
+                        continue;
+                    }
 
                     String jobName = lineParts[1];
                     String jobState = lineParts[2];
@@ -536,6 +661,7 @@ public class PegasusExecutionEngine implements PlanExecutionEngine, StepExecutio
             // Workflow is successful by default
             workflowStatus = RuntimeInfo.Status.SUCCESS;
 
+            WatchService watcher = null;
             try {
                 File done = new File(submitDir + "monitord.done");
 
@@ -547,13 +673,16 @@ public class PegasusExecutionEngine implements PlanExecutionEngine, StepExecutio
                 }
 
                 registerPegasusJobsWithPlan();
+                watcher = watchSubmitDir();
 
                 while (true) {
+                    // Check for monitord.done first, so the final jobstate lines are not missed
+                    boolean finished = done.exists();
                     updateJobStatus();
 
                     // Workflow finished? i.e. Presence of monitord.done file
-                    if (!done.exists()) {
-                        Thread.sleep(getSleepTime());
+                    if (!finished) {
+                        waitForChanges(watcher);
                     } else {
                         writeJobstateLog();
 
@@ -570,6 +699,14 @@ public class PegasusExecutionEngine implements PlanExecutionEngine, StepExecutio
                 log.error(e.getMessage(), e);
                 writeJobstateLog();
                 plan.onEnd(logger, RuntimeInfo.Status.FAILURE, e.getMessage());
+            } finally {
+                if (watcher != null) {
+                    try {
+                        watcher.close();
+                    } catch (IOException e) {
+                        log.error(e.getMessage(), e);
+                    }
+                }
             }
         }
     }
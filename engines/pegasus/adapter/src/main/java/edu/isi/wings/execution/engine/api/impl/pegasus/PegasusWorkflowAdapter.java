@@ -17,8 +17,6 @@
 
 package edu.isi.wings.execution.engine.api.impl.pegasus;
 
-import edu.isi.pegasus.planner.dax.*;
-import edu.isi.pegasus.planner.dax.File;
 import edu.isi.wings.catalog.component.ComponentFactory;
 import edu.isi.wings.catalog.component.api.ComponentCreationAPI;
 import edu.isi.wings.catalog.component.classes.ComponentTreeNode;
@@ -36,7 +34,7 @@ import java.nio.file.Path;
 import java.util.*;
 
 public class PegasusWorkflowAdapter {
-    ADAG adag = null;
+    DaxWriter dax = null;
 
     String codeDir = null;
     String dataDir = null;
@@ -48,6 +46,10 @@ public class PegasusWorkflowAdapter {
 
     Set<String> inputs = null;
     Set<String> executables = null;
+    Set<String> transformations = null;
+
+    // Results of file existence checks, for the duration of one runWorkflow call
+    Map<String, Boolean> existsCache = null;
 
     private Map<String, ComponentRequirement> req = null;
 
@@ -67,6 +69,8 @@ public class PegasusWorkflowAdapter {
 
         this.inputs = new HashSet<String>();
         this.executables = new HashSet<String>();
+        this.transformations = new HashSet<String>();
+        this.existsCache = new HashMap<String, Boolean>();
         this.log = Logger.getLogger(this.getClass());
 
         // Is Pegasus directory valid?
@@ -81,30 +85,41 @@ public class PegasusWorkflowAdapter {
         }
     }
 
-    public ADAG runWorkflow(RuntimePlan plan, String siteCatalog, String site, String baseDir) throws Exception {
+    /**
+     * Write the DAX for a plan, and submit it with pegasus-plan.
+     * The DAX is streamed to disk in a single pass over the plan's steps.
+     *
+     * @return Path of the DAX file
+     */
+    public String runWorkflow(RuntimePlan plan, String siteCatalog, String site, String baseDir) throws Exception {
         log.debug("Plan Workflow: " + plan.getName());
-        adag = new ADAG(plan.getName());
+        String daxPath = baseDir + plan.getName() + ".dax";
+        this.dax = new DaxWriter(daxPath, plan.getName());
 
-        // Construct map for components' requirement.
-        constructComponentRequirementMap();
+        try {
+            // Construct map for components' requirement.
+            constructComponentRequirementMap();
 
-        // Add jobs to the workflow
-        for (RuntimeStep step : plan.getQueue().getAllSteps()) {
-            // Invoking Pegasus with --input-dir, so we don't need to create a Replica Catalog
-            registerWithReplicaCatalog(step);
+            // Add jobs to the workflow
+            for (RuntimeStep step : plan.getQueue().getAllSteps()) {
+                // Invoking Pegasus with --input-dir, so we don't need to create a Replica Catalog
+                registerWithReplicaCatalog(step);
 
-            // Register Wings components and there dependent files.
-            registerWithTransformationCatalog(step);
+                // Register Wings components and there dependent files.
+                registerWithTransformationCatalog(step);
 
-            // Construct Pegasus Job for each Wings Node.
-            buildAndRegisterJob(plan, step);
+                // Construct Pegasus Job for each Wings Node.
+                buildAndRegisterJob(plan, step);
 
-            // Job Dependencies
-            // Pegasus planner automatically identifies dependencies based on input/output files used by a job
+                // Job Dependencies
+                // Pegasus planner automatically identifies dependencies based on input/output files used by a job
+            }
+        } finally {
+            // Write DAX file to submit dir
+            this.dax.close();
+            this.existsCache.clear();
         }
-
-        // Write DAX file to submit dir
-        adag.writeToFile(baseDir + plan.getName() + ".dax");
+        log.debug("Wrote " + this.dax.getJobCount() + " jobs to " + daxPath);
 
         Process process = null;
         try {
@@ -116,7 +131,7 @@ public class PegasusWorkflowAdapter {
             command.add(props);
 
             command.add("--dax");
-            command.add(baseDir + plan.getName() + ".dax");
+            command.add(daxPath);
 
             command.add("--dir");
             command.add(baseDir);
@@ -153,7 +168,7 @@ public class PegasusWorkflowAdapter {
         }
 
         if (process.exitValue() == 0) {
-            return adag;
+            return daxPath;
         } else {
             log.debug("Plan Failure: " + plan.getName() + " Exit Code: " + process.exitValue());
             throw new Exception("pegasus-plan failed with exit code " + process.exitValue());
@@ -225,43 +240,39 @@ public class PegasusWorkflowAdapter {
     private void registerWithReplicaCatalog(RuntimeStep rStep) throws Exception {
         ExecutionStep eStep = rStep.getStep();
 
-        for (ExecutionFile input : eStep.getInputFiles()) {
-            String lfn = input.getBinding();
-            Path pfn = Paths.get(input.getLocation());
+        List<ExecutionFile> files = new ArrayList<ExecutionFile>(eStep.getInputFiles());
+        files.addAll(eStep.getOutputFiles());
+
+        for (ExecutionFile file : files) {
+            String lfn = file.getBinding();
 
             if (inputs.contains(lfn)) {
                 continue;
             }
 
-            log.debug("Replica: " + lfn + " " + pfn.normalize().toUri() + " site=local Exists?: " + pfn.toFile().exists());
+            Path pfn = Paths.get(file.getLocation()).normalize();
+            boolean exists = exists(pfn.toFile());
+            log.debug("Replica: " + lfn + " " + pfn.toUri() + " site=local Exists?: " + exists);
 
-            if (pfn.toFile().exists()) {
-                File f = new File(lfn);
-                f.addPhysicalFile(pfn.normalize().toUri().toString(), "local");
-                adag.addFile(f);
+            if (exists) {
+                dax.addFile(lfn, pfn.toUri().toString(), "local");
             }
 
             inputs.add(lfn);
         }
+    }
 
-        for (ExecutionFile output : eStep.getOutputFiles()) {
-            String lfn = output.getBinding();
-            Path pfn = Paths.get(output.getLocation());
-
-            if (inputs.contains(lfn)) {
-                continue;
-            }
-
-            log.debug("Replica: " + lfn + " " + pfn.normalize().toUri() + " site=local Exists?: " + pfn.toFile().exists());
-
-            if (pfn.toFile().exists()) {
-                File f = new File(lfn);
-                f.addPhysicalFile(pfn.normalize().toUri().toString(), "local");
-                adag.addFile(f);
-            }
-
-            inputs.add(lfn);
+    /**
+     * Cached file existence check. Steps of large plans share many files.
+     */
+    private boolean exists(java.io.File file) {
+        String path = file.getAbsolutePath();
+        Boolean exists = existsCache.get(path);
+        if (exists == null) {
+            exists = file.exists();
+            existsCache.put(path, exists);
         }
+        return exists;
     }
 
     /**
@@ -277,23 +288,25 @@ public class PegasusWorkflowAdapter {
      */
     private void registerWithTransformationCatalog(RuntimeStep rStep) throws Exception {
         ExecutionStep eStep = rStep.getStep();
-        String componentName = Paths.get(eStep.getCodeBinding().getCodeDirectory()).getFileName().toString();
 
+        // Components are registered once, however many steps use them
+        if (!transformations.add(eStep.getCodeBinding().getID())) {
+            return;
+        }
+
+        String componentName = getComponentName(eStep);
         if (executables.contains(componentName)) {
             return;
         }
 
-        Transformation transformation = new Transformation(componentName);
+        List<String> usedExecutables = new ArrayList<String>();
+        List<String> usedFiles = new ArrayList<String>();
+        List<String[]> executableProfiles = new ArrayList<String[]>();
         String dir = eStep.getCodeBinding().getCodeDirectory() + java.io.File.separator;
         Path profiles = Paths.get(dir + "__pegasus-job.properties");
+        boolean hasProfiles = profiles.toFile().exists();
 
-        Executable executable = new Executable(componentName);
-        executable.addPhysicalFile(new PFN("file://" + dir + "run"));
-        executable.setInstalled(false);
-        executable.setArchitecture(Executable.ARCH.X86_64);
-        executable.setOS(Executable.OS.LINUX);
-
-        if (profiles.toFile().exists()) {
+        if (hasProfiles) {
             InputStream input = null;
             String key = null;
             String value = null;
@@ -319,9 +332,10 @@ public class PegasusWorkflowAdapter {
 
                     namespace = key.substring(0, indexOf);
                     key = key.substring(indexOf + 1);
-                    executable.addProfile(
-                        Profile.NAMESPACE.valueOf(namespace.toLowerCase()), key, value
-                    );
+                    if (!DaxWriter.PROFILE_NAMESPACES.contains(namespace.toLowerCase())) {
+                        throw new IllegalArgumentException(namespace);
+                    }
+                    executableProfiles.add(new String[]{namespace.toLowerCase(), key, value});
                 }
             } catch (IllegalArgumentException e) {
                 throw new Exception(
@@ -339,9 +353,9 @@ public class PegasusWorkflowAdapter {
 		        }
 	        }
         }
-        transformation.uses(executable);
+        usedExecutables.add(componentName);
 
-        adag.addExecutable(executable);
+        dax.addExecutable(componentName, "file://" + dir + "run", executableProfiles);
 
         log.debug("Transformation: " + componentName);
 
@@ -360,7 +374,7 @@ public class PegasusWorkflowAdapter {
             for (java.io.File file : new java.io.File(currentDir).listFiles()) {
                 if (
                     file.getName().equals(".") || file.getName().equals("..") ||
-                    file.getName().equals("run") || (Files.exists(profiles) && Files.isSameFile(profiles, file.toPath()))
+                    file.getName().equals("run") || (hasProfiles && Files.isSameFile(profiles, file.toPath()))
                 ) {
                     log.debug("Skipped: " + file.getName());
                     continue;
@@ -372,24 +386,16 @@ public class PegasusWorkflowAdapter {
                 } else {
                     String name = file.getAbsolutePath().replaceAll(dir, "");
                     if (file.canExecute()) {
-                        Executable e = new Executable(name);
-                        e.addPhysicalFile(new PFN("file://" + file.getAbsolutePath()));
-                        e.setInstalled(false);
-                        e.setArchitecture(Executable.ARCH.X86_64);
-                        e.setOS(Executable.OS.LINUX);
-
-                        transformation.uses(e);
+                        usedExecutables.add(name);
 
                         if (!executables.contains(name)) {
-                            adag.addExecutable(e);
+                            dax.addExecutable(name, "file://" + file.getAbsolutePath(), null);
                         }
                     } else {
                         log.debug("File: " + name + " " + file.getAbsolutePath());
-                        File f = new File(name);
-                        f.addPhysicalFile(new PFN("file://" + file.getAbsolutePath()));
-                        transformation.uses(f);
+                        usedFiles.add(name);
                         if (!executables.contains(name)) {
-                            adag.addFile(f);
+                            dax.addFile(name, "file://" + file.getAbsolutePath(), null);
                         }
                     }
 
@@ -398,62 +404,66 @@ public class PegasusWorkflowAdapter {
             }
         }
 
-        adag.addTransformation(transformation);
+        dax.addTransformation(componentName, usedExecutables, usedFiles);
         executables.add(componentName);
     }
 
+    private String getComponentName(ExecutionStep eStep) {
+        return Paths.get(eStep.getCodeBinding().getCodeDirectory()).getFileName().toString();
+    }
+
     /**
      * Construct Pegasus Job i.e. Add input/output files, arguments, etc.
      *
      * @param plan  Workflow Plan
      * @param rStep Steps for which Pegasus job is being built.
-     * @return edu.isi.pegasus.planner.dax.Job
      * @throws Exception
      */
-    private Job buildAndRegisterJob(RuntimePlan plan, RuntimeStep rStep) throws Exception {
+    private void buildAndRegisterJob(RuntimePlan plan, RuntimeStep rStep) throws Exception {
         ExecutionStep eStep = rStep.getStep();
         String componentID = eStep.getCodeBinding().getID();
-        String componentName = Paths.get(eStep.getCodeBinding().getCodeDirectory()).getFileName().toString();
+        String componentName = getComponentName(eStep);
 
-        Job job = new Job(rStep.getName(), componentName);
         log.debug("Workflow " + plan.getName());
-        log.debug("\tJob Name: " + job.getName() + " Job ID: " + job.getId());
+        log.debug("\tJob Name: " + componentName + " Job ID: " + rStep.getName());
         log.debug("\tJob Code Dir:" + eStep.getCodeBinding().getCodeDirectory());
+        dax.startJob(rStep.getName(), componentName);
 
         // Arguments
+        List<Object> arguments = new ArrayList<Object>();
         for (String name : eStep.getInvocationArguments().keySet()) {
-            job.addArgument(name);
+            arguments.add(name);
 
             for (Object value : eStep.getInvocationArguments().get(name)) {
                 if (value instanceof String) {
-                    job.addArgument((String) value);
+                    arguments.add(value);
                 } else if (value instanceof ExecutionFile) {
-                    job.addArgument(new File(((ExecutionFile) value).getBinding()));
+                    arguments.add(new DaxWriter.Lfn(((ExecutionFile) value).getBinding()));
                 }
             }
         }
+        dax.writeArguments(arguments);
 
-        // Input Files
-        for (ExecutionFile input : eStep.getInputFiles()) {
-            job.uses(new File(input.getBinding()), File.LINK.INPUT);
+        ComponentRequirement tmp = this.req.get(componentID);
+        if (tmp.getMemoryGB() > 0) {
+            dax.writeJobProfile("pegasus", "memory", (Math.round(Math.ceil(tmp.getMemoryGB() * 1024))) + "");
         }
 
-        // Output Files
-        for (ExecutionFile output : eStep.getOutputFiles()) {
-            job.uses(new File(output.getBinding()), File.LINK.OUTPUT);
+        if (tmp.getStorageGB() > 0) {
+            dax.writeJobProfile("pegasus", "diskspace", (Math.round(Math.ceil(tmp.getStorageGB() * 1024))) + "");
         }
 
-        ComponentRequirement tmp = this.req.get(componentID);
-        if (tmp.getMemoryGB() > 0) {
-            job.addProfile(Profile.NAMESPACE.pegasus, "memory", (Math.round(Math.ceil(tmp.getMemoryGB() * 1024))) + "");
+        // Input Files
+        for (ExecutionFile input : eStep.getInputFiles()) {
+            dax.writeUses(input.getBinding(), "input");
         }
 
-        if (tmp.getStorageGB() > 0) {
-            job.addProfile(Profile.NAMESPACE.pegasus, "diskspace", (Math.round(Math.ceil(tmp.getStorageGB() * 1024))) + "");
+        // Output Files
+        for (ExecutionFile output : eStep.getOutputFiles()) {
+            dax.writeUses(output.getBinding(), "output");
         }
 
-        adag.addJob(job);
-        return job;
+        dax.endJob();
     }
 
     /**
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.catalog;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Serializes the calls made to a catalog through one of its interfaces.
+ * 
+ * The catalogs are backed by Jena (and Pellet) models, which are not
+ * thread-safe, not even for reads, as inference models fill their caches
+ * while answering queries. A catalog that is shared between threads is
+ * handed out wrapped, and every call holds the catalog's monitor. Code
+ * that uses the catalog object directly (e.g. to warm it up) should
+ * synchronize on it as well.
+ */
+public class CatalogLock implements InvocationHandler {
+  private Object catalog;
+
+  private CatalogLock(Object catalog) {
+    this.catalog = catalog;
+  }
+
+  /**
+   * Wrap the catalog, unless it is already wrapped
+   */
+  public static <T> T guard(Class<T> api, T catalog) {
+    if(catalog == null || isGuarded(catalog))
+      return catalog;
+    return api.cast(Proxy.newProxyInstance(api.getClassLoader(), 
+        new Class<?>[] { api }, new CatalogLock(catalog)));
+  }
+
+  public static boolean isGuarded(Object catalog) {
+    return Proxy.isProxyClass(catalog.getClass()) && 
+        Proxy.getInvocationHandler(catalog) instanceof CatalogLock;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args)
+      throws Throwable {
+    if(method.getDeclaringClass() == Object.class) {
+      // Don't lock for equals, hashCode and toString
+      if(method.getName().equals("equals"))
+        return proxy == args[0];
+      return method.invoke(catalog, args);
+    }
+    synchronized(catalog) {
+      try {
+        return method.invoke(catalog, args);
+      }
+      catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+}
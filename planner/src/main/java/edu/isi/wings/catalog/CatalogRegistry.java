@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.catalog;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+import edu.isi.wings.catalog.component.ComponentFactory;
+import edu.isi.wings.catalog.component.api.ComponentReasoningAPI;
+import edu.isi.wings.catalog.component.api.impl.kb.ComponentReasoningKB;
+import edu.isi.wings.catalog.data.DataFactory;
+import edu.isi.wings.catalog.data.api.DataReasoningAPI;
+import edu.isi.wings.catalog.resource.ResourceFactory;
+import edu.isi.wings.catalog.resource.api.ResourceAPI;
+import edu.isi.wings.common.BoundedCache;
+import edu.isi.wings.workflow.template.TemplateFactory;
+import edu.isi.wings.workflow.template.api.TemplateCreationAPI;
+
+/**
+ * Long-lived, shared catalog instances for each domain, so that planner
+ * requests don't have to re-open the KBs and re-import the ontologies (and
+ * the component caches survive between requests).
+ *
+ * A domain is identified by its catalog urls in the properties. An
+ * instance is dropped whenever its catalog is saved, and is re-created on
+ * the next request (planners already holding it carry on with it).
+ *
+ * The KBs behind the catalogs are not thread-safe, so the catalogs are
+ * handed out wrapped in a CatalogLock: the requests of a domain take turns
+ * on each catalog, one call at a time.
+ */
+public class CatalogRegistry {
+  private static Logger logger = Logger.getLogger(CatalogRegistry.class);
+
+  private static ConcurrentHashMap<String, DomainCatalogs> domains =
+      new ConcurrentHashMap<String, DomainCatalogs>();
+
+  private static ExecutorService warmer;
+
+  static class DomainCatalogs {
+    Properties props;
+    ComponentReasoningAPI pc;
+    DataReasoningAPI dc;
+    ResourceAPI rc;
+    TemplateCreationAPI tc;
+    volatile boolean warm = false;
+
+    DomainCatalogs(Properties props) {
+      this.props = props;
+    }
+
+    synchronized ComponentReasoningAPI getComponentReasoningAPI() {
+      if(pc == null)
+        pc = ComponentFactory.getReasoningAPI(props);
+      return pc;
+    }
+
+    synchronized DataReasoningAPI getDataReasoningAPI() {
+      if(dc == null)
+        dc = DataFactory.getReasoningAPI(props);
+      return dc;
+    }
+
+    synchronized ResourceAPI getResourceAPI() {
+      if(rc == null)
+        rc = ResourceFactory.getAPI(props);
+      return rc;
+    }
+
+    synchronized TemplateCreationAPI getTemplateCreationAPI() {
+      if(tc == null)
+        tc = TemplateFactory.getCreationAPI(props);
+      return tc;
+    }
+
+    synchronized void drop(boolean components, boolean data,
+        boolean resources, boolean templates) {
+      if(components) {
+        logCacheStats();
+        pc = null;
+        warm = false;
+      }
+      if(data)
+        dc = null;
+      if(resources)
+        rc = null;
+      if(templates)
+        tc = null;
+    }
+
+    synchronized void logCacheStats() {
+      if(pc instanceof ComponentReasoningKB) {
+        for(BoundedCache<String, ?> cache : ((ComponentReasoningKB) pc).getCaches())
+          logger.info(getKey(props) + " " + cache);
+      }
+    }
+
+    /**
+     * Load the catalogs and the component caches. Only the getters hold
+     * the registry lock. The component catalog is locked one component at
+     * a time, so requests can use it while it warms up.
+     */
+    void warm() {
+      if(warm)
+        return;
+      long start = System.currentTimeMillis();
+      ComponentReasoningAPI pc = this.getComponentReasoningAPI();
+      if(pc instanceof ComponentReasoningKB)
+        ((ComponentReasoningKB) pc).warmCaches();
+      this.getDataReasoningAPI();
+      this.getResourceAPI();
+      this.getTemplateCreationAPI();
+      synchronized(this) {
+        // Unless the components were dropped in the meantime
+        if(this.pc == pc)
+          warm = true;
+      }
+      logger.info("Catalogs for " + getKey(props) + " ready in "
+          + (System.currentTimeMillis() - start) + " ms");
+    }
+  }
+
+  public static ComponentReasoningAPI getComponentReasoningAPI(Properties props) {
+    return CatalogLock.guard(ComponentReasoningAPI.class, 
+        getCatalogs(props).getComponentReasoningAPI());
+  }
+
+  public static DataReasoningAPI getDataReasoningAPI(Properties props) {
+    return CatalogLock.guard(DataReasoningAPI.class, 
+        getCatalogs(props).getDataReasoningAPI());
+  }
+
+  public static ResourceAPI getResourceAPI(Properties props) {
+    return CatalogLock.guard(ResourceAPI.class, 
+        getCatalogs(props).getResourceAPI());
+  }
+
+  public static TemplateCreationAPI getTemplateCreationAPI(Properties props) {
+    return CatalogLock.guard(TemplateCreationAPI.class, 
+        getCatalogs(props).getTemplateCreationAPI());
+  }
+
+  /**
+   * Create the domain's catalogs (and load all components and rules) in a
+   * background thread. Does nothing if they are already warm.
+   */
+  public static void prewarm(Properties props) {
+    final DomainCatalogs catalogs = getCatalogs(props);
+    if(catalogs.warm)
+      return;
+    getWarmer().submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          catalogs.warm();
+        }
+        catch (Exception e) {
+          logger.error("Could not pre-warm catalogs: " + e.getMessage());
+        }
+      }
+    });
+  }
+
+  /**
+   * Drop all shared instances of the domain that the properties belong to
+   */
+  public static void invalidate(Properties props) {
+    DomainCatalogs catalogs = props != null ? domains.remove(getKey(props)) : null;
+    if(catalogs != null) {
+      catalogs.logCacheStats();
+      logger.info("Dropped catalogs for " + getKey(props));
+    }
+  }
+
+  /**
+   * Called when the component catalog is saved
+   */
+  public static void invalidateComponents(Properties props) {
+    DomainCatalogs catalogs = props != null ? domains.get(getKey(props)) : null;
+    if(catalogs != null)
+      catalogs.drop(true, false, false, false);
+  }
+
+  /**
+   * Called when the data catalog is saved. Component reasoning uses the data
+   * ontology, so it is dropped as well
+   */
+  public static void invalidateData(Properties props) {
+    DomainCatalogs catalogs = props != null ? domains.get(getKey(props)) : null;
+    if(catalogs != null)
+      catalogs.drop(true, true, false, false);
+  }
+
+  /**
+   * Called when the template library is saved
+   */
+  public static void invalidateTemplates(Properties props) {
+    DomainCatalogs catalogs = props != null ? domains.get(getKey(props)) : null;
+    if(catalogs != null)
+      catalogs.drop(false, false, false, true);
+  }
+
+  /**
+   * Called when the resource catalog is saved. It is shared by all domains
+   */
+  public static void invalidateResources() {
+    for(DomainCatalogs catalogs : domains.values())
+      catalogs.drop(false, false, true, false);
+  }
+
+  public static void invalidateAll() {
+    domains.clear();
+  }
+
+  public static synchronized void shutdown() {
+    if(warmer != null)
+      warmer.shutdownNow();
+    warmer = null;
+    domains.clear();
+  }
+
+  private static DomainCatalogs getCatalogs(Properties props) {
+    String key = getKey(props);
+    DomainCatalogs catalogs = domains.get(key);
+    if(catalogs == null) {
+      domains.putIfAbsent(key, new DomainCatalogs(props));
+      catalogs = domains.get(key);
+    }
+    return catalogs;
+  }
+
+  private static String getKey(Properties props) {
+    return props.getProperty("ont.domain.component.ns") + " "
+        + props.getProperty("lib.domain.data.url") + " "
+        + props.getProperty("lib.domain.workflow.url") + " "
+        + props.getProperty("tdb.repository.dir");
+  }
+
+  private static synchronized ExecutorService getWarmer() {
+    if(warmer == null) {
+      warmer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "wings-catalog-warmer");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return warmer;
+  }
+}
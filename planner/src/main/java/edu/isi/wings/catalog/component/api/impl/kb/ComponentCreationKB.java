@@ -28,6 +28,7 @@ import org.apache.commons.io.FileUtils;
 
 import edu.isi.kcap.ontapi.KBObject;
 import edu.isi.kcap.ontapi.KBTriple;
+import edu.isi.wings.catalog.CatalogRegistry;
 import edu.isi.wings.catalog.component.api.ComponentCreationAPI;
 import edu.isi.wings.catalog.component.classes.Component;
 import edu.isi.wings.catalog.component.classes.ComponentHolder;
@@ -150,8 +151,10 @@ public class ComponentCreationKB extends ComponentKB implements ComponentCreatio
 
 	@Override
 	public boolean save() {
-		if(this.writerkb != null)
-			return this.save(writerkb);
+		if(this.writerkb != null && this.save(writerkb)) {
+			CatalogRegistry.invalidateComponents(this.props);
+			return true;
+		}
 		return false;
 	}
 
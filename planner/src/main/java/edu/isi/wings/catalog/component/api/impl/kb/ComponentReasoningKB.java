@@ -30,8 +30,12 @@ import edu.isi.wings.catalog.component.classes.ComponentRole;
 import edu.isi.wings.catalog.component.classes.requirements.ComponentRequirement;
 import edu.isi.wings.catalog.data.classes.metrics.Metric;
 import edu.isi.wings.catalog.data.classes.metrics.Metrics;
+import edu.isi.wings.common.BoundedCache;
 import edu.isi.wings.common.UuidGen;
 import edu.isi.wings.common.kb.KBUtils;
+import edu.isi.wings.common.kb.TripleWorkspace;
+import edu.isi.wings.planner.api.PlannerStats;
+import edu.isi.wings.planner.api.PlannerStats.Counter;
 import edu.isi.wings.workflow.template.api.ConstraintEngine;
 import edu.isi.wings.workflow.template.api.impl.kb.ConstraintEngineKB;
 import edu.isi.wings.workflow.template.classes.Role;
@@ -42,33 +46,98 @@ import edu.isi.wings.workflow.template.classes.variables.ComponentVariable;
 import edu.isi.wings.workflow.template.classes.variables.Variable;
 import edu.isi.wings.workflow.template.classes.variables.VariableType;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.PrintStream;
 import java.util.*;
 
 public class ComponentReasoningKB extends ComponentKB implements ComponentReasoningAPI {
 	private Logger logger = Logger.getLogger(this.getClass());
 
-	private HashMap<String, Component> ccache =
-	    new HashMap<String, Component>();
-	private HashMap<String, KBRuleList> rulescache =
-      new HashMap<String, KBRuleList>();
-  private HashMap<String, ArrayList<String>> abscache =
-      new HashMap<String, ArrayList<String>>();	
-  private HashMap<String, ArrayList<KBObject>> classcache =
-      new HashMap<String, ArrayList<KBObject>>();   
-	private HashMap<String, ArrayList<KBTriple>> kbcache =
-      new HashMap<String, ArrayList<KBTriple>>();
+	// Caches are thread-safe and bounded, as instances may be shared between
+	// planners, and live long (see CatalogRegistry). The kb itself is not
+	// thread-safe, so shared instances are only used through a CatalogLock.
+	// Sizes can be set with
+	// the cache.components, cache.rules, cache.abstract, cache.classes and
+	// cache.triples properties (number of components/rule sets, and number
+	// of ids/classes/triples for the others).
+	// There is no invalidation by component: catalog saves go through a
+	// separate ComponentCreationKB, so this instance's (Pellet) kb is stale
+	// after a save as well, and CatalogRegistry drops the whole instance
+	private BoundedCache<String, Component> ccache;
+	private BoundedCache<String, ComponentRuleSet> rulescache;
+  private BoundedCache<String, ArrayList<String>> abscache;
+  private BoundedCache<String, ArrayList<KBObject>> classcache;
+	private BoundedCache<String, ArrayList<KBTriple>> kbcache;
 	
 	private ArrayList<KBTriple> metricTriples;
 	private ArrayList<KBObject> metricProps;
 	
+	// Workspace for the component inputs in findDataDetails. Each thread
+	// keeps its own, and resets it for every call
+	private ThreadLocal<TripleWorkspace> workspaces = 
+	    new ThreadLocal<TripleWorkspace>();
+	
 	public ComponentReasoningKB(Properties props) {
 		super(props, true, false, true, false);
+		this.initializeCaches(props);
 		this.initializeMetrics();
 	}
 	
+	private void initializeCaches(Properties props) {
+	  this.ccache = new BoundedCache<String, Component>("components",
+	      getCacheSize(props, "cache.components", 5000));
+	  this.rulescache = new BoundedCache<String, ComponentRuleSet>("rules",
+	      getCacheSize(props, "cache.rules", 5000));
+	  this.abscache = new BoundedCache<String, ArrayList<String>>("abstract",
+	      getCacheSize(props, "cache.abstract", 100000),
+	      new BoundedCache.Weigher<String, ArrayList<String>>() {
+	        @Override
+	        public int weigh(String key, ArrayList<String> ids) {
+	          return ids.size();
+	        }
+	      });
+	  this.classcache = new BoundedCache<String, ArrayList<KBObject>>("classes",
+	      getCacheSize(props, "cache.classes", 100000),
+	      new BoundedCache.Weigher<String, ArrayList<KBObject>>() {
+	        @Override
+	        public int weigh(String key, ArrayList<KBObject> clses) {
+	          return clses.size();
+	        }
+	      });
+	  this.kbcache = new BoundedCache<String, ArrayList<KBTriple>>("triples",
+	      getCacheSize(props, "cache.triples", 200000),
+	      new BoundedCache.Weigher<String, ArrayList<KBTriple>>() {
+	        @Override
+	        public int weigh(String key, ArrayList<KBTriple> triples) {
+	          return triples.size();
+	        }
+	      });
+	}
+	
+	private static long getCacheSize(Properties props, String key, long def) {
+	  return props.containsKey(key) ? 
+	      Long.parseLong(props.getProperty(key).trim()) : def;
+	}
+	
+	/**
+	 * The caches, for their sizes and hit rates
+	 */
+	public List<BoundedCache<String, ?>> getCaches() {
+	  return Arrays.<BoundedCache<String, ?>>asList(
+	      ccache, rulescache, abscache, classcache, kbcache);
+	}
+	
+	private TripleWorkspace getWorkspace() {
+	  TripleWorkspace ws = workspaces.get();
+	  if(ws == null) {
+	    ws = new TripleWorkspace(this.ontologyFactory);
+	    workspaces.set(ws);
+	  }
+	  else {
+	    ws.reset();
+	  }
+	  return ws;
+	}
+	
 	private void initializeMetrics() {
 	  this.start_read();
 	  
@@ -111,15 +180,20 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
 	  return ind;
 	}
 	
+	protected KBObject copyObjectClassesIntoKB(String id, KBObject obj, TripleWorkspace ws, 
+	    String includeNS, String excludeNS, boolean direct) {
+	  ws.addTriples(this.getObjectClassTriples(id, obj, includeNS, excludeNS, direct));
+	  return ws.getResource(id);
+	}
+	
 	protected ArrayList<String> getConcreteComponentsForAbstract(String id) {
-	  if(abscache.containsKey(id))
-	    return abscache.get(id);
+	  ArrayList<String> cached = abscache.get(id);
+	  if(cached != null)
+	    return cached;
 	  
     KBObject cls = this.kb.getClassOfInstance(this.kb.getIndividual(id));
-    if (cls == null) {
-      this.abscache.put(id, null);
+    if (cls == null)
       return null;
-    }
     ArrayList<KBObject> insts = this.kb.getInstancesOfClass(cls, false);
     ArrayList<String> ids = new ArrayList<String>();
     for(KBObject inst : insts)
@@ -144,8 +218,10 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
 		// Add component to the temporary KB (add all its classes explicitly)
 	  ArrayList<KBTriple> triples = new ArrayList<KBTriple>();
 	  
-    if(kbcache.containsKey(obj.getID())) {
-      for(KBTriple triple : kbcache.get(obj.getID())) {
+    String key = obj.getID() + ":" + includeNS + ":" + excludeNS + ":" + direct;
+    ArrayList<KBTriple> cached = kbcache.get(key);
+    if(cached != null) {
+      for(KBTriple triple : cached) {
         triples.add(ontologyFactory.getTriple(
             ontologyFactory.getObject(id), 
             triple.getPredicate(), 
@@ -164,7 +240,7 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
 				    tobj, ontologyFactory.getObject(KBUtils.RDF + "type"), objcls));
 			}
 		}
-    kbcache.put(id, triples);
+    kbcache.put(key, triples);
 		return triples;
 	}
 
@@ -178,18 +254,29 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
 	  return clses;
 	}
 	
+	private ArrayList<KBObject> getAllClassesOfInstance(TripleWorkspace ws, String id) {
+	  ArrayList<KBObject> clses = new ArrayList<KBObject>();
+	  for(KBTriple t : 
+	    ws.genericTripleQuery(ws.getResource(id), 
+	        ws.getResource(KBUtils.RDF+"type"), null)) {
+	    clses.add(this.conceptMap.get(t.getObject().getID()));
+	  }
+	  return clses;
+	}
+	
 	 private ArrayList<KBObject> getAllCachedClassesOfInstance(String id, boolean direct) {
 	   String key = id + ":" + direct;
-	   if(classcache.containsKey(key))
-	     return classcache.get(key);
+	   ArrayList<KBObject> cached = classcache.get(key);
+	   if(cached != null)
+	     return cached;
 	   ArrayList<KBObject> clses = kb.getAllClassesOfInstance(kb.getResource(id), direct);
 	   classcache.put(key, clses);
 	   return clses;
 	 }
 	
-	protected boolean checkTypeCompatibility(KBAPI tkb, String varid, String argid) {
+	protected boolean checkTypeCompatibility(TripleWorkspace ws, String varid, String argid) {
 	  this.start_read();
-		ArrayList<KBObject> varclses = this.getAllClassesOfInstance(tkb, varid);
+		ArrayList<KBObject> varclses = this.getAllClassesOfInstance(ws, varid);
 		ArrayList<KBObject> argclses = this.getAllCachedClassesOfInstance(argid, true);
 		for (KBObject argcls : argclses) {
 			if (argcls.getNamespace().equals(this.dcdomns)) {
@@ -355,22 +442,27 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
   		// Get Metrics property hierarchy triples for adding into the temporary
   		// kb
   
+  		// The input for each component is set up in a workspace, and only
+  		// loaded into a temporary kb if it passes the type checks.
+  		// Add the redbox (i.e. datavariable constraints) to the workspace, 
+  		// along with domain knowledge about the data catalog. These are kept
+  		// for all the components
+  		TripleWorkspace ws = this.getWorkspace();
+  		ws.addTriples(redbox);
+  		ws.addTriples(domainKnowledge);
+  		ws.mark();
+  
   		for (Component ccomp : ccomps) {
   			HashMap<Role, Variable> sRoleMap = new HashMap<Role, Variable>();
   			ArrayList<String> varids = new ArrayList<String>();
   
-  			// Create a new temporary kb
-  			KBAPI tkb = this.ontologyFactory.getKB(OntSpec.PLAIN);
+  			// Drop the previous component's input from the workspace
+  			ws.rewind();
   
-  			// Add the redbox (i.e. datavariable constraints) to the temporary
-  			// kb, along with domain knowledge about the data catalog
-  			tkb.addTriples(redbox);
-  			tkb.addTriples(domainKnowledge);
-  
-  			KBObject ccompobj = this.kb.getIndividual(ccomp.getID());
-  			// Create a copy of the specialized component in the temporary kb
-  			KBObject tcomp = this.copyObjectIntoKB(incompid, ccompobj, tkb, this.pcdomns, null,
-  					false);
+  			ComponentRuleSet ruleset = this.getCachedRuleSet(ccomp);
+  			// Create a copy of the specialized component in the workspace
+  			ws.addTriples(ruleset.getComponentTriples(incompid, this.ontologyFactory));
+  			KBObject tcomp = ws.getResource(incompid);
   
   			boolean typesOk = true;
   
@@ -414,7 +506,7 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
   					// Make sure that the variable has a type that is either
   					// subsumed by the argument type, or that the argument type
   					// is subsumed by the variable type
-  					if (!checkTypeCompatibility(tkb, varid, arg.getID())) {
+  					if (!checkTypeCompatibility(ws, varid, arg.getID())) {
   						logger.debug(arg.getID() + " is not type compatible with variable: "
   								+ varid);
   						explanations.add("INFO "+ccomp + " is not selectable because " + arg.getID()
@@ -425,14 +517,14 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
   				}
   
   				// Copy over the argument's classes to the variable
-  				KBObject argobj = this.kb.getIndividual(arg.getID());
-  				KBObject varobj = this.copyObjectClassesIntoKB(varid, argobj, tkb, this.dcdomns,
+  				KBObject argobj = ruleset.getArgument(arg.getID());
+  				KBObject varobj = this.copyObjectClassesIntoKB(varid, argobj, ws, this.dcdomns,
   						null, false);
   				if(varobj == null)
   				  continue;
   
   				// create hasArgumentID property for the variable
-  				tkb.addTriple(varobj, dmap.get("hasArgumentID"), tkb.createLiteral(argid));
+  				ws.addTriple(varobj, dmap.get("hasArgumentID"), ws.createLiteral(argid));
   
   				Role r = new Role(roleid);
   				r.setRoleId(argid);
@@ -441,11 +533,11 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
   				// Set variable data binding
   				if (var.isDataVariable() && var.getBinding() != null
   						&& var.getBinding().getName() != null) {
-  					tkb.addTriple(varobj, dmap.get("hasBindingID"),
-  							tkb.createLiteral(var.getBinding().getName()));
+  					ws.addTriple(varobj, dmap.get("hasBindingID"),
+  							ws.createLiteral(var.getBinding().getName()));
   				} else {
-  					tkb.addTriple(varobj, dmap.get("hasBindingID"),
-  							tkb.createLiteral(""));
+  					ws.addTriple(varobj, dmap.get("hasBindingID"),
+  							ws.createLiteral(""));
   				}
   				
   				// Set variable parameter binding (default if none set)
@@ -453,23 +545,23 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
   			        KBObject arg_value = null;
   			        ValueBinding parambinding = (ValueBinding) var.getBinding();
   			        if (parambinding != null && parambinding.getValue() != null) {
-  			          arg_value = tkb.createXSDLiteral(parambinding.getValueAsString(), 
+  			          arg_value = ws.createXSDLiteral(parambinding.getValueAsString(), 
   			              parambinding.getDatatype());
   			        }
   			        else if(arg.getParamDefaultalue() != null) {
-  			          arg_value = tkb.createLiteral(arg.getParamDefaultalue());
+  			          arg_value = ws.createLiteral(arg.getParamDefaultalue());
   			        }
   			        if (arg_value != null) {
-  			          tkb.setPropertyValue(varobj, dmap.get("hasValue"), arg_value);
+  			          ws.setPropertyValue(varobj, dmap.get("hasValue"), arg_value);
   			        }				  
   				}
   
   				// assign this variable as an input or output to the component
   				if (ccomp.getInputs().contains(arg)) {
   					inputRoles.add(r.getRoleId());
-  					tkb.addTriple(tcomp, omap.get("hasInput"), varobj);
+  					ws.addTriple(tcomp, omap.get("hasInput"), varobj);
   				} else {
-  					tkb.addTriple(tcomp, omap.get("hasOutput"), varobj);
+  					ws.addTriple(tcomp, omap.get("hasOutput"), varobj);
   				}
   				sRoleMap.put(r, var);
   				varids.add(var.getID());
@@ -490,26 +582,32 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
   				continue;
   			}
   
-  			// ** Run Rules **
-  			if (useRules && ccomp.hasRules()) {
-  				// Redirect output to a byte stream
-  				ByteArrayOutputStream bost = new ByteArrayOutputStream();
-  				PrintStream oldout = System.out;
-  				System.setOut(new PrintStream(bost, true));
+  			// Load the workspace into a temporary kb
+  			KBAPI tkb = ws.toKB();
+  			tcomp = tkb.getIndividual(incompid);
   
-  				// Run propagation rules on the temporary kb
-  				tkb.setRulePrefixes(this.rulePrefixes);
-  				tkb.applyRules(this.getCachedComponentRules(ccomp));
-  				//tkb.applyRulesFromString(allrules);
+  			// ** Run Rules **
+  			if (useRules && ruleset.hasRules()) {
+  				// Capture the output of the rules
+  				RuleOutputCapture.start();
+  				String[] printouts;
+  				try {
+  					// Run propagation rules on the temporary kb
+  					tkb.setRulePrefixes(this.rulePrefixes);
+  					KBRuleList rules = ruleset.getRules();
+  					tkb.applyRules(rules);
+  					PlannerStats.record(Counter.RULE_APPLICATIONS);
+  					PlannerStats.record(Counter.RULES_EVALUATED, rules.getRules().size());
+  					//tkb.applyRulesFromString(allrules);
+  				}
+  				finally {
+  					printouts = RuleOutputCapture.stop();
+  				}
   
   				// Get printouts from Rules and store as Explanations
-  				if (!bost.toString().equals("")) {
-  					for (String exp : bost.toString().split("\\n")) {
-  						explanations.add(exp);
-  					}
+  				for (String exp : printouts) {
+  					explanations.add(exp);
   				}
-  				// Set output back to original System.out
-  				System.setOut(oldout);
   			}
   
   			// Checking for invalidity
@@ -573,28 +671,74 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
   
 	private Component getCachedComponent(String compid) {
     // Get Component
-    Component comp = null;
-    if(ccache.containsKey(compid)) { 
-      comp = ccache.get(compid);
-    }
-    else {
+    Component comp = ccache.get(compid);
+    if(comp == null) {
       comp = this.getComponent(compid, true);
-      ccache.put(compid, comp);
+      if(comp != null)
+        ccache.put(compid, comp);
     }
     return comp;
 	}
+
+	/**
+	 * Load all components, and their rules, into the caches
+	 */
+	public void warmCaches() {
+	  // Holds the same lock as CatalogLock, one component at a time
+	  ArrayList<String> compids = new ArrayList<String>();
+	  synchronized(this) {
+	    this.start_read();
+	    try {
+	      for(KBObject compobj : 
+	        this.kb.getInstancesOfClass(this.conceptMap.get("Component"), false))
+	        compids.add(compobj.getID());
+	    }
+	    finally {
+	      this.end();
+	    }
+	  }
+	  for(String compid : compids) {
+	    synchronized(this) {
+	      Component comp = this.getCachedComponent(compid);
+	      if(comp != null)
+	        this.getCachedRuleSet(comp);
+	    }
+	  }
+	}
 	
-	private KBRuleList getCachedComponentRules(Component comp) {
-	  if(rulescache.containsKey(comp.getID()))
-	    return rulescache.get(comp.getID());
+	/**
+	 * Get the parsed rules, class triples and argument objects of a component.
+	 * These are the same for every invocation of the component, so they are
+	 * only fetched (and the rules parsed) once
+	 */
+	private ComponentRuleSet getCachedRuleSet(Component comp) {
+	  ComponentRuleSet cached = rulescache.get(comp.getID());
+	  if(cached != null)
+	    return cached;
 	  String rulestr = "";
 	  for(String str : comp.getRules())
 	    rulestr += str + "\n";
 	  for(String str : comp.getInheritedRules())
 	    rulestr += str + "\n";
 	  KBRuleList rules = this.ontologyFactory.parseRules(rulestr);
-	  rulescache.put(comp.getID(), rules);
-	  return rules;
+	  
+	  this.start_read();
+	  try {
+	    KBObject compobj = this.kb.getIndividual(comp.getID());
+	    ArrayList<KBTriple> triples = this.getTriplesForObject(comp.getID(), 
+	        compobj, this.pcdomns, null, false);
+	    HashMap<String, KBObject> argobjs = new HashMap<String, KBObject>();
+	    for(ComponentRole role : comp.getInputs())
+	      argobjs.put(role.getID(), this.kb.getIndividual(role.getID()));
+	    for(ComponentRole role : comp.getOutputs())
+	      argobjs.put(role.getID(), this.kb.getIndividual(role.getID()));
+	    ComponentRuleSet ruleset = new ComponentRuleSet(rules, triples, argobjs);
+	    rulescache.put(comp.getID(), ruleset);
+	    return ruleset;
+	  }
+	  finally {
+	    this.end();
+	  }
 	}
 	
 	/**
@@ -713,12 +857,12 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
 		
 		try {
   		
-  		KBObject compobj = this.kb.getIndividual(comp.getID());
+  		ComponentRuleSet ruleset = this.getCachedRuleSet(comp);
   		
   		// Add component to the temporary KB store (add all its classes
   		// explicitly)
-  		KBObject tcomp = this
-  				.copyObjectIntoKB(comp.getID(), compobj, tkb, this.pcdomns, null, false);
+  		tkb.addTriples(ruleset.getComponentTriples(comp.getID(), this.ontologyFactory));
+  		KBObject tcomp = tkb.getIndividual(comp.getID());
       
   		// Keep a map of variable object to variable name
   		HashMap<Variable, String> variableNameMap = new HashMap<Variable, String>();
@@ -883,7 +1027,7 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
   
   			// Copy argument classes from Catalog as classes for the temporary
   			// variable in the temporary kb store
-  	    KBObject argobj = kb.getIndividual(arg.getID());
+  	    KBObject argobj = ruleset.getArgument(arg.getID());
   			this.copyObjectClassesIntoKB(varobj.getID(), argobj, tkb, null, null, true);
   
   			// Set the temporary variable's argumentID so rules can get/set
@@ -925,26 +1069,27 @@ public class ComponentReasoningKB extends ComponentKB implements ComponentReason
         }
       }
       
-      KBRuleList rules = this.getCachedComponentRules(comp);
-      if(rules.getRules().size() > 0) {
-    		// Redirect Standard output to a byte stream
-    		ByteArrayOutputStream bost = new ByteArrayOutputStream();
-    		PrintStream oldout = System.out;
-    		System.setOut(new PrintStream(bost, true));
-    
-    		// *** Run propagation rules on the temporary ontmodel ***
-    		tkb.setRulePrefixes(this.rulePrefixes);
-    		tkb.applyRules(rules);
-    		//tkb.applyRulesFromString(allrules);
+      KBRuleList rules = ruleset.getRules();
+      if(ruleset.hasRules()) {
+    		// Capture the output of the rules
+    		RuleOutputCapture.start();
+    		String[] printouts;
+    		try {
+    			// *** Run propagation rules on the temporary ontmodel ***
+    			tkb.setRulePrefixes(this.rulePrefixes);
+    			tkb.applyRules(rules);
+    			PlannerStats.record(Counter.RULE_APPLICATIONS);
+    			PlannerStats.record(Counter.RULES_EVALUATED, rules.getRules().size());
+    			//tkb.applyRulesFromString(allrules);
+    		}
+    		finally {
+    			printouts = RuleOutputCapture.stop();
+    		}
     
     		// Add printouts from rules as explanations
-    		if (!bost.toString().equals("")) {
-    			for (String exp : bost.toString().split("\\n")) {
-    				details.addExplanations(exp);
-    			}
+    		for (String exp : printouts) {
+    			details.addExplanations(exp);
     		}
-    		// Reset the Standard output
-    		System.setOut(oldout);
       }
       
   		// Check if the rules marked this component as invalid for
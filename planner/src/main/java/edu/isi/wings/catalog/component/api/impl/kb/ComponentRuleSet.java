@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.catalog.component.api.impl.kb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import edu.isi.kcap.ontapi.KBObject;
+import edu.isi.kcap.ontapi.KBTriple;
+import edu.isi.kcap.ontapi.OntFactory;
+import edu.isi.kcap.ontapi.rules.KBRuleList;
+
+/**
+ * Everything needed to run a component's rules that doesn't change between
+ * invocations: the parsed rules (own and inherited), the component's class
+ * triples, and the catalog objects of its arguments. Each invocation only
+ * adds its own variables to a fresh temporary kb.
+ */
+class ComponentRuleSet {
+  private KBRuleList rules;
+  // Class triples of the component (subject is the component itself)
+  private ArrayList<KBTriple> triples;
+  private HashMap<String, KBObject> argobjs;
+
+  ComponentRuleSet(KBRuleList rules, ArrayList<KBTriple> triples,
+      HashMap<String, KBObject> argobjs) {
+    this.rules = rules;
+    this.triples = triples;
+    this.argobjs = argobjs;
+  }
+
+  public KBRuleList getRules() {
+    return rules;
+  }
+
+  public boolean hasRules() {
+    return rules != null && rules.getRules().size() > 0;
+  }
+
+  /**
+   * Get the catalog object of a component argument
+   */
+  public KBObject getArgument(String argid) {
+    return argobjs.get(argid);
+  }
+
+  /**
+   * Get the component's class triples, with the given id as subject
+   */
+  public ArrayList<KBTriple> getComponentTriples(String id, OntFactory factory) {
+    KBObject tobj = factory.getObject(id);
+    ArrayList<KBTriple> ctriples = new ArrayList<KBTriple>(triples.size());
+    for(KBTriple triple : triples) {
+      ctriples.add(factory.getTriple(tobj, triple.getPredicate(), 
+          triple.getObject()));
+    }
+    return ctriples;
+  }
+}
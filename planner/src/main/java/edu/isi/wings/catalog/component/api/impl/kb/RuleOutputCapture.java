@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.catalog.component.api.impl.kb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Captures what the rules print (with the print builtin) while a thread
+ * runs them, so that it can be added to the explanations of that thread.
+ *
+ * System.out is replaced once by a stream that writes to the capture
+ * buffer of the current thread, if it has one, and to the original
+ * System.out otherwise. This way, rules run in parallel (for instance
+ * by batch planning) do not see each others' output.
+ */
+class RuleOutputCapture extends OutputStream {
+  private static final ThreadLocal<ByteArrayOutputStream> buffers =
+      new ThreadLocal<ByteArrayOutputStream>();
+
+  private static boolean installed = false;
+
+  private PrintStream original;
+
+  private RuleOutputCapture(PrintStream original) {
+    this.original = original;
+  }
+
+  private static synchronized void install() {
+    if(!installed) {
+      System.setOut(new PrintStream(new RuleOutputCapture(System.out), true));
+      installed = true;
+    }
+  }
+
+  /**
+   * Start capturing the output of this thread
+   */
+  static void start() {
+    install();
+    buffers.set(new ByteArrayOutputStream());
+  }
+
+  /**
+   * Stop capturing the output of this thread
+   * @return the lines printed since start
+   */
+  static String[] stop() {
+    System.out.flush();
+    ByteArrayOutputStream buffer = buffers.get();
+    buffers.remove();
+    if(buffer == null || buffer.size() == 0)
+      return new String[0];
+    return buffer.toString().split("\\r?\\n");
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ByteArrayOutputStream buffer = buffers.get();
+    if(buffer != null)
+      buffer.write(b);
+    else
+      original.write(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    ByteArrayOutputStream buffer = buffers.get();
+    if(buffer != null)
+      buffer.write(b, off, len);
+    else
+      original.write(b, off, len);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if(buffers.get() == null)
+      original.flush();
+  }
+}
@@ -64,6 +64,10 @@ public class Component extends URIEntity {
     return rulesText;
   }
 
+  public void setRulesText(String rulesText) {
+    this.rulesText = rulesText;
+  }
+
   public ArrayList<ComponentRole> getInputs() {
     return inputs;
   }
@@ -24,6 +24,7 @@ import java.util.Properties;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import edu.isi.wings.catalog.CatalogRegistry;
 import edu.isi.wings.catalog.data.api.DataCreationAPI;
 import edu.isi.wings.catalog.data.classes.DataItem;
 import edu.isi.wings.catalog.data.classes.DataTree;
@@ -44,9 +45,12 @@ public class DataCreationKB extends DataKB implements DataCreationAPI {
 	KBAPI tmpkb;
 	
 	DataCreationAPI externalCatalog;
+	
+	Properties props;
 
 	public DataCreationKB(Properties props) {
 		super(props, true, true);
+		this.props = props;
 		// FIXME: Hack to get unionOf domains
 		try {
 		  this.tmpkb = this.ontologyFactory.getKB(onturl, OntSpec.MICRO);
@@ -77,7 +81,11 @@ public class DataCreationKB extends DataKB implements DataCreationAPI {
 	
 	@Override
 	public boolean save() {
-	  return this.save(libkb) && this.save(ontkb);
+	  if(this.save(libkb) && this.save(ontkb)) {
+	    CatalogRegistry.invalidateData(this.props);
+	    return true;
+	  }
+	  return false;
 	}
 
 	@Override
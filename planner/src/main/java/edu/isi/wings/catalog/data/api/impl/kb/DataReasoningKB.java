@@ -39,6 +39,8 @@ import edu.isi.wings.catalog.data.classes.metrics.Metric;
 import edu.isi.wings.catalog.data.classes.metrics.Metrics;
 import edu.isi.wings.common.kb.KBUtils;
 import edu.isi.wings.common.logging.LoggerHelper;
+import edu.isi.wings.planner.api.PlannerStats;
+import edu.isi.wings.planner.api.PlannerStats.Counter;
 import edu.isi.wings.workflow.plan.classes.ExecutionFile;
 
 public class DataReasoningKB extends DataKB implements DataReasoningAPI {
@@ -98,6 +100,7 @@ public class DataReasoningKB extends DataKB implements DataReasoningAPI {
 		boolean batchok = this.start_batch_operation();
 		
 		//System.out.println(query);
+		PlannerStats.record(Counter.SPARQL_QUERIES);
 		ArrayList<ArrayList<SparqlQuerySolution>> queryResults = kb.sparqlQuery(query);
 		for (ArrayList<SparqlQuerySolution> queryResult : queryResults) {
 			VariableBindingsList listOfBindings = new VariableBindingsList();
@@ -27,6 +27,7 @@ import edu.isi.kcap.ontapi.KBTriple;
 import edu.isi.kcap.ontapi.OntFactory;
 import edu.isi.kcap.ontapi.OntSpec;
 import edu.isi.kcap.ontapi.jena.transactions.TransactionsJena;
+import edu.isi.wings.catalog.CatalogRegistry;
 import edu.isi.wings.catalog.component.api.ComponentCreationAPI;
 import edu.isi.wings.catalog.component.classes.Component;
 import edu.isi.wings.catalog.component.classes.ComponentTree;
@@ -36,6 +37,8 @@ import edu.isi.wings.catalog.resource.api.ResourceAPI;
 import edu.isi.wings.catalog.resource.classes.EnvironmentValue;
 import edu.isi.wings.catalog.resource.classes.GridkitCloud;
 import edu.isi.wings.catalog.resource.classes.Machine;
+import edu.isi.wings.catalog.resource.classes.MachineMonitor;
+import edu.isi.wings.catalog.resource.classes.MachineReplicaIndex;
 import edu.isi.wings.catalog.resource.classes.Software;
 import edu.isi.wings.catalog.resource.classes.SoftwareEnvironment;
 import edu.isi.wings.catalog.resource.classes.SoftwareVersion;
@@ -220,6 +223,8 @@ public class ResourceKB extends TransactionsJena implements ResourceAPI {
     }
     KBUtils.removeAllTriplesWith(this.libkb, machineid, false);
     GridkitCloud.resetNode(m);
+    MachineMonitor.invalidate(machineid);
+    MachineReplicaIndex.forget(machineid);
     
     if(batched)
       this.stop_batch_operation();
@@ -436,7 +441,7 @@ public class ResourceKB extends TransactionsJena implements ResourceAPI {
     return version;
   }
 
-  private void createCaches() {
+  private synchronized void createCaches() {
     if(swcache == null) {
       swcache = new HashMap<String, SoftwareVersion>();
       for(SoftwareVersion swver : this.getAllSoftwareVersions()) {
@@ -702,8 +707,10 @@ public class ResourceKB extends TransactionsJena implements ResourceAPI {
   
   @Override
   public boolean save() {
-    if (this.libkb != null)
-      return this.save(this.libkb);
+    if (this.libkb != null && this.save(this.libkb)) {
+      CatalogRegistry.invalidateResources();
+      return true;
+    }
     return false;
   }
 
@@ -18,10 +18,22 @@
 package edu.isi.wings.catalog.resource.classes;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.gridkit.internal.com.jcraft.jsch.ChannelSftp;
 import org.gridkit.internal.com.jcraft.jsch.JSch;
@@ -39,6 +51,24 @@ public class GridkitCloud {
   private static Cloud cloud = 
       SimpleCloudFactory.createSimpleSshCloud();
   
+  // Maximum number of parallel sftp channels per machine
+  private static int maxChannels = 4;
+  
+  private static ConcurrentHashMap<String, SessionPool> pools = 
+      new ConcurrentHashMap<String, SessionPool>();
+  private static ConcurrentHashMap<String, TransferStats> stats = 
+      new ConcurrentHashMap<String, TransferStats>();
+  
+  private static ExecutorService transferPool = 
+      Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "wings-sftp-transfer");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+  
   public static ViNode getNode(Machine m) throws Exception {
     String host = m.getHostString();
     for(ViNode node : cloud.listNodes(host))
@@ -61,22 +91,64 @@ public class GridkitCloud {
   
   public static void shutdown() {
     cloud.shutdown();
+    for(SessionPool pool : pools.values())
+      pool.close();
+    pools.clear();
   }
   
   public static void resetNode(Machine m) {
     if(m.getHostString() != null ) {
       for(ViNode node : cloud.listNodes(m.getHostString()))
         node.shutdown();
+      SessionPool pool = pools.remove(getPoolKey(m));
+      if(pool != null)
+        pool.close();
     }
     ((ViManager)cloud).resetDeadNode();
   }
   
+  public static void setMaxChannels(int channels) {
+    maxChannels = channels;
+  }
+  
+  public static TransferStats getTransferStats(Machine m) {
+    String key = getPoolKey(m);
+    TransferStats tstats = stats.get(key);
+    if(tstats == null) {
+      stats.putIfAbsent(key, new TransferStats());
+      tstats = stats.get(key);
+    }
+    return tstats;
+  }
+  
+  private static String getPoolKey(Machine m) {
+    return m.getUserId() + "@" + m.getHostString();
+  }
+  
+  private static SessionPool getSessionPool(Machine m) {
+    String key = getPoolKey(m);
+    SessionPool pool = pools.get(key);
+    if(pool == null) {
+      pools.putIfAbsent(key, new SessionPool(m));
+      pool = pools.get(key);
+    }
+    return pool;
+  }
+  
   private static Session getSSHSession(Machine m) 
       throws JSchException {
     JSch ssh = new JSch();
     if (m.getUserKey() != null)
       ssh.addIdentity(m.getUserKey());
-    Session ssh_session = ssh.getSession(m.getUserId(), m.getHostString());
+    // The host may carry a non-default port as host:port
+    String host = m.getHostString();
+    int port = 22;
+    int colon = host.lastIndexOf(':');
+    if(colon > 0 && colon == host.indexOf(':')) {
+      port = Integer.parseInt(host.substring(colon + 1));
+      host = host.substring(0, colon);
+    }
+    Session ssh_session = ssh.getSession(m.getUserId(), host, port);
     java.util.Properties config = new java.util.Properties();
     config.put("StrictHostKeyChecking", "no");
     ssh_session.setConfig(config);
@@ -86,55 +158,51 @@ public class GridkitCloud {
   
   public static boolean uploadFiles(Machine m, 
       HashMap<String, String> localRemoteMap) {
+    SessionPool pool = getSessionPool(m);
     try {
-      Session ssh_session = getSSHSession(m);
-      if(ssh_session.isConnected()) {
-        ChannelSftp sftpChannel = (ChannelSftp) ssh_session.openChannel("sftp");
-        sftpChannel.connect();
-        
-        // Get list of all required remote directories
-        ArrayList<String> dirList = new ArrayList<String>();
-        for(String local: localRemoteMap.keySet()) {
-          String remote = localRemoteMap.get(local);
-          File f = new File(remote);
-          File dir = f.getParentFile();
-          while(dir != null) {
-            if(!dirList.contains(dir.getAbsolutePath())) {
-              dirList.add(dir.getAbsolutePath());
-            }
-            dir = dir.getParentFile();
+      long start = System.currentTimeMillis();
+      
+      // Get list of all required remote directories
+      ArrayList<String> dirList = new ArrayList<String>();
+      for(String local: localRemoteMap.keySet()) {
+        String remote = localRemoteMap.get(local);
+        File f = new File(remote);
+        File dir = f.getParentFile();
+        while(dir != null) {
+          if(!pool.knownDirs.contains(dir.getAbsolutePath()) &&
+              !dirList.contains(dir.getAbsolutePath())) {
+            dirList.add(dir.getAbsolutePath());
           }
+          dir = dir.getParentFile();
         }
-        // Sort the directories by size
-        Collections.sort(dirList, new Comparator<String>() {
-          @Override
-          public int compare(String o1, String o2) {
-            return o1.length() - o2.length();
-          }
-        });
-        //System.out.println(dirList);
-        
-        // Make sure all remote directories are created
-        for(String dir : dirList) {
-          File f = new File(dir);
-          try {
-            sftpChannel.stat(f.getAbsolutePath());
-          }
-          catch (Exception e) {
-            sftpChannel.mkdir(f.getAbsolutePath());
-          }
+      }
+      // Sort the directories by size
+      Collections.sort(dirList, new Comparator<String>() {
+        @Override
+        public int compare(String o1, String o2) {
+          return o1.length() - o2.length();
+        }
+      });
+      //System.out.println(dirList);
+      
+      // Make sure all remote directories are created
+      if(dirList.size() > 0) {
+        ChannelSftp sftpChannel = pool.acquire();
+        try {
+          pool.createDirectories(sftpChannel, dirList);
         }
-        
-        // Finally upload the files
-        for(String local: localRemoteMap.keySet()) {
-          String remote = localRemoteMap.get(local);
-          sftpChannel.put(local, remote);
+        catch (Exception e) {
+          pool.discard(sftpChannel);
+          throw e;
         }
-        
-        sftpChannel.disconnect();
-        ssh_session.disconnect();
-        return true;
+        pool.release(sftpChannel);
       }
+      
+      // Finally upload the files over parallel channels
+      long bytes = transfer(pool, localRemoteMap, true);
+      getTransferStats(m).addUpload(localRemoteMap.size(), bytes, 
+          System.currentTimeMillis() - start);
+      return true;
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -143,28 +211,205 @@ public class GridkitCloud {
   
   public static boolean downloadFiles(Machine m,
       HashMap<String, String> localRemoteMap) {
+    SessionPool pool = getSessionPool(m);
     try {
-      Session ssh_session = getSSHSession(m);
-      if(ssh_session.isConnected()) {
-        ChannelSftp sftpChannel = (ChannelSftp) ssh_session.openChannel("sftp");
-        sftpChannel.connect();
-        for(String local: localRemoteMap.keySet()) {
-          String remote = localRemoteMap.get(local);
+      long start = System.currentTimeMillis();
+      long bytes = transfer(pool, localRemoteMap, false);
+      getTransferStats(m).addDownload(localRemoteMap.size(), bytes, 
+          System.currentTimeMillis() - start);
+      return true;
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+    return false;
+  }
+  
+  /**
+   * Transfer files using upto [maxChannels] sftp channels in parallel
+   * @return Number of bytes transferred
+   */
+  private static long transfer(final SessionPool pool, 
+      HashMap<String, String> localRemoteMap, final boolean upload) 
+          throws Exception {
+    final ConcurrentLinkedQueue<Map.Entry<String, String>> queue = 
+        new ConcurrentLinkedQueue<Map.Entry<String, String>>(
+            localRemoteMap.entrySet());
+    int workers = Math.min(maxChannels, queue.size());
+    
+    ArrayList<Future<Long>> jobs = new ArrayList<Future<Long>>();
+    for(int i=0; i<workers; i++) {
+      jobs.add(transferPool.submit(new Callable<Long>() {
+        @Override
+        public Long call() throws Exception {
+          long bytes = 0;
+          ChannelSftp sftpChannel = pool.acquire();
           try {
-            sftpChannel.get(remote, local);
+            Map.Entry<String, String> entry;
+            while((entry = queue.poll()) != null) {
+              String local = entry.getKey();
+              String remote = entry.getValue();
+              if(upload) {
+                sftpChannel.put(local, remote);
+              }
+              else {
+                try {
+                  sftpChannel.get(remote, local);
+                }
+                catch (Exception e) {
+                  // Ignore
+                  continue;
+                }
+              }
+              bytes += new File(local).length();
+            }
           }
           catch (Exception e) {
-            // Ignore
+            pool.discard(sftpChannel);
+            throw e;
           }
+          pool.release(sftpChannel);
+          return bytes;
         }
-        sftpChannel.disconnect();
-        ssh_session.disconnect();
-        return true;
+      }));
+    }
+    
+    long bytes = 0;
+    Exception error = null;
+    for(Future<Long> job : jobs) {
+      try {
+        bytes += job.get();
+      }
+      catch (Exception e) {
+        error = e;
       }
-    } catch (Exception e) {
-      e.printStackTrace();
     }
-    return false;
+    if(error != null)
+      throw error;
+    return bytes;
   }
   
+  /**
+   * A shared ssh session for a machine, and a pool of sftp channels on it
+   */
+  static class SessionPool {
+    Machine machine;
+    Session session;
+    int open = 0;
+    boolean closed = false;
+    LinkedBlockingQueue<ChannelSftp> idle = 
+        new LinkedBlockingQueue<ChannelSftp>();
+    // Remote directories that are known to exist
+    Set<String> knownDirs = ConcurrentHashMap.<String>newKeySet();
+    
+    SessionPool(Machine machine) {
+      this.machine = machine;
+    }
+    
+    synchronized Session getSession() throws JSchException {
+      if(session == null || !session.isConnected()) {
+        knownDirs.clear();
+        session = getSSHSession(machine);
+      }
+      return session;
+    }
+    
+    ChannelSftp acquire() throws Exception {
+      while(true) {
+        ChannelSftp channel = idle.poll();
+        if(channel == null) {
+          synchronized(this) {
+            if(closed)
+              throw new IOException("Session pool for " 
+                  + machine.getHostString() + " is closed");
+            if(open < maxChannels) {
+              channel = (ChannelSftp) getSession().openChannel("sftp");
+              channel.connect();
+              open++;
+              return channel;
+            }
+          }
+          // Wait for a channel to be released
+          channel = idle.poll(1, TimeUnit.SECONDS);
+          if(channel == null)
+            continue;
+        }
+        if(channel.isConnected())
+          return channel;
+        synchronized(this) {
+          open--;
+        }
+      }
+    }
+    
+    // Return a channel to the pool. Channels that are still checked out
+    // when the pool gets closed are disconnected as they come back
+    void release(ChannelSftp channel) {
+      synchronized(this) {
+        if(!closed) {
+          idle.offer(channel);
+          return;
+        }
+        open--;
+      }
+      channel.disconnect();
+    }
+    
+    // Drop a channel that had an error
+    void discard(ChannelSftp channel) {
+      channel.disconnect();
+      synchronized(this) {
+        open--;
+      }
+    }
+    
+    /**
+     * Create the remote directories (sorted parents first). The deepest
+     * directories are checked first, so that a single stat covers all
+     * their parents in the common case where they already exist
+     */
+    void createDirectories(ChannelSftp channel, ArrayList<String> dirList) 
+        throws Exception {
+      for(int i=dirList.size()-1; i>=0; i--) {
+        String dir = dirList.get(i);
+        if(knownDirs.contains(dir))
+          continue;
+        try {
+          channel.stat(dir);
+          File f = new File(dir);
+          while(f != null) {
+            knownDirs.add(f.getAbsolutePath());
+            f = f.getParentFile();
+          }
+        }
+        catch (Exception e) {
+          // Doesn't exist yet
+        }
+      }
+      for(String dir : dirList) {
+        if(knownDirs.contains(dir))
+          continue;
+        try {
+          channel.mkdir(dir);
+        }
+        catch (Exception e) {
+          // Might have been created by a parallel upload
+          channel.stat(dir);
+        }
+        knownDirs.add(dir);
+      }
+    }
+    
+    synchronized void close() {
+      closed = true;
+      ChannelSftp channel;
+      while((channel = idle.poll()) != null) {
+        channel.disconnect();
+        open--;
+      }
+      knownDirs.clear();
+      if(session != null)
+        session.disconnect();
+      session = null;
+    }
+  }
 }
@@ -21,8 +21,10 @@ import java.io.File;
 import java.io.Serializable;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class Machine extends Resource {
   private static final long serialVersionUID = 5211295601774494163L;
@@ -175,13 +177,25 @@ public class Machine extends Resource {
   }
 
   public MachineDetails getMachineDetails() {
+    return this.getMachineDetails(0);
+  }
+
+  // Fetch live details from the machine. A timeout of 0 waits forever
+  public MachineDetails getMachineDetails(long timeoutSeconds) {
     MachineDetails details = new MachineDetails();
+    Future<MachineDetails> job = null;
     try {      
       MachineDetailsGrabber mdg = new MachineDetailsGrabber(this);
-      Future<MachineDetails> job = GridkitCloud.getNode(this).submit(mdg);
-      details = job.get();
+      job = GridkitCloud.getNode(this).submit(mdg);
+      if(timeoutSeconds > 0)
+        details = job.get(timeoutSeconds, TimeUnit.SECONDS);
+      else
+        details = job.get();
     }
     catch (Exception e) {
+      // Don't leave a timed out probe running on the node
+      if(job != null && !job.isDone())
+        job.cancel(true);
       details.setCanConnect(false);
       details.addError(e.getMessage());
       e.printStackTrace();
@@ -189,6 +203,7 @@ public class Machine extends Resource {
     finally {
       //GridkitCloud.resetNode(this);
     }
+    details.setLastChecked(new Date());
     return details;
   }
 }
@@ -245,101 +260,3 @@ class MachineDetailsGrabber implements Callable<MachineDetails>, Serializable {
     return details;
   }
 }
-
-class MachineDetails implements Serializable {
-  private static final long serialVersionUID = -2690736677192673940L;
-  private boolean connect;
-  private float memoryMax;
-  private float memoryFree;
-  private int numCores;
-  private String storageRoot;
-  private float storageRootMax;
-  private float storageRootFree;
-  private String systemArch;
-  private double systemLoad;
-  private ArrayList<String> errors;
-
-  public MachineDetails() {
-    errors = new ArrayList<String>();
-  }
-  
-  public boolean isCanConnect() {
-    return connect;
-  }
-
-  public void setCanConnect(boolean canConnect) {
-    this.connect = canConnect;
-  }
-
-  public float maxMemory() {
-    return memoryMax;
-  }
-
-  public void setMaxMemory(float memoryMax) {
-    this.memoryMax = memoryMax;
-  }
-
-  public float getFreeMemory() {
-    return memoryFree;
-  }
-
-  public void setFreeMemory(float memoryFree) {
-    this.memoryFree = memoryFree;
-  }
-
-  public int getNumCores() {
-    return numCores;
-  }
-
-  public void setNumCores(int numCores) {
-    this.numCores = numCores;
-  }
-
-  public String getStorageRoot() {
-    return storageRoot;
-  }
-
-  public void setStorageRoot(String storageRoot) {
-    this.storageRoot = storageRoot;
-  }
-
-  public float getTotalStorage() {
-    return storageRootMax;
-  }
-
-  public void setTotalStorage(float totalStorage) {
-    this.storageRootMax = totalStorage;
-  }
-
-  public float getFreeStorage() {
-    return storageRootFree;
-  }
-
-  public void setFreeStorage(float freeStorage) {
-    this.storageRootFree = freeStorage;
-  }
-
-  public String getArchitecture() {
-    return systemArch;
-  }
-
-  public void setArchitecture(String architecture) {
-    this.systemArch = architecture;
-  }
-
-  public double getSystemLoad() {
-    return systemLoad;
-  }
-
-  public void setSystemLoad(double systemLoad) {
-    this.systemLoad = systemLoad;
-  }
-
-  public ArrayList<String> getErrors() {
-    return errors;
-  }
-
-  public void addError(String error) {
-    this.errors.add(error);
-  }
-}
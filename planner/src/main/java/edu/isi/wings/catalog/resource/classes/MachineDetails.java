@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.catalog.resource.classes;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+
+public class MachineDetails implements Serializable {
+  private static final long serialVersionUID = -2690736677192673940L;
+  private boolean connect;
+  private float memoryMax;
+  private float memoryFree;
+  private int numCores;
+  private String storageRoot;
+  private float storageRootMax;
+  private float storageRootFree;
+  private String systemArch;
+  private double systemLoad;
+  private ArrayList<String> errors;
+  private Date lastChecked;
+  private TransferStats transferStats;
+
+  public MachineDetails() {
+    errors = new ArrayList<String>();
+  }
+
+  public MachineDetails(MachineDetails other) {
+    this.connect = other.connect;
+    this.memoryMax = other.memoryMax;
+    this.memoryFree = other.memoryFree;
+    this.numCores = other.numCores;
+    this.storageRoot = other.storageRoot;
+    this.storageRootMax = other.storageRootMax;
+    this.storageRootFree = other.storageRootFree;
+    this.systemArch = other.systemArch;
+    this.systemLoad = other.systemLoad;
+    this.errors = new ArrayList<String>(other.errors);
+    this.lastChecked = other.lastChecked;
+    this.transferStats = other.transferStats;
+  }
+  
+  public boolean isCanConnect() {
+    return connect;
+  }
+
+  public void setCanConnect(boolean canConnect) {
+    this.connect = canConnect;
+  }
+
+  public float maxMemory() {
+    return memoryMax;
+  }
+
+  public void setMaxMemory(float memoryMax) {
+    this.memoryMax = memoryMax;
+  }
+
+  public float getFreeMemory() {
+    return memoryFree;
+  }
+
+  public void setFreeMemory(float memoryFree) {
+    this.memoryFree = memoryFree;
+  }
+
+  public int getNumCores() {
+    return numCores;
+  }
+
+  public void setNumCores(int numCores) {
+    this.numCores = numCores;
+  }
+
+  public String getStorageRoot() {
+    return storageRoot;
+  }
+
+  public void setStorageRoot(String storageRoot) {
+    this.storageRoot = storageRoot;
+  }
+
+  public float getTotalStorage() {
+    return storageRootMax;
+  }
+
+  public void setTotalStorage(float totalStorage) {
+    this.storageRootMax = totalStorage;
+  }
+
+  public float getFreeStorage() {
+    return storageRootFree;
+  }
+
+  public void setFreeStorage(float freeStorage) {
+    this.storageRootFree = freeStorage;
+  }
+
+  public String getArchitecture() {
+    return systemArch;
+  }
+
+  public void setArchitecture(String architecture) {
+    this.systemArch = architecture;
+  }
+
+  public double getSystemLoad() {
+    return systemLoad;
+  }
+
+  public void setSystemLoad(double systemLoad) {
+    this.systemLoad = systemLoad;
+  }
+
+  public Date getLastChecked() {
+    return lastChecked;
+  }
+
+  public void setLastChecked(Date lastChecked) {
+    this.lastChecked = lastChecked;
+  }
+
+  public TransferStats getTransferStats() {
+    return transferStats;
+  }
+
+  public void setTransferStats(TransferStats transferStats) {
+    this.transferStats = transferStats;
+  }
+
+  public ArrayList<String> getErrors() {
+    return errors;
+  }
+
+  public void addError(String error) {
+    this.errors.add(error);
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.catalog.resource.classes;
+
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import edu.isi.wings.catalog.resource.ResourceFactory;
+import edu.isi.wings.catalog.resource.api.ResourceAPI;
+
+/**
+ * Periodically probes all machines in the resource catalog (in parallel),
+ * and keeps the latest MachineDetails for each of them. A machine that
+ * fails to respond [maxFailures] times in a row is considered unhealthy
+ * until it responds again.
+ * The monitor reads the machine list through its own resource catalog, so
+ * the background probes never share a catalog with request threads.
+ */
+public class MachineMonitor {
+
+  private static long period = 60;        // Seconds between probe rounds
+  private static long timeout = 30;       // Seconds to wait for one probe
+  private static int maxFailures = 3;
+  private static int maxParallel = 4;
+
+  private static Properties config;
+  private static ScheduledExecutorService scheduler;
+  private static ExecutorService prober;
+
+  private static ConcurrentHashMap<String, MachineDetails> details =
+      new ConcurrentHashMap<String, MachineDetails>();
+  private static ConcurrentHashMap<String, Integer> failures =
+      new ConcurrentHashMap<String, Integer>();
+  private static Set<String> probing =
+      ConcurrentHashMap.<String>newKeySet();
+
+  /**
+   * Start monitoring machines from the resource catalog.
+   * Does nothing if the monitor is already running.
+   * @param props
+   *            The resource catalog properties (lib.resource.url, 
+   *            ont.resource.url), and optionally resource.monitor.period,
+   *            resource.monitor.timeout, resource.monitor.failures,
+   *            resource.monitor.parallel
+   */
+  public static synchronized void start(Properties props) {
+    if(scheduler != null)
+      return;
+
+    if(props.containsKey("resource.monitor.period"))
+      period = Long.parseLong(props.getProperty("resource.monitor.period"));
+    if(props.containsKey("resource.monitor.timeout"))
+      timeout = Long.parseLong(props.getProperty("resource.monitor.timeout"));
+    if(props.containsKey("resource.monitor.failures"))
+      maxFailures = Integer.parseInt(props.getProperty("resource.monitor.failures"));
+    if(props.containsKey("resource.monitor.parallel"))
+      maxParallel = Integer.parseInt(props.getProperty("resource.monitor.parallel"));
+
+    config = props;
+    ThreadFactory daemons = new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "wings-machine-monitor");
+        t.setDaemon(true);
+        return t;
+      }
+    };
+    prober = Executors.newFixedThreadPool(maxParallel, daemons);
+    scheduler = Executors.newSingleThreadScheduledExecutor(daemons);
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        probeAll();
+      }
+    }, 0, period, TimeUnit.SECONDS);
+  }
+
+  public static synchronized void shutdown() {
+    if(scheduler == null)
+      return;
+    scheduler.shutdownNow();
+    prober.shutdownNow();
+    scheduler = null;
+    prober = null;
+    config = null;
+  }
+
+  public static boolean isRunning() {
+    return scheduler != null;
+  }
+
+  private static void probeAll() {
+    // A fresh catalog per round also picks up machines added since the
+    // last round
+    ArrayList<Machine> machines = new ArrayList<Machine>();
+    ResourceAPI api = null;
+    try {
+      api = ResourceFactory.getAPI(config);
+      api.start_read();
+      for(String machineId : api.getMachineIds()) {
+        Machine machine = api.getMachine(machineId);
+        if(machine != null)
+          machines.add(machine);
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      return;
+    }
+    finally {
+      if(api != null)
+        api.end();
+    }
+
+    for(final Machine machine : machines) {
+      // Localhost is always run in-process, so no need to probe it
+      if("Localhost".equals(machine.getName()))
+        continue;
+      // Skip machines whose previous probe hasn't returned yet
+      if(!probing.add(machine.getID()))
+        continue;
+      prober.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            probe(machine);
+          }
+          finally {
+            probing.remove(machine.getID());
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Fetch live details from the machine, and update the cache
+   */
+  public static MachineDetails probe(Machine machine) {
+    MachineDetails mdetails = machine.getMachineDetails(timeout);
+    details.put(machine.getID(), mdetails);
+    if(mdetails.isCanConnect()) {
+      failures.remove(machine.getID());
+    }
+    else {
+      Integer count = failures.get(machine.getID());
+      failures.put(machine.getID(), count == null ? 1 : count + 1);
+    }
+    return mdetails;
+  }
+
+  /**
+   * Return the cached details for the machine. If the machine hasn't been
+   * probed yet, then it is probed now
+   */
+  public static MachineDetails getMachineDetails(Machine machine) {
+    MachineDetails mdetails = details.get(machine.getID());
+    if(mdetails == null)
+      mdetails = probe(machine);
+    return mdetails;
+  }
+
+  public static MachineDetails getCachedMachineDetails(String machineId) {
+    return details.get(machineId);
+  }
+
+  /**
+   * A machine is healthy if it is marked healthy in the catalog, and it
+   * hasn't failed the last [maxFailures] probes
+   */
+  public static boolean isHealthy(Machine machine) {
+    if(!machine.isHealthy())
+      return false;
+    Integer count = failures.get(machine.getID());
+    return (count == null || count < maxFailures);
+  }
+
+  public static int getFailures(String machineId) {
+    Integer count = failures.get(machineId);
+    return count == null ? 0 : count;
+  }
+
+  public static void invalidate(String machineId) {
+    details.remove(machineId);
+    failures.remove(machineId);
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.catalog.resource.classes;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of which files are already present on each machine
+ * (remote path -> md5 & size). This is only a hint used for placing steps
+ * close to their data. The upload check on the machine is still the
+ * final word on what needs to be transferred.
+ */
+public class MachineReplicaIndex {
+
+  private static ConcurrentHashMap<String, ConcurrentHashMap<String, Replica>>
+    index = new ConcurrentHashMap<String, ConcurrentHashMap<String, Replica>>();
+
+  private static ConcurrentHashMap<String, Replica> getReplicas(String machineId) {
+    ConcurrentHashMap<String, Replica> replicas = index.get(machineId);
+    if(replicas == null) {
+      index.putIfAbsent(machineId, new ConcurrentHashMap<String, Replica>());
+      replicas = index.get(machineId);
+    }
+    return replicas;
+  }
+
+  /**
+   * Record that a file is present on the machine
+   * @param md5
+   *            Digest of the file, or null if not known
+   */
+  public static void addReplica(String machineId, String remotePath,
+      String md5, long size) {
+    getReplicas(machineId).put(remotePath, new Replica(md5, size));
+  }
+
+  public static void removeReplica(String machineId, String remotePath) {
+    ConcurrentHashMap<String, Replica> replicas = index.get(machineId);
+    if(replicas != null)
+      replicas.remove(remotePath);
+  }
+
+  /**
+   * Check if the machine has a copy of the file. A known md5 has to match,
+   * otherwise the size is used as a cheap check
+   */
+  public static boolean hasReplica(String machineId, String remotePath,
+      String md5, long size) {
+    ConcurrentHashMap<String, Replica> replicas = index.get(machineId);
+    if(replicas == null)
+      return false;
+    Replica replica = replicas.get(remotePath);
+    if(replica == null || replica.size != size)
+      return false;
+    if(md5 != null && replica.md5 != null)
+      return md5.equals(replica.md5);
+    return true;
+  }
+
+  public static void forget(String machineId) {
+    index.remove(machineId);
+  }
+
+  static class Replica {
+    String md5;
+    long size;
+
+    Replica(String md5, long size) {
+      this.md5 = md5;
+      this.size = size;
+    }
+  }
+}
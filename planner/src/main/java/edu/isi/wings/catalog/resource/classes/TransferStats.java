@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.catalog.resource.classes;
+
+import java.io.Serializable;
+
+/**
+ * File transfer counters for a machine
+ */
+public class TransferStats implements Serializable {
+  private static final long serialVersionUID = 2934587236513378412L;
+
+  private long filesUploaded;
+  private long bytesUploaded;
+  private long uploadMillis;
+  private long filesDownloaded;
+  private long bytesDownloaded;
+  private long downloadMillis;
+
+  public synchronized void addUpload(long files, long bytes, long millis) {
+    this.filesUploaded += files;
+    this.bytesUploaded += bytes;
+    this.uploadMillis += millis;
+  }
+
+  public synchronized void addDownload(long files, long bytes, long millis) {
+    this.filesDownloaded += files;
+    this.bytesDownloaded += bytes;
+    this.downloadMillis += millis;
+  }
+
+  public synchronized long getFilesUploaded() {
+    return filesUploaded;
+  }
+
+  public synchronized long getBytesUploaded() {
+    return bytesUploaded;
+  }
+
+  public synchronized long getUploadMillis() {
+    return uploadMillis;
+  }
+
+  public synchronized long getFilesDownloaded() {
+    return filesDownloaded;
+  }
+
+  public synchronized long getBytesDownloaded() {
+    return bytesDownloaded;
+  }
+
+  public synchronized long getDownloadMillis() {
+    return downloadMillis;
+  }
+
+  // Bytes per second
+  public synchronized double getUploadRate() {
+    return uploadMillis > 0 ? bytesUploaded * 1000.0 / uploadMillis : 0;
+  }
+
+  // Bytes per second
+  public synchronized double getDownloadRate() {
+    return downloadMillis > 0 ? bytesDownloaded * 1000.0 / downloadMillis : 0;
+  }
+}
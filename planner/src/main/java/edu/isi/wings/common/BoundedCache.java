@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe cache with a bound on the total weight of its entries
+ * (by default, each entry weighs 1, so the bound is on the number of
+ * entries).
+ *
+ * Keys are spread over segments, each with its own lock and its own share
+ * of the bound. Within a segment, the least recently used entries are
+ * evicted first. Null values are not cached.
+ */
+public class BoundedCache<K, V> {
+  public interface Weigher<K, V> {
+    public int weigh(K key, V value);
+  }
+
+  private static final int NSEGMENTS = 16;
+
+  private String name;
+  private Segment<K, V>[] segments;
+  private Weigher<K, V> weigher;
+
+  public BoundedCache(String name, long maxWeight) {
+    this(name, maxWeight, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  public BoundedCache(String name, long maxWeight, Weigher<K, V> weigher) {
+    this.name = name;
+    this.weigher = weigher;
+    this.segments = new Segment[NSEGMENTS];
+    long segmentWeight = Math.max(1, (maxWeight + NSEGMENTS - 1) / NSEGMENTS);
+    for(int i=0; i<NSEGMENTS; i++)
+      this.segments[i] = new Segment<K, V>(segmentWeight);
+  }
+
+  public V get(K key) {
+    return this.getSegment(key).get(key);
+  }
+
+  public void put(K key, V value) {
+    if(value == null)
+      return;
+    int weight = weigher != null ? Math.max(1, weigher.weigh(key, value)) : 1;
+    this.getSegment(key).put(key, value, weight);
+  }
+
+  public void invalidate(K key) {
+    this.getSegment(key).remove(key);
+  }
+
+  /**
+   * Remove all entries whose key starts with the given prefix (for example a
+   * namespace, or an id followed by a separator)
+   */
+  public void invalidatePrefix(String prefix) {
+    for(Segment<K, V> segment : segments)
+      segment.removePrefix(prefix);
+  }
+
+  public void invalidateAll() {
+    for(Segment<K, V> segment : segments)
+      segment.clear();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long size() {
+    long size = 0;
+    for(Segment<K, V> segment : segments)
+      size += segment.size();
+    return size;
+  }
+
+  public long getWeight() {
+    long weight = 0;
+    for(Segment<K, V> segment : segments)
+      weight += segment.getWeight();
+    return weight;
+  }
+
+  public long getHits() {
+    long hits = 0;
+    for(Segment<K, V> segment : segments)
+      hits += segment.hits;
+    return hits;
+  }
+
+  public long getMisses() {
+    long misses = 0;
+    for(Segment<K, V> segment : segments)
+      misses += segment.misses;
+    return misses;
+  }
+
+  public long getEvictions() {
+    long evictions = 0;
+    for(Segment<K, V> segment : segments)
+      evictions += segment.evictions;
+    return evictions;
+  }
+
+  public double getHitRate() {
+    long hits = this.getHits();
+    long requests = hits + this.getMisses();
+    return requests == 0 ? 0 : (double) hits / requests;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %d entries (weight %d), hit rate %.1f%%, %d evictions",
+        name, this.size(), this.getWeight(), this.getHitRate() * 100,
+        this.getEvictions());
+  }
+
+  private Segment<K, V> getSegment(Object key) {
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    return segments[h & (NSEGMENTS - 1)];
+  }
+
+  static class Entry<V> {
+    V value;
+    int weight;
+
+    Entry(V value, int weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  static class Segment<K, V> {
+    long maxWeight;
+    long weight = 0;
+    volatile long hits = 0;
+    volatile long misses = 0;
+    volatile long evictions = 0;
+    // Access ordered, so that the eldest entry is the least recently used
+    LinkedHashMap<K, Entry<V>> map =
+        new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+
+    Segment(long maxWeight) {
+      this.maxWeight = maxWeight;
+    }
+
+    synchronized V get(K key) {
+      Entry<V> entry = map.get(key);
+      if(entry == null) {
+        misses++;
+        return null;
+      }
+      hits++;
+      return entry.value;
+    }
+
+    synchronized void put(K key, V value, int entryWeight) {
+      Entry<V> old = map.put(key, new Entry<V>(value, entryWeight));
+      if(old != null)
+        weight -= old.weight;
+      weight += entryWeight;
+      Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+      // Evict, but always keep the entry that was just added
+      while(weight > maxWeight && map.size() > 1 && it.hasNext()) {
+        Map.Entry<K, Entry<V>> eldest = it.next();
+        if(eldest.getKey().equals(key))
+          continue;
+        weight -= eldest.getValue().weight;
+        it.remove();
+        evictions++;
+      }
+    }
+
+    synchronized void remove(K key) {
+      Entry<V> old = map.remove(key);
+      if(old != null)
+        weight -= old.weight;
+    }
+
+    synchronized void removePrefix(String prefix) {
+      Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+      while(it.hasNext()) {
+        Map.Entry<K, Entry<V>> entry = it.next();
+        if(entry.getKey().toString().startsWith(prefix)) {
+          weight -= entry.getValue().weight;
+          it.remove();
+        }
+      }
+    }
+
+    synchronized void clear() {
+      map.clear();
+      weight = 0;
+    }
+
+    synchronized int size() {
+      return map.size();
+    }
+
+    synchronized long getWeight() {
+      return weight;
+    }
+  }
+}
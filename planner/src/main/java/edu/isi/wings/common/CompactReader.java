@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Reads a record written by CompactWriter. The magic has to match, and
+ * records written with a newer schema version than the reader knows are
+ * rejected.
+ */
+public class CompactReader {
+  private DataInputStream body;
+  private String[] strings;
+  private int version;
+
+  public CompactReader(InputStream in, String magic, int maxVersion)
+      throws IOException {
+    try {
+      DataInputStream din = new DataInputStream(in);
+      byte[] header = new byte[4];
+      din.readFully(header);
+      if(!magic.equals(new String(header, StandardCharsets.US_ASCII)))
+        throw new IOException("Not a " + magic + " record");
+      this.version = readVarInt(din);
+      if(this.version > maxVersion)
+        throw new IOException("Unsupported " + magic + " version " + version
+            + " (expected at most " + maxVersion + ")");
+
+      this.strings = new String[readVarInt(din)];
+      for(int i=0; i<strings.length; i++) {
+        byte[] bytes = new byte[readVarInt(din)];
+        din.readFully(bytes);
+        strings[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      byte[] bytes = new byte[readVarInt(din)];
+      din.readFully(bytes);
+      this.body = new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  public int getVersion() {
+    return this.version;
+  }
+
+  public String readString() throws IOException {
+    int index = readVarInt(body);
+    if(index == 0)
+      return null;
+    if(index > strings.length)
+      throw new IOException("Bad string reference " + index);
+    return strings[index - 1];
+  }
+
+  public String readUri() throws IOException {
+    String ns = this.readString();
+    String name = this.readString();
+    if(ns == null)
+      return name;
+    return name != null ? ns + name : ns;
+  }
+
+  public int readInt() throws IOException {
+    int value = readVarInt(body);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  public long readLong() throws IOException {
+    long value = readVarLong(body);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  public boolean readBoolean() throws IOException {
+    return body.readByte() != 0;
+  }
+
+  public Object readValue() throws IOException {
+    byte type = body.readByte();
+    switch(type) {
+      case CompactWriter.NULL: return null;
+      case CompactWriter.STRING: return this.readString();
+      case CompactWriter.INTEGER: return this.readInt();
+      case CompactWriter.LONG: return this.readLong();
+      case CompactWriter.FLOAT: return body.readFloat();
+      case CompactWriter.DOUBLE: return body.readDouble();
+      case CompactWriter.BOOLEAN: return this.readBoolean();
+      case CompactWriter.DATE: return new Date(this.readLong());
+      default:
+        throw new IOException("Unknown value type " + type);
+    }
+  }
+
+  static int readVarInt(DataInputStream in) throws IOException {
+    int value = 0;
+    for(int shift = 0; shift < 35; shift += 7) {
+      byte b = in.readByte();
+      value |= (b & 0x7F) << shift;
+      if((b & 0x80) == 0)
+        return value;
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  static long readVarLong(DataInputStream in) throws IOException {
+    long value = 0;
+    for(int shift = 0; shift < 70; shift += 7) {
+      byte b = in.readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if((b & 0x80) == 0)
+        return value;
+    }
+    throw new IOException("Malformed varint");
+  }
+}
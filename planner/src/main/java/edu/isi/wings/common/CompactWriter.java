@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Writes a compact binary record: a header (4 byte magic and a schema
+ * version), a table of all the strings used, and the body. Strings are
+ * written to the body as indexes into the table, so repeated ids cost a
+ * byte or two each. URIs are split into namespace and local name so that
+ * the namespace is only stored once.
+ *
+ * The body is buffered in memory, and everything is written on close.
+ * See CompactReader.
+ */
+public class CompactWriter {
+  static final byte NULL = 0;
+  static final byte STRING = 1;
+  static final byte INTEGER = 2;
+  static final byte LONG = 3;
+  static final byte FLOAT = 4;
+  static final byte DOUBLE = 5;
+  static final byte BOOLEAN = 6;
+  static final byte DATE = 7;
+
+  private OutputStream out;
+  private String magic;
+  private int version;
+
+  private ByteArrayOutputStream buffer;
+  private DataOutputStream body;
+  private HashMap<String, Integer> stringIndex;
+  private ArrayList<String> strings;
+
+  public CompactWriter(OutputStream out, String magic, int version) {
+    if(magic.length() != 4)
+      throw new IllegalArgumentException("Magic has to be 4 characters");
+    this.out = out;
+    this.magic = magic;
+    this.version = version;
+    this.buffer = new ByteArrayOutputStream(4096);
+    this.body = new DataOutputStream(buffer);
+    this.stringIndex = new HashMap<String, Integer>();
+    this.strings = new ArrayList<String>();
+  }
+
+  public void writeString(String s) throws IOException {
+    if(s == null) {
+      writeVarInt(body, 0);
+      return;
+    }
+    Integer index = stringIndex.get(s);
+    if(index == null) {
+      index = strings.size();
+      strings.add(s);
+      stringIndex.put(s, index);
+    }
+    writeVarInt(body, index + 1);
+  }
+
+  public void writeUri(String uri) throws IOException {
+    if(uri == null) {
+      this.writeString(null);
+      this.writeString(null);
+      return;
+    }
+    int split = uri.lastIndexOf('#') + 1;
+    if(split == 0)
+      split = uri.lastIndexOf('/') + 1;
+    this.writeString(uri.substring(0, split));
+    this.writeString(uri.substring(split));
+  }
+
+  public void writeInt(int value) throws IOException {
+    writeVarInt(body, (value << 1) ^ (value >> 31));
+  }
+
+  public void writeLong(long value) throws IOException {
+    writeVarLong(body, (value << 1) ^ (value >> 63));
+  }
+
+  public void writeBoolean(boolean value) throws IOException {
+    body.writeByte(value ? 1 : 0);
+  }
+
+  /**
+   * Write a typed value. Types other than strings, numbers, booleans and
+   * dates are written as strings
+   */
+  public void writeValue(Object value) throws IOException {
+    if(value == null) {
+      body.writeByte(NULL);
+    }
+    else if(value instanceof Integer) {
+      body.writeByte(INTEGER);
+      this.writeInt((Integer) value);
+    }
+    else if(value instanceof Long) {
+      body.writeByte(LONG);
+      this.writeLong((Long) value);
+    }
+    else if(value instanceof Float) {
+      body.writeByte(FLOAT);
+      body.writeFloat((Float) value);
+    }
+    else if(value instanceof Double) {
+      body.writeByte(DOUBLE);
+      body.writeDouble((Double) value);
+    }
+    else if(value instanceof Boolean) {
+      body.writeByte(BOOLEAN);
+      this.writeBoolean((Boolean) value);
+    }
+    else if(value instanceof Date) {
+      body.writeByte(DATE);
+      this.writeLong(((Date) value).getTime());
+    }
+    else {
+      body.writeByte(STRING);
+      this.writeString(value.toString());
+    }
+  }
+
+  /**
+   * Write out the header, string table and body, and close the stream
+   */
+  public void close() throws IOException {
+    try {
+      body.flush();
+      DataOutputStream dout = new DataOutputStream(out);
+      dout.write(magic.getBytes(StandardCharsets.US_ASCII));
+      writeVarInt(dout, version);
+      writeVarInt(dout, strings.size());
+      for(String s : strings) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(dout, bytes.length);
+        dout.write(bytes);
+      }
+      writeVarInt(dout, buffer.size());
+      buffer.writeTo(dout);
+      dout.flush();
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  static void writeVarInt(DataOutputStream out, int value) throws IOException {
+    while((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  static void writeVarLong(DataOutputStream out, long value)
+      throws IOException {
+    while((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.common;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * A persistent cache of file md5 digests, keyed on the file path, size and
+ * last modified time. A file is only re-read if any of those change.
+ *
+ * The cache file is an append-only log of [path, size, mtime, md5] lines,
+ * where later lines override earlier ones. It is compacted when loaded.
+ */
+public class FileDigestCache {
+  private static ConcurrentHashMap<String, FileDigestCache> caches =
+      new ConcurrentHashMap<String, FileDigestCache>();
+
+  private File cacheFile;
+  private ConcurrentHashMap<String, Digest> digests;
+  private PrintWriter log;
+
+  /**
+   * Get the digest cache stored in the given file. There is only one
+   * instance per cache file in a JVM
+   */
+  public static FileDigestCache getCache(String cacheFilePath) {
+    String key = new File(cacheFilePath).getAbsolutePath();
+    FileDigestCache cache = caches.get(key);
+    if(cache == null) {
+      synchronized(caches) {
+        cache = caches.get(key);
+        if(cache == null) {
+          cache = new FileDigestCache(new File(key));
+          caches.put(key, cache);
+        }
+      }
+    }
+    return cache;
+  }
+
+  private FileDigestCache(File cacheFile) {
+    this.cacheFile = cacheFile;
+    this.digests = new ConcurrentHashMap<String, Digest>();
+    this.load();
+  }
+
+  public String getMD5(File f) throws IOException {
+    String path = f.getAbsolutePath();
+    long size = f.length();
+    long mtime = f.lastModified();
+    Digest digest = digests.get(path);
+    if(digest != null && digest.size == size && digest.mtime == mtime)
+      return digest.md5;
+
+    InputStream in = new FileInputStream(f);
+    try {
+      digest = new Digest(size, mtime, DigestUtils.md5Hex(in));
+    }
+    finally {
+      in.close();
+    }
+    digests.put(path, digest);
+    this.append(path, digest);
+    return digest.md5;
+  }
+
+  private void load() {
+    int lines = 0;
+    if(cacheFile.exists()) {
+      try {
+        BufferedReader reader = new BufferedReader(new FileReader(cacheFile));
+        try {
+          String line;
+          while((line = reader.readLine()) != null) {
+            lines++;
+            // Split from the right, as paths may contain tabs
+            int i3 = line.lastIndexOf('\t');
+            int i2 = i3 > 0 ? line.lastIndexOf('\t', i3 - 1) : -1;
+            int i1 = i2 > 0 ? line.lastIndexOf('\t', i2 - 1) : -1;
+            if(i1 <= 0)
+              continue;
+            try {
+              digests.put(line.substring(0, i1), new Digest(
+                  Long.parseLong(line.substring(i1 + 1, i2)),
+                  Long.parseLong(line.substring(i2 + 1, i3)),
+                  line.substring(i3 + 1)));
+            }
+            catch (NumberFormatException e) {
+              // Skip partially written lines
+            }
+          }
+        }
+        finally {
+          reader.close();
+        }
+      }
+      catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    // Rewrite the log if it has a lot of stale lines
+    if(lines > 2 * digests.size() + 1000)
+      this.compact();
+  }
+
+  private synchronized void compact() {
+    try {
+      File tmpFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+      PrintWriter writer = new PrintWriter(new FileWriter(tmpFile));
+      for(Map.Entry<String, Digest> entry : digests.entrySet())
+        writer.println(this.toLine(entry.getKey(), entry.getValue()));
+      writer.close();
+      if(!cacheFile.delete() || !tmpFile.renameTo(cacheFile))
+        System.err.println("Could not compact digest cache " + cacheFile);
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private synchronized void append(String path, Digest digest) {
+    try {
+      if(log == null) {
+        File dir = cacheFile.getParentFile();
+        if(dir != null && !dir.exists())
+          dir.mkdirs();
+        log = new PrintWriter(new FileWriter(cacheFile, true));
+      }
+      log.println(this.toLine(path, digest));
+      log.flush();
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private String toLine(String path, Digest digest) {
+    return path + "\t" + digest.size + "\t" + digest.mtime + "\t" + digest.md5;
+  }
+
+  static class Digest {
+    long size;
+    long mtime;
+    String md5;
+
+    Digest(long size, long mtime, String md5) {
+      this.size = size;
+      this.mtime = mtime;
+      this.md5 = md5;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.common.kb;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+
+import edu.isi.wings.common.URIEntity;
+
+/**
+ * Location of the compact binary copies of run graphs (expanded templates
+ * and execution plans). They are stored next to the run's RDF files, in
+ * the domain's executions directory (or in storage.binary.dir).
+ *
+ * Binary storage is off unless storage.binary is set to true.
+ *
+ * A graph written only in binary form has a "pending" marker, which holds
+ * its id and kind. The marker is removed once the RDF graph is written.
+ */
+public class CompactGraphStore {
+  public static final String TEMPLATE = "template";
+  public static final String PLAN = "plan";
+
+  private static final String BINARY_EXT = ".wbin";
+  private static final String PENDING_EXT = ".pending";
+
+  public static boolean isEnabled(Properties props) {
+    return "true".equalsIgnoreCase(props.getProperty("storage.binary", "false").trim())
+        && getDirectory(props) != null;
+  }
+
+  public static File getDirectory(Properties props) {
+    String dir = props.getProperty("storage.binary.dir");
+    if(dir != null)
+      return new File(dir);
+    String map = props.getProperty("domain.executions.dir.map");
+    if(map == null || !map.startsWith("file:"))
+      return null;
+    try {
+      return new File(new URI(map).getRawPath());
+    }
+    catch (Exception e) {
+      return new File(map.substring(5));
+    }
+  }
+
+  /**
+   * Binary file of the graph with the given id (null if binary storage
+   * isn't available, or the id isn't that of a run graph)
+   */
+  public static File getFile(Properties props, String id) {
+    File dir = getDirectory(props);
+    if(dir == null || id == null)
+      return null;
+    String prefix = props.getProperty("domain.executions.dir.url");
+    if(prefix != null && !id.startsWith(prefix))
+      return null;
+    String url = new URIEntity(id).getURL();
+    String name = KBUtils.sanitizeID(url.substring(url.lastIndexOf('/') + 1));
+    return new File(dir, name + BINARY_EXT);
+  }
+
+  public static boolean exists(Properties props, String id) {
+    File f = getFile(props, id);
+    return f != null && f.exists();
+  }
+
+  public static void markPending(Properties props, String id, String kind)
+      throws IOException {
+    FileUtils.writeStringToFile(getPendingFile(props, id), kind + "\n" + id,
+        StandardCharsets.UTF_8.name());
+  }
+
+  public static boolean isPending(Properties props, String id) {
+    File f = getPendingFile(props, id);
+    return f != null && f.exists();
+  }
+
+  /**
+   * Kind of a graph that has only been written in binary form
+   * @return TEMPLATE or PLAN, or null if the graph isn't pending
+   */
+  public static String getPendingKind(Properties props, String id) {
+    File f = getPendingFile(props, id);
+    if(f == null || !f.exists())
+      return null;
+    try {
+      return FileUtils.readFileToString(f,
+          StandardCharsets.UTF_8.name()).split("\n")[0].trim();
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  public static void clearPending(Properties props, String id) {
+    File f = getPendingFile(props, id);
+    if(f != null)
+      f.delete();
+  }
+
+  /**
+   * Graphs that have only been written in binary form
+   * @return Map of graph id to kind (TEMPLATE or PLAN)
+   */
+  public static HashMap<String, String> getPendingGraphs(Properties props) {
+    HashMap<String, String> graphs = new HashMap<String, String>();
+    File dir = getDirectory(props);
+    File[] files = dir != null ? dir.listFiles() : null;
+    if(files == null)
+      return graphs;
+    for(File f : files) {
+      if(!f.getName().endsWith(PENDING_EXT))
+        continue;
+      try {
+        String[] lines = FileUtils.readFileToString(f,
+            StandardCharsets.UTF_8.name()).split("\n");
+        if(lines.length == 2)
+          graphs.put(lines[1].trim(), lines[0].trim());
+      }
+      catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    return graphs;
+  }
+
+  public static void delete(Properties props, String id) {
+    File f = getFile(props, id);
+    if(f != null)
+      f.delete();
+    clearPending(props, id);
+  }
+
+  private static File getPendingFile(Properties props, String id) {
+    File f = getFile(props, id);
+    if(f == null)
+      return null;
+    return new File(f.getParentFile(), f.getName() + PENDING_EXT);
+  }
+}
@@ -0,0 +1,463 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.common.kb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+import edu.isi.kcap.ontapi.KBAPI;
+import edu.isi.kcap.ontapi.KBObject;
+import edu.isi.kcap.ontapi.KBTriple;
+import edu.isi.kcap.ontapi.OntFactory;
+import edu.isi.kcap.ontapi.OntSpec;
+
+/**
+ * An in-memory triple store for the temporary kb of a single component
+ * invocation, to use instead of creating a full KBAPI for each one.
+ * 
+ * Nodes are interned to integer ids, and triples are kept in integer arrays
+ * indexed by subject, subject+predicate, predicate and predicate+object.
+ * Triples added before mark() are kept by rewind(), so that a base shared by
+ * many invocations (e.g. the redbox and domain knowledge) is only added
+ * once. reset() empties the workspace, but keeps its arrays.
+ * 
+ * Only the part of KBAPI needed to set up the rule input (and query it) is
+ * supported. toKB() loads the triples into a KBAPI when rules have to run.
+ * Not thread-safe.
+ */
+public class TripleWorkspace {
+  private static final int NONE = -1;
+
+  private OntFactory factory;
+  // Used only to create literals, which are cached
+  private KBAPI literalkb;
+  private HashMap<String, KBObject> literals = new HashMap<String, KBObject>();
+
+  // Node table
+  private HashMap<String, Integer> nodeids = new HashMap<String, Integer>();
+  private ArrayList<KBObject> nodes = new ArrayList<KBObject>();
+
+  // Triples, and the next triple with the same subject, subject+predicate,
+  // predicate and predicate+object
+  private int[] subjects, predicates, objects;
+  private int[] nextS, nextSP, nextP, nextPO;
+  private boolean[] removed;
+  private int count = 0;
+  private int live = 0;
+
+  // First triple for a subject, subject+predicate, etc.
+  private LongIntMap byS = new LongIntMap();
+  private LongIntMap bySP = new LongIntMap();
+  private LongIntMap byP = new LongIntMap();
+  private LongIntMap byPO = new LongIntMap();
+
+  // State at the last mark()
+  private int markCount = 0;
+  private int markLive = 0;
+  private int[] removedBeforeMark = new int[16];
+  private int numRemovedBeforeMark = 0;
+
+  public TripleWorkspace(OntFactory factory) {
+    this(factory, 256);
+  }
+
+  public TripleWorkspace(OntFactory factory, int capacity) {
+    this.factory = factory;
+    capacity = Math.max(capacity, 16);
+    this.subjects = new int[capacity];
+    this.predicates = new int[capacity];
+    this.objects = new int[capacity];
+    this.nextS = new int[capacity];
+    this.nextSP = new int[capacity];
+    this.nextP = new int[capacity];
+    this.nextPO = new int[capacity];
+    this.removed = new boolean[capacity];
+  }
+
+  /*
+   * Adding and removing triples
+   */
+
+  public void addTriple(KBObject subj, KBObject pred, KBObject obj) {
+    if(subj == null || pred == null || obj == null)
+      return;
+    int s = intern(subj), p = intern(pred), o = intern(obj);
+    if(find(s, p, o) != NONE)
+      return;
+    if(count == subjects.length)
+      grow();
+    int i = count++;
+    subjects[i] = s;
+    predicates[i] = p;
+    objects[i] = o;
+    removed[i] = false;
+    nextS[i] = byS.put(s, i);
+    nextSP[i] = bySP.put(pair(s, p), i);
+    nextP[i] = byP.put(p, i);
+    nextPO[i] = byPO.put(pair(p, o), i);
+    live++;
+  }
+
+  public void addTriple(KBTriple triple) {
+    this.addTriple(triple.getSubject(), triple.getPredicate(), 
+        triple.getObject());
+  }
+
+  public void addTriples(Collection<KBTriple> triples) {
+    for(KBTriple triple : triples)
+      this.addTriple(triple);
+  }
+
+  public void removeTriple(KBObject subj, KBObject pred, KBObject obj) {
+    int s = id(subj), p = id(pred), o = id(obj);
+    if(s == NONE || p == NONE || o == NONE)
+      return;
+    int i = find(s, p, o);
+    if(i != NONE)
+      remove(i);
+  }
+
+  /**
+   * Replace all values of the property with the given value
+   */
+  public void setPropertyValue(KBObject subj, KBObject pred, KBObject obj) {
+    int s = id(subj), p = id(pred);
+    if(s != NONE && p != NONE) {
+      for(int i = bySP.get(pair(s, p)); i != NONE; i = nextSP[i])
+        if(!removed[i])
+          remove(i);
+    }
+    this.addTriple(subj, pred, obj);
+  }
+
+  /*
+   * Queries
+   */
+
+  /**
+   * Get the triples matching the pattern (null matches anything)
+   */
+  public ArrayList<KBTriple> genericTripleQuery(KBObject subj, KBObject pred,
+      KBObject obj) {
+    ArrayList<KBTriple> triples = new ArrayList<KBTriple>();
+    int s = subj != null ? id(subj) : NONE;
+    int p = pred != null ? id(pred) : NONE;
+    int o = obj != null ? id(obj) : NONE;
+    // Nodes that aren't in the workspace match nothing
+    if((subj != null && s == NONE) || (pred != null && p == NONE) 
+        || (obj != null && o == NONE))
+      return triples;
+
+    if(subj != null && pred != null) {
+      for(int i = bySP.get(pair(s, p)); i != NONE; i = nextSP[i])
+        if(!removed[i] && (obj == null || objects[i] == o))
+          triples.add(triple(i));
+    }
+    else if(subj != null) {
+      for(int i = byS.get(s); i != NONE; i = nextS[i])
+        if(!removed[i] && (obj == null || objects[i] == o))
+          triples.add(triple(i));
+    }
+    else if(pred != null && obj != null) {
+      for(int i = byPO.get(pair(p, o)); i != NONE; i = nextPO[i])
+        if(!removed[i])
+          triples.add(triple(i));
+    }
+    else if(pred != null) {
+      for(int i = byP.get(p); i != NONE; i = nextP[i])
+        if(!removed[i])
+          triples.add(triple(i));
+    }
+    else {
+      for(int i = 0; i < count; i++)
+        if(!removed[i] && (obj == null || objects[i] == o))
+          triples.add(triple(i));
+    }
+    return triples;
+  }
+
+  public KBObject getPropertyValue(KBObject subj, KBObject pred) {
+    int s = id(subj), p = id(pred);
+    if(s == NONE || p == NONE)
+      return null;
+    for(int i = bySP.get(pair(s, p)); i != NONE; i = nextSP[i])
+      if(!removed[i])
+        return nodes.get(objects[i]);
+    return null;
+  }
+
+  public ArrayList<KBObject> getPropertyValues(KBObject subj, KBObject pred) {
+    ArrayList<KBObject> values = new ArrayList<KBObject>();
+    int s = id(subj), p = id(pred);
+    if(s == NONE || p == NONE)
+      return values;
+    for(int i = bySP.get(pair(s, p)); i != NONE; i = nextSP[i])
+      if(!removed[i])
+        values.add(nodes.get(objects[i]));
+    return values;
+  }
+
+  /**
+   * Get the resource with the given id (it doesn't have to be in the 
+   * workspace yet)
+   */
+  public KBObject getResource(String id) {
+    Integer nodeid = nodeids.get(id);
+    if(nodeid != null)
+      return nodes.get(nodeid);
+    return factory.getObject(id);
+  }
+
+  public KBObject createLiteral(Object value) {
+    if(value == null)
+      return null;
+    String key = literalKey(value, value.getClass().getName());
+    KBObject lit = literals.get(key);
+    if(lit == null) {
+      lit = this.getLiteralKB().createLiteral(value);
+      literals.put(key, lit);
+    }
+    return lit;
+  }
+
+  public KBObject createXSDLiteral(String value, String datatype) {
+    if(value == null)
+      return null;
+    String key = literalKey(value, datatype);
+    KBObject lit = literals.get(key);
+    if(lit == null) {
+      lit = this.getLiteralKB().createXSDLiteral(value, datatype);
+      literals.put(key, lit);
+    }
+    return lit;
+  }
+
+  public int size() {
+    return live;
+  }
+
+  public ArrayList<KBTriple> getAllTriples() {
+    ArrayList<KBTriple> triples = new ArrayList<KBTriple>(live);
+    for(int i = 0; i < count; i++)
+      if(!removed[i])
+        triples.add(triple(i));
+    return triples;
+  }
+
+  /**
+   * Load the triples into a new (plain) KBAPI, e.g. to run rules on them
+   */
+  public KBAPI toKB() {
+    KBAPI tkb = factory.getKB(OntSpec.PLAIN);
+    tkb.addTriples(this.getAllTriples());
+    return tkb;
+  }
+
+  /*
+   * Reuse
+   */
+
+  /**
+   * Remember the current triples, to go back to them with rewind()
+   */
+  public void mark() {
+    markCount = count;
+    markLive = live;
+    numRemovedBeforeMark = 0;
+  }
+
+  /**
+   * Drop everything added (and restore everything removed) since mark()
+   */
+  public void rewind() {
+    for(int i = count - 1; i >= markCount; i--) {
+      // Triples are at the head of their chains when undone newest first
+      byS.put(subjects[i], nextS[i]);
+      bySP.put(pair(subjects[i], predicates[i]), nextSP[i]);
+      byP.put(predicates[i], nextP[i]);
+      byPO.put(pair(predicates[i], objects[i]), nextPO[i]);
+    }
+    for(int j = 0; j < numRemovedBeforeMark; j++)
+      removed[removedBeforeMark[j]] = false;
+    numRemovedBeforeMark = 0;
+    count = markCount;
+    live = markLive;
+  }
+
+  /**
+   * Remove everything, keeping the allocated memory
+   */
+  public void reset() {
+    literals.clear();
+    nodeids.clear();
+    nodes.clear();
+    byS.clear();
+    bySP.clear();
+    byP.clear();
+    byPO.clear();
+    count = live = 0;
+    markCount = markLive = 0;
+    numRemovedBeforeMark = 0;
+  }
+
+  /*
+   * Internals
+   */
+
+  private KBAPI getLiteralKB() {
+    if(literalkb == null)
+      literalkb = factory.getKB(OntSpec.PLAIN);
+    return literalkb;
+  }
+
+  private static String key(KBObject obj) {
+    if(obj.isLiteral())
+      return literalKey(obj.getValue(), obj.getDataType());
+    return obj.getID() != null ? obj.getID() : obj.toString();
+  }
+
+  private static String literalKey(Object value, String datatype) {
+    return "\"" + value + "\"^^" + datatype;
+  }
+
+  private int intern(KBObject obj) {
+    String key = key(obj);
+    Integer nodeid = nodeids.get(key);
+    if(nodeid == null) {
+      nodeid = nodes.size();
+      nodes.add(obj);
+      nodeids.put(key, nodeid);
+    }
+    return nodeid;
+  }
+
+  private int id(KBObject obj) {
+    if(obj == null)
+      return NONE;
+    Integer nodeid = nodeids.get(key(obj));
+    return nodeid != null ? nodeid : NONE;
+  }
+
+  private int find(int s, int p, int o) {
+    for(int i = bySP.get(pair(s, p)); i != NONE; i = nextSP[i])
+      if(!removed[i] && objects[i] == o)
+        return i;
+    return NONE;
+  }
+
+  private void remove(int i) {
+    // Left in the index chains, and skipped by the queries
+    removed[i] = true;
+    live--;
+    if(i < markCount) {
+      if(numRemovedBeforeMark == removedBeforeMark.length)
+        removedBeforeMark = Arrays.copyOf(removedBeforeMark, 
+            2 * removedBeforeMark.length);
+      removedBeforeMark[numRemovedBeforeMark++] = i;
+    }
+  }
+
+  private KBTriple triple(int i) {
+    return factory.getTriple(nodes.get(subjects[i]), 
+        nodes.get(predicates[i]), nodes.get(objects[i]));
+  }
+
+  private static long pair(int a, int b) {
+    return ((long) a << 32) | (b & 0xffffffffL);
+  }
+
+  private void grow() {
+    int capacity = 2 * subjects.length;
+    subjects = Arrays.copyOf(subjects, capacity);
+    predicates = Arrays.copyOf(predicates, capacity);
+    objects = Arrays.copyOf(objects, capacity);
+    nextS = Arrays.copyOf(nextS, capacity);
+    nextSP = Arrays.copyOf(nextSP, capacity);
+    nextP = Arrays.copyOf(nextP, capacity);
+    nextPO = Arrays.copyOf(nextPO, capacity);
+    removed = Arrays.copyOf(removed, capacity);
+  }
+
+  /**
+   * Open addressing map from (non-negative) long keys to int values
+   */
+  static class LongIntMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+
+    LongIntMap() {
+      keys = new long[64];
+      values = new int[64];
+      Arrays.fill(keys, EMPTY);
+    }
+
+    int get(long key) {
+      int mask = keys.length - 1;
+      for(int i = hash(key) & mask; keys[i] != EMPTY; i = (i + 1) & mask)
+        if(keys[i] == key)
+          return values[i];
+      return NONE;
+    }
+
+    /**
+     * @return the previous value (or NONE)
+     */
+    int put(long key, int value) {
+      int mask = keys.length - 1;
+      int i = hash(key) & mask;
+      for(; keys[i] != EMPTY; i = (i + 1) & mask) {
+        if(keys[i] == key) {
+          int old = values[i];
+          values[i] = value;
+          return old;
+        }
+      }
+      keys[i] = key;
+      values[i] = value;
+      if(++size > keys.length / 2)
+        rehash();
+      return NONE;
+    }
+
+    void clear() {
+      Arrays.fill(keys, EMPTY);
+      size = 0;
+    }
+
+    private void rehash() {
+      long[] oldkeys = keys;
+      int[] oldvalues = values;
+      keys = new long[2 * oldkeys.length];
+      values = new int[2 * oldkeys.length];
+      Arrays.fill(keys, EMPTY);
+      size = 0;
+      for(int i = 0; i < oldkeys.length; i++)
+        if(oldkeys[i] != EMPTY)
+          put(oldkeys[i], oldvalues[i]);
+    }
+
+    private static int hash(long key) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+  }
+}
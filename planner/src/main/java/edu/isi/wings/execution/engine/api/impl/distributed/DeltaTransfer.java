@@ -0,0 +1,621 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.execution.engine.api.impl.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.gridkit.vicluster.ViNode;
+
+/**
+ * Transfers files to a machine over the nanocloud remote execution channel,
+ * either as an rsync style delta against the copy already on the machine,
+ * or as compressed chunks.
+ */
+public class DeltaTransfer {
+  // Size of the chunks sent in a compressed transfer
+  static final int CHUNK_SIZE = 8 * 1024 * 1024;
+
+  // Give up on a delta if it needs more literal data than this
+  static final long MAX_LITERAL = 64 * 1024 * 1024;
+
+  // Only compress files whose first bytes shrink to this ratio or less
+  static final double COMPRESSIBLE_RATIO = 0.9;
+
+  interface RemoteExecutor {
+    <T> T exec(Callable<T> task) throws Exception;
+  }
+
+  static RemoteExecutor getExecutor(final ViNode node) {
+    return new RemoteExecutor() {
+      @Override
+      public <T> T exec(Callable<T> task) throws Exception {
+        return node.exec(task);
+      }
+    };
+  }
+
+  /**
+   * Update the remote copy of a file by only sending the parts of the
+   * local file that it doesn't already have
+   * @return false if the delta could not be (or wasn't worth) sent. The
+   *         caller should then fall back to a full upload
+   */
+  public static boolean sendDelta(ViNode node, File local, String remote,
+      String md5, boolean compress) {
+    return sendDelta(getExecutor(node), local, remote, md5, compress);
+  }
+
+  static boolean sendDelta(RemoteExecutor node, File local, String remote,
+      String md5, boolean compress) {
+    try {
+      BlockSignatures sigs = node.exec(
+          new RemoteSignatureReader(remote, local.length()));
+      if(sigs == null)
+        return false;
+      byte[] delta = computeDelta(local, sigs, compress);
+      if(delta == null)
+        return false;
+      return node.exec(new RemoteDeltaPatcher(remote, sigs.blockSize,
+          delta, compress, md5));
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+  /**
+   * Send a file as a series of compressed chunks
+   */
+  public static boolean sendCompressed(ViNode node, File local, String remote,
+      String md5) {
+    return sendCompressed(getExecutor(node), local, remote, md5);
+  }
+
+  static boolean sendCompressed(RemoteExecutor node, File local,
+      String remote, String md5) {
+    // Names the remote temporary file, so that concurrent or abandoned
+    // transfers of the same file don't write into each other's
+    String transferId = UUID.randomUUID().toString();
+    boolean done = false;
+    try {
+      InputStream in = new FileInputStream(local);
+      try {
+        byte[] buf = new byte[(int) Math.min(CHUNK_SIZE,
+            Math.max(local.length(), 1))];
+        long length = local.length();
+        long offset = 0;
+        while(true) {
+          int len = IOUtils.read(in, buf);
+          boolean last = (offset + len >= length);
+          if(len == 0 && !last)
+            return false;
+          byte[] chunk = deflate(buf, 0, len);
+          if(!node.exec(new RemoteChunkWriter(remote, transferId, offset,
+              chunk, last ? md5 : null)))
+            return false;
+          offset += len;
+          if(last) {
+            done = true;
+            return true;
+          }
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      return false;
+    }
+    finally {
+      if(!done)
+        abortCompressed(node, remote, transferId);
+    }
+  }
+
+  private static void abortCompressed(RemoteExecutor node, String remote,
+      String transferId) {
+    try {
+      node.exec(new RemoteChunkWriter(remote, transferId, -1, null, null));
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Check if the start of the file compresses well
+   */
+  public static boolean isCompressible(File f) {
+    try {
+      InputStream in = new FileInputStream(f);
+      try {
+        byte[] buf = new byte[64 * 1024];
+        int len = IOUtils.read(in, buf);
+        if(len == 0)
+          return false;
+        return deflate(buf, 0, len).length <= len * COMPRESSIBLE_RATIO;
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  static int getBlockSize(long size) {
+    int bs = (int) Math.sqrt(size);
+    bs = (bs / 1024 + 1) * 1024;
+    return Math.max(2048, Math.min(bs, 128 * 1024));
+  }
+
+  static byte[] deflate(byte[] buf, int off, int len) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    DeflaterOutputStream out = new DeflaterOutputStream(bout,
+        new Deflater(Deflater.BEST_SPEED));
+    out.write(buf, off, len);
+    out.close();
+    return bout.toByteArray();
+  }
+
+  /**
+   * Compute the delta instructions that turn the remote file (described by
+   * its block signatures) into the local file.
+   * @return the delta, or null if it would need too much literal data
+   */
+  static byte[] computeDelta(File local, BlockSignatures sigs,
+      boolean compress) throws Exception {
+    int bs = sigs.blockSize;
+    long maxLiteral = Math.min(MAX_LITERAL, local.length() / 2);
+
+    // Index the full remote blocks by their weak checksum
+    HashMap<Integer, ArrayList<Integer>> table =
+        new HashMap<Integer, ArrayList<Integer>>();
+    int fullBlocks = (int) (sigs.length / bs);
+    for(int i=0; i<fullBlocks; i++) {
+      ArrayList<Integer> blocks = table.get(sigs.weak[i]);
+      if(blocks == null) {
+        blocks = new ArrayList<Integer>();
+        table.put(sigs.weak[i], blocks);
+      }
+      blocks.add(i);
+    }
+
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    OutputStream out = compress ?
+        new DeflaterOutputStream(bout, new Deflater(Deflater.BEST_SPEED)) : bout;
+    DeltaWriter writer = new DeltaWriter(new DataOutputStream(out));
+    MessageDigest md = MessageDigest.getInstance("MD5");
+    RollingChecksum rc = new RollingChecksum();
+
+    InputStream in = new BufferedInputStream(new FileInputStream(local),
+        64 * 1024);
+    // Circular window over the local file. [start] is the oldest byte
+    byte[] window = new byte[bs];
+    int start = 0;
+    int count;
+    try {
+      count = IOUtils.read(in, window);
+      if(count == bs)
+        rc.reset(window, 0, bs);
+      while(count == bs) {
+        int match = -1;
+        ArrayList<Integer> candidates = table.get(rc.value());
+        if(candidates != null) {
+          md.update(window, start, bs - start);
+          md.update(window, 0, start);
+          byte[] strong = md.digest();
+          for(int block : candidates) {
+            if(Arrays.equals(strong, sigs.strong[block])) {
+              match = block;
+              break;
+            }
+          }
+        }
+        if(match >= 0) {
+          writer.copy(match);
+          start = 0;
+          count = IOUtils.read(in, window);
+          if(count == bs)
+            rc.reset(window, 0, bs);
+        }
+        else {
+          byte old = window[start];
+          writer.literal(old);
+          int next = in.read();
+          if(next < 0) {
+            start = (start + 1) % bs;
+            count = bs - 1;
+            break;
+          }
+          window[start] = (byte) next;
+          start = (start + 1) % bs;
+          rc.roll(old, (byte) next);
+        }
+        if(writer.literalBytes > maxLiteral)
+          return null;
+      }
+    }
+    finally {
+      in.close();
+    }
+
+    // What's left in the window. It may match the last (partial) remote block
+    byte[] tail = new byte[count];
+    for(int i=0; i<count; i++)
+      tail[i] = window[(start + i) % bs];
+    int lastBlock = sigs.weak.length - 1;
+    if(count > 0 && lastBlock >= 0 && sigs.length % bs == count &&
+        Arrays.equals(md.digest(tail), sigs.strong[lastBlock])) {
+      writer.copy(lastBlock);
+    }
+    else {
+      for(byte b : tail)
+        writer.literal(b);
+    }
+    if(writer.literalBytes > maxLiteral)
+      return null;
+    writer.finish();
+    out.close();
+    return bout.toByteArray();
+  }
+}
+
+/**
+ * rsync's rolling checksum over a window of bytes
+ */
+class RollingChecksum {
+  int a, b, len;
+
+  void reset(byte[] buf, int off, int len) {
+    this.a = 0;
+    this.b = 0;
+    this.len = len;
+    for(int i=0; i<len; i++) {
+      int x = buf[off + i] & 0xff;
+      a += x;
+      b += (len - i) * x;
+    }
+    a &= 0xffff;
+    b &= 0xffff;
+  }
+
+  void roll(byte out, byte in) {
+    int x = out & 0xff;
+    a = (a - x + (in & 0xff)) & 0xffff;
+    b = (b - len * x + a) & 0xffff;
+  }
+
+  int value() {
+    return a | (b << 16);
+  }
+
+  static int of(byte[] buf, int off, int len) {
+    RollingChecksum rc = new RollingChecksum();
+    rc.reset(buf, off, len);
+    return rc.value();
+  }
+}
+
+/**
+ * Writes delta instructions:
+ *  'C' [start block] [number of blocks] : copy blocks from the remote file
+ *  'L' [length] [bytes] : literal data
+ *  'E' : end
+ */
+class DeltaWriter {
+  DataOutputStream out;
+  ByteArrayOutputStream literal;
+  long literalBytes = 0;
+  int copyStart = -1;
+  int copyCount = 0;
+
+  DeltaWriter(DataOutputStream out) {
+    this.out = out;
+    this.literal = new ByteArrayOutputStream();
+  }
+
+  void copy(int block) throws IOException {
+    this.flushLiteral();
+    if(copyStart >= 0 && copyStart + copyCount == block) {
+      copyCount++;
+      return;
+    }
+    this.flushCopy();
+    copyStart = block;
+    copyCount = 1;
+  }
+
+  void literal(byte b) throws IOException {
+    this.flushCopy();
+    literal.write(b);
+    literalBytes++;
+    if(literal.size() >= 64 * 1024)
+      this.flushLiteral();
+  }
+
+  void finish() throws IOException {
+    this.flushLiteral();
+    this.flushCopy();
+    out.writeByte('E');
+    out.flush();
+  }
+
+  private void flushCopy() throws IOException {
+    if(copyStart < 0)
+      return;
+    out.writeByte('C');
+    out.writeInt(copyStart);
+    out.writeInt(copyCount);
+    copyStart = -1;
+    copyCount = 0;
+  }
+
+  private void flushLiteral() throws IOException {
+    if(literal.size() == 0)
+      return;
+    out.writeByte('L');
+    out.writeInt(literal.size());
+    literal.writeTo(out);
+    literal.reset();
+  }
+}
+
+class BlockSignatures implements Serializable {
+  private static final long serialVersionUID = -4510930447810239436L;
+
+  int blockSize;
+  long length;
+  int[] weak;
+  byte[][] strong;
+
+  BlockSignatures(int blockSize, long length, int numBlocks) {
+    this.blockSize = blockSize;
+    this.length = length;
+    this.weak = new int[numBlocks];
+    this.strong = new byte[numBlocks][];
+  }
+}
+
+class RemoteSignatureReader implements Callable<BlockSignatures>, Serializable {
+  private static final long serialVersionUID = 3377658425390172045L;
+
+  String path;
+  long localSize;
+
+  public RemoteSignatureReader(String path, long localSize) {
+    this.path = path;
+    this.localSize = localSize;
+  }
+
+  @Override
+  public BlockSignatures call() throws Exception {
+    File f = new File(path);
+    if(!f.isFile())
+      return null;
+    int bs = DeltaTransfer.getBlockSize(Math.max(f.length(), localSize));
+    int numBlocks = (int) ((f.length() + bs - 1) / bs);
+    BlockSignatures sigs = new BlockSignatures(bs, f.length(), numBlocks);
+
+    MessageDigest md = MessageDigest.getInstance("MD5");
+    byte[] buf = new byte[bs];
+    InputStream in = new BufferedInputStream(new FileInputStream(f));
+    try {
+      for(int i=0; i<numBlocks; i++) {
+        int len = IOUtils.read(in, buf);
+        sigs.weak[i] = RollingChecksum.of(buf, 0, len);
+        md.update(buf, 0, len);
+        sigs.strong[i] = md.digest();
+      }
+    }
+    finally {
+      in.close();
+    }
+    return sigs;
+  }
+}
+
+class RemoteDeltaPatcher implements Callable<Boolean>, Serializable {
+  private static final long serialVersionUID = -1842094553604335118L;
+
+  String path;
+  int blockSize;
+  byte[] delta;
+  boolean compressed;
+  String md5;
+
+  public RemoteDeltaPatcher(String path, int blockSize, byte[] delta,
+      boolean compressed, String md5) {
+    this.path = path;
+    this.blockSize = blockSize;
+    this.delta = delta;
+    this.compressed = compressed;
+    this.md5 = md5;
+  }
+
+  @Override
+  public Boolean call() throws Exception {
+    File target = new File(path);
+    // Unique per attempt: another transfer may be patching the same file
+    File tmp = File.createTempFile(target.getName() + ".", ".delta",
+        target.getAbsoluteFile().getParentFile());
+    MessageDigest md = MessageDigest.getInstance("MD5");
+    byte[] buf = new byte[blockSize];
+
+    InputStream din = new ByteArrayInputStream(delta);
+    if(compressed)
+      din = new InflaterInputStream(din);
+    DataInputStream in = new DataInputStream(din);
+    RandomAccessFile old = new RandomAccessFile(target, "r");
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+    boolean written = false;
+    try {
+      boolean done = false;
+      while(!done) {
+        byte op = in.readByte();
+        if(op == 'C') {
+          int start = in.readInt();
+          int count = in.readInt();
+          for(int i=0; i<count; i++) {
+            long offset = (long) (start + i) * blockSize;
+            int len = (int) Math.min(blockSize, old.length() - offset);
+            old.seek(offset);
+            old.readFully(buf, 0, len);
+            out.write(buf, 0, len);
+            md.update(buf, 0, len);
+          }
+        }
+        else if(op == 'L') {
+          byte[] literal = new byte[in.readInt()];
+          in.readFully(literal);
+          out.write(literal);
+          md.update(literal);
+        }
+        else if(op == 'E') {
+          done = true;
+        }
+        else {
+          throw new IOException("Bad delta instruction: " + op);
+        }
+      }
+      written = true;
+    }
+    finally {
+      out.close();
+      old.close();
+      in.close();
+      if(!written)
+        tmp.delete();
+    }
+
+    if(!Hex.encodeHexString(md.digest()).equals(md5)) {
+      tmp.delete();
+      return false;
+    }
+    if(target.delete() && tmp.renameTo(target))
+      return true;
+    tmp.delete();
+    return false;
+  }
+}
+
+class RemoteChunkWriter implements Callable<Boolean>, Serializable {
+  private static final long serialVersionUID = 7260359290834413372L;
+
+  String path;
+  String transferId;
+  long offset;
+  byte[] chunk;
+  String md5;
+
+  /**
+   * @param transferId
+   *            Names the temporary file the chunks are written to
+   * @param offset
+   *            -1 to abort the transfer, and remove what was written
+   * @param md5
+   *            Only set for the last chunk. The file is checked and moved
+   *            into place once the last chunk is written
+   */
+  public RemoteChunkWriter(String path, String transferId, long offset,
+      byte[] chunk, String md5) {
+    this.path = path;
+    this.transferId = transferId;
+    this.offset = offset;
+    this.chunk = chunk;
+    this.md5 = md5;
+  }
+
+  @Override
+  public Boolean call() throws Exception {
+    File target = new File(path);
+    File tmp = new File(path + "." + transferId + ".part");
+    if(offset < 0) {
+      tmp.delete();
+      return true;
+    }
+    if(offset == 0) {
+      if(!target.getParentFile().exists())
+        target.getParentFile().mkdirs();
+      tmp.delete();
+    }
+    else if(tmp.length() != offset) {
+      return false;
+    }
+
+    InputStream in = new InflaterInputStream(new ByteArrayInputStream(chunk));
+    OutputStream out = new FileOutputStream(tmp, true);
+    try {
+      IOUtils.copy(in, out);
+    }
+    finally {
+      out.close();
+      in.close();
+    }
+
+    if(md5 == null)
+      return true;
+
+    MessageDigest md = MessageDigest.getInstance("MD5");
+    byte[] buf = new byte[64 * 1024];
+    InputStream fin = new FileInputStream(tmp);
+    try {
+      int len;
+      while((len = fin.read(buf)) > 0)
+        md.update(buf, 0, len);
+    }
+    finally {
+      fin.close();
+    }
+    if(!Hex.encodeHexString(md.digest()).equals(md5)) {
+      tmp.delete();
+      return false;
+    }
+    if(target.exists() && !target.delete())
+      return false;
+    return tmp.renameTo(target);
+  }
+}
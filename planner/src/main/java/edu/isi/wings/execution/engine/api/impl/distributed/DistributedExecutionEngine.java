@@ -19,7 +19,6 @@ package edu.isi.wings.execution.engine.api.impl.distributed;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -28,20 +27,34 @@ import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Properties;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
+import org.gridkit.vicluster.ViNode;
+
 import edu.isi.wings.catalog.resource.classes.EnvironmentValue;
 import edu.isi.wings.catalog.resource.classes.GridkitCloud;
 import edu.isi.wings.catalog.resource.classes.Machine;
+import edu.isi.wings.catalog.resource.classes.MachineMonitor;
+import edu.isi.wings.catalog.resource.classes.MachineReplicaIndex;
+import edu.isi.wings.common.FileDigestCache;
 import edu.isi.wings.execution.engine.api.PlanExecutionEngine;
 import edu.isi.wings.execution.engine.api.StepExecutionEngine;
 import edu.isi.wings.execution.engine.api.impl.local.LocalExecutionEngine;
+import edu.isi.wings.execution.engine.classes.ComponentRuntimeStats;
+import edu.isi.wings.execution.engine.classes.RetryPolicy;
 import edu.isi.wings.execution.engine.classes.RuntimeInfo;
 import edu.isi.wings.execution.engine.classes.RuntimePlan;
 import edu.isi.wings.execution.engine.classes.RuntimeStep;
@@ -53,8 +66,90 @@ import edu.isi.wings.workflow.plan.classes.ExecutionFile;
 public class DistributedExecutionEngine extends LocalExecutionEngine implements
     PlanExecutionEngine, StepExecutionEngine {
   
+  // File (in the storage folder) where file digests are cached
+  static final String DIGEST_CACHE = ".digests";
+  
+  // Delta & compressed transfers for files larger than the threshold
+  protected boolean deltaTransfer = false;
+  protected boolean compressTransfer = false;
+  protected long transferThreshold = 1024 * 1024;
+  
+  // Machines each step has been tried on (for failing over on retries)
+  protected ConcurrentHashMap<String, HashSet<String>> triedMachines =
+      new ConcurrentHashMap<String, HashSet<String>>();
+  
+  // Remote attempts of each running step
+  protected ConcurrentHashMap<String, StepAttempts> runningAttempts =
+      new ConcurrentHashMap<String, StepAttempts>();
+  
+  // Speculative execution: A duplicate of a step is started on another 
+  // machine if it runs longer than [factor] times the [percentile] run time
+  // of its component (needs at least [minSamples] earlier runs)
+  protected boolean speculative = false;
+  protected double speculativePercentile = 90;
+  protected double speculativeFactor = 1.5;
+  protected int speculativeMinSamples = 5;
+  protected long speculativeInterval = 10;
+  private volatile ScheduledFuture<?> speculator;
+  
+  // Schedules retries after their backoff, and straggler checks
+  private static ScheduledExecutorService retryScheduler = 
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "step-retry");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+  
   public DistributedExecutionEngine(Properties props) {
     super(props);
+    if(props.containsKey("sftp.channels"))
+      GridkitCloud.setMaxChannels(
+          Integer.parseInt(props.getProperty("sftp.channels")));
+    if(props.containsKey("transfer.delta"))
+      this.deltaTransfer = Boolean.parseBoolean(
+          props.getProperty("transfer.delta"));
+    if(props.containsKey("transfer.compress"))
+      this.compressTransfer = Boolean.parseBoolean(
+          props.getProperty("transfer.compress"));
+    if(props.containsKey("transfer.threshold"))
+      this.transferThreshold = Long.parseLong(
+          props.getProperty("transfer.threshold"));
+    if(props.containsKey("speculative"))
+      this.speculative = Boolean.parseBoolean(
+          props.getProperty("speculative"));
+    if(props.containsKey("speculative.percentile"))
+      this.speculativePercentile = Double.parseDouble(
+          props.getProperty("speculative.percentile"));
+    if(props.containsKey("speculative.factor"))
+      this.speculativeFactor = Double.parseDouble(
+          props.getProperty("speculative.factor"));
+    if(props.containsKey("speculative.samples"))
+      this.speculativeMinSamples = Integer.parseInt(
+          props.getProperty("speculative.samples"));
+    if(props.containsKey("speculative.interval"))
+      this.speculativeInterval = Long.parseLong(
+          props.getProperty("speculative.interval"));
+    
+    if(this.speculative) {
+      this.speculator = retryScheduler.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          if(executor.isShutdown()) {
+            speculator.cancel(false);
+            return;
+          }
+          try {
+            speculate();
+          }
+          catch (Exception e) {
+            e.printStackTrace();
+          }
+        }
+      }, speculativeInterval, speculativeInterval, TimeUnit.SECONDS);
+    }
   }
   
   @Override
@@ -63,41 +158,245 @@ public class DistributedExecutionEngine extends LocalExecutionEngine implements
     // If no healthy machine found. Log an error, and exit
     if(machine == null) {
       exe.onStart(this.logger);
-      exe.onEnd(this.logger, RuntimeInfo.Status.FAILURE, 
-          "No healthy machine to run "+exe.getStep().getName());
+      if(!this.retry(exe, planexe, 
+          "No healthy machine to run "+exe.getStep().getName())) {
+        exe.onEnd(this.logger, RuntimeInfo.Status.FAILURE, 
+            "No healthy machine to run "+exe.getStep().getName());
+        this.planEngine.onStepEnd(planexe);
+      }
       return;
     }
+    this.getTriedMachines(exe).add(machine.getID());
     // If machine is localhost, just call execute for the LocalExecutionEngine
     if(machine.getName().equals("Localhost")) {
+      triedMachines.remove(exe.getID());
       super.execute(exe, planexe);
     }
     else {
       // Submit job on machine
-      Future<?> job = 
-          executor.submit(new DistributedStepExecutionThread(exe, planexe, planEngine, 
-              logger, resource, machine));
-      exe.setProcess(job);
+      this.submitAttempt(exe, planexe, machine);
       exe.onStart(this.logger);
     }
   }
   
+  /**
+   * Run a cluster of steps on one machine. Steps of the cluster share the
+   * machine's ssh session and the files already uploaded for earlier steps
+   */
+  @Override
+  public void execute(ArrayList<RuntimeStep> cluster, RuntimePlan planexe) {
+    Machine machine = this.selectStepMachine(cluster.get(0));
+    if(machine == null || machine.getName().equals("Localhost")) {
+      if(machine != null)
+        super.execute(cluster, planexe);
+      else
+        for(RuntimeStep exe : cluster)
+          this.execute(exe, planexe);
+      return;
+    }
+    ArrayList<Runnable> runners = new ArrayList<Runnable>();
+    for(RuntimeStep exe : cluster) {
+      this.getTriedMachines(exe).add(machine.getID());
+      runners.add(this.createAttempt(exe, planexe, machine));
+    }
+    this.submitCluster(cluster, runners, planexe);
+  }
+  
+  private DistributedStepExecutionThread createAttempt(RuntimeStep exe, 
+      RuntimePlan planexe, Machine machine) {
+    StepAttempts attempts = runningAttempts.get(exe.getID());
+    if(attempts == null) {
+      runningAttempts.putIfAbsent(exe.getID(), new StepAttempts());
+      attempts = runningAttempts.get(exe.getID());
+    }
+    DistributedStepExecutionThread thread = 
+        new DistributedStepExecutionThread(exe, planexe, planEngine, 
+            logger, resource, machine);
+    thread.attempts = attempts;
+    synchronized(attempts) {
+      attempts.threads.add(thread);
+    }
+    return thread;
+  }
+  
+  private void submitAttempt(RuntimeStep exe, RuntimePlan planexe, 
+      Machine machine) {
+    DistributedStepExecutionThread thread = 
+        this.createAttempt(exe, planexe, machine);
+    synchronized(thread.attempts) {
+      thread.future = executor.submit(thread);
+      // Speculative duplicates don't replace the step's process. Aborting 
+      // the step cancels all of its attempts (see abort)
+      if(thread.attempts.threads.size() == 1)
+        exe.setProcess(thread.future);
+    }
+  }
+  
+  /**
+   * Start duplicates of steps that are running much longer than their
+   * component usually takes. The first attempt to finish wins
+   */
+  protected void speculate() {
+    long now = System.currentTimeMillis();
+    for(StepAttempts attempts : runningAttempts.values()) {
+      DistributedStepExecutionThread thread;
+      synchronized(attempts) {
+        if(attempts.done || attempts.speculated || 
+            attempts.threads.size() != 1)
+          continue;
+        thread = attempts.threads.get(0);
+      }
+      if(thread.startTime == 0)
+        continue;
+      RuntimeStep exe = thread.exe;
+      String component = this.getComponentName(exe);
+      long threshold = ComponentRuntimeStats.getPercentile(component, 
+          speculativePercentile, speculativeMinSamples);
+      if(threshold < 0 || now - thread.startTime <= threshold * speculativeFactor)
+        continue;
+      
+      Machine machine = this.selectStepMachine(exe);
+      if(machine == null || machine.getName().equals("Localhost") ||
+          machine.getID().equals(thread.machine.getID()))
+        continue;
+      synchronized(attempts) {
+        if(attempts.done || attempts.threads.size() != 1)
+          continue;
+        attempts.speculated = true;
+      }
+      exe.onUpdate(this.logger, "Running for " + (now - thread.startTime)/1000 
+          + " seconds, longer than usual for " + component 
+          + ". Also starting it on " + machine.getName());
+      this.getTriedMachines(exe).add(machine.getID());
+      this.submitAttempt(exe, thread.planexe, machine);
+      exe.onSpeculativeStart(this.logger);
+    }
+  }
+  
+  @Override
+  public void abort(RuntimeStep exe) {
+    StepAttempts attempts = runningAttempts.get(exe.getID());
+    if(attempts != null)
+      attempts.cancelAll(null);
+    super.abort(exe);
+  }
+  
+  private String getComponentName(RuntimeStep exe) {
+    return exe.getStep().getCodeBinding() != null ?
+        exe.getStep().getCodeBinding().getName() : null;
+  }
+  
+  private HashSet<String> getTriedMachines(RuntimeStep exe) {
+    HashSet<String> tried = triedMachines.get(exe.getID());
+    if(tried == null) {
+      triedMachines.putIfAbsent(exe.getID(), new HashSet<String>());
+      tried = triedMachines.get(exe.getID());
+    }
+    return tried;
+  }
+  
+  /**
+   * Schedule another attempt of a failed step, if its component's retry 
+   * policy allows it. The step stays in the running state until then.
+   * @return false if the step should not be retried
+   */
+  protected boolean retry(final RuntimeStep exe, final RuntimePlan planexe,
+      String reason) {
+    String component = this.getComponentName(exe);
+    RetryPolicy policy = RetryPolicy.getPolicy(this.props, component);
+    int attempts = exe.getRuntimeInfo().getAttempts();
+    if(!policy.canRetry(attempts) || this.executor.isShutdown() ||
+        planexe.getRuntimeInfo().getStatus() == RuntimeInfo.Status.FAILURE)
+      return false;
+    
+    long delay = policy.getBackoff(attempts);
+    exe.onUpdate(this.logger, "Attempt " + attempts + " of " + 
+        policy.getMaxAttempts() + " failed" + 
+        (reason != null && !reason.equals("") ? ": " + reason : "") + 
+        ". Retrying in " + delay + " seconds");
+    retryScheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        if(executor.isShutdown()) {
+          exe.onEnd(logger, RuntimeInfo.Status.FAILURE, 
+              "!! Stopping !! .. " + exe.getName() + " not retried");
+          planEngine.onStepEnd(planexe);
+          return;
+        }
+        execute(exe, planexe);
+      }
+    }, delay, TimeUnit.SECONDS);
+    return true;
+  }
+  
   private Machine selectStepMachine(RuntimeStep exe) {
     // Get machine ids first
     ArrayList<String> machineIds = exe.getStep().getMachineIds();
     ArrayList<Machine> healthyMachines = new ArrayList<Machine>();
     for(String machineId : machineIds) {
       Machine machine = this.resource.getMachine(machineId);
-      if(machine.isHealthy()) 
+      if(MachineMonitor.isHealthy(machine)) 
         healthyMachines.add(machine);
     }
     if(healthyMachines.size() == 0)
       return null;
     
-    // Pick a random healthy machine for now
-    // TODO: This should be based on machine load, connectivity, etc
+    // On retries, fail over to machines that haven't been tried yet
+    HashSet<String> tried = triedMachines.get(exe.getID());
+    if(tried != null) {
+      ArrayList<Machine> untried = new ArrayList<Machine>();
+      for(Machine machine : healthyMachines) {
+        if(!tried.contains(machine.getID()))
+          untried.add(machine);
+      }
+      if(untried.size() > 0)
+        healthyMachines = untried;
+    }
+    
+    // Prefer machines that already have most of the step's input data
+    ArrayList<Machine> bestMachines = healthyMachines;
+    String localfolder = this.resource.getLocalStorageFolder();
+    if(localfolder != null) {
+      HashMap<String, Long> inputSizes = new HashMap<String, Long>();
+      for(ExecutionFile exf : exe.getStep().getInputFiles()) {
+        File f = new File(exf.getLocation());
+        inputSizes.put(f.getAbsolutePath(), f.length());
+      }
+      bestMachines = new ArrayList<Machine>();
+      long bestBytes = -1;
+      for(Machine machine : healthyMachines) {
+        long bytes = this.getReplicatedBytes(machine, inputSizes, localfolder);
+        if(bytes > bestBytes) {
+          bestBytes = bytes;
+          bestMachines.clear();
+        }
+        if(bytes == bestBytes)
+          bestMachines.add(machine);
+      }
+    }
+    
+    // Pick a random machine among the best ones
+    // TODO: This should also be based on machine load, connectivity, etc
     Random rand = new Random();
-    int index = rand.nextInt(healthyMachines.size());
-    return healthyMachines.get(index);
+    int index = rand.nextInt(bestMachines.size());
+    return bestMachines.get(index);
+  }
+  
+  private long getReplicatedBytes(Machine machine, 
+      HashMap<String, Long> inputSizes, String localfolder) {
+    // Localhost is where the data is staged from, so it isn't
+    // given any preference here
+    if(machine.getName().equals("Localhost") || 
+        machine.getStorageFolder() == null)
+      return 0;
+    long bytes = 0;
+    for(String local : inputSizes.keySet()) {
+      long size = inputSizes.get(local);
+      String remote = local.replace(localfolder, machine.getStorageFolder());
+      if(MachineReplicaIndex.hasReplica(machine.getID(), remote, null, size))
+        bytes += size;
+    }
+    return bytes;
   }
 
   class DistributedStepExecutionThread implements Runnable {
@@ -113,6 +412,19 @@ public class DistributedExecutionEngine extends LocalExecutionEngine implements
       String localfolder = "";
       String remotefolder = "";
       ArrayList<String[]> uploadFiles;
+      FileDigestCache digests;
+      boolean retrying = false;
+      
+      // Other attempts of the same step (if running speculatively)
+      StepAttempts attempts;
+      Future<?> future;
+      // Set when another attempt won (for attempts run in a cluster, 
+      // which have no future of their own)
+      boolean cancelled = false;
+      volatile long startTime = 0;
+      // Set if this attempt won, or another attempt of the step has taken over
+      boolean claimed = false;
+      boolean superseded = false;
       
       public DistributedStepExecutionThread(RuntimeStep exe, 
           RuntimePlan planexe, PlanExecutionEngine planEngine,
@@ -132,15 +444,52 @@ public class DistributedExecutionEngine extends LocalExecutionEngine implements
           throws FileNotFoundException, IOException {
         String oldf = f.getAbsolutePath();
         String newf = oldf.replace(localfolder, remotefolder);
-        String md5 = DigestUtils.md5Hex(new FileInputStream(f));
+        String md5 = this.digests.getMD5(f);
         this.uploadFiles.add(new String[] { oldf, newf, md5 });
       }
       
+      private void sendLargeFiles(HashMap<String, String> uploadMap) 
+          throws Exception {
+        ViNode node = GridkitCloud.getNode(machine);
+        for(String[] fobj : new ArrayList<String[]>(this.uploadFiles)) {
+          File f = new File(fobj[0]);
+          if(f.length() < transferThreshold)
+            continue;
+          // The upload lister marks files that already exist remotely
+          boolean exists = fobj.length > 3;
+          boolean sent = false;
+          if(exists && deltaTransfer) {
+            sent = DeltaTransfer.sendDelta(node, f, fobj[1], fobj[2], 
+                compressTransfer);
+          }
+          else if(compressTransfer && DeltaTransfer.isCompressible(f)) {
+            sent = DeltaTransfer.sendCompressed(node, f, fobj[1], fobj[2]);
+          }
+          if(sent) {
+            this.uploadFiles.remove(fobj);
+            uploadMap.remove(fobj[0]);
+            this.addReplica(fobj);
+          }
+        }
+      }
+      
+      private void addReplica(String[] fobj) {
+        MachineReplicaIndex.addReplica(machine.getID(), fobj[1], fobj[2], 
+            new File(fobj[0]).length());
+      }
+      
       @Override
       public void run() {
         try {
+          synchronized(this.attempts) {
+            if(this.cancelled)
+              throw new InterruptedException();
+          }
+          this.startTime = System.currentTimeMillis();
           this.localfolder = this.resource.getLocalStorageFolder();
           this.remotefolder = machine.getStorageFolder();
+          this.digests = FileDigestCache.getCache(
+              this.localfolder + File.separator + DIGEST_CACHE);
 
           // Add all items in code directory to the list of files to upload
           File codeDir = new File(exe.getStep().getCodeBinding().getCodeDirectory());
@@ -181,17 +530,32 @@ public class DistributedExecutionEngine extends LocalExecutionEngine implements
 
           // Logon to machine, and check the list of upload files
           // to see which ones really need to be uploaded
+          ArrayList<String[]> checkedFiles = this.uploadFiles;
           this.uploadFiles = GridkitCloud.getNode(machine).exec(
-              new MachineUploadLister(this.uploadFiles));
+              new MachineUploadLister(this.uploadFiles, 
+                  this.remotefolder + File.separator + DIGEST_CACHE));
+          
+          // Files that don't need uploading are already on the machine
+          HashMap<String, String> uploadMap = new HashMap<String, String>();
+          for(String[] fobj : this.uploadFiles) {
+            uploadMap.put(fobj[0], fobj[1]);
+          }
+          for(String[] fobj : checkedFiles) {
+            if(!uploadMap.containsKey(fobj[0]))
+              this.addReplica(fobj);
+          }
+          
+          // Send large files as deltas or compressed, if enabled
+          if(deltaTransfer || compressTransfer)
+            this.sendLargeFiles(uploadMap);
           
           // Upload the required files (if any)
           if(this.uploadFiles.size() > 0) {
             exe.onUpdate(this.logger, "Uploading files to "+machine.getName());
-            HashMap<String, String> uploadMap = new HashMap<String, String>();
-            for(String[] fobj : this.uploadFiles) {
-              uploadMap.put(fobj[0], fobj[1]);
+            if(GridkitCloud.uploadFiles(machine, uploadMap)) {
+              for(String[] fobj : this.uploadFiles)
+                this.addReplica(fobj);
             }
-            GridkitCloud.uploadFiles(machine, uploadMap);
           }
           
           exe.onUpdate(this.logger, "Running on "+machine.getName());
@@ -204,12 +568,26 @@ public class DistributedExecutionEngine extends LocalExecutionEngine implements
           }
           MachineCodeRunner mcr = new MachineCodeRunner(planexe.getName(), 
               exe.getName(), codebin, args, outfilepath, environment);
-          this.job = GridkitCloud.getNode(machine).submit(mcr);
+          Future<ProcessStatus> job = GridkitCloud.getNode(machine).submit(mcr);
+          synchronized(this.attempts) {
+            this.job = job;
+            if(this.cancelled)
+              job.cancel(true);
+          }
           
           ProcessStatus status = this.job.get();
           exe.onUpdate(this.logger, status.getLog());
           
           if(status.exitValue() == 0) {
+            // Only the first attempt to finish fetches the outputs
+            if(!this.attempts.claim(this)) {
+              this.superseded = true;
+              return;
+            }
+            this.claimed = true;
+            ComponentRuntimeStats.addRuntime(getComponentName(exe), 
+                System.currentTimeMillis() - this.startTime);
+            
             // Fetch  outputs from the machine
             // Add all output files to the list of files to download
             HashMap<String, String> downloadMap = new HashMap<String, String>();
@@ -221,45 +599,138 @@ public class DistributedExecutionEngine extends LocalExecutionEngine implements
             }
             exe.onUpdate(this.logger, "Downloading output files from "+machine.getName());
             GridkitCloud.downloadFiles(machine, downloadMap);
+            
+            // Outputs are now on both machines
+            for(String local : downloadMap.keySet()) {
+              File f = new File(local);
+              if(f.exists())
+                MachineReplicaIndex.addReplica(machine.getID(), 
+                    downloadMap.get(local), null, f.length());
+            }
             exe.onEnd(this.logger, RuntimeInfo.Status.SUCCESS, "");
           }
+          else if(this.attempts.abandon(this)) {
+            this.superseded = true;
+            exe.onUpdate(this.logger, "Attempt on " + machine.getName() + 
+                " failed. Another attempt is still running");
+          }
           else {
-            exe.onEnd(this.logger, RuntimeInfo.Status.FAILURE, "");
+            runningAttempts.remove(exe.getID(), this.attempts);
+            this.retrying = retry(exe, planexe, 
+                "Exit code " + status.exitValue() + " on " + machine.getName());
+            if(!this.retrying)
+              exe.onEnd(this.logger, RuntimeInfo.Status.FAILURE, "");
           }
         } 
         catch (InterruptedException e) {
           if(this.job != null)
             this.job.cancel(true);
 
-          exe.onEnd(this.logger, RuntimeInfo.Status.FAILURE, 
-              "!! Stopping !! .. " + exe.getName() + " interrupted");
+          // Cancelled because another attempt won
+          if(!this.claimed && this.attempts.abandon(this))
+            this.superseded = true;
+          else
+            exe.onEnd(this.logger, RuntimeInfo.Status.FAILURE, 
+                "!! Stopping !! .. " + exe.getName() + " interrupted");
+        }
+        catch (CancellationException e) {
+          // The remote job was cancelled because another attempt won
+          if(!this.claimed && this.attempts.abandon(this))
+            this.superseded = true;
+          else
+            exe.onEnd(this.logger, RuntimeInfo.Status.FAILURE, 
+                "!! Stopping !! .. " + exe.getName() + " cancelled");
         }
         catch (Exception e) {
-          exe.onEnd(this.logger, RuntimeInfo.Status.FAILURE, e.getMessage());
           e.printStackTrace();
+          if(!this.claimed && this.attempts.abandon(this)) {
+            this.superseded = true;
+          }
+          else {
+            runningAttempts.remove(exe.getID(), this.attempts);
+            this.retrying = retry(exe, planexe, 
+                e.getMessage() + " on " + machine.getName());
+            if(!this.retrying)
+              exe.onEnd(this.logger, RuntimeInfo.Status.FAILURE, e.getMessage());
+          }
         }
         finally {
           //GridkitCloud.resetNode(machine);
-          this.planEngine.onStepEnd(planexe);
+          if(!this.retrying && !this.superseded) {
+            runningAttempts.remove(exe.getID(), this.attempts);
+            triedMachines.remove(exe.getID());
+            this.planEngine.onStepEnd(planexe);
+          }
         }
       }
   }
 }
 
+/**
+ * The attempts that are running for a step. When running speculatively,
+ * the first attempt to successfully finish claims the step, and the others
+ * are cancelled
+ */
+class StepAttempts {
+  ArrayList<DistributedExecutionEngine.DistributedStepExecutionThread> threads =
+      new ArrayList<DistributedExecutionEngine.DistributedStepExecutionThread>();
+  boolean done = false;
+  boolean speculated = false;
+  
+  /**
+   * Claim the step for a successful attempt, and cancel the others
+   * @return false if another attempt already claimed it
+   */
+  synchronized boolean claim(Object attempt) {
+    if(this.done)
+      return false;
+    this.done = true;
+    this.cancelAll(attempt);
+    return true;
+  }
+  
+  /**
+   * Remove a failed (or cancelled) attempt
+   * @return true if the step has been, or may still be finished by 
+   * another attempt
+   */
+  synchronized boolean abandon(Object attempt) {
+    this.threads.remove(attempt);
+    return this.done || this.threads.size() > 0;
+  }
+  
+  synchronized void cancelAll(Object except) {
+    for(DistributedExecutionEngine.DistributedStepExecutionThread thread : threads) {
+      if(thread == except)
+        continue;
+      // Clustered attempts share their cluster's thread, so only their
+      // remote job is cancelled
+      thread.cancelled = true;
+      if(thread.future != null)
+        thread.future.cancel(true);
+      else if(thread.job != null)
+        thread.job.cancel(true);
+    }
+  }
+}
+
 class MachineUploadLister implements Callable<ArrayList<String[]>>, Serializable {
   private static final long serialVersionUID = 5960512182954001309L;
 
   ArrayList<String[]> totalList;
   ArrayList<String[]> uploadList;
+  String digestCacheFile;
   
-  public MachineUploadLister(ArrayList<String[]> list) {
+  public MachineUploadLister(ArrayList<String[]> list, String digestCacheFile) {
     this.totalList = list;
     this.uploadList = new ArrayList<String[]>();
+    this.digestCacheFile = digestCacheFile;
   }
 
   @Override
   public ArrayList<String[]> call() 
       throws Exception {
+    FileDigestCache digests = FileDigestCache.getCache(digestCacheFile);
     for(String[] fobj : totalList) {
       String newf = fobj[1];
       String oldmd5 = fobj[2];
@@ -271,9 +742,9 @@ class MachineUploadLister implements Callable<ArrayList<String[]>>, Serializable
         uploadList.add(fobj);
       }
       else {
-        String newmd5 = DigestUtils.md5Hex(new FileInputStream(f));
+        String newmd5 = digests.getMD5(f);
         if(!newmd5.equals(oldmd5))
-          uploadList.add(fobj);
+          uploadList.add(new String[] { fobj[0], fobj[1], fobj[2], "exists" });
       }
     }
     return uploadList;
@@ -24,6 +24,7 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -52,6 +53,8 @@ public class LocalExecutionEngine implements PlanExecutionEngine, StepExecutionE
 	
 	protected Properties props;
 	protected int maxParallel = 4;
+	// Maximum number of sibling steps of a component to run in one job
+	protected int clusterSize = 1;
 	
 	protected StepExecutionEngine stepEngine;
 	protected PlanExecutionEngine planEngine;
@@ -64,6 +67,8 @@ public class LocalExecutionEngine implements PlanExecutionEngine, StepExecutionE
 		this.props = props;
 		if(props.containsKey("parallel"))
 			this.maxParallel = Integer.parseInt(props.getProperty("parallel"));
+		if(props.containsKey("cluster.size"))
+		  this.clusterSize = Integer.parseInt(props.getProperty("cluster.size"));
 		this.stepEngine = this;
 		this.planEngine = this;
 		executor = Executors.newFixedThreadPool(maxParallel);
@@ -177,8 +182,19 @@ public class LocalExecutionEngine implements PlanExecutionEngine, StepExecutionE
 			  //System.out.println("Queued "+stepexe.getName());
 			}
 
-			for(RuntimeStep stepexe : steps)
-				this.stepEngine.execute(stepexe, exe);
+			if(this.clusterSize > 1 && this.stepEngine instanceof LocalExecutionEngine) {
+			  LocalExecutionEngine engine = (LocalExecutionEngine) this.stepEngine;
+			  for(ArrayList<RuntimeStep> cluster : this.clusterSteps(steps)) {
+			    if(cluster.size() == 1)
+			      engine.execute(cluster.get(0), exe);
+			    else
+			      engine.execute(cluster, exe);
+			  }
+			}
+			else {
+			  for(RuntimeStep stepexe : steps)
+			    this.stepEngine.execute(stepexe, exe);
+			}
 
 		}
 	}
@@ -191,11 +207,301 @@ public class LocalExecutionEngine implements PlanExecutionEngine, StepExecutionE
 		exe.setProcess(job);
 	}
 	
+  /**
+   * Run a cluster of independent steps of the same component as one job:
+   * one process runs the steps one after the other (see ClusterScriptThread).
+   * Each step still gets its own status
+   */
+  public void execute(ArrayList<RuntimeStep> cluster, RuntimePlan planexe) {
+    Machine machine = this.selectStepMachine(cluster.get(0));
+    ClusterScriptThread thread = 
+        new ClusterScriptThread(cluster, planexe, machine);
+    Future<?> job = executor.submit(thread);
+    thread.job = job;
+    for(RuntimeStep exe : cluster)
+      exe.setProcess(job);
+  }
+  
+  /**
+   * Run a cluster of steps in one worker, by calling the runner of each step
+   * in turn. For engines whose steps can't be batched into one process
+   */
+  protected void submitCluster(ArrayList<RuntimeStep> cluster, 
+      ArrayList<Runnable> runners, RuntimePlan planexe) {
+    ClusterExecutionThread thread = 
+        new ClusterExecutionThread(cluster, runners, planexe);
+    Future<?> job = executor.submit(thread);
+    thread.job = job;
+    for(RuntimeStep exe : cluster)
+      exe.setProcess(job);
+  }
+  
+  /**
+   * Group steps that are ready to run by component, and split each group 
+   * into clusters of at most [clusterSize] steps. Groups are split into at 
+   * least [maxParallel] clusters when possible, so that clustering doesn't
+   * reduce parallelism
+   */
+  protected ArrayList<ArrayList<RuntimeStep>> clusterSteps(
+      ArrayList<RuntimeStep> steps) {
+    LinkedHashMap<String, ArrayList<RuntimeStep>> groups = 
+        new LinkedHashMap<String, ArrayList<RuntimeStep>>();
+    for(RuntimeStep step : steps) {
+      String key = step.getStep().getCodeBinding() != null ?
+          step.getStep().getCodeBinding().getID() : step.getID();
+      if(!groups.containsKey(key))
+        groups.put(key, new ArrayList<RuntimeStep>());
+      groups.get(key).add(step);
+    }
+    ArrayList<ArrayList<RuntimeStep>> clusters = 
+        new ArrayList<ArrayList<RuntimeStep>>();
+    for(ArrayList<RuntimeStep> group : groups.values()) {
+      int size = Math.min(this.clusterSize, 
+          (group.size() + this.maxParallel - 1) / this.maxParallel);
+      size = Math.max(size, 1);
+      for(int i=0; i<group.size(); i+=size) {
+        clusters.add(new ArrayList<RuntimeStep>(
+            group.subList(i, Math.min(i+size, group.size()))));
+      }
+    }
+    return clusters;
+  }
+	
+  /**
+   * Command line of a step, without the standard output redirection
+   */
+  protected static ArrayList<String> getArguments(RuntimeStep exe) {
+    ArrayList<String> args = new ArrayList<String>();
+    args.add(exe.getStep().getCodeBinding().getLocation());
+    for(String argname : exe.getStep().getInvocationArguments().keySet()) {
+      if(argname.equals(">"))
+        continue;
+      args.add(argname);
+      for(Object value: exe.getStep().getInvocationArguments().get(argname)) {
+        if(value instanceof String)
+          args.add((String)value);
+        else if(value instanceof ExecutionFile)
+          args.add(((ExecutionFile)value).getLocation());
+      }
+    }
+    return args;
+  }
+  
+  /**
+   * File that the standard output of a step goes to (null if none)
+   */
+  protected static File getStandardOutputFile(RuntimeStep exe) {
+    ArrayList<Object> values = exe.getStep().getInvocationArguments().get(">");
+    if(values == null || values.isEmpty())
+      return null;
+    return new File(((ExecutionFile) values.get(0)).getLocation());
+  }
+  
+  /**
+   * Check if the outputs of a step already exist (removing their stale
+   * metadata files)
+   */
+  protected static boolean outputsExist(RuntimeStep exe) {
+    boolean allExist = true;
+    for (ExecutionFile file : exe.getStep().getOutputFiles()) {
+      file.removeMetadataFile();
+      File f = new File(file.getLocation());
+      if(!f.exists())
+        allExist = false;
+    }
+    return allExist;
+  }
+  
+  // Check if the remaining steps of a cluster job shouldn't be run
+  private boolean isStopped(RuntimePlan planexe, Future<?> job) {
+    return executor.isShutdown() || (job != null && job.isCancelled()) ||
+        planexe.getRuntimeInfo().getStatus() == Status.FAILURE;
+  }
+  
   private Machine selectStepMachine(RuntimeStep exe) {
     for(String machineId : exe.getStep().getMachineIds())
       return this.resource.getMachine(machineId);
     return null;
   }
+  
+  protected class ClusterExecutionThread implements Runnable {
+    ArrayList<RuntimeStep> cluster;
+    ArrayList<Runnable> runners;
+    RuntimePlan planexe;
+    volatile Future<?> job;
+    
+    public ClusterExecutionThread(ArrayList<RuntimeStep> cluster, 
+        ArrayList<Runnable> runners, RuntimePlan planexe) {
+      this.cluster = cluster;
+      this.runners = runners;
+      this.planexe = planexe;
+    }
+    
+    @Override
+    public void run() {
+      for(int i=0; i<cluster.size(); i++) {
+        RuntimeStep exe = cluster.get(i);
+        if(isStopped(planexe, this.job)) {
+          exe.setRuntimePlan(planexe);
+          exe.onEnd(logger, RuntimeInfo.Status.FAILURE, 
+              "!! Stopping !! .. " + exe.getName() + " not run");
+          planEngine.onStepEnd(planexe);
+          continue;
+        }
+        exe.onStart(logger);
+        runners.get(i).run();
+      }
+    }
+  }
+
+  /**
+   * Runs a cluster of steps as a single job. A shell script, run in one
+   * temporary directory, calls the steps' invocations one after the other
+   * and records the exit code of each one, so that each step gets its own
+   * status and log. The steps of the cluster are logged together: once when
+   * the job starts, and once when it ends
+   */
+  class ClusterScriptThread implements Runnable {
+    ArrayList<RuntimeStep> cluster;
+    RuntimePlan planexe;
+    Machine machine;
+    Process process;
+    volatile Future<?> job;
+    
+    public ClusterScriptThread(ArrayList<RuntimeStep> cluster, 
+        RuntimePlan planexe, Machine machine) {
+      this.cluster = cluster;
+      this.planexe = planexe;
+      this.machine = machine;
+      for(RuntimeStep exe : cluster)
+        exe.setRuntimePlan(planexe);
+    }
+    
+    @Override
+    public void run() {
+      File tempdir = null;
+      ArrayList<RuntimeStep> torun = new ArrayList<RuntimeStep>();
+      try {
+        if(isStopped(planexe, this.job)) {
+          this.endSteps(this.cluster, RuntimeInfo.Status.FAILURE, "not run");
+          return;
+        }
+        
+        // Steps whose outputs already exist aren't run
+        for(RuntimeStep exe : this.cluster) {
+          exe.markStarted();
+          exe.onUpdate(logger, StringUtils.join(getArguments(exe), " "));
+          if(outputsExist(exe))
+            exe.markEnded(RuntimeInfo.Status.SUCCESS, 
+                "Outputs already exist. Not running job");
+          else
+            torun.add(exe);
+        }
+        logger.updateRuntimeInfo(this.cluster);
+        if(torun.isEmpty())
+          return;
+        
+        tempdir = File.createTempFile(planexe.getName()+"-", "-cluster");
+        if(!tempdir.delete() || !tempdir.mkdirs())
+          throw new Exception("Cannot create temp directory");
+        File script = this.writeScript(torun, tempdir);
+        
+        ProcessBuilder pb = new ProcessBuilder("/bin/sh", script.getAbsolutePath());
+        if(this.machine != null)
+          for(EnvironmentValue eval : this.machine.getEnvironmentValues())
+            pb.environment().put(eval.getVariable(), eval.getValue());
+        pb.directory(tempdir);
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(new File(tempdir, "cluster.log"));
+        this.process = pb.start();
+        this.process.waitFor();
+        
+        for(int i=0; i<torun.size(); i++) {
+          RuntimeStep exe = torun.get(i);
+          this.readLog(exe, new File(tempdir, "step" + i + ".log"));
+          File exitf = new File(tempdir, "step" + i + ".exit");
+          boolean success = exitf.exists() && 
+              FileUtils.readFileToString(exitf).trim().equals("0");
+          exe.markEnded(success ? RuntimeInfo.Status.SUCCESS : 
+            RuntimeInfo.Status.FAILURE, "");
+        }
+      }
+      catch (InterruptedException e) {
+        if(this.process != null)
+          this.process.destroy();
+        this.endSteps(torun, RuntimeInfo.Status.FAILURE, "interrupted");
+      }
+      catch (Exception e) {
+        e.printStackTrace();
+        this.endSteps(torun, RuntimeInfo.Status.FAILURE, e.getMessage());
+      }
+      finally {
+        try {
+          if(tempdir != null)
+            FileUtils.deleteDirectory(tempdir);
+        }
+        catch (Exception e) {
+          e.printStackTrace();
+        }
+        logger.updateRuntimeInfo(this.cluster);
+        planEngine.onStepEnd(planexe);
+      }
+    }
+    
+    // Script that runs the steps one after the other, writing the output
+    // of step i to step[i].log (or to its standard output file), and its
+    // exit code to step[i].exit
+    private File writeScript(ArrayList<RuntimeStep> steps, File tempdir)
+        throws Exception {
+      StringBuilder sb = new StringBuilder();
+      for(int i=0; i<steps.size(); i++) {
+        RuntimeStep exe = steps.get(i);
+        File outf = getStandardOutputFile(exe);
+        if(outf != null)
+          outf.getParentFile().mkdirs();
+        else
+          outf = new File(tempdir, "step" + i + ".log");
+        for(String arg : getArguments(exe))
+          sb.append(quote(arg)).append(" ");
+        sb.append("> ").append(quote(outf.getAbsolutePath())).append(" 2>&1\n");
+        sb.append("echo $? > step" + i + ".exit\n");
+      }
+      File script = new File(tempdir, "cluster.sh");
+      FileUtils.writeStringToFile(script, sb.toString());
+      return script;
+    }
+    
+    private String quote(String arg) {
+      return "'" + arg.replace("'", "'\\''") + "'";
+    }
+    
+    private void readLog(RuntimeStep exe, File logf) throws Exception {
+      if(!logf.exists())
+        return;
+      int lineNum = 0;
+      for(String line : FileUtils.readLines(logf)) {
+        if(lineNum == StreamGobbler.maxLinesLog) {
+          exe.onUpdate(logger, ".. Log is too long. Rest is truncated");
+          break;
+        }
+        exe.onUpdate(logger, line);
+        lineNum++;
+      }
+    }
+    
+    // End the steps that haven't ended yet
+    private void endSteps(ArrayList<RuntimeStep> steps, 
+        RuntimeInfo.Status status, String message) {
+      for(RuntimeStep exe : steps) {
+        RuntimeInfo.Status current = exe.getRuntimeInfo().getStatus();
+        if(current == RuntimeInfo.Status.SUCCESS || 
+            current == RuntimeInfo.Status.FAILURE)
+          continue;
+        exe.markEnded(status, "!! Stopping !! .. " + exe.getName() + 
+            " " + message);
+      }
+    }
+  }
 
   class StepExecutionThread implements Runnable {
     	RuntimeStep exe;
@@ -222,39 +528,18 @@ public class LocalExecutionEngine implements PlanExecutionEngine, StepExecutionE
           // Mark job as started
           this.exe.onStart(this.logger);
           
-    			ArrayList<String> args = new ArrayList<String>();
-    			args.add(exe.getStep().getCodeBinding().getLocation());
+    			ArrayList<String> args = getArguments(exe);
 
     			PrintWriter fout = null;
-    			for(String argname : exe.getStep().getInvocationArguments().keySet()) {
-    				ArrayList<Object> values = exe.getStep().getInvocationArguments().get(argname);
-    				if(argname.equals(">")) {
-    					ExecutionFile outfile = (ExecutionFile) values.get(0);
-    					File f = new File(outfile.getLocation());
-    					f.getParentFile().mkdirs();
-    					fout = new PrintWriter(f);
-    				}
-    				else {
-    					args.add(argname);
-    					for(Object value: values) {
-    						if(value instanceof String)
-    							args.add((String)value);
-    						else if(value instanceof ExecutionFile)
-    							args.add(((ExecutionFile)value).getLocation());
-    					}
-    				}
+    			File outf = getStandardOutputFile(exe);
+    			if(outf != null) {
+    				outf.getParentFile().mkdirs();
+    				fout = new PrintWriter(outf);
     			}
     			exe.onUpdate(this.logger, StringUtils.join(args, " "));
 
           // Check if the outputs already exist, if so don't run
-          boolean allExist = true;
-          for (ExecutionFile file : exe.getStep().getOutputFiles()) {
-            file.removeMetadataFile();
-            File f = new File(file.getLocation());
-            if(!f.exists())
-              allExist = false;
-          }
-          if(allExist) {
+          if(outputsExist(exe)) {
             exe.onEnd(this.logger, RuntimeInfo.Status.SUCCESS, 
                 "Outputs already exist. Not running job");
           }
@@ -347,7 +632,7 @@ class StreamGobbler extends Thread {
   RuntimeStep exe;
   PrintWriter fout;
   ExecutionLoggerAPI logger;
-  int maxLinesLog = 500;
+  static final int maxLinesLog = 500;
 
   public StreamGobbler (InputStream is, RuntimeStep exe, PrintWriter fout, 
       ExecutionLoggerAPI logger) {
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.execution.engine.classes;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Run times of successful steps, per component. Only the most recent
+ * [maxSamples] run times of each component are kept.
+ */
+public class ComponentRuntimeStats {
+  private static int maxSamples = 500;
+
+  private static ConcurrentHashMap<String, Samples> stats =
+      new ConcurrentHashMap<String, Samples>();
+
+  public static void addRuntime(String component, long millis) {
+    Samples samples = stats.get(component);
+    if(samples == null) {
+      stats.putIfAbsent(component, new Samples(maxSamples));
+      samples = stats.get(component);
+    }
+    samples.add(millis);
+  }
+
+  public static int getSampleCount(String component) {
+    Samples samples = stats.get(component);
+    return samples != null ? samples.size() : 0;
+  }
+
+  /**
+   * Get the run time (in milliseconds) below which the given percentage of
+   * the component's runs finished
+   * @return -1 if fewer than minSamples runs are known
+   */
+  public static long getPercentile(String component, double percentile,
+      int minSamples) {
+    Samples samples = stats.get(component);
+    if(samples == null)
+      return -1;
+    long[] values = samples.toArray();
+    if(values.length == 0 || values.length < minSamples)
+      return -1;
+    Arrays.sort(values);
+    int index = (int) Math.ceil(percentile / 100.0 * values.length) - 1;
+    return values[Math.max(0, Math.min(index, values.length - 1))];
+  }
+
+  public static void clear(String component) {
+    stats.remove(component);
+  }
+
+  static class Samples {
+    long[] values;
+    int count = 0;
+    int next = 0;
+
+    Samples(int max) {
+      this.values = new long[max];
+    }
+
+    synchronized void add(long value) {
+      values[next] = value;
+      next = (next + 1) % values.length;
+      if(count < values.length)
+        count++;
+    }
+
+    synchronized int size() {
+      return count;
+    }
+
+    synchronized long[] toArray() {
+      return Arrays.copyOf(values, count);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.execution.engine.classes;
+
+import java.util.Properties;
+
+/**
+ * How often, and after how long, a failed step is retried.
+ *
+ * Read from the engine properties. Defaults apply to all components and
+ * can be overridden per component (by component name):
+ *   retry.attempts = 1            (1 = no retries)
+ *   retry.backoff = 5             (seconds before the first retry)
+ *   retry.backoff.max = 300       (cap on the exponential backoff)
+ *   retry.[Component].attempts = 3
+ *   retry.[Component].backoff = 10
+ */
+public class RetryPolicy {
+  int maxAttempts = 1;
+  long backoff = 5;
+  long maxBackoff = 300;
+
+  public RetryPolicy(int maxAttempts, long backoff, long maxBackoff) {
+    this.maxAttempts = maxAttempts;
+    this.backoff = backoff;
+    this.maxBackoff = maxBackoff;
+  }
+
+  public static RetryPolicy getPolicy(Properties props, String component) {
+    RetryPolicy policy = new RetryPolicy(
+        getInt(props, "retry.attempts", 1),
+        getLong(props, "retry.backoff", 5),
+        getLong(props, "retry.backoff.max", 300));
+    if(component != null) {
+      String prefix = "retry." + component + ".";
+      policy.maxAttempts = getInt(props, prefix + "attempts", policy.maxAttempts);
+      policy.backoff = getLong(props, prefix + "backoff", policy.backoff);
+      policy.maxBackoff = getLong(props, prefix + "backoff.max", policy.maxBackoff);
+    }
+    return policy;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public boolean canRetry(int attempts) {
+    return attempts < maxAttempts;
+  }
+
+  /**
+   * Seconds to wait before the next attempt, doubling after every attempt
+   * @param attempts
+   *            Number of attempts made so far
+   */
+  public long getBackoff(int attempts) {
+    long delay = backoff;
+    for(int i=1; i<attempts && delay < maxBackoff; i++)
+      delay *= 2;
+    return Math.min(delay, maxBackoff);
+  }
+
+  private static int getInt(Properties props, String key, int def) {
+    return props.containsKey(key) ?
+        Integer.parseInt(props.getProperty(key).trim()) : def;
+  }
+
+  private static long getLong(Properties props, String key, long def) {
+    return props.containsKey(key) ?
+        Long.parseLong(props.getProperty(key).trim()) : def;
+  }
+}
@@ -26,6 +26,8 @@ public class RuntimeInfo {
 	String log = "";
 	Date startTime;
 	Date endTime;
+	int attempts = 0;
+	int speculativeAttempts = 0;
 	
 	public Status getStatus() {
 		return status;
@@ -39,7 +41,7 @@ public class RuntimeInfo {
 	public void setLog(String log) {
 		this.log = log;
 	}
-	public void addLog(String log) {
+	public synchronized void addLog(String log) {
 		this.log += log + "\n";
 	}
 	public Date getStartTime() {
@@ -54,8 +56,27 @@ public class RuntimeInfo {
 	public void setEndTime(Date endTime) {
 		this.endTime = endTime;
 	}
+	public int getAttempts() {
+		return attempts;
+	}
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+	/**
+	 * Duplicates started for a straggling attempt. These don't count
+	 * as attempts, so they don't use up retries.
+	 */
+	public int getSpeculativeAttempts() {
+		return speculativeAttempts;
+	}
+	public void setSpeculativeAttempts(int speculativeAttempts) {
+		this.speculativeAttempts = speculativeAttempts;
+	}
 	
 	public String toString() {
-		return "\n"+status+"\n"+startTime+" -> "+endTime+"\n" + log;
+		return "\n"+status+"\n"+startTime+" -> "+endTime+
+		    (attempts > 1 ? " ("+attempts+" attempts)" : "")+
+		    (speculativeAttempts > 0 ? " ("+speculativeAttempts+" speculative)" : "")+
+		    "\n" + log;
 	}
 }
@@ -89,16 +89,45 @@ public class RuntimeStep extends URIEntity {
 	}
 
 	public void onStart(ExecutionLoggerAPI logger) {
+		this.markStarted();
+		logger.updateRuntimeInfo(this);
+	}
+	
+	/**
+	 * Mark the step as started without logging it. For steps that are logged
+	 * together with ExecutionLoggerAPI.updateRuntimeInfo(ArrayList)
+	 */
+	public void markStarted() {
 		this.runtimeInfo.setStatus(RuntimeInfo.Status.RUNNING);
-		this.runtimeInfo.setStartTime(new Date());
+		// Retries keep the start time of the first attempt, so that the
+		// step's run time includes the cost of retrying
+		int attempts = this.runtimeInfo.getAttempts();
+		if(attempts == 0 || this.runtimeInfo.getStartTime() == null)
+		  this.runtimeInfo.setStartTime(new Date());
+		this.runtimeInfo.setAttempts(attempts + 1);
+	}
+	
+	/**
+	 * A duplicate of the running attempt was started
+	 */
+	public void onSpeculativeStart(ExecutionLoggerAPI logger) {
+		this.runtimeInfo.setSpeculativeAttempts(
+		    this.runtimeInfo.getSpeculativeAttempts() + 1);
 		logger.updateRuntimeInfo(this);
 	}
 	
 	public void onEnd(ExecutionLoggerAPI logger, RuntimeInfo.Status status, String log) {
+		this.markEnded(status, log);
+		logger.updateRuntimeInfo(this);
+	}
+	
+	/**
+	 * Mark the step as finished without logging it (see markStarted)
+	 */
+	public void markEnded(RuntimeInfo.Status status, String log) {
 		this.runtimeInfo.setStatus(status);
 		this.runtimeInfo.addLog(log);
 		this.runtimeInfo.setEndTime(new Date());
-		logger.updateRuntimeInfo(this);
 	}
 	
 	public void onUpdate(ExecutionLoggerAPI logger, String log) {
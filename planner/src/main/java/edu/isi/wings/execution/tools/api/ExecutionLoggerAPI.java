@@ -17,6 +17,8 @@
 
 package edu.isi.wings.execution.tools.api;
 
+import java.util.ArrayList;
+
 import edu.isi.kcap.ontapi.transactions.TransactionsAPI;
 import edu.isi.wings.execution.engine.classes.RuntimePlan;
 import edu.isi.wings.execution.engine.classes.RuntimeStep;
@@ -28,6 +30,9 @@ public interface ExecutionLoggerAPI extends TransactionsAPI {
 	void updateRuntimeInfo(RuntimePlan plan);
 	
 	void updateRuntimeInfo(RuntimeStep step);
+	
+	// Steps of the same run, updated at once
+	void updateRuntimeInfo(ArrayList<RuntimeStep> steps);
   
 	// Save/Delete
 	boolean save();
@@ -22,6 +22,7 @@ import java.util.Properties;
 import edu.isi.wings.catalog.resource.ResourceFactory;
 import edu.isi.wings.catalog.resource.api.ResourceAPI;
 import edu.isi.wings.catalog.resource.classes.Machine;
+import edu.isi.wings.catalog.resource.classes.MachineMonitor;
 import edu.isi.wings.execution.tools.api.ExecutionResourceAPI;
 
 public class ExecutionResourceKB 
@@ -31,6 +32,7 @@ implements ExecutionResourceAPI {
   
   public ExecutionResourceKB(Properties props) {
     this.api = ResourceFactory.getAPI(props);
+    MachineMonitor.start(props);
   }
   
   @Override
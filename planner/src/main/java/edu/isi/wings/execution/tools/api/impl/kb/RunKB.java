@@ -21,6 +21,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Properties;
 
 import edu.isi.kcap.ontapi.KBAPI;
@@ -36,6 +37,7 @@ import edu.isi.wings.catalog.data.classes.VariableBindingsListSet;
 import edu.isi.wings.catalog.resource.ResourceFactory;
 import edu.isi.wings.common.CollectionsHelper;
 import edu.isi.wings.common.URIEntity;
+import edu.isi.wings.common.kb.CompactGraphStore;
 import edu.isi.wings.common.kb.KBUtils;
 import edu.isi.wings.execution.engine.classes.ExecutionQueue;
 import edu.isi.wings.execution.engine.classes.RuntimeInfo;
@@ -48,10 +50,13 @@ import edu.isi.wings.planner.api.impl.kb.WorkflowGenerationKB;
 import edu.isi.wings.workflow.plan.PlanFactory;
 import edu.isi.wings.workflow.plan.api.ExecutionPlan;
 import edu.isi.wings.workflow.plan.api.ExecutionStep;
+import edu.isi.wings.workflow.plan.api.impl.pplan.PPlan;
+import edu.isi.wings.workflow.plan.api.impl.pplan.PPlanBinary;
 import edu.isi.wings.workflow.plan.classes.ExecutionFile;
 import edu.isi.wings.workflow.template.TemplateFactory;
 import edu.isi.wings.workflow.template.api.Template;
 import edu.isi.wings.workflow.template.api.TemplateCreationAPI;
+import edu.isi.wings.workflow.template.api.impl.kb.TemplateCache;
 
 public class RunKB extends TransactionsJena 
 implements ExecutionLoggerAPI, ExecutionMonitorAPI {
@@ -117,6 +122,8 @@ implements ExecutionLoggerAPI, ExecutionMonitorAPI {
 		}
 		if (!dataPropMap.containsKey("hasLog"))
 			dataPropMap.put("hasLog", this.kb.createDatatypeProperty(this.onturl + "#hasLog"));
+		if (!dataPropMap.containsKey("hasAttempts"))
+			dataPropMap.put("hasAttempts", this.kb.createDatatypeProperty(this.onturl + "#hasAttempts"));
     if(!objPropMap.containsKey("hasSeededTemplate"))
       objPropMap.put("hasSeededTemplate", kb.createObjectProperty(this.onturl+"#hasSeededTemplate"));
     this.end();
@@ -171,6 +178,23 @@ implements ExecutionLoggerAPI, ExecutionMonitorAPI {
     }
 	}
 
+	@Override
+	public void updateRuntimeInfo(ArrayList<RuntimeStep> steps) {
+	  if(steps.isEmpty())
+	    return;
+    try {
+      KBAPI tkb = this.ontologyFactory.getKB(
+          steps.get(0).getRuntimePlan().getURL(), OntSpec.PLAIN);
+      this.start_write();
+      for(RuntimeStep stepexe : steps)
+        this.updateExecutionStep(tkb, stepexe);
+      tkb.save();
+      this.end();
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+	}
+
 	@Override
 	public ArrayList<RuntimePlan> getRunList() {
 	  ArrayList<RuntimePlan> rplans = new ArrayList<RuntimePlan>();
@@ -384,17 +408,45 @@ implements ExecutionLoggerAPI, ExecutionMonitorAPI {
 	  try {
 	    if(id != null) {
 	      KBAPI tkb = ontologyFactory.getKB(new URIEntity(id).getURL(), OntSpec.PLAIN);
+	      CompactGraphStore.delete(props, id);
 	      this.start_write();
 	      tkb.delete();
 	      this.save(tkb);
 	      this.end();
+	      TemplateCache.invalidate(id);
 	    }
     } catch (Exception e) {
       e.printStackTrace();
     }
 	}
 	
-	private boolean fileIsOutputofAnotherRun(ExecutionFile file) {
+	// Locations of the files of plans only stored in binary form (other than
+	// the given plan). The run queries can't see these plans, so they are
+	// read from the binary store instead
+	private HashSet<String> getPendingPlanFiles(String planid) {
+	  HashSet<String> locations = new HashSet<String>();
+	  HashMap<String, String> pending = CompactGraphStore.getPendingGraphs(props);
+	  for(String id : pending.keySet()) {
+	    if(!CompactGraphStore.PLAN.equals(pending.get(id)) || id.equals(planid))
+	      continue;
+	    PPlan plan = PPlanBinary.load(props, id);
+	    if(plan == null)
+	      continue;
+	    for(ExecutionStep step : plan.getAllExecutionSteps()) {
+	      for(ExecutionFile file : step.getInputFiles())
+	        locations.add(file.getLocation());
+	      for(ExecutionFile file : step.getOutputFiles())
+	        locations.add(file.getLocation());
+	    }
+	  }
+	  return locations;
+	}
+	
+	private boolean fileIsOutputofAnotherRun(ExecutionFile file, String runid,
+	    HashSet<String> pendingPlanFiles) {
+    if(pendingPlanFiles.contains(file.getLocation()))
+      return true;
+    
     String query = 
         "PREFIX xsd: <http://www.w3.org/2001/XMLSchema#>\n" + 
         "PREFIX exec: <http://www.wings-workflows.org/ontology/execution.owl#>\n" + 
@@ -413,8 +465,12 @@ implements ExecutionLoggerAPI, ExecutionMonitorAPI {
     ArrayList<ArrayList<SparqlQuerySolution>> result = unionkb.sparqlQuery(query);
     this.end();
     
-    if(result.size() > 1)
-      return true;
+    // This run's plan may itself be pending, so look for other runs
+    for(ArrayList<SparqlQuerySolution> row : result) {
+      KBObject run = row.get(0).getObject();
+      if(run != null && !runid.equals(run.getID()))
+        return true;
+    }
     return false;
 	}
 	
@@ -460,11 +516,14 @@ implements ExecutionLoggerAPI, ExecutionMonitorAPI {
 
 			// Delete output files
 			if(rplan.getPlan() != null) {
+			  HashSet<String> pendingPlanFiles = 
+			      this.getPendingPlanFiles(rplan.getPlan().getID());
         for (ExecutionStep step : rplan.getPlan().getAllExecutionSteps()) {
           for (ExecutionFile file : step.getOutputFiles()) {
             file.removeMetadataFile();
             File f = new File(file.getLocation());
-            if(f.exists() && !this.fileIsOutputofAnotherRun(file))
+            if(f.exists() && !this.fileIsOutputofAnotherRun(file, 
+                rplan.getID(), pendingPlanFiles))
               f.delete();
           }
         }
@@ -534,6 +593,9 @@ implements ExecutionLoggerAPI, ExecutionMonitorAPI {
 		if(rinfo.getStatus() != null)
 		  tkb.setPropertyValue(exobj, dataPropMap.get("hasExecutionStatus"),
 		      tkb.createLiteral(rinfo.getStatus().toString()));
+		if(rinfo.getAttempts() > 1)
+		  tkb.setPropertyValue(exobj, dataPropMap.get("hasAttempts"),
+		      tkb.createLiteral(rinfo.getAttempts()));
 	}
 
 	private RuntimeInfo getRuntimeInfo(KBAPI tkb, KBObject exobj) {
@@ -545,6 +607,7 @@ implements ExecutionLoggerAPI, ExecutionMonitorAPI {
 		KBObject endtime = this.kb.getPropertyValue(exobj, dataPropMap.get("hasEndTime"));
 		KBObject status = this.kb.getPropertyValue(exobj, dataPropMap.get("hasExecutionStatus"));
 		KBObject log = this.kb.getPropertyValue(exobj, dataPropMap.get("hasLog"));
+		KBObject attempts = this.kb.getPropertyValue(exobj, dataPropMap.get("hasAttempts"));
 		if (sttime != null && sttime.getValue() != null)
 			info.setStartTime((Date) sttime.getValue());
 		if (endtime != null && endtime.getValue() != null)
@@ -553,6 +616,8 @@ implements ExecutionLoggerAPI, ExecutionMonitorAPI {
 			info.setStatus(RuntimeInfo.Status.valueOf((String) status.getValue()));
 		if (log != null && log.getValue() != null)
 			info.setLog((String) log.getValue());
+		if (attempts != null && attempts.getValue() != null)
+			info.setAttempts(Integer.parseInt(attempts.getValue().toString()));
 		
 		if(batchok)
 		  this.stop_batch_operation();
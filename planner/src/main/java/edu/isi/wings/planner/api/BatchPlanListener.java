@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.planner.api;
+
+import java.util.ArrayList;
+
+import edu.isi.wings.workflow.template.api.Template;
+
+/**
+ * Receives the results of a batch planning request, one binding at a time.
+ *
+ * Results come in the order in which the bindings finish planning, and
+ * the calls are all made from the thread that requested the batch.
+ */
+public interface BatchPlanListener {
+  /**
+   * @param index
+   *            index of the binding in the batch
+   * @param expansions
+   *            expanded templates for the binding (empty if none)
+   * @param explanations
+   *            explanations of the binding and configuration of the binding
+   */
+  public void planned(int index, ArrayList<Template> expansions,
+      ArrayList<String> explanations);
+}
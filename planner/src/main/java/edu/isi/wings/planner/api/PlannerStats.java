@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.planner.api;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Per-phase timers and counters of the workflow generation algorithm.
+ *
+ * Every WorkflowGenerationAPI keeps its own stats, and all of them are also
+ * added up into the totals, which are exposed over JMX. While a phase runs,
+ * its stats are the "current" stats of the thread, so that the catalogs can
+ * count the queries and rules they run on the planner's behalf. Phases can
+ * nest (the template reasoner runs the configuration and specialization
+ * phases of its own planner), and ending one makes the enclosing phase's
+ * stats current again.
+ */
+public class PlannerStats implements PlannerStatsMXBean {
+  public enum Phase {
+    INFERENCE, SPECIALIZATION, DATA_SELECTION, BINDING, DATA_METRICS,
+    CONFIGURATION, EXPANSION, EXECUTION_PLAN, SERIALIZATION
+  }
+
+  public enum Counter {
+    COMPONENT_QUERIES, SPARQL_QUERIES, RULE_APPLICATIONS, RULES_EVALUATED,
+    TEMPLATE_COPIES
+  }
+
+  private static final int NPHASES = Phase.values().length;
+
+  private static final PlannerStats totals = new PlannerStats(null);
+
+  private static final ThreadLocal<PlannerStats> current =
+      new ThreadLocal<PlannerStats>();
+
+  // current stats of the enclosing phases, restored when a phase ends
+  private static final ThreadLocal<ArrayDeque<PlannerStats>> enclosing =
+      new ThreadLocal<ArrayDeque<PlannerStats>>() {
+        @Override
+        protected ArrayDeque<PlannerStats> initialValue() {
+          return new ArrayDeque<PlannerStats>();
+        }
+      };
+
+  static {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(totals,
+          new ObjectName("edu.isi.wings:type=PlannerStats"));
+    }
+    catch (Exception e) {
+      Logger.getLogger(PlannerStats.class).warn(
+          "Could not register planner stats MBean: " + e.getMessage());
+    }
+  }
+
+  private PlannerStats parent;
+
+  // calls, nanoseconds and candidates per phase
+  private AtomicLongArray phases = new AtomicLongArray(NPHASES * 3);
+  private AtomicLongArray counters =
+      new AtomicLongArray(Counter.values().length);
+
+  public PlannerStats() {
+    this(totals);
+  }
+
+  private PlannerStats(PlannerStats parent) {
+    this.parent = parent;
+  }
+
+  public static PlannerStats getTotals() {
+    return totals;
+  }
+
+  /**
+   * Add to a counter of the stats of the phase running in this thread (if any)
+   */
+  public static void record(Counter counter, long n) {
+    PlannerStats stats = current.get();
+    if(stats != null)
+      stats.add(counter, n);
+  }
+
+  public static void record(Counter counter) {
+    record(counter, 1);
+  }
+
+  /**
+   * Start a phase, and make these the current stats of the thread until
+   * the phase ends. Every startPhase must be followed by an endPhase (in a
+   * finally block).
+   * @return the start time to pass to endPhase
+   */
+  public long startPhase() {
+    PlannerStats previous = current.get();
+    if(previous != null)
+      enclosing.get().push(previous);
+    current.set(this);
+    return System.nanoTime();
+  }
+
+  /**
+   * End the phase, and make the stats of the enclosing phase (if any) the
+   * current stats again
+   * @param candidates
+   *            number of candidates (templates, bindings) the phase returned
+   */
+  public void endPhase(Phase phase, long start, int candidates) {
+    ArrayDeque<PlannerStats> stack = enclosing.get();
+    if(stack.isEmpty())
+      current.remove();
+    else
+      current.set(stack.pop());
+    this.addPhase(phase, System.nanoTime() - start, candidates);
+  }
+
+  public void addPhase(Phase phase, long nanos, int candidates) {
+    int i = phase.ordinal();
+    phases.incrementAndGet(i);
+    phases.addAndGet(NPHASES + i, nanos);
+    phases.addAndGet(2 * NPHASES + i, candidates);
+    if(parent != null)
+      parent.addPhase(phase, nanos, candidates);
+  }
+
+  public void add(Counter counter, long n) {
+    counters.addAndGet(counter.ordinal(), n);
+    if(parent != null)
+      parent.add(counter, n);
+  }
+
+  public void add(Counter counter) {
+    this.add(counter, 1);
+  }
+
+  public long get(Counter counter) {
+    return counters.get(counter.ordinal());
+  }
+
+  public long getCalls(Phase phase) {
+    return phases.get(phase.ordinal());
+  }
+
+  public long getNanos(Phase phase) {
+    return phases.get(NPHASES + phase.ordinal());
+  }
+
+  public long getCandidates(Phase phase) {
+    return phases.get(2 * NPHASES + phase.ordinal());
+  }
+
+  /**
+   * Stats as nested maps, for the JSON responses. Phases that did not
+   * run are left out.
+   */
+  public Map<String, Object> toMap() {
+    LinkedHashMap<String, Object> phasemap = new LinkedHashMap<String, Object>();
+    for(Phase phase : Phase.values()) {
+      if(this.getCalls(phase) == 0)
+        continue;
+      LinkedHashMap<String, Long> pmap = new LinkedHashMap<String, Long>();
+      pmap.put("calls", this.getCalls(phase));
+      pmap.put("millis", this.getNanos(phase) / 1000000);
+      pmap.put("candidates", this.getCandidates(phase));
+      phasemap.put(getKey(phase.name()), pmap);
+    }
+    LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
+    map.put("phases", phasemap);
+    for(Counter counter : Counter.values())
+      map.put(getKey(counter.name()), this.get(counter));
+    return map;
+  }
+
+  @Override
+  public Map<String, Long> getPhaseCalls() {
+    LinkedHashMap<String, Long> map = new LinkedHashMap<String, Long>();
+    for(Phase phase : Phase.values())
+      map.put(getKey(phase.name()), this.getCalls(phase));
+    return map;
+  }
+
+  @Override
+  public Map<String, Long> getPhaseMillis() {
+    LinkedHashMap<String, Long> map = new LinkedHashMap<String, Long>();
+    for(Phase phase : Phase.values())
+      map.put(getKey(phase.name()), this.getNanos(phase) / 1000000);
+    return map;
+  }
+
+  @Override
+  public Map<String, Long> getPhaseCandidates() {
+    LinkedHashMap<String, Long> map = new LinkedHashMap<String, Long>();
+    for(Phase phase : Phase.values())
+      map.put(getKey(phase.name()), this.getCandidates(phase));
+    return map;
+  }
+
+  @Override
+  public long getComponentQueries() {
+    return this.get(Counter.COMPONENT_QUERIES);
+  }
+
+  @Override
+  public long getSparqlQueries() {
+    return this.get(Counter.SPARQL_QUERIES);
+  }
+
+  @Override
+  public long getRuleApplications() {
+    return this.get(Counter.RULE_APPLICATIONS);
+  }
+
+  @Override
+  public long getRulesEvaluated() {
+    return this.get(Counter.RULES_EVALUATED);
+  }
+
+  @Override
+  public long getTemplateCopies() {
+    return this.get(Counter.TEMPLATE_COPIES);
+  }
+
+  /**
+   * Clears these stats only (not the totals they were added to)
+   */
+  @Override
+  public void reset() {
+    for(int i=0; i<phases.length(); i++)
+      phases.set(i, 0);
+    for(int i=0; i<counters.length(); i++)
+      counters.set(i, 0);
+  }
+
+  // SPARQL_QUERIES -> sparqlQueries
+  private static String getKey(String name) {
+    StringBuilder key = new StringBuilder();
+    boolean upper = false;
+    for(char c : name.toLowerCase().toCharArray()) {
+      if(c == '_') {
+        upper = true;
+        continue;
+      }
+      key.append(upper ? Character.toUpperCase(c) : c);
+      upper = false;
+    }
+    return key.toString();
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.planner.api;
+
+import java.util.Map;
+
+/**
+ * JMX view of the planner counters, aggregated over all planning requests
+ * since startup (or the last reset). Registered as
+ * edu.isi.wings:type=PlannerStats
+ */
+public interface PlannerStatsMXBean {
+  public Map<String, Long> getPhaseCalls();
+
+  public Map<String, Long> getPhaseMillis();
+
+  public Map<String, Long> getPhaseCandidates();
+
+  public long getComponentQueries();
+
+  public long getSparqlQueries();
+
+  public long getRuleApplications();
+
+  public long getRulesEvaluated();
+
+  public long getTemplateCopies();
+
+  public void reset();
+}
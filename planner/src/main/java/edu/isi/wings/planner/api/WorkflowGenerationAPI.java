@@ -18,6 +18,7 @@
 package edu.isi.wings.planner.api;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import edu.isi.kcap.ontapi.transactions.TransactionsAPI;
 import edu.isi.wings.catalog.component.api.ComponentReasoningAPI;
@@ -27,6 +28,7 @@ import edu.isi.wings.catalog.data.classes.VariableBindingsListSet;
 import edu.isi.wings.workflow.plan.api.ExecutionPlan;
 import edu.isi.wings.workflow.template.api.Seed;
 import edu.isi.wings.workflow.template.api.Template;
+import edu.isi.wings.workflow.template.classes.sets.Binding;
 
 public interface WorkflowGenerationAPI extends TransactionsAPI {
 
@@ -52,7 +54,50 @@ public interface WorkflowGenerationAPI extends TransactionsAPI {
 	
 	public Template getExpandedTemplate(Template configuredTemplate);
 
+	/**
+	 * Plan a template for many input data and parameter bindings, in
+	 * parallel. Each binding is planned as it would be alone: it is set on
+	 * a copy of the template, which is then inferred, specialized, bound,
+	 * configured and expanded.
+	 * 
+	 * @param template
+	 *            the template, with any component bindings already set
+	 * @param bindings
+	 *            for each run, the bindings of input data and parameter
+	 *            variables (keyed by variable id or name)
+	 * @param listener
+	 *            receives the expanded templates of each binding
+	 */
+	public void planBatch(Template template,
+	    ArrayList<HashMap<String, Binding>> bindings, BatchPlanListener listener);
+
 	public ArrayList<String> getExplanations();
+
+	public PlannerStats getStats();
+
+	/**
+	 * Limit the planning that follows. Once the budget runs out, the search
+	 * stops and only the candidates completed so far are returned. The time
+	 * limit holds during specialization even before the first candidate is
+	 * complete, so running out of time there can leave no candidates.
+	 * 
+	 * @param millis
+	 *            wall time, starting now (0 for no limit)
+	 * @param maxCandidates
+	 *            complete candidates to look for at each step (0 for no limit)
+	 */
+	public void setBudget(long millis, int maxCandidates);
+
+	/**
+	 * Check whether the budget has run out, before looking for more
+	 * candidates. If it has, the search is marked as truncated.
+	 * 
+	 * @param candidates
+	 *            complete candidates found so far in this step
+	 */
+	public boolean checkBudget(int candidates);
+
+	public boolean isTruncated();
 	
 	public ExecutionPlan getExecutionPlan(Template template);
 }
@@ -25,6 +25,7 @@ import edu.isi.kcap.ontapi.KBTriple;
 import edu.isi.kcap.ontapi.OntFactory;
 import edu.isi.kcap.ontapi.OntSpec;
 import edu.isi.kcap.ontapi.jena.transactions.TransactionsJena;
+import edu.isi.wings.catalog.CatalogLock;
 import edu.isi.wings.catalog.component.api.ComponentReasoningAPI;
 import edu.isi.wings.catalog.component.api.impl.kb.TemplateReasoningKB;
 import edu.isi.wings.catalog.component.classes.ComponentInvocation;
@@ -36,10 +37,15 @@ import edu.isi.wings.catalog.data.classes.VariableBindingsListSet;
 import edu.isi.wings.catalog.data.classes.metrics.Metric;
 import edu.isi.wings.catalog.data.classes.metrics.Metrics;
 import edu.isi.wings.catalog.resource.api.ResourceAPI;
+import edu.isi.wings.common.CollectionsHelper;
 import edu.isi.wings.common.SerializableObjectCloner;
 import edu.isi.wings.common.URIEntity;
 import edu.isi.wings.common.UuidGen;
 import edu.isi.wings.common.logging.LogEvent;
+import edu.isi.wings.planner.api.BatchPlanListener;
+import edu.isi.wings.planner.api.PlannerStats;
+import edu.isi.wings.planner.api.PlannerStats.Counter;
+import edu.isi.wings.planner.api.PlannerStats.Phase;
 import edu.isi.wings.planner.api.WorkflowGenerationAPI;
 import edu.isi.wings.workflow.plan.PlanFactory;
 import edu.isi.wings.workflow.plan.api.ExecutionPlan;
@@ -73,6 +79,13 @@ import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Name: WorkflowGenerationKB
@@ -93,6 +106,8 @@ implements WorkflowGenerationAPI {
 
 	public ArrayList<String> explanations;
 
+	PlannerStats stats;
+
 	LogEvent curLogEvent;
 
 	public String request_id;
@@ -102,6 +117,14 @@ implements WorkflowGenerationAPI {
 	String exPrefix;
 
 	Properties props;
+
+	// Planning budget (0 = none)
+	long deadline = 0;
+	int maxCandidates = 0;
+	boolean truncated = false;
+
+	// Shared by the batch planning requests of all planners
+	private static ExecutorService batchPool;
 	
 	/**
 	 * base constructor
@@ -132,6 +155,7 @@ implements WorkflowGenerationAPI {
 		this.wNS = props.getProperty("ont.workflow.url") + "#";
 		this.exPrefix = props.getProperty("domain.executions.dir.url");
 		this.explanations = new ArrayList<String>();
+		this.stats = new PlannerStats();
 	}
 
 
@@ -163,6 +187,58 @@ implements WorkflowGenerationAPI {
 		return this.explanations;
 	}
 
+	@Override
+	public PlannerStats getStats() {
+		return this.stats;
+	}
+
+	@Override
+	public void setBudget(long millis, int maxCandidates) {
+		this.deadline = millis > 0 ? System.currentTimeMillis() + millis : 0;
+		this.maxCandidates = maxCandidates;
+		this.truncated = false;
+	}
+
+	@Override
+	public boolean checkBudget(int candidates) {
+		String reason = null;
+		if (deadline > 0 && System.currentTimeMillis() > deadline)
+			reason = "time";
+		else if (maxCandidates > 0 && candidates >= maxCandidates)
+			reason = maxCandidates + " candidates";
+		if (reason == null)
+			return false;
+		this.truncate(reason);
+		return true;
+	}
+
+	private void truncate(String reason) {
+		if (!truncated) {
+			truncated = true;
+			this.addExplanation("WARNING: The planning budget (" + reason + ") ran out. "
+			    + "The search was truncated, and only the candidates completed so far are returned");
+		}
+	}
+
+	@Override
+	public boolean isTruncated() {
+		return this.truncated;
+	}
+
+	private Template copyTemplate(Template template) {
+		stats.add(Counter.TEMPLATE_COPIES);
+		return template.createCopy();
+	}
+
+	private static int countBindings(VariableBindingsListSet bindingset) {
+		int count = 0;
+		if (bindingset != null) {
+			for (ArrayList<VariableBindingsList> list : bindingset)
+				count += list.size();
+		}
+		return count;
+	}
+
 	/**
 	 * Step 2
 	 * 
@@ -171,6 +247,18 @@ implements WorkflowGenerationAPI {
 	 * @return a list of specialized templates customized to seed constraints
 	 */
 	public ArrayList<Template> specializeTemplates(Template template) {
+		long start = stats.startPhase();
+		ArrayList<Template> result = null;
+		try {
+			result = this.doSpecializeTemplates(template);
+			return result;
+		}
+		finally {
+			stats.endPhase(Phase.SPECIALIZATION, start, result == null ? 0 : result.size());
+		}
+	}
+
+	private ArrayList<Template> doSpecializeTemplates(Template template) {
 		LogEvent event = getEvent(LogEvent.EVENT_WG_SPECIALIZE);
 		logger.info(event.createStartLogMsg().addWQ(LogEvent.TEMPLATE, "" + template));
 		
@@ -188,11 +276,13 @@ implements WorkflowGenerationAPI {
 		if (template == null)
 			return templates;
 
-		Template tmp = template.createCopy();
+		Template tmp = this.copyTemplate(template);
 		tmp.setID(UuidGen.generateURIUuid((URIEntity)template));
 		templates.add(tmp);
 
 		while (!templates.isEmpty()) {
+			if (this.checkBudget(processedTemplates.size()))
+				break;
 			logger.info(event.createLogMsg().addList(LogEvent.QUEUED_TEMPLATES, templates));
 			logger.info(event.createLogMsg().addList(LogEvent.SPECIALIZED_TEMPLATES_Q,
 					processedTemplates));
@@ -260,6 +350,13 @@ implements WorkflowGenerationAPI {
           continue;
         }
         
+				// The time budget also applies to the first candidate, which is
+				// dropped if time runs out before it is complete
+				if (this.checkBudget(processedTemplates.size())) {
+				  currentTemplate = null;
+				  break;
+				}
+
 				ArrayList<KBTriple> redBox = currentTemplate.getConstraintEngine()
 				    .getConstraints(variableIds);
 
@@ -284,6 +381,7 @@ implements WorkflowGenerationAPI {
 				this.addExplanation("INFO: Specialize and get input metadata for component: " 
 				    + component.getBinding());
 				//System.out.println("Specializing " + component.getBinding());
+				stats.add(Counter.COMPONENT_QUERIES);
 				ArrayList<ComponentPacket> allcmrs = pc
 				    .specializeAndFindDataDetails(sentMapsComponentDetails);
 
@@ -326,7 +424,7 @@ implements WorkflowGenerationAPI {
 				    for (int i = 1; i < componentDetailsList.size(); i++) {
 				      ComponentPacket cmr = componentDetailsList.get(i);
 				      this.addExplanations(cmr.getExplanations());
-				      Template specializedTemplate = currentTemplate.createCopy();
+				      Template specializedTemplate = this.copyTemplate(currentTemplate);
 				      specializedTemplate.setID(
 				          UuidGen.generateURIUuid((URIEntity)currentTemplate));
 				      Node specializedNode = specializedTemplate.getNode(originNode
@@ -527,6 +625,18 @@ implements WorkflowGenerationAPI {
 	 * @return a list of variable bindings (or null if no data objects)
 	 */
 	public VariableBindingsListSet selectInputDataObjects(Template specializedTemplate) {
+		long start = stats.startPhase();
+		VariableBindingsListSet result = null;
+		try {
+			result = this.doSelectInputDataObjects(specializedTemplate);
+			return result;
+		}
+		finally {
+			stats.endPhase(Phase.DATA_SELECTION, start, countBindings(result));
+		}
+	}
+
+	private VariableBindingsListSet doSelectInputDataObjects(Template specializedTemplate) {
 
 	  this.addExplanation("INFO: --------- Binding data for the template ---------");
     this.addExplanation("Template: " + specializedTemplate);
@@ -640,9 +750,21 @@ implements WorkflowGenerationAPI {
    *        the bound template
    */
 	public Template bindTemplate(Template specializedTemplate, VariableBindingsList bindings) {
+		long start = stats.startPhase();
+		Template result = null;
+		try {
+			result = this.doBindTemplate(specializedTemplate, bindings);
+			return result;
+		}
+		finally {
+			stats.endPhase(Phase.BINDING, start, result == null ? 0 : 1);
+		}
+	}
+
+	private Template doBindTemplate(Template specializedTemplate, VariableBindingsList bindings) {
 		HashMap<String, ArrayList<String>> variableBindings = new HashMap<String, ArrayList<String>>();
 		
-		Template t = specializedTemplate.createCopy();
+		Template t = this.copyTemplate(specializedTemplate);
 		t.setID(UuidGen.generateURIUuid((URIEntity)t));
 
 		for (VariableBindings dvobinding : bindings) {
@@ -728,6 +850,16 @@ implements WorkflowGenerationAPI {
 	 *            a list of candidate instances with input data variables bound
 	 */
 	public void setDataMetricsForInputDataObjects(ArrayList<Template> partialCandidateInstances) {
+		long start = stats.startPhase();
+		try {
+			this.doSetDataMetricsForInputDataObjects(partialCandidateInstances);
+		}
+		finally {
+			stats.endPhase(Phase.DATA_METRICS, start, partialCandidateInstances.size());
+		}
+	}
+
+	private void doSetDataMetricsForInputDataObjects(ArrayList<Template> partialCandidateInstances) {
 		HashMap<String, Metrics> dataObjectNameToDataMetricsMap = new HashMap<String, Metrics>();
 		LogEvent event = curLogEvent;
 
@@ -751,6 +883,18 @@ implements WorkflowGenerationAPI {
 	 */
 
 	public ArrayList<Template> configureTemplates(Template template) {
+		long start = stats.startPhase();
+		ArrayList<Template> result = null;
+		try {
+			result = this.doConfigureTemplates(template);
+			return result;
+		}
+		finally {
+			stats.endPhase(Phase.CONFIGURATION, start, result == null ? 0 : result.size());
+		}
+	}
+
+	private ArrayList<Template> doConfigureTemplates(Template template) {
 		LogEvent event = getEvent(LogEvent.EVENT_WG_CONFIGURE);
 		logger.info(event.createStartLogMsg().addWQ(LogEvent.TEMPLATE, "" + template));
 		
@@ -762,7 +906,7 @@ implements WorkflowGenerationAPI {
 
 		HashMap<Template, ArrayList<String>> done = new HashMap<Template, ArrayList<String>>();
 
-		Template t = template.createCopy();
+		Template t = this.copyTemplate(template);
 		t.setID(UuidGen.generateURIUuid((URIEntity)t));
 		templates.add(t);
 
@@ -903,7 +1047,7 @@ implements WorkflowGenerationAPI {
 								ComponentVariable c = component;
 								Node n = destNode;
 								if (i > 0) {
-									configuredTemplate = currentTemplate.createCopy();
+									configuredTemplate = this.copyTemplate(currentTemplate);
 									configuredTemplate.setID(
 											UuidGen.generateURIUuid((URIEntity)currentTemplate));
 									n = configuredTemplate.getNode(destNode.getID());
@@ -1040,12 +1184,24 @@ implements WorkflowGenerationAPI {
 	 * - No specialization  or configuration
 	 */
 	public Template getInferredTemplate(Template template) {
+		long start = stats.startPhase();
+		Template result = null;
+		try {
+			result = this.doGetInferredTemplate(template);
+			return result;
+		}
+		finally {
+			stats.endPhase(Phase.INFERENCE, start, result == null ? 0 : 1);
+		}
+	}
+
+	private Template doGetInferredTemplate(Template template) {
 		ComponentReasoningAPI pc = this.pc;
 		this.addExplanation("INFO: --------- Getting an inferred template ---------");
 		
 		HashMap<Template, ArrayList<String>> done = new HashMap<Template, ArrayList<String>>();
 
-		Template currentTemplate = template.createCopy();
+		Template currentTemplate = this.copyTemplate(template);
 		currentTemplate.setID(
 				UuidGen.generateURIUuid((URIEntity)template));
 
@@ -1175,6 +1331,7 @@ implements WorkflowGenerationAPI {
 
 					ComponentPacket sentMapsComponentDetails = new ComponentPacket(component,
 							roleMap, redBox);
+					stats.add(Counter.COMPONENT_QUERIES);
 					ComponentPacket map = pc.findDataDetails(sentMapsComponentDetails);
 
 					if (map == null) {
@@ -1245,6 +1402,7 @@ implements WorkflowGenerationAPI {
 
 						ComponentPacket sentMapsComponentDetails = new ComponentPacket(component,
 								roleMap, redBox);
+						stats.add(Counter.COMPONENT_QUERIES);
 						ComponentPacket map = pc.findDataDetails(sentMapsComponentDetails);
 
 						if (map == null) {
@@ -1293,6 +1451,18 @@ implements WorkflowGenerationAPI {
 	 * @return The Execution Plan
 	 */
 	public ExecutionPlan getExecutionPlan(Template template) {
+		long start = stats.startPhase();
+		ExecutionPlan result = null;
+		try {
+			result = this.doGetExecutionPlan(template);
+			return result;
+		}
+		finally {
+			stats.endPhase(Phase.EXECUTION_PLAN, start, result == null ? 0 : result.getAllExecutionSteps().size());
+		}
+	}
+
+	private ExecutionPlan doGetExecutionPlan(Template template) {
 	  this.addExplanation("INFO: --------- Creating an execution plan ---------");
 	  
 		try {
@@ -1329,6 +1499,7 @@ implements WorkflowGenerationAPI {
 				ComponentPacket mapsComponentDetails = new ComponentPacket(c, roleMap, new ArrayList<KBTriple>());
 
 				// Query 4.5
+				stats.add(Counter.COMPONENT_QUERIES);
 				ComponentInvocation invocation = this.pc.getComponentInvocation(mapsComponentDetails);
 
 				if(invocation == null) {
@@ -1397,8 +1568,20 @@ implements WorkflowGenerationAPI {
 	 * 		- No collections at all (component or data)
 	 * 		- There can be more than one link to a port (i.e. expansion of a collection as an input to that port)
 	 */
+	public Template getExpandedTemplate(Template template) {
+		long start = stats.startPhase();
+		Template result = null;
+		try {
+			result = this.doGetExpandedTemplate(template);
+			return result;
+		}
+		finally {
+			stats.endPhase(Phase.EXPANSION, start, result == null ? 0 : 1);
+		}
+	}
+
 	@SuppressWarnings("unchecked")
-  public Template getExpandedTemplate(Template template) {
+  private Template doGetExpandedTemplate(Template template) {
 	  this.addExplanation("INFO: --------- Expanding the template into a workflow instance ---------");
 	  
 		Template curt = new TemplateKB((TemplateKB)template);
@@ -1662,6 +1845,179 @@ implements WorkflowGenerationAPI {
 		
 		return curt;
 	}
+
+	/**
+	 * Batch planning: plan the template for each of the bindings in
+	 * parallel. Each binding is set on its own copy of the template before
+	 * inference, as when it is planned alone, since the bindings can change
+	 * what is inferred and which components are specialized
+	 */
+	public void planBatch(Template template,
+	    ArrayList<HashMap<String, Binding>> bindings, BatchPlanListener listener) {
+		this.addExplanation("INFO: --------- Planning a batch of " + bindings.size()
+		    + " bindings ---------");
+
+		// The tasks share the catalogs, which are not thread-safe
+		DataReasoningAPI bdc = CatalogLock.guard(DataReasoningAPI.class, dc);
+		ComponentReasoningAPI bpc = CatalogLock.guard(ComponentReasoningAPI.class, pc);
+		ResourceAPI brc = CatalogLock.guard(ResourceAPI.class, rc);
+
+		CompletionService<BatchResult> results = 
+		    new ExecutorCompletionService<BatchResult>(getBatchPool(props));
+		for (int i = 0; i < bindings.size(); i++)
+			results.submit(new BatchTask(i, template, bindings.get(i), bdc, bpc, brc));
+
+		for (int i = 0; i < bindings.size(); i++) {
+			BatchResult result;
+			try {
+				result = results.take().get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (ExecutionException e) {
+				// Tasks catch their own errors, so this should not happen
+				logger.error("Batch planning failed", e.getCause());
+				continue;
+			}
+			// The binding's own explanations say why
+			if (result.truncated)
+				this.truncated = true;
+			listener.planned(result.index, result.expansions, result.explanations);
+		}
+	}
+
+	private class BatchTask implements Callable<BatchResult> {
+		int index;
+		Template template;
+		HashMap<String, Binding> bindings;
+		DataReasoningAPI dc;
+		ComponentReasoningAPI pc;
+		ResourceAPI rc;
+
+		public BatchTask(int index, Template template,
+		    HashMap<String, Binding> bindings, DataReasoningAPI dc,
+		    ComponentReasoningAPI pc, ResourceAPI rc) {
+			this.index = index;
+			this.template = template;
+			this.bindings = bindings;
+			this.dc = dc;
+			this.pc = pc;
+			this.rc = rc;
+		}
+
+		@Override
+		public BatchResult call() {
+			// A planner of its own for the explanations of this binding, 
+			// adding up to the stats of the batch
+			WorkflowGenerationKB wg = new WorkflowGenerationKB(props, dc, pc, rc, request_id);
+			wg.stats = stats;
+			wg.curLogEvent = curLogEvent;
+			// The same budget as the batch
+			wg.deadline = deadline;
+			wg.maxCandidates = maxCandidates;
+			ArrayList<Template> ets = new ArrayList<Template>();
+			try {
+				ets = wg.planBinding(template, bindings);
+			}
+			catch (Exception e) {
+				logger.error("Could not plan binding " + index, e);
+				wg.addExplanation("ERROR: " + e.getMessage());
+			}
+			return new BatchResult(index, ets, wg.explanations, wg.truncated);
+		}
+	}
+
+	private static class BatchResult {
+		int index;
+		ArrayList<Template> expansions;
+		ArrayList<String> explanations;
+		boolean truncated;
+
+		public BatchResult(int index, ArrayList<Template> expansions,
+		    ArrayList<String> explanations, boolean truncated) {
+			this.index = index;
+			this.expansions = expansions;
+			this.explanations = explanations;
+			this.truncated = truncated;
+		}
+	}
+
+	private ArrayList<Template> planBinding(Template template,
+	    HashMap<String, Binding> bindings) {
+		// The template is shared by all the tasks of the batch
+		Template t;
+		synchronized (template) {
+			t = this.copyTemplate(template);
+		}
+		for (String key : bindings.keySet()) {
+			Variable var = t.getVariable(key);
+			if (var == null) {
+				for (Variable v : t.getVariables()) {
+					if (v.getName().equals(key))
+						var = v;
+				}
+			}
+			if (var != null)
+				var.setBinding(bindings.get(key));
+		}
+
+		ArrayList<Template> bts = new ArrayList<Template>();
+		Template itpl = this.getInferredTemplate(t);
+		if (itpl == null)
+			return bts;
+		for (Template candidate : this.specializeTemplates(itpl)) {
+			if (!bts.isEmpty() && this.checkBudget(bts.size()))
+				break;
+			// If template has no input data variables, skip data selection
+			if (candidate.getInputDataVariables().length == 0) {
+				bts.add(candidate);
+				continue;
+			}
+			VariableBindingsListSet bindingset = this.selectInputDataObjects(candidate);
+			if (bindingset == null)
+				continue;
+			for (VariableBindingsList binding : 
+			    CollectionsHelper.combineVariableDataObjectMappings(bindingset)) {
+				Template bt = this.bindTemplate(candidate, binding);
+				if (bt != null)
+					bts.add(bt);
+			}
+		}
+		this.setDataMetricsForInputDataObjects(bts);
+
+		ArrayList<Template> ets = new ArrayList<Template>();
+		for (Template bt : bts) {
+			if (!ets.isEmpty() && this.checkBudget(ets.size()))
+				break;
+			for (Template ct : this.configureTemplates(bt)) {
+				if (!ets.isEmpty() && this.checkBudget(ets.size()))
+					break;
+				Template et = this.getExpandedTemplate(ct);
+				if (et != null)
+					ets.add(et);
+			}
+		}
+		return ets;
+	}
+
+	private static synchronized ExecutorService getBatchPool(Properties props) {
+		if (batchPool == null) {
+			int threads = props.containsKey("planner.batch.threads") ? 
+			    Integer.parseInt(props.getProperty("planner.batch.threads").trim()) :
+			    Runtime.getRuntime().availableProcessors();
+			batchPool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "wings-batch-planner");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return batchPool;
+	}
 	
 
 	/*
@@ -2296,6 +2652,7 @@ implements WorkflowGenerationAPI {
             ccmr.getComponent().getBinding());
         
 				// No new roles introduced by the forward sweep call
+				stats.add(Counter.COMPONENT_QUERIES);
 				ArrayList<ComponentPacket> allcmrs = pc.findOutputDataPredictedDescriptions(ccmr);
         
 				ArrayList<ComponentPacket> rcmr = new ArrayList<ComponentPacket>();
@@ -22,6 +22,7 @@ import java.util.Properties;
 import edu.isi.wings.workflow.plan.api.ExecutionPlan;
 import edu.isi.wings.workflow.plan.api.ExecutionStep;
 import edu.isi.wings.workflow.plan.api.impl.pplan.PPlan;
+import edu.isi.wings.workflow.plan.api.impl.pplan.PPlanBinary;
 import edu.isi.wings.workflow.plan.api.impl.pplan.PPlanStep;
 
 public class PlanFactory {
@@ -39,6 +40,9 @@ public class PlanFactory {
 	}
 	
 	public static ExecutionPlan loadExecutionPlan(String id, Properties props) {
+		ExecutionPlan plan = PPlanBinary.load(props, id);
+		if(plan != null)
+			return plan;
 		return new PPlan(id, props, true);
 	}
 	
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.workflow.plan.api.impl.pplan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+
+import edu.isi.wings.common.CompactReader;
+import edu.isi.wings.common.CompactWriter;
+import edu.isi.wings.common.kb.CompactGraphStore;
+import edu.isi.wings.workflow.plan.api.ExecutionPlan;
+import edu.isi.wings.workflow.plan.api.ExecutionStep;
+import edu.isi.wings.workflow.plan.classes.ExecutionCode;
+import edu.isi.wings.workflow.plan.classes.ExecutionFile;
+
+/**
+ * Compact binary form of an execution plan (see CompactWriter). Files are
+ * written once in a table and referred to by index from the steps. Besides
+ * what the plan's RDF graph holds, the invocation arguments of each step
+ * are kept, so the RDF graph can be generated from the binary form later.
+ */
+public class PPlanBinary {
+  static final String MAGIC = "WPLN";
+  static final int VERSION = 1;
+
+  private static final int STRING_ARG = 0;
+  private static final int FILE_ARG = 1;
+
+  /**
+   * Write the plan into the binary store. The RDF graph isn't written, and
+   * is marked as pending until materialize is called
+   */
+  public static boolean save(Properties props, ExecutionPlan plan) {
+    File f = CompactGraphStore.getFile(props, plan.getID());
+    if(f == null)
+      return false;
+    try {
+      write(plan, new BufferedOutputStream(new FileOutputStream(f)));
+      CompactGraphStore.markPending(props, plan.getID(),
+          CompactGraphStore.PLAN);
+      return true;
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      f.delete();
+      return false;
+    }
+  }
+
+  /**
+   * Read the plan from the binary store
+   * @return null if it isn't stored in binary form
+   */
+  public static PPlan load(Properties props, String planid) {
+    File f = CompactGraphStore.getFile(props, planid);
+    if(f == null || !f.exists())
+      return null;
+    try {
+      return read(props, new BufferedInputStream(new FileInputStream(f)));
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * Write the RDF graph of a plan that was only stored in binary form
+   */
+  public static boolean materialize(Properties props, String planid) {
+    if(!CompactGraphStore.isPending(props, planid))
+      return true;
+    PPlan plan = load(props, planid);
+    if(plan == null || !plan.save())
+      return false;
+    CompactGraphStore.clearPending(props, planid);
+    return true;
+  }
+
+  public static void write(ExecutionPlan plan, OutputStream out)
+      throws IOException {
+    CompactWriter w = new CompactWriter(out, MAGIC, VERSION);
+    w.writeUri(plan.getID());
+    w.writeBoolean(plan.isIncomplete());
+
+    // File table
+    LinkedHashMap<String, Integer> fileIndex = 
+        new LinkedHashMap<String, Integer>();
+    ArrayList<ExecutionFile> files = new ArrayList<ExecutionFile>();
+    for(ExecutionStep step : plan.getAllExecutionSteps()) {
+      for(ExecutionFile file : step.getInputFiles())
+        addFile(file, fileIndex, files);
+      for(ExecutionFile file : step.getOutputFiles())
+        addFile(file, fileIndex, files);
+      for(ArrayList<Object> values : step.getInvocationArguments().values())
+        for(Object value : values)
+          if(value instanceof ExecutionFile)
+            addFile((ExecutionFile) value, fileIndex, files);
+    }
+    w.writeInt(files.size());
+    for(ExecutionFile file : files) {
+      w.writeUri(file.getID());
+      w.writeString(file.getLocation());
+      w.writeString(file.getBinding());
+    }
+
+    w.writeInt(plan.getAllExecutionSteps().size());
+    for(ExecutionStep step : plan.getAllExecutionSteps()) {
+      w.writeUri(step.getID());
+      ExecutionCode code = step.getCodeBinding();
+      w.writeBoolean(code != null);
+      if(code != null) {
+        w.writeUri(code.getID());
+        w.writeString(code.getLocation());
+        w.writeString(code.getCodeDirectory());
+      }
+      w.writeInt(step.getMachineIds().size());
+      for(String mid : step.getMachineIds())
+        w.writeUri(mid);
+
+      writeFiles(w, step.getInputFiles(), fileIndex);
+      writeFiles(w, step.getOutputFiles(), fileIndex);
+
+      HashMap<String, ArrayList<Object>> args = step.getInvocationArguments();
+      w.writeInt(args.size());
+      for(String argname : args.keySet()) {
+        w.writeString(argname);
+        ArrayList<Object> values = args.get(argname);
+        w.writeInt(values.size());
+        for(Object value : values) {
+          if(value instanceof ExecutionFile) {
+            w.writeInt(FILE_ARG);
+            w.writeInt(fileIndex.get(((ExecutionFile) value).getID()));
+          }
+          else {
+            w.writeInt(STRING_ARG);
+            w.writeString(value != null ? value.toString() : null);
+          }
+        }
+      }
+    }
+    w.close();
+  }
+
+  public static PPlan read(Properties props, InputStream in)
+      throws IOException {
+    CompactReader r = new CompactReader(in, MAGIC, VERSION);
+    PPlan plan = new PPlan(r.readUri(), props);
+    plan.setIsIncomplete(r.readBoolean());
+
+    ExecutionFile[] files = new ExecutionFile[r.readInt()];
+    for(int i=0; i<files.length; i++) {
+      files[i] = new ExecutionFile(r.readUri());
+      files[i].setLocation(r.readString());
+      files[i].setBinding(r.readString());
+    }
+
+    int count = r.readInt();
+    for(int i=0; i<count; i++) {
+      PPlanStep step = new PPlanStep(r.readUri(), props);
+      if(r.readBoolean()) {
+        ExecutionCode code = new ExecutionCode(r.readUri());
+        code.setLocation(r.readString());
+        code.setCodeDirectory(r.readString());
+        step.setCodeBinding(code);
+      }
+      ArrayList<String> machineIds = new ArrayList<String>();
+      int nmachines = r.readInt();
+      for(int j=0; j<nmachines; j++)
+        machineIds.add(r.readUri());
+      step.setMachineIds(machineIds);
+
+      int nfiles = r.readInt();
+      for(int j=0; j<nfiles; j++)
+        step.addInputFile(files[r.readInt()]);
+      nfiles = r.readInt();
+      for(int j=0; j<nfiles; j++)
+        step.addOutputFile(files[r.readInt()]);
+
+      HashMap<String, ArrayList<Object>> args = 
+          new HashMap<String, ArrayList<Object>>();
+      int nargs = r.readInt();
+      for(int j=0; j<nargs; j++) {
+        String argname = r.readString();
+        ArrayList<Object> values = new ArrayList<Object>();
+        int nvalues = r.readInt();
+        for(int k=0; k<nvalues; k++) {
+          if(r.readInt() == FILE_ARG)
+            values.add(files[r.readInt()]);
+          else
+            values.add(r.readString());
+        }
+        args.put(argname, values);
+      }
+      step.setInvocationArguments(args);
+      plan.addExecutionStep(step);
+    }
+    return plan;
+  }
+
+  private static void addFile(ExecutionFile file, 
+      HashMap<String, Integer> fileIndex, ArrayList<ExecutionFile> files) {
+    if(!fileIndex.containsKey(file.getID())) {
+      fileIndex.put(file.getID(), files.size());
+      files.add(file);
+    }
+  }
+
+  private static void writeFiles(CompactWriter w, 
+      ArrayList<ExecutionFile> files, HashMap<String, Integer> fileIndex)
+      throws IOException {
+    w.writeInt(files.size());
+    for(ExecutionFile file : files)
+      w.writeInt(fileIndex.get(file.getID()));
+  }
+}
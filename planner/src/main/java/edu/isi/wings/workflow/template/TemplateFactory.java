@@ -28,6 +28,7 @@ import edu.isi.wings.workflow.template.api.Template;
 import edu.isi.wings.workflow.template.api.TemplateCreationAPI;
 import edu.isi.wings.workflow.template.api.impl.kb.SeedKB;
 import edu.isi.wings.workflow.template.api.impl.kb.TemplateCreationKB;
+import edu.isi.wings.workflow.template.api.impl.kb.TemplateBinary;
 import edu.isi.wings.workflow.template.api.impl.kb.TemplateKB;
 
 public class TemplateFactory {
@@ -36,6 +37,9 @@ public class TemplateFactory {
 	public static Template getTemplate(Properties props, String templateid) {
 		if (props == null)
 			props = createLegacyConfiguration();
+		Template tpl = TemplateBinary.load(props, templateid);
+		if (tpl != null)
+			return tpl;
 		return new TemplateKB(props, templateid);
 	}
 
@@ -18,6 +18,8 @@
 package edu.isi.wings.workflow.template.api.impl.kb;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 
 import edu.isi.kcap.ontapi.KBAPI;
 import edu.isi.kcap.ontapi.KBObject;
@@ -38,6 +40,17 @@ implements ConstraintEngine {
 	ArrayList<String> blacklistIds;
 	ArrayList<String> allowedIds;
 
+	// Constraints by subject id, and the subjects of constraints by object id.
+	// Built on first use, and kept up to date by the methods that change the kb
+	private HashMap<String, ArrayList<KBTriple>> subjectIndex;
+	private HashMap<String, HashSet<String>> objectIndex;
+	
+	// Constraints reachable from an id (see getConstraints(id)), for each
+	// combination of blacklists and whitelists. Cleared when the kb changes
+	private HashMap<String, HashMap<String, ArrayList<KBTriple>>> closures =
+	    new HashMap<String, HashMap<String, ArrayList<KBTriple>>>();
+	private static final int MAX_FILTERS = 8;
+
 	public ConstraintEngineKB(KBAPI kb, String wflowns) {
 		// The ConstraintEngine KB is kept separate from template kb 
 	  this.ontologyFactory = new OntFactory(OntFactory.JENA);
@@ -182,7 +195,10 @@ implements ConstraintEngine {
 	  this.start_read();
 		ArrayList<KBTriple> triples = this.kb.genericTripleQuery(forsubj, null, forobj);
 		this.end();
-		
+		return this.filterTriples(triples);
+	}
+	
+	private ArrayList<KBTriple> filterTriples(ArrayList<KBTriple> triples) {
 		ArrayList<KBTriple> relevantTriples = new ArrayList<KBTriple>();
 		for (KBTriple triple : triples) {
 			// System.out.println(triple);
@@ -221,7 +237,7 @@ implements ConstraintEngine {
 		// TODO: Temporarily just choose subject-based constraints
 		// to simplify which constraints are chosen !!
 
-		ArrayList<KBTriple> tmp = this.getTriplesFor(item, null, 2);
+		ArrayList<KBTriple> tmp = this.filterTriples(this.getIndexedTriples(id));
 		// ArrayList<KBTriple> tmp2 = this.getTriplesFor(null, item, 1,
 		// blacklistIds);
 		constraints.addAll(tmp);
@@ -256,7 +272,17 @@ implements ConstraintEngine {
 	}
 
 	public ArrayList<KBTriple> getConstraints(String id) {
-		return getConstraintsForId(id, new ArrayList<String>());
+		ArrayList<KBTriple> closure = this.getCachedClosure(id);
+		if (closure == null) {
+			closure = getConstraintsForId(id, new ArrayList<String>());
+			this.cacheClosure(id, closure);
+		}
+		// Callers may modify the triples they get
+		ArrayList<KBTriple> constraints = new ArrayList<KBTriple>(closure.size());
+		for (KBTriple t : closure)
+			constraints.add(this.ontologyFactory.getTriple(t.getSubject(), 
+			    t.getPredicate(), t.getObject()));
+		return constraints;
 	}
 
 	public ArrayList<KBTriple> getConstraints(ArrayList<String> ids) {
@@ -271,6 +297,7 @@ implements ConstraintEngine {
 	  this.start_write();
 		// Modify the internal kb to add statements
 		this.kb.addTriples(constraints);
+		this.reindexSubjects(constraints);
 		this.save(this.kb);
 		this.end();
 	}
@@ -280,6 +307,7 @@ implements ConstraintEngine {
 		// Modify the internal kb to add constraints
 		// this.constraints.addAll(constraints);
 		this.kb.addTriples(constraints);
+		this.reindexSubjects(constraints);
     this.save(this.kb);
     this.end();
 	}
@@ -287,6 +315,7 @@ implements ConstraintEngine {
 	public void removeConstraint(KBTriple constraint) {
     this.start_write();	  
 		this.kb.removeTriple(constraint);
+		this.reindex(constraint.getSubject());
     this.save(this.kb);
     this.end();
 	}
@@ -294,6 +323,7 @@ implements ConstraintEngine {
 	public void removeObjectAndConstraints(KBObject obj) {
 	  this.start_write();
 		this.kb.deleteObject(obj, true, true);
+		this.dropIndex();
 		this.save(this.kb);
 		this.end();
 	}
@@ -336,17 +366,29 @@ implements ConstraintEngine {
 			t.setSubject(newSubj);
 			this.kb.addTriple(t);
 		}
+		this.reindex(subj);
+		this.reindex(newSubj);
 		this.save(this.kb);
 		this.end();
 	}
 
 	public void replaceObjectInConstraints(KBObject obj, KBObject newObj) {
 	  this.start_write();
-		for (KBTriple t : this.kb.genericTripleQuery(null, null, obj)) {
+		// Find the constraints with the object through the index
+	  ArrayList<KBTriple> triples = new ArrayList<KBTriple>();
+	  ArrayList<KBObject> subjects = new ArrayList<KBObject>();
+	  for (KBTriple t : this.getIndexedTriplesWithObject(obj)) {
+	    triples.add(t);
+	    subjects.add(t.getSubject());
+	  }
+		// Add new triples rather than changing the indexed ones, so that
+		// reindexing still finds the old object to unindex
+		for (KBTriple t : triples) {
 			this.kb.removeTriple(t);
-			t.setObject(newObj);
-			this.kb.addTriple(t);
+			this.kb.addTriple(t.getSubject(), t.getPredicate(), newObj);
 		}
+		for (KBObject subj : subjects)
+		  this.reindex(subj);
 		this.save(this.kb);
 		this.end();
 	}
@@ -357,7 +399,9 @@ implements ConstraintEngine {
 		KBObject predkb = kb.getProperty(predID);
 		KBObject objkb = kb.getResource(objID);
 		if (subjkb != null && predkb != null && objkb != null) {
-			return this.kb.addTriple(subjkb, predkb, objkb);
+			KBTriple triple = this.kb.addTriple(subjkb, predkb, objkb);
+			this.reindex(subjkb);
+			return triple;
 		}
 		this.save(this.kb);
 		this.end();
@@ -374,6 +418,7 @@ implements ConstraintEngine {
 				KBObject objkb = kb.createXSDLiteral(obj, type); // null type is ok
 				if (objkb != null) {
 					triple = this.kb.addTriple(subjkb, predkb, objkb);
+					this.reindex(subjkb);
           this.save(this.kb);
 				}
 			} catch (Exception e) {
@@ -384,6 +429,133 @@ implements ConstraintEngine {
 		return triple;
 	}
 
+	/*
+	 * Constraint index
+	 */
+	
+	private synchronized ArrayList<KBTriple> getIndexedTriples(String id) {
+	  if (subjectIndex == null)
+	    this.buildIndex();
+	  ArrayList<KBTriple> triples = subjectIndex.get(id);
+	  return triples != null ? triples : new ArrayList<KBTriple>();
+	}
+	
+	private synchronized ArrayList<KBTriple> getIndexedTriplesWithObject(KBObject obj) {
+	  if (obj.isLiteral() || obj.getID() == null)
+	    return this.kb.genericTripleQuery(null, null, obj);
+	  if (subjectIndex == null)
+	    this.buildIndex();
+	  ArrayList<KBTriple> triples = new ArrayList<KBTriple>();
+	  HashSet<String> subjids = objectIndex.get(obj.getID());
+	  if (subjids == null)
+	    return triples;
+	  for (String subjid : subjids) {
+	    ArrayList<KBTriple> subjtriples = subjectIndex.get(subjid);
+	    if (subjtriples == null)
+	      continue;
+	    for (KBTriple t : subjtriples) {
+	      KBObject tobj = t.getObject();
+	      if (tobj != null && !tobj.isLiteral() && obj.getID().equals(tobj.getID()))
+	        triples.add(t);
+	    }
+	  }
+	  return triples;
+	}
+	
+	// Called from within a read or write
+	private void buildIndex() {
+	  subjectIndex = new HashMap<String, ArrayList<KBTriple>>();
+	  objectIndex = new HashMap<String, HashSet<String>>();
+	  for (KBTriple t : this.kb.genericTripleQuery(null, null, null)) {
+	    String subjid = t.getSubject().getID();
+	    if (subjid == null)
+	      continue;
+	    ArrayList<KBTriple> triples = subjectIndex.get(subjid);
+	    if (triples == null) {
+	      triples = new ArrayList<KBTriple>();
+	      subjectIndex.put(subjid, triples);
+	    }
+	    triples.add(t);
+	    this.indexObject(subjid, t.getObject());
+	  }
+	}
+	
+	private void indexObject(String subjid, KBObject obj) {
+	  if (obj == null || obj.isLiteral() || obj.getID() == null)
+	    return;
+	  HashSet<String> subjids = objectIndex.get(obj.getID());
+	  if (subjids == null) {
+	    subjids = new HashSet<String>();
+	    objectIndex.put(obj.getID(), subjids);
+	  }
+	  subjids.add(subjid);
+	}
+	
+	private void reindexSubjects(ArrayList<KBTriple> triples) {
+	  HashSet<String> done = new HashSet<String>();
+	  for (KBTriple t : triples) {
+	    KBObject subj = t.getSubject();
+	    if (subj != null && subj.getID() != null && done.add(subj.getID()))
+	      this.reindex(subj);
+	  }
+	}
+	
+	// Re-read the constraints of a subject from the kb. Called from within a write
+	private synchronized void reindex(KBObject subj) {
+	  closures.clear();
+	  if (subjectIndex == null || subj == null || subj.getID() == null)
+	    return;
+	  String subjid = subj.getID();
+	  ArrayList<KBTriple> old = subjectIndex.remove(subjid);
+	  if (old != null) {
+	    for (KBTriple t : old) {
+	      KBObject obj = t.getObject();
+	      if (obj == null || obj.isLiteral() || obj.getID() == null)
+	        continue;
+	      HashSet<String> subjids = objectIndex.get(obj.getID());
+	      if (subjids != null && subjids.remove(subjid) && subjids.isEmpty())
+	        objectIndex.remove(obj.getID());
+	    }
+	  }
+	  KBObject item = this.kb.getResource(subjid);
+	  if (item == null)
+	    return;
+	  ArrayList<KBTriple> triples = this.kb.genericTripleQuery(item, null, null);
+	  if (triples.isEmpty())
+	    return;
+	  subjectIndex.put(subjid, triples);
+	  for (KBTriple t : triples)
+	    this.indexObject(subjid, t.getObject());
+	}
+	
+	private synchronized void dropIndex() {
+	  closures.clear();
+	  subjectIndex = null;
+	  objectIndex = null;
+	}
+	
+	private String getFilterKey() {
+	  return blacklistIds + "|" + allowedIds + "|" + whitelistns + "|" + blacklistns;
+	}
+	
+	private synchronized ArrayList<KBTriple> getCachedClosure(String id) {
+	  HashMap<String, ArrayList<KBTriple>> filterClosures = 
+	      closures.get(this.getFilterKey());
+	  return filterClosures != null ? filterClosures.get(id) : null;
+	}
+	
+	private synchronized void cacheClosure(String id, ArrayList<KBTriple> closure) {
+	  String key = this.getFilterKey();
+	  HashMap<String, ArrayList<KBTriple>> filterClosures = closures.get(key);
+	  if (filterClosures == null) {
+	    if (closures.size() >= MAX_FILTERS)
+	      closures.clear();
+	    filterClosures = new HashMap<String, ArrayList<KBTriple>>();
+	    closures.put(key, filterClosures);
+	  }
+	  filterClosures.put(id, closure);
+	}
+
 	public KBObject getResource(String ID) {
 	  try {
   	  this.start_read();
@@ -0,0 +1,590 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.workflow.template.api.impl.kb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Properties;
+
+import edu.isi.kcap.ontapi.KBObject;
+import edu.isi.kcap.ontapi.KBTriple;
+import edu.isi.wings.common.CompactReader;
+import edu.isi.wings.common.CompactWriter;
+import edu.isi.wings.common.kb.CompactGraphStore;
+import edu.isi.wings.workflow.template.classes.Link;
+import edu.isi.wings.workflow.template.classes.Metadata;
+import edu.isi.wings.workflow.template.classes.Node;
+import edu.isi.wings.workflow.template.classes.Port;
+import edu.isi.wings.workflow.template.classes.Role;
+import edu.isi.wings.workflow.template.classes.Rules;
+import edu.isi.wings.workflow.template.classes.sets.Binding;
+import edu.isi.wings.workflow.template.classes.sets.ComponentSetCreationRule;
+import edu.isi.wings.workflow.template.classes.sets.PortSetCreationRule;
+import edu.isi.wings.workflow.template.classes.sets.SetCreationRule;
+import edu.isi.wings.workflow.template.classes.sets.SetExpression;
+import edu.isi.wings.workflow.template.classes.sets.ValueBinding;
+import edu.isi.wings.workflow.template.classes.sets.WingsSet;
+import edu.isi.wings.workflow.template.classes.sets.SetCreationRule.SetType;
+import edu.isi.wings.workflow.template.classes.sets.SetExpression.SetOperator;
+import edu.isi.wings.workflow.template.classes.variables.ComponentVariable;
+import edu.isi.wings.workflow.template.classes.variables.DataVariable;
+import edu.isi.wings.workflow.template.classes.variables.ParameterVariable;
+import edu.isi.wings.workflow.template.classes.variables.Variable;
+import edu.isi.wings.workflow.template.classes.variables.VariableType;
+
+/**
+ * Compact binary form of a template (see CompactWriter). It holds what the
+ * template's RDF graph holds: nodes, ports, set creation rules, variables,
+ * bindings, links, template roles, variable constraints, metadata and rules.
+ * 
+ * Used for expanded templates of runs, which are written once and read
+ * back whole. Templates with sub-workflows are not supported.
+ */
+public class TemplateBinary {
+  static final String MAGIC = "WTPL";
+  static final int VERSION = 1;
+
+  private static final int NONE = 0;
+  private static final int LEAF = 1;
+  private static final int SET = 2;
+  private static final int BINDING = 1;
+  private static final int VALUE_BINDING = 2;
+
+  public static boolean isSupported(TemplateKB tpl) {
+    for(Node n : tpl.getNodes()) {
+      if(n.getComponentVariable() != null &&
+          n.getComponentVariable().isTemplate())
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Write the template into the binary store. The RDF graph isn't written,
+   * and is marked as pending until materialize is called
+   */
+  public static boolean save(Properties props, TemplateKB tpl) {
+    File f = CompactGraphStore.getFile(props, tpl.getID());
+    if(f == null || !isSupported(tpl))
+      return false;
+    try {
+      write(tpl, new BufferedOutputStream(new FileOutputStream(f)));
+      CompactGraphStore.markPending(props, tpl.getID(),
+          CompactGraphStore.TEMPLATE);
+      TemplateCache.invalidate(tpl.getID());
+      return true;
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      f.delete();
+      return false;
+    }
+  }
+
+  /**
+   * Read the template from the binary store
+   * @return null if it isn't stored in binary form
+   */
+  public static TemplateKB load(Properties props, String tplid) {
+    File f = CompactGraphStore.getFile(props, tplid);
+    if(f == null || !f.exists())
+      return null;
+    try {
+      return read(props, new BufferedInputStream(new FileInputStream(f)));
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * Write the RDF graph of a template that was only stored in binary form
+   */
+  public static boolean materialize(Properties props, String tplid) {
+    if(!CompactGraphStore.isPending(props, tplid))
+      return true;
+    TemplateKB tpl = load(props, tplid);
+    if(tpl == null || !tpl.save())
+      return false;
+    CompactGraphStore.clearPending(props, tplid);
+    return true;
+  }
+
+  public static void write(TemplateKB tpl, OutputStream out)
+      throws IOException {
+    CompactWriter w = new CompactWriter(out, MAGIC, VERSION);
+    w.writeUri(tpl.getID());
+
+    writeMetadata(w, tpl.getMetadata());
+    Rules rules = tpl.getRules();
+    w.writeString(rules != null ? rules.getRulesText() : null);
+
+    Node[] nodes = tpl.getNodes();
+    w.writeInt(nodes.length);
+    for(Node n : nodes)
+      writeNode(w, n);
+
+    Variable[] variables = tpl.getVariables();
+    ArrayList<String> varids = new ArrayList<String>();
+    w.writeInt(variables.length);
+    for(Variable v : variables) {
+      writeVariable(w, v);
+      varids.add(v.getID());
+    }
+
+    Link[] links = tpl.getLinks();
+    w.writeInt(links.length);
+    for(Link l : links) {
+      w.writeUri(l.getID());
+      w.writeUri(l.getOriginNode() != null ? l.getOriginNode().getID() : null);
+      w.writeUri(l.getOriginPort() != null ? l.getOriginPort().getID() : null);
+      w.writeUri(l.getDestinationNode() != null ?
+          l.getDestinationNode().getID() : null);
+      w.writeUri(l.getDestinationPort() != null ?
+          l.getDestinationPort().getID() : null);
+      w.writeUri(l.getVariable() != null ? l.getVariable().getID() : null);
+    }
+
+    writeRoles(w, tpl.getInputRoles());
+    writeRoles(w, tpl.getOutputRoles());
+
+    ArrayList<KBTriple> constraints = 
+        tpl.getConstraintEngine().getConstraints(varids);
+    w.writeInt(constraints.size());
+    for(KBTriple t : constraints) {
+      w.writeUri(t.getSubject().getID());
+      w.writeUri(t.getPredicate().getID());
+      KBObject obj = t.getObject();
+      w.writeBoolean(obj.isLiteral());
+      if(obj.isLiteral()) {
+        String datatype = obj.getDataType();
+        w.writeString(obj.getValue() == null ? null :
+            new ValueBinding(obj.getValue(), datatype).getValueAsString());
+        w.writeUri(datatype);
+      }
+      else {
+        w.writeUri(obj.getID());
+      }
+    }
+    w.close();
+  }
+
+  public static TemplateKB read(Properties props, InputStream in)
+      throws IOException {
+    CompactReader r = new CompactReader(in, MAGIC, VERSION);
+    TemplateKB tpl = new TemplateKB(r.readUri());
+    tpl.props = props;
+
+    tpl.metadata = readMetadata(r);
+    tpl.rules = new Rules();
+    tpl.rules.setRulesText(r.readString());
+
+    HashMap<String, Node> nodes = new HashMap<String, Node>();
+    int count = r.readInt();
+    for(int i=0; i<count; i++) {
+      Node n = readNode(r);
+      nodes.put(n.getID(), n);
+      tpl.addNode(n);
+    }
+
+    count = r.readInt();
+    for(int i=0; i<count; i++)
+      tpl.addVariable(readVariable(r));
+
+    count = r.readInt();
+    for(int i=0; i<count; i++) {
+      String lid = r.readUri();
+      Node fromNode = nodes.get(r.readUri());
+      String fromPortId = r.readUri();
+      Node toNode = nodes.get(r.readUri());
+      String toPortId = r.readUri();
+      Variable var = tpl.getVariable(r.readUri());
+
+      Port fromPort = null;
+      if(fromNode != null && fromPortId != null) {
+        fromPort = fromNode.findOutputPort(fromPortId);
+        if(fromPort == null) {
+          fromPort = new Port(fromPortId);
+          fromNode.addOutputPort(fromPort);
+        }
+      }
+      Port toPort = null;
+      if(toNode != null && toPortId != null) {
+        toPort = toNode.findInputPort(toPortId);
+        if(toPort == null) {
+          toPort = new Port(toPortId);
+          toNode.addInputPort(toPort);
+        }
+      }
+      Link l = new Link(lid, fromNode, toNode, fromPort, toPort);
+      l.setVariable(var);
+      tpl.addLink(l);
+    }
+
+    count = r.readInt();
+    for(int i=0; i<count; i++)
+      tpl.addInputRole(r.readUri(), readRole(r));
+    count = r.readInt();
+    for(int i=0; i<count; i++)
+      tpl.addOutputRole(r.readUri(), readRole(r));
+
+    // The template's internal graph (and the constraint engine over it) is
+    // only built if a consumer asks for it (see TemplateKB.ensureGraph)
+    count = r.readInt();
+    ArrayList<PendingConstraint> constraints =
+        new ArrayList<PendingConstraint>();
+    for(int i=0; i<count; i++) {
+      PendingConstraint c = new PendingConstraint();
+      c.subject = r.readUri();
+      c.predicate = r.readUri();
+      c.literal = r.readBoolean();
+      if(c.literal) {
+        c.value = r.readString();
+        c.datatype = r.readUri();
+      }
+      else {
+        c.object = r.readUri();
+      }
+      constraints.add(c);
+    }
+    tpl.pendingConstraints = constraints;
+
+    return tpl;
+  }
+
+  /**
+   * Add the constraints read from the binary store to the template's
+   * constraint engine, once its graph has been built
+   */
+  static void addConstraints(TemplateKB tpl,
+      ArrayList<PendingConstraint> pending) {
+    ArrayList<KBTriple> constraints = new ArrayList<KBTriple>();
+    for(PendingConstraint c : pending) {
+      KBObject subj = tpl.ontologyFactory.getObject(c.subject);
+      KBObject pred = tpl.ontologyFactory.getObject(c.predicate);
+      KBObject obj = null;
+      if(c.literal)
+        obj = c.datatype != null ? 
+            tpl.kb.createXSDLiteral(c.value, c.datatype) :
+            tpl.kb.createLiteral(c.value);
+      else
+        obj = tpl.ontologyFactory.getObject(c.object);
+      if(obj != null)
+        constraints.add(tpl.ontologyFactory.getTriple(subj, pred, obj));
+    }
+    if(constraints.size() > 0)
+      tpl.getConstraintEngine().addConstraints(constraints);
+  }
+
+  static class PendingConstraint {
+    String subject;
+    String predicate;
+    String object;
+    String value;
+    String datatype;
+    boolean literal;
+  }
+
+  private static void writeMetadata(CompactWriter w, Metadata m)
+      throws IOException {
+    w.writeBoolean(m != null);
+    if(m == null)
+      return;
+    w.writeValue(m.getLastUpdateTime());
+    w.writeString(m.getDocumentation());
+    w.writeString(m.getTellme());
+    writeStrings(w, m.getContributors());
+    writeStrings(w, m.getCreationSources());
+  }
+
+  private static Metadata readMetadata(CompactReader r) throws IOException {
+    Metadata m = new Metadata();
+    if(!r.readBoolean())
+      return m;
+    Object time = r.readValue();
+    if(time != null)
+      m.setLastUpdateTime((Date) time);
+    m.setDocumentation(r.readString());
+    m.setTellme(r.readString());
+    m.contributors = readStrings(r);
+    m.createdFrom = readStrings(r);
+    return m;
+  }
+
+  private static void writeNode(CompactWriter w, Node n) throws IOException {
+    w.writeUri(n.getID());
+    w.writeString(n.getComment());
+    w.writeBoolean(n.isInactive());
+    w.writeUri(n.getDerivedFrom());
+    writeUris(w, n.getMachineIds());
+
+    ComponentVariable c = n.getComponentVariable();
+    w.writeBoolean(c != null);
+    if(c != null) {
+      w.writeUri(c.getID());
+      w.writeBoolean(c.isConcrete());
+      writeBinding(w, c.getBinding());
+    }
+
+    writePorts(w, n.getInputPorts());
+    writePorts(w, n.getOutputPorts());
+
+    writeRuleType(w, n.getComponentSetRule());
+    PortSetCreationRule prule = n.getPortSetRule();
+    writeRuleType(w, prule);
+    if(prule != null)
+      writeExpression(w, prule.getSetExpression());
+  }
+
+  private static Node readNode(CompactReader r) throws IOException {
+    Node n = new Node(r.readUri());
+    n.setComment(r.readString());
+    n.setInactive(r.readBoolean());
+    n.setDerivedFrom(r.readUri());
+    n.setMachineIds(readUris(r));
+
+    if(r.readBoolean()) {
+      ComponentVariable c = new ComponentVariable(r.readUri());
+      c.setConcrete(r.readBoolean());
+      c.setBinding(readBinding(r));
+      n.setComponentVariable(c);
+    }
+
+    int count = r.readInt();
+    for(int i=0; i<count; i++)
+      n.addInputPort(readPort(r));
+    count = r.readInt();
+    for(int i=0; i<count; i++)
+      n.addOutputPort(readPort(r));
+
+    SetType ctype = readRuleType(r);
+    if(ctype != null)
+      n.addComponentSetRule(new ComponentSetCreationRule(ctype));
+    SetType ptype = readRuleType(r);
+    if(ptype != null)
+      n.addPortSetRule(new PortSetCreationRule(ptype, readExpression(r, n)));
+    return n;
+  }
+
+  private static void writePorts(CompactWriter w, Collection<Port> ports)
+      throws IOException {
+    w.writeInt(ports.size());
+    for(Port p : ports) {
+      w.writeUri(p.getID());
+      w.writeBoolean(p.getRole() != null);
+      if(p.getRole() != null)
+        writeRole(w, p.getRole());
+    }
+  }
+
+  private static Port readPort(CompactReader r) throws IOException {
+    Port p = new Port(r.readUri());
+    if(r.readBoolean())
+      p.setRole(readRole(r));
+    return p;
+  }
+
+  private static void writeRoles(CompactWriter w, HashMap<String, Role> roles)
+      throws IOException {
+    w.writeInt(roles.size());
+    for(String varid : roles.keySet()) {
+      w.writeUri(varid);
+      writeRole(w, roles.get(varid));
+    }
+  }
+
+  private static void writeRole(CompactWriter w, Role role)
+      throws IOException {
+    w.writeUri(role.getID());
+    w.writeString(role.getRoleId());
+    w.writeInt(role.getType());
+    w.writeInt(role.getDimensionality());
+  }
+
+  private static Role readRole(CompactReader r) throws IOException {
+    Role role = new Role(r.readUri());
+    role.setRoleId(r.readString());
+    role.setType(r.readInt());
+    role.setDimensionality(r.readInt());
+    return role;
+  }
+
+  private static void writeRuleType(CompactWriter w, SetCreationRule rule)
+      throws IOException {
+    w.writeInt(rule != null && rule.getType() != null ?
+        rule.getType().ordinal() : -1);
+  }
+
+  private static SetType readRuleType(CompactReader r) throws IOException {
+    int type = r.readInt();
+    return type >= 0 ? SetType.values()[type] : null;
+  }
+
+  private static void writeExpression(CompactWriter w, SetExpression expr)
+      throws IOException {
+    if(expr == null) {
+      w.writeInt(NONE);
+      return;
+    }
+    w.writeInt(expr.isSet() ? SET : LEAF);
+    w.writeInt(expr.getOperator().ordinal());
+    if(expr.isSet()) {
+      w.writeInt(expr.size());
+      for(SetExpression cexpr : expr)
+        writeExpression(w, cexpr);
+    }
+    else {
+      w.writeUri(expr.getPort() != null ? expr.getPort().getID() : null);
+    }
+  }
+
+  private static SetExpression readExpression(CompactReader r, Node n)
+      throws IOException {
+    int kind = r.readInt();
+    if(kind == NONE)
+      return null;
+    SetOperator op = SetOperator.values()[r.readInt()];
+    if(kind == LEAF) {
+      String portid = r.readUri();
+      return new SetExpression(op, portid != null ? 
+          n.findInputPort(portid) : null);
+    }
+    SetExpression expr = new SetExpression(op);
+    int count = r.readInt();
+    for(int i=0; i<count; i++) {
+      SetExpression cexpr = readExpression(r, n);
+      if(cexpr != null)
+        expr.add(cexpr);
+    }
+    return expr;
+  }
+
+  private static void writeVariable(CompactWriter w, Variable v)
+      throws IOException {
+    w.writeUri(v.getID());
+    w.writeInt(v.getVariableType());
+    w.writeString(v.getComment());
+    w.writeBoolean(v.isAutoFill());
+    w.writeBoolean(v.isBreakpoint());
+    w.writeUri(v.getDerivedFrom());
+    writeBinding(w, v.getBinding());
+  }
+
+  private static Variable readVariable(CompactReader r) throws IOException {
+    String id = r.readUri();
+    short type = (short) r.readInt();
+    Variable v;
+    if(type == VariableType.DATA)
+      v = new DataVariable(id);
+    else if(type == VariableType.PARAM)
+      v = new ParameterVariable(id);
+    else
+      v = new Variable(id, type);
+    v.setComment(r.readString());
+    v.setAutoFill(r.readBoolean());
+    v.setBreakpoint(r.readBoolean());
+    v.setDerivedFrom(r.readUri());
+    v.setBinding(readBinding(r));
+    return v;
+  }
+
+  // Bindings are written as [kind, id, value, datatype, children]
+  private static void writeBinding(CompactWriter w, Binding b)
+      throws IOException {
+    if(b == null) {
+      w.writeInt(NONE);
+      return;
+    }
+    boolean isvalue = b instanceof ValueBinding;
+    w.writeInt(isvalue ? VALUE_BINDING : BINDING);
+    w.writeUri(b.getID());
+    w.writeValue(b.isSet() ? null : b.getValue());
+    w.writeUri(isvalue ? ((ValueBinding) b).getDatatype() : null);
+    w.writeInt(b.isSet() ? b.size() : 0);
+    if(b.isSet()) {
+      for(WingsSet s : b)
+        writeBinding(w, (Binding) s);
+    }
+  }
+
+  private static Binding readBinding(CompactReader r) throws IOException {
+    int kind = r.readInt();
+    if(kind == NONE)
+      return null;
+    Binding b = kind == BINDING ? new Binding() : new ValueBinding();
+    String id = r.readUri();
+    if(id != null)
+      b.setID(id);
+    Object value = r.readValue();
+    if(value != null)
+      b.setValue(value);
+    String datatype = r.readUri();
+    if(datatype != null)
+      ((ValueBinding) b).setDatatype(datatype);
+    int count = r.readInt();
+    for(int i=0; i<count; i++)
+      b.add(readBinding(r));
+    return b;
+  }
+
+  private static void writeStrings(CompactWriter w, ArrayList<String> list)
+      throws IOException {
+    w.writeInt(list != null ? list.size() : 0);
+    if(list != null)
+      for(String s : list)
+        w.writeString(s);
+  }
+
+  private static ArrayList<String> readStrings(CompactReader r)
+      throws IOException {
+    ArrayList<String> list = new ArrayList<String>();
+    int count = r.readInt();
+    for(int i=0; i<count; i++)
+      list.add(r.readString());
+    return list;
+  }
+
+  private static void writeUris(CompactWriter w, ArrayList<String> list)
+      throws IOException {
+    w.writeInt(list != null ? list.size() : 0);
+    if(list != null)
+      for(String s : list)
+        w.writeUri(s);
+  }
+
+  private static ArrayList<String> readUris(CompactReader r)
+      throws IOException {
+    ArrayList<String> list = new ArrayList<String>();
+    int count = r.readInt();
+    for(int i=0; i<count; i++)
+      list.add(r.readUri());
+    return list;
+  }
+}
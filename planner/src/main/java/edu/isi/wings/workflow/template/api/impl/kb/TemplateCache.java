@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.workflow.template.api.impl.kb;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.isi.wings.common.BoundedCache;
+import edu.isi.wings.workflow.template.classes.Node;
+
+/**
+ * Templates as read from their graphs, so that popular templates aren't
+ * re-read for every request. Each template id has a version, which is
+ * increased whenever its graph is written (save, saveAs, delete). A cached
+ * template is only used if it was read at the current version, and callers
+ * always get a copy of it.
+ * 
+ * The cache is bounded by the total number of nodes, links and variables
+ * of the templates in it (cache.templates property, default 200000)
+ */
+public class TemplateCache {
+  private static BoundedCache<String, Entry> cache;
+  private static ConcurrentHashMap<String, AtomicLong> versions = 
+      new ConcurrentHashMap<String, AtomicLong>();
+
+  static class Entry {
+    long version;
+    TemplateKB template;
+
+    Entry(long version, TemplateKB template) {
+      this.version = version;
+      this.template = template;
+    }
+  }
+
+  /**
+   * Get a copy of the template, reading it from its graph (or its binary
+   * form, see TemplateBinary) if it isn't cached at its current version
+   */
+  public static TemplateKB getTemplate(Properties props, String tplid) {
+    BoundedCache<String, Entry> templates = getCache(props);
+    long version = getVersion(tplid);
+    Entry entry = templates.get(tplid);
+    if(entry != null && entry.version == version) {
+      TemplateKB copy = entry.template.createParsedCopy();
+      if(copy != null)
+        return copy;
+    }
+
+    TemplateKB tpl = TemplateBinary.load(props, tplid);
+    if(tpl == null)
+      tpl = new TemplateKB(props, tplid);
+    if(!isCacheable(tpl))
+      return tpl;
+    TemplateKB copy = tpl.createParsedCopy();
+    if(copy == null)
+      return tpl;
+    templates.put(tplid, new Entry(version, tpl));
+    return copy;
+  }
+
+  /**
+   * Mark the template's graph as changed. This has to be called once the
+   * graph is written: a request reading the graph before that would cache
+   * the old template at the new version.
+   */
+  public static void invalidate(String tplid) {
+    AtomicLong version = versions.get(tplid);
+    if(version == null) {
+      versions.putIfAbsent(tplid, new AtomicLong());
+      version = versions.get(tplid);
+    }
+    version.incrementAndGet();
+    if(cache != null)
+      cache.invalidate(tplid);
+  }
+
+  public static void invalidateAll() {
+    for(AtomicLong version : versions.values())
+      version.incrementAndGet();
+    if(cache != null)
+      cache.invalidateAll();
+  }
+
+  public static BoundedCache<String, ?> getCache() {
+    return cache;
+  }
+
+  private static long getVersion(String tplid) {
+    AtomicLong version = versions.get(tplid);
+    return version != null ? version.get() : 0;
+  }
+
+  // Templates with sub-workflows hold other templates, which aren't copied
+  private static boolean isCacheable(TemplateKB tpl) {
+    for(Node n : tpl.getNodes()) {
+      if(n.getComponentVariable() != null && 
+          n.getComponentVariable().isTemplate())
+        return false;
+    }
+    return true;
+  }
+
+  private static synchronized BoundedCache<String, Entry> getCache(
+      Properties props) {
+    if(cache == null) {
+      long size = props.containsKey("cache.templates") ?
+          Long.parseLong(props.getProperty("cache.templates").trim()) : 200000;
+      cache = new BoundedCache<String, Entry>("templates", size,
+          new BoundedCache.Weigher<String, Entry>() {
+            @Override
+            public int weigh(String key, Entry entry) {
+              TemplateKB tpl = entry.template;
+              return tpl.getNodes().length + tpl.getLinks().length
+                  + tpl.getVariables().length;
+            }
+          });
+    }
+    return cache;
+  }
+}
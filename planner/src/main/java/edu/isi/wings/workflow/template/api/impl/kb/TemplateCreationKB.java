@@ -27,6 +27,7 @@ import edu.isi.kcap.ontapi.KBObject;
 import edu.isi.kcap.ontapi.OntFactory;
 import edu.isi.kcap.ontapi.OntSpec;
 import edu.isi.kcap.ontapi.jena.transactions.TransactionsJena;
+import edu.isi.wings.catalog.CatalogRegistry;
 import edu.isi.wings.common.URIEntity;
 import edu.isi.wings.common.kb.KBUtils;
 import edu.isi.wings.workflow.template.api.Template;
@@ -171,7 +172,7 @@ implements TemplateCreationAPI {
 
 	@Override
 	public Template getTemplate(String tplid) {
-		return new TemplateKB(this.props, tplid);
+		return TemplateCache.getTemplate(this.props, tplid);
 	}
 
 	@Override
@@ -187,7 +188,11 @@ implements TemplateCreationAPI {
 	
 	@Override
 	public boolean save() {
-	  return this.writerkb.save();
+	  if(this.writerkb.save()) {
+	    CatalogRegistry.invalidateTemplates(this.props);
+	    return true;
+	  }
+	  return false;
 	}
 	
 	@Override
@@ -343,6 +348,10 @@ implements TemplateCreationAPI {
 		this.save();
 		tckb.end();
 		this.end();
+
+		// Now that the templates are written
+		for(String tplid : tplids)
+		  TemplateCache.invalidate(tplid.replace(tckb.wdirurl, this.wdirurl));
 		
 		//System.out.println("Done");
 		this.initializeAPI(true);
@@ -357,6 +366,7 @@ implements TemplateCreationAPI {
 	      tplkb.delete(); 
 	      tplkb.save();
 	      this.end();
+	      TemplateCache.invalidate(tplid);
 			}
 			catch (Exception e) {
 				e.printStackTrace();
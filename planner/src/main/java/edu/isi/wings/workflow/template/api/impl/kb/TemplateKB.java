@@ -94,6 +94,10 @@ implements Template, TransactionsAPI {
 	private transient HashMap<String, KBObject> propertyObjMap;
 	private transient HashMap<String, KBObject> conceptObjMap;
 	private transient ConstraintEngine constraintEngine;
+	
+	// Constraints of a template read from the binary store (see TemplateBinary).
+	// Its kb and constraint engine are built from them on first use
+	transient ArrayList<TemplateBinary.PendingConstraint> pendingConstraints;
 
 	private HashMap<String, Template> subtemplates = new HashMap<String, Template>();
 
@@ -212,6 +216,7 @@ implements Template, TransactionsAPI {
 		}
 		
 		// copy kb
+    t.ensureGraph();
     this.ontologyFactory = t.ontologyFactory;
     this.kb = t.kb;
     this.transaction = t.transaction;
@@ -226,6 +231,7 @@ implements Template, TransactionsAPI {
 
 	public String getInternalRepresentation() {
 		// return this.kb.toN3();
+	  this.ensureGraph();
 	  try {
   	  this.start_read();
   		return this.kb.toRdf(true);
@@ -240,6 +246,7 @@ implements Template, TransactionsAPI {
 	}
 
 	private void cacheConceptsAndProperties() {
+	  this.ensureGraph();
 	  this.start_read();
 		for (KBObject obj : kb.getAllClasses()) {
 			if(obj != null)
@@ -1118,7 +1125,7 @@ implements Template, TransactionsAPI {
 			l.getOriginNode().deleteOutputPort(l.getOriginPort());
 	}
 
-	private void addVariable(Variable var) {
+	void addVariable(Variable var) {
 	  Variables.put(var.getID(), var);
 	}
 
@@ -1220,6 +1227,32 @@ implements Template, TransactionsAPI {
 		return t;
 	}*/
 
+	/**
+	 * Make a full copy of a template read from its graph (see TemplateCache).
+	 * The copy shares this template's kb, and has its own constraint engine
+	 */
+	protected TemplateKB createParsedCopy() {
+		TemplateKB t = (TemplateKB) SerializableObjectCloner.clone(this);
+		if (t == null)
+			return null;
+		t.props = this.props;
+		t.ontologyFactory = this.ontologyFactory;
+		t.kb = this.kb;
+		t.transaction = this.transaction;
+		t.propertyObjMap = new HashMap<String, KBObject>(this.propertyObjMap);
+		t.conceptObjMap = new HashMap<String, KBObject>(this.conceptObjMap);
+		t.initMaps();
+		for (Link l : t.Links.values())
+			t.addLinkMaps(l);
+		if (this.pendingConstraints != null) {
+			// Not built yet: the copy builds its own when it needs it
+			t.pendingConstraints = this.pendingConstraints;
+			return t;
+		}
+		t.constraintEngine = new ConstraintEngineKB((ConstraintEngineKB) this.constraintEngine);
+		return t;
+	}
+
 	private ValueBinding copyTemplateBindings(ValueBinding b) {
 		if (b.isSet()) {
 			ValueBinding rb = new ValueBinding();
@@ -1367,6 +1400,7 @@ implements Template, TransactionsAPI {
 	}
 
 	public ConstraintEngine getConstraintEngine() {
+		this.ensureGraph();
 		return this.constraintEngine;
 	}
 
@@ -1473,18 +1507,20 @@ implements Template, TransactionsAPI {
 
 	public KBAPI getKBCopy(boolean includeDataConstraints) {
 		// Create a new temporary kb
+		this.ensureGraph();
 		KBAPI tkb = ontologyFactory.getKB(new ByteArrayInputStream(getInternalRepresentation()
 				.getBytes()), this.getNamespace(), OntSpec.PLAIN);
 
 		if (includeDataConstraints) {
 			ArrayList<String> varids = new ArrayList<String>(Variables.keySet());
-			tkb.addTriples(this.constraintEngine.getConstraints(varids));
+			tkb.addTriples(this.getConstraintEngine().getConstraints(varids));
 		}
 
 		return tkb;
 	}
 
 	public String serialize() {
+    this.ensureGraph();
     KBAPI tkb = ontologyFactory.getKB(OntSpec.PLAIN);
     tkb = serializeIntoKB(tkb, false);
 		// Return RDF representation
@@ -1493,6 +1529,11 @@ implements Template, TransactionsAPI {
 	}
 	
   public void resetInternalRepresentation() {
+    if(this.pendingConstraints != null) {
+      // Nothing was built yet, and the constraints are only held as pending
+      this.ensureGraph();
+      return;
+    }
     this.kb = this.serializeAndGetKB();
     try {
       this.kb.importFrom(ontologyFactory.getKB(this.onturl, OntSpec.PLAIN));
@@ -1505,6 +1546,20 @@ implements Template, TransactionsAPI {
     this.end();
   }
   
+  /**
+   * Build the kb and constraint engine of a template read from the binary
+   * store, if that hasn't been done yet
+   */
+  protected void ensureGraph() {
+    if(this.pendingConstraints == null)
+      return;
+    ArrayList<TemplateBinary.PendingConstraint> constraints = 
+        this.pendingConstraints;
+    this.pendingConstraints = null;
+    this.resetInternalRepresentation();
+    TemplateBinary.addConstraints(this, constraints);
+  }
+  
   private KBAPI serializeAndGetKB() {
     // If this template has no ontology backing it, then initialize the API
     if(ontologyFactory == null || kb == null) {
@@ -1518,6 +1573,7 @@ implements Template, TransactionsAPI {
   }
   
 	public boolean save() {
+    this.ensureGraph();
     try {
       // Serialize to temporary KB
       KBAPI tkb = ontologyFactory.getKB(OntSpec.PLAIN);
@@ -1534,10 +1590,13 @@ implements Template, TransactionsAPI {
     }
     finally {
       this.end();
+      // Once the graph is written, so that it isn't re-cached as it was
+      TemplateCache.invalidate(this.getID());
     }
 	}
 	
 	public boolean saveAs(String newid) {
+		this.ensureGraph();
 		try {
 	    URIEntity newentity = new URIEntity(newid);
 	    
@@ -1561,15 +1620,19 @@ implements Template, TransactionsAPI {
 		}
 		finally {
 		  this.end();
+		  TemplateCache.invalidate(newid);
 		}
 	}
 	
 	public boolean delete() {
-		return 
+		this.ensureGraph();
+		boolean deleted = 
 		    this.start_write() &&
 		    kb.delete() && 
 		    this.save(kb) && 
 		    this.end();
+		TemplateCache.invalidate(this.getID());
+		return deleted;
 	}
 	
 	private Binding readBindingObjectFromKB(KBAPI tkb, KBObject bobj) {
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.catalog;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CatalogLockTest {
+  interface Counter {
+    int increment() throws Exception;
+  }
+
+  // Fails if two calls overlap
+  static class UnsafeCounter implements Counter {
+    AtomicInteger inside = new AtomicInteger();
+    int count = 0;
+
+    @Override
+    public int increment() throws Exception {
+      if(inside.incrementAndGet() != 1)
+        throw new IllegalStateException("Concurrent call");
+      int value = count;
+      Thread.sleep(1);
+      count = value + 1;
+      inside.decrementAndGet();
+      return count;
+    }
+  }
+
+  @Test
+  public void testCallsAreSerialized() throws Exception {
+    final UnsafeCounter counter = new UnsafeCounter();
+    final Counter guarded = CatalogLock.guard(Counter.class, counter);
+    final AtomicInteger errors = new AtomicInteger();
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    for(int i = 0; i < 4; i++) {
+      Thread t = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for(int j = 0; j < 25; j++)
+              guarded.increment();
+          }
+          catch (Exception e) {
+            errors.incrementAndGet();
+          }
+        }
+      });
+      threads.add(t);
+      t.start();
+    }
+    for(Thread t : threads)
+      t.join();
+    Assert.assertEquals(0, errors.get());
+    Assert.assertEquals(100, counter.count);
+  }
+
+  @Test
+  public void testGuardOnce() {
+    Counter guarded = CatalogLock.guard(Counter.class, new UnsafeCounter());
+    Assert.assertTrue(CatalogLock.isGuarded(guarded));
+    Assert.assertSame(guarded, CatalogLock.guard(Counter.class, guarded));
+    Assert.assertNull(CatalogLock.guard(Counter.class, null));
+  }
+
+  @Test
+  public void testExceptionsAreUnwrapped() {
+    Counter guarded = CatalogLock.guard(Counter.class, new Counter() {
+      @Override
+      public int increment() throws Exception {
+        throw new java.io.IOException("failed");
+      }
+    });
+    try {
+      guarded.increment();
+      Assert.fail("No exception");
+    }
+    catch (Exception e) {
+      Assert.assertTrue(e instanceof java.io.IOException);
+      Assert.assertEquals("failed", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.catalog.component.api.impl.kb;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RuleOutputCaptureTest {
+
+  @Test
+  public void testThreadsCaptureTheirOwnOutput() throws Exception {
+    final int nthreads = 8;
+    final int nlines = 200;
+    final String[][] captured = new String[nthreads][];
+    final CountDownLatch ready = new CountDownLatch(nthreads);
+    Thread[] threads = new Thread[nthreads];
+    for(int i=0; i<nthreads; i++) {
+      final int id = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          RuleOutputCapture.start();
+          try {
+            // Print at the same time as all the other threads
+            ready.countDown();
+            ready.await();
+            for(int j=0; j<nlines; j++)
+              System.out.println("binding " + id + " line " + j);
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+          finally {
+            captured[id] = RuleOutputCapture.stop();
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for(Thread t : threads)
+      t.join();
+
+    for(int i=0; i<nthreads; i++) {
+      Assert.assertEquals(nlines, captured[i].length);
+      for(int j=0; j<nlines; j++)
+        Assert.assertEquals("binding " + i + " line " + j, captured[i][j]);
+    }
+  }
+
+  @Test
+  public void testNothingCapturedAfterStop() {
+    RuleOutputCapture.start();
+    System.out.println("captured");
+    Assert.assertArrayEquals(new String[] { "captured" },
+        RuleOutputCapture.stop());
+
+    System.out.println("not captured");
+    RuleOutputCapture.start();
+    Assert.assertEquals(0, RuleOutputCapture.stop().length);
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BoundedCacheTest {
+  // Integer keys that are multiples of 16 all land in the same segment
+  private static final int SEGMENTS = 16;
+
+  private static BoundedCache<Integer, String> lengthCache(long maxWeight) {
+    return new BoundedCache<Integer, String>("test", maxWeight,
+        new BoundedCache.Weigher<Integer, String>() {
+          @Override
+          public int weigh(Integer key, String value) {
+            return value.length();
+          }
+        });
+  }
+
+  @Test
+  public void testEvictionByWeight() {
+    // Each segment gets a weight of 10
+    BoundedCache<Integer, String> cache = lengthCache(10 * SEGMENTS);
+    cache.put(0, "aaaa");
+    cache.put(16, "bbbb");
+    Assert.assertEquals(8, cache.getWeight());
+
+    // Use the first entry, so that the second is the least recently used
+    Assert.assertEquals("aaaa", cache.get(0));
+    cache.put(32, "cccc");
+    Assert.assertNull(cache.get(16));
+    Assert.assertEquals("aaaa", cache.get(0));
+    Assert.assertEquals("cccc", cache.get(32));
+    Assert.assertEquals(1, cache.getEvictions());
+    Assert.assertEquals(8, cache.getWeight());
+
+    // Other segments have their own share of the bound
+    cache.put(1, "dddddddd");
+    Assert.assertEquals(3, cache.size());
+    Assert.assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void testOversizedEntryIsKept() {
+    BoundedCache<Integer, String> cache = lengthCache(10 * SEGMENTS);
+    cache.put(0, "aaaa");
+    cache.put(16, "bbbb");
+    cache.put(32, "ccccccccccccccc");
+    Assert.assertEquals(1, cache.size());
+    Assert.assertEquals(15, cache.getWeight());
+    Assert.assertEquals("ccccccccccccccc", cache.get(32));
+    Assert.assertEquals(2, cache.getEvictions());
+  }
+
+  @Test
+  public void testReplaceUpdatesWeight() {
+    BoundedCache<Integer, String> cache = lengthCache(10 * SEGMENTS);
+    cache.put(0, "aaaa");
+    cache.put(0, "aa");
+    Assert.assertEquals(1, cache.size());
+    Assert.assertEquals(2, cache.getWeight());
+    cache.invalidate(0);
+    Assert.assertEquals(0, cache.getWeight());
+  }
+
+  @Test
+  public void testEvictionByCount() {
+    // Without a weigher, the bound is on the number of entries
+    BoundedCache<Integer, String> cache = 
+        new BoundedCache<Integer, String>("test", 2 * SEGMENTS);
+    for(int i = 0; i < 5; i++)
+      cache.put(i * SEGMENTS, "value" + i);
+    Assert.assertEquals(2, cache.size());
+    Assert.assertEquals(3, cache.getEvictions());
+    Assert.assertEquals("value3", cache.get(3 * SEGMENTS));
+    Assert.assertEquals("value4", cache.get(4 * SEGMENTS));
+  }
+
+  @Test
+  public void testInvalidatePrefix() {
+    BoundedCache<String, String> cache = 
+        new BoundedCache<String, String>("test", 1000);
+    cache.put("http://a.org/lib#comp1", "1");
+    cache.put("http://a.org/lib#comp1:dcdom", "2");
+    cache.put("http://a.org/lib#comp2:dcdom", "3");
+    cache.put("http://b.org/lib#comp1", "4");
+    Assert.assertEquals(4, cache.size());
+
+    cache.invalidatePrefix("http://a.org/lib#comp1:");
+    Assert.assertEquals(3, cache.size());
+    Assert.assertEquals("1", cache.get("http://a.org/lib#comp1"));
+    Assert.assertNull(cache.get("http://a.org/lib#comp1:dcdom"));
+
+    cache.invalidatePrefix("http://a.org/");
+    Assert.assertEquals(1, cache.size());
+    Assert.assertEquals(1, cache.getWeight());
+    Assert.assertEquals("4", cache.get("http://b.org/lib#comp1"));
+
+    cache.invalidateAll();
+    Assert.assertEquals(0, cache.size());
+    Assert.assertEquals(0, cache.getWeight());
+    // Invalidation is not counted as eviction
+    Assert.assertEquals(0, cache.getEvictions());
+  }
+
+  @Test
+  public void testHitsAndMisses() {
+    BoundedCache<String, String> cache = 
+        new BoundedCache<String, String>("test", 1000);
+    Assert.assertEquals(0, cache.getHitRate(), 0);
+    Assert.assertNull(cache.get("a"));
+    cache.put("a", "1");
+    // Null values are not cached
+    cache.put("b", null);
+    Assert.assertEquals("1", cache.get("a"));
+    Assert.assertEquals("1", cache.get("a"));
+    Assert.assertNull(cache.get("b"));
+
+    Assert.assertEquals(2, cache.getHits());
+    Assert.assertEquals(2, cache.getMisses());
+    Assert.assertEquals(0.5, cache.getHitRate(), 1e-9);
+    Assert.assertEquals(1, cache.size());
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactRecordTest {
+  private static final String MAGIC = "TEST";
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CompactWriter w = new CompactWriter(out, MAGIC, 2);
+    w.writeString("value");
+    w.writeString(null);
+    w.writeString("");
+    w.writeString("valor \u00e9\u4e2d");
+    w.writeUri("http://www.isi.edu/DMDomain/ModelAndClassify.owl#Node1");
+    w.writeUri("http://www.isi.edu/DMDomain/ModelAndClassify.owl#Node2");
+    w.writeUri("http://www.isi.edu/data/file.csv");
+    w.writeUri("urn-without-separator");
+    w.writeUri(null);
+    w.writeInt(0);
+    w.writeInt(-1);
+    w.writeInt(300);
+    w.writeInt(Integer.MIN_VALUE);
+    w.writeInt(Integer.MAX_VALUE);
+    w.writeLong(Long.MIN_VALUE);
+    w.writeLong(1L << 40);
+    w.writeBoolean(true);
+    w.writeBoolean(false);
+    w.writeValue(null);
+    w.writeValue(42);
+    w.writeValue(42L);
+    w.writeValue(1.5f);
+    w.writeValue(2.25);
+    w.writeValue(true);
+    w.writeValue(new Date(1234567890123L));
+    w.writeValue("text");
+    w.writeValue(new StringBuilder("other"));
+    w.close();
+
+    CompactReader r = new CompactReader(
+        new ByteArrayInputStream(out.toByteArray()), MAGIC, 2);
+    Assert.assertEquals(2, r.getVersion());
+    Assert.assertEquals("value", r.readString());
+    Assert.assertNull(r.readString());
+    Assert.assertEquals("", r.readString());
+    Assert.assertEquals("valor \u00e9\u4e2d", r.readString());
+    Assert.assertEquals("http://www.isi.edu/DMDomain/ModelAndClassify.owl#Node1", 
+        r.readUri());
+    Assert.assertEquals("http://www.isi.edu/DMDomain/ModelAndClassify.owl#Node2", 
+        r.readUri());
+    Assert.assertEquals("http://www.isi.edu/data/file.csv", r.readUri());
+    Assert.assertEquals("urn-without-separator", r.readUri());
+    Assert.assertNull(r.readUri());
+    Assert.assertEquals(0, r.readInt());
+    Assert.assertEquals(-1, r.readInt());
+    Assert.assertEquals(300, r.readInt());
+    Assert.assertEquals(Integer.MIN_VALUE, r.readInt());
+    Assert.assertEquals(Integer.MAX_VALUE, r.readInt());
+    Assert.assertEquals(Long.MIN_VALUE, r.readLong());
+    Assert.assertEquals(1L << 40, r.readLong());
+    Assert.assertTrue(r.readBoolean());
+    Assert.assertFalse(r.readBoolean());
+    Assert.assertNull(r.readValue());
+    Assert.assertEquals(Integer.valueOf(42), r.readValue());
+    Assert.assertEquals(Long.valueOf(42L), r.readValue());
+    Assert.assertEquals(Float.valueOf(1.5f), r.readValue());
+    Assert.assertEquals(Double.valueOf(2.25), r.readValue());
+    Assert.assertEquals(Boolean.TRUE, r.readValue());
+    Assert.assertEquals(new Date(1234567890123L), r.readValue());
+    Assert.assertEquals("text", r.readValue());
+    Assert.assertEquals("other", r.readValue());
+  }
+
+  @Test
+  public void testRepeatedStringsAreStoredOnce() throws IOException {
+    String uri = "http://www.isi.edu/DMDomain/ModelAndClassify.owl#Variable";
+    ByteArrayOutputStream once = new ByteArrayOutputStream();
+    CompactWriter w = new CompactWriter(once, MAGIC, 1);
+    w.writeUri(uri);
+    w.close();
+
+    ByteArrayOutputStream many = new ByteArrayOutputStream();
+    w = new CompactWriter(many, MAGIC, 1);
+    for(int i=0; i<50; i++)
+      w.writeUri(uri);
+    w.close();
+
+    // Each repeat only costs the two string references
+    Assert.assertEquals(once.size() + 49 * 2, many.size());
+  }
+
+  @Test(expected = IOException.class)
+  public void testWrongMagic() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CompactWriter w = new CompactWriter(out, "WTPL", 1);
+    w.writeString("value");
+    w.close();
+    new CompactReader(new ByteArrayInputStream(out.toByteArray()), "WPLN", 1);
+  }
+
+  @Test(expected = IOException.class)
+  public void testNewerVersion() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CompactWriter w = new CompactWriter(out, MAGIC, 3);
+    w.close();
+    new CompactReader(new ByteArrayInputStream(out.toByteArray()), MAGIC, 2);
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.common.kb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.isi.kcap.ontapi.KBObject;
+import edu.isi.kcap.ontapi.KBTriple;
+import edu.isi.kcap.ontapi.OntFactory;
+
+public class TripleWorkspaceTest {
+  private static final String NS = "http://example.org/test#";
+
+  OntFactory factory;
+  TripleWorkspace ws;
+  KBObject a, b, c, p, q;
+
+  @Before
+  public void setUp() {
+    factory = new OntFactory(OntFactory.JENA);
+    // A small capacity, so that the tests also cover growing the arrays
+    ws = new TripleWorkspace(factory, 4);
+    a = ws.getResource(NS + "a");
+    b = ws.getResource(NS + "b");
+    c = ws.getResource(NS + "c");
+    p = ws.getResource(NS + "p");
+    q = ws.getResource(NS + "q");
+  }
+
+  @Test
+  public void testAddIgnoresDuplicates() {
+    ws.addTriple(a, p, b);
+    ws.addTriple(a, p, b);
+    ws.addTriple(factory.getTriple(a, p, ws.getResource(NS + "b")));
+    ws.addTriple(a, p, null);
+    Assert.assertEquals(1, ws.size());
+  }
+
+  @Test
+  public void testRemove() {
+    ws.addTriple(a, p, b);
+    ws.addTriple(a, p, c);
+    ws.removeTriple(a, p, b);
+    // Removing something that isn't there does nothing
+    ws.removeTriple(a, q, b);
+    ws.removeTriple(ws.getResource(NS + "x"), p, b);
+
+    Assert.assertEquals(1, ws.size());
+    Assert.assertEquals(set("a p c"), keys(ws.getAllTriples()));
+    Assert.assertEquals(set(), keys(ws.genericTripleQuery(null, null, b)));
+
+    // A removed triple can be added back
+    ws.addTriple(a, p, b);
+    Assert.assertEquals(set("a p b", "a p c"), 
+        keys(ws.genericTripleQuery(a, p, null)));
+  }
+
+  @Test
+  public void testSetPropertyValue() {
+    ws.addTriple(a, p, b);
+    ws.addTriple(a, p, c);
+    ws.addTriple(a, q, b);
+    KBObject value = ws.createLiteral("value");
+    ws.setPropertyValue(a, p, value);
+
+    ArrayList<KBObject> values = ws.getPropertyValues(a, p);
+    Assert.assertEquals(1, values.size());
+    Assert.assertEquals("value", values.get(0).getValue());
+    Assert.assertEquals("value", ws.getPropertyValue(a, p).getValue());
+    // Other properties are untouched
+    Assert.assertEquals(b, ws.getPropertyValue(a, q));
+    Assert.assertEquals(2, ws.size());
+  }
+
+  @Test
+  public void testLiteralsAreCached() {
+    KBObject one = ws.createLiteral("one");
+    Assert.assertSame(one, ws.createLiteral("one"));
+    Assert.assertNotSame(one, ws.createLiteral(1));
+    ws.addTriple(a, p, one);
+    ws.addTriple(a, p, ws.createLiteral("one"));
+    Assert.assertEquals(1, ws.size());
+  }
+
+  @Test
+  public void testGenericTripleQuery() {
+    ws.addTriple(a, p, b);
+    ws.addTriple(a, p, c);
+    ws.addTriple(a, q, c);
+    ws.addTriple(b, p, c);
+    ws.addTriple(c, q, a);
+
+    Assert.assertEquals(set("a p b", "a p c", "a q c", "b p c", "c q a"),
+        keys(ws.genericTripleQuery(null, null, null)));
+    Assert.assertEquals(set("a p b", "a p c", "a q c"),
+        keys(ws.genericTripleQuery(a, null, null)));
+    Assert.assertEquals(set("a p b", "a p c"),
+        keys(ws.genericTripleQuery(a, p, null)));
+    Assert.assertEquals(set("a p c"),
+        keys(ws.genericTripleQuery(a, p, c)));
+    Assert.assertEquals(set("a p c", "a q c"),
+        keys(ws.genericTripleQuery(a, null, c)));
+    Assert.assertEquals(set("a p b", "a p c", "b p c"),
+        keys(ws.genericTripleQuery(null, p, null)));
+    Assert.assertEquals(set("a p c", "b p c"),
+        keys(ws.genericTripleQuery(null, p, c)));
+    Assert.assertEquals(set("a p c", "a q c", "b p c"),
+        keys(ws.genericTripleQuery(null, null, c)));
+    // Nodes that were never added match nothing
+    Assert.assertEquals(set(),
+        keys(ws.genericTripleQuery(ws.getResource(NS + "x"), null, null)));
+
+    // The same answers as the KBAPI
+    Assert.assertEquals(keys(ws.getAllTriples()),
+        keys(ws.toKB().genericTripleQuery(null, null, null)));
+  }
+
+  @Test
+  public void testRewind() {
+    ws.addTriple(a, p, b);
+    ws.addTriple(a, p, c);
+    ws.mark();
+
+    for(int round = 0; round < 3; round++) {
+      ws.rewind();
+      ws.addTriple(a, p, ws.getResource(NS + "x" + round));
+      ws.addTriple(b, q, c);
+      ws.removeTriple(a, p, b);
+      ws.setPropertyValue(a, q, c);
+      Assert.assertEquals(4, ws.size());
+      Assert.assertEquals(set("a p c", "a p x" + round, "a q c"),
+          keys(ws.genericTripleQuery(a, null, null)));
+    }
+
+    ws.rewind();
+    Assert.assertEquals(2, ws.size());
+    Assert.assertEquals(set("a p b", "a p c"), keys(ws.getAllTriples()));
+    Assert.assertEquals(set("a p b", "a p c"), 
+        keys(ws.genericTripleQuery(null, p, null)));
+    Assert.assertEquals(set(), keys(ws.genericTripleQuery(b, null, null)));
+    Assert.assertEquals(set(), keys(ws.genericTripleQuery(null, q, null)));
+  }
+
+  @Test
+  public void testReset() {
+    for(int i = 0; i < 20; i++)
+      ws.addTriple(a, p, ws.getResource(NS + "x" + i));
+    ws.mark();
+    ws.reset();
+    Assert.assertEquals(0, ws.size());
+    Assert.assertEquals(set(), keys(ws.genericTripleQuery(a, null, null)));
+
+    // Usable again, and rewind() goes back to the empty workspace
+    ws.addTriple(b, q, c);
+    Assert.assertEquals(set("b q c"), keys(ws.getAllTriples()));
+    ws.rewind();
+    Assert.assertEquals(0, ws.size());
+  }
+
+  private static Set<String> set(String... keys) {
+    HashSet<String> set = new HashSet<String>();
+    for(String key : keys)
+      set.add(key);
+    return set;
+  }
+
+  private static Set<String> keys(Collection<KBTriple> triples) {
+    HashSet<String> keys = new HashSet<String>();
+    for(KBTriple triple : triples)
+      keys.add(name(triple.getSubject()) + " " + name(triple.getPredicate())
+          + " " + name(triple.getObject()));
+    return keys;
+  }
+
+  private static String name(KBObject obj) {
+    if(obj.isLiteral())
+      return obj.getValue().toString();
+    return obj.getID().substring(NS.length());
+  }
+}
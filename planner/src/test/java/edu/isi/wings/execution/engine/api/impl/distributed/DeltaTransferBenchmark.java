@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.execution.engine.api.impl.distributed;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Compares full, delta and compressed transfers of a large, mostly
+ * appended data file. The "remote" machine is a local directory, and each
+ * remote call is serialized and deserialized like it would be on the wire.
+ *
+ * Usage: DeltaTransferBenchmark [size in MB] [percent appended]
+ */
+public class DeltaTransferBenchmark {
+
+  static class LoopbackExecutor implements DeltaTransfer.RemoteExecutor {
+    long bytesSent = 0;
+    int calls = 0;
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T exec(Callable<T> task) throws Exception {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bout);
+      out.writeObject(task);
+      out.close();
+      bytesSent += bout.size();
+      calls++;
+      ObjectInputStream in = new ObjectInputStream(
+          new ByteArrayInputStream(bout.toByteArray()));
+      return ((Callable<T>) in.readObject()).call();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int sizeMB = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    int appendPercent = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+    File dir = File.createTempFile("delta-bench-", "");
+    dir.delete();
+    dir.mkdirs();
+    try {
+      File base = new File(dir, "base.txt");
+      File local = new File(dir, "local.txt");
+      writeData(base, sizeMB * 1024L * 1024L, 1);
+      FileUtils.copyFile(base, local);
+      appendData(local, sizeMB * 1024L * 1024L * appendPercent / 100, 2);
+      String md5 = md5(local);
+
+      System.out.println("Local file: " + local.length() + " bytes, "
+          + appendPercent + "% appended to the remote copy");
+      System.out.println(String.format("%-24s %12s %10s %8s",
+          "Mode", "Wire bytes", "Time (ms)", "Calls"));
+
+      // Full copy (what sftp put sends)
+      File remote = new File(dir, "remote-full.txt");
+      long start = System.currentTimeMillis();
+      FileUtils.copyFile(local, remote);
+      report("full copy", local.length(),
+          System.currentTimeMillis() - start, 1, md5.equals(md5(remote)));
+
+      for(boolean compress : new boolean[] { false, true }) {
+        remote = new File(dir, "remote-delta-" + compress + ".txt");
+        FileUtils.copyFile(base, remote);
+        LoopbackExecutor node = new LoopbackExecutor();
+        start = System.currentTimeMillis();
+        boolean ok = DeltaTransfer.sendDelta(node, local,
+            remote.getAbsolutePath(), md5, compress);
+        report(compress ? "delta + compression" : "delta", node.bytesSent,
+            System.currentTimeMillis() - start, node.calls,
+            ok && md5.equals(md5(remote)));
+      }
+
+      remote = new File(dir, "remote-compressed.txt");
+      LoopbackExecutor node = new LoopbackExecutor();
+      start = System.currentTimeMillis();
+      boolean ok = DeltaTransfer.sendCompressed(node, local,
+          remote.getAbsolutePath(), md5);
+      report("compressed", node.bytesSent,
+          System.currentTimeMillis() - start, node.calls,
+          ok && md5.equals(md5(remote)));
+    }
+    finally {
+      FileUtils.deleteDirectory(dir);
+    }
+  }
+
+  private static void report(String mode, long bytes, long millis,
+      int calls, boolean ok) {
+    System.out.println(String.format("%-24s %12d %10d %8d%s",
+        mode, bytes, millis, calls, ok ? "" : "  !! MISMATCH"));
+  }
+
+  // Tab separated rows of numbers, similar to typical data inputs
+  private static void writeData(File f, long bytes, long seed)
+      throws IOException {
+    PrintWriter out = new PrintWriter(f);
+    writeRows(out, bytes, seed);
+    out.close();
+  }
+
+  private static void appendData(File f, long bytes, long seed)
+      throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(f, true));
+    writeRows(out, bytes, seed);
+    out.close();
+  }
+
+  private static void writeRows(PrintWriter out, long bytes, long seed) {
+    Random rand = new Random(seed);
+    long written = 0;
+    StringBuilder row = new StringBuilder();
+    while(written < bytes) {
+      row.setLength(0);
+      for(int i=0; i<8; i++)
+        row.append(rand.nextInt(100000)).append('\t');
+      row.append(rand.nextGaussian());
+      out.println(row);
+      written += row.length() + 1;
+    }
+  }
+
+  private static String md5(File f) throws IOException {
+    InputStream in = new FileInputStream(f);
+    try {
+      return DigestUtils.md5Hex(in);
+    }
+    finally {
+      in.close();
+    }
+  }
+}
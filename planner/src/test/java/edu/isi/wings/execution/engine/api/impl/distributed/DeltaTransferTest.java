@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.execution.engine.api.impl.distributed;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.isi.wings.execution.engine.api.impl.distributed.DeltaTransferBenchmark.LoopbackExecutor;
+
+public class DeltaTransferTest {
+  File dir;
+  File local;
+  File remote;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = File.createTempFile("delta-test-", "");
+    dir.delete();
+    dir.mkdirs();
+    local = new File(dir, "local.dat");
+    remote = new File(dir, "remote.dat");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(dir);
+  }
+
+  @Test
+  public void testIdenticalFile() throws IOException {
+    byte[] data = randomBytes(200 * 1024, 1);
+    LoopbackExecutor node = transfer(data, data);
+    // Only block copies are sent
+    Assert.assertTrue(node.bytesSent < 4 * 1024);
+  }
+
+  @Test
+  public void testInsertionInTheMiddle() throws IOException {
+    byte[] old = randomBytes(200 * 1024, 1);
+    byte[] insert = randomBytes(1000, 2);
+    byte[] data = new byte[old.length + insert.length];
+    int at = 100 * 1024 + 123;
+    System.arraycopy(old, 0, data, 0, at);
+    System.arraycopy(insert, 0, data, at, insert.length);
+    System.arraycopy(old, at, data, at + insert.length, old.length - at);
+
+    LoopbackExecutor node = transfer(old, data);
+    // The inserted bytes and the block they landed in
+    Assert.assertTrue(node.bytesSent < insert.length + 8 * 1024);
+  }
+
+  @Test
+  public void testShrinkingFile() throws IOException {
+    byte[] old = randomBytes(200 * 1024, 1);
+    byte[] data = Arrays.copyOf(old, 150 * 1024 + 77);
+    LoopbackExecutor node = transfer(old, data);
+    Assert.assertTrue(node.bytesSent < 8 * 1024);
+  }
+
+  @Test
+  public void testPartialLastBlock() throws IOException {
+    int bs = DeltaTransfer.getBlockSize(200 * 1024 + 500);
+    byte[] old = randomBytes(200 * 1024 + 500, 1);
+    Assert.assertTrue(old.length % bs != 0);
+
+    // Unchanged partial last block is copied
+    LoopbackExecutor node = transfer(old, old);
+    Assert.assertTrue(node.bytesSent < 4 * 1024);
+
+    // A changed one is sent as literal data
+    byte[] data = old.clone();
+    data[data.length - 10] ^= 0x55;
+    node = transfer(old, data);
+    Assert.assertTrue(node.bytesSent < 4 * 1024 + bs);
+  }
+
+  @Test
+  public void testSmallerThanOneBlock() throws IOException {
+    byte[] old = randomBytes(1000, 1);
+    Assert.assertTrue(old.length < DeltaTransfer.getBlockSize(old.length));
+    transfer(old, old);
+
+    // Not worth a delta: the caller falls back to a full upload
+    byte[] data = randomBytes(1000, 2);
+    FileUtils.writeByteArrayToFile(remote, old);
+    FileUtils.writeByteArrayToFile(local, data);
+    LoopbackExecutor node = new LoopbackExecutor();
+    Assert.assertFalse(DeltaTransfer.sendDelta(node, local,
+        remote.getAbsolutePath(), DigestUtils.md5Hex(data), false));
+    Assert.assertArrayEquals(old, FileUtils.readFileToByteArray(remote));
+    assertNoTemporaryFiles();
+  }
+
+  @Test
+  public void testChecksumMismatch() throws IOException {
+    byte[] old = randomBytes(200 * 1024, 1);
+    byte[] data = old.clone();
+    data[1000] ^= 0x55;
+    FileUtils.writeByteArrayToFile(remote, old);
+    FileUtils.writeByteArrayToFile(local, data);
+    LoopbackExecutor node = new LoopbackExecutor();
+    Assert.assertFalse(DeltaTransfer.sendDelta(node, local,
+        remote.getAbsolutePath(), DigestUtils.md5Hex(old), false));
+    Assert.assertArrayEquals(old, FileUtils.readFileToByteArray(remote));
+    assertNoTemporaryFiles();
+  }
+
+  @Test
+  public void testCompressed() throws IOException {
+    byte[] data = new byte[100 * 1024];
+    for(int i=0; i<data.length; i++)
+      data[i] = (byte) ('a' + i % 7);
+    FileUtils.writeByteArrayToFile(local, data);
+    Assert.assertTrue(DeltaTransfer.isCompressible(local));
+
+    LoopbackExecutor node = new LoopbackExecutor();
+    Assert.assertTrue(DeltaTransfer.sendCompressed(node, local,
+        remote.getAbsolutePath(), DigestUtils.md5Hex(data)));
+    Assert.assertArrayEquals(data, FileUtils.readFileToByteArray(remote));
+    Assert.assertTrue(node.bytesSent < data.length / 10);
+    assertNoTemporaryFiles();
+
+    // A bad checksum leaves the remote file as it was
+    node = new LoopbackExecutor();
+    data[0] = 'z';
+    FileUtils.writeByteArrayToFile(local, data);
+    Assert.assertFalse(DeltaTransfer.sendCompressed(node, local,
+        remote.getAbsolutePath(), "0"));
+    Assert.assertEquals('a', FileUtils.readFileToByteArray(remote)[0]);
+    assertNoTemporaryFiles();
+  }
+
+  @Test
+  public void testCompressedEmptyFile() throws IOException {
+    FileUtils.writeByteArrayToFile(local, new byte[0]);
+    Assert.assertTrue(DeltaTransfer.sendCompressed(new LoopbackExecutor(),
+        local, remote.getAbsolutePath(), DigestUtils.md5Hex(new byte[0])));
+    Assert.assertEquals(0, remote.length());
+    assertNoTemporaryFiles();
+  }
+
+  /**
+   * Send the new data as a delta against a remote file holding the old
+   * data, and check the remote file ends up with the new data
+   */
+  private LoopbackExecutor transfer(byte[] old, byte[] data)
+      throws IOException {
+    LoopbackExecutor node = null;
+    // The compressed delta is the one returned
+    for(boolean compress : new boolean[] { false, true }) {
+      FileUtils.writeByteArrayToFile(remote, old);
+      FileUtils.writeByteArrayToFile(local, data);
+      node = new LoopbackExecutor();
+      Assert.assertTrue(DeltaTransfer.sendDelta(node, local,
+          remote.getAbsolutePath(), DigestUtils.md5Hex(data), compress));
+      Assert.assertArrayEquals(data, FileUtils.readFileToByteArray(remote));
+      assertNoTemporaryFiles();
+    }
+    return node;
+  }
+
+  private void assertNoTemporaryFiles() {
+    String[] files = dir.list();
+    Arrays.sort(files);
+    Assert.assertArrayEquals(new String[] { "local.dat", "remote.dat" }, files);
+  }
+
+  private static byte[] randomBytes(int length, long seed) {
+    byte[] data = new byte[length];
+    new Random(seed).nextBytes(data);
+    return data;
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.wings.execution.engine.api.impl.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.isi.kcap.ontapi.KBAPI;
+import edu.isi.wings.execution.engine.classes.RuntimeInfo;
+import edu.isi.wings.execution.engine.classes.RuntimePlan;
+import edu.isi.wings.execution.engine.classes.RuntimeStep;
+import edu.isi.wings.execution.tools.api.ExecutionLoggerAPI;
+import edu.isi.wings.execution.tools.api.ExecutionMonitorAPI;
+import edu.isi.wings.workflow.plan.api.impl.pplan.PPlan;
+import edu.isi.wings.workflow.plan.api.impl.pplan.PPlanStep;
+import edu.isi.wings.workflow.plan.classes.ExecutionCode;
+import edu.isi.wings.workflow.plan.classes.ExecutionFile;
+
+/**
+ * Runs clusters of sibling steps with the LocalExecutionEngine. The
+ * component is a shell script that prints its arguments, records the
+ * process that called it and exits with the code it is given
+ */
+public class LocalExecutionEngineTest {
+  static final String NS = "http://www.wings-workflows.org/test/run.owl#";
+
+  File dir;
+  File calls;
+  ExecutionCode code;
+  PPlan plan;
+  RecordingLogger logger;
+  Properties props;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = File.createTempFile("local-test-", "");
+    dir.delete();
+    dir.mkdirs();
+    calls = new File(dir, "calls.txt");
+
+    File script = new File(dir, "component.sh");
+    FileUtils.writeStringToFile(script, 
+        "#!/bin/sh\n" +
+        "while [ $# -gt 1 ]; do\n" +
+        "  case $1 in -name) name=$2;; -code) code=$2;; esac\n" +
+        "  shift 2\n" +
+        "done\n" +
+        "echo \"$PPID $(pwd)\" >> " + calls.getAbsolutePath() + "\n" +
+        "echo \"ran $name\"\n" +
+        "exit $code\n");
+    script.setExecutable(true);
+    code = new ExecutionCode(NS + "component");
+    code.setLocation(script.getAbsolutePath());
+
+    props = new Properties();
+    props.setProperty("parallel", "1");
+    props.setProperty("cluster.size", "3");
+    plan = new PPlan(NS + "Plan", props);
+    logger = new RecordingLogger();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(dir);
+  }
+
+  @Test
+  public void testClusterRunsAsOneJob() throws Exception {
+    File out1 = new File(dir, "out1.txt");
+    addStep("Job1", 0, out1, true);
+    addStep("Job2", 0, new File(dir, "out2.txt"), false);
+    addStep("Job3", 3, new File(dir, "out3.txt"), false);
+    RuntimePlan planexe = this.run();
+
+    // Each step gets its own status and log
+    Assert.assertEquals(RuntimeInfo.Status.SUCCESS, getStatus(planexe, "Job1"));
+    Assert.assertEquals(RuntimeInfo.Status.SUCCESS, getStatus(planexe, "Job2"));
+    Assert.assertEquals(RuntimeInfo.Status.FAILURE, getStatus(planexe, "Job3"));
+    Assert.assertEquals(RuntimeInfo.Status.FAILURE, 
+        planexe.getRuntimeInfo().getStatus());
+    Assert.assertEquals("ran Job1", FileUtils.readFileToString(out1).trim());
+    Assert.assertTrue(getStep(planexe, "Job2").getRuntimeInfo().getLog()
+        .contains("ran Job2"));
+
+    // All invocations were made by one process, in one directory
+    List<String> lines = FileUtils.readLines(calls);
+    Assert.assertEquals(3, lines.size());
+    Assert.assertEquals(lines.get(0), lines.get(1));
+    Assert.assertEquals(lines.get(0), lines.get(2));
+
+    // The steps were logged together when the job started and ended
+    Assert.assertEquals(0, logger.stepUpdates);
+    Assert.assertEquals(2, logger.batchUpdates);
+  }
+
+  @Test
+  public void testExistingOutputsNotRun() throws Exception {
+    File out1 = new File(dir, "out1.txt");
+    FileUtils.writeStringToFile(out1, "done");
+    addStep("Job1", 0, out1, true);
+    addStep("Job2", 0, new File(dir, "out2.txt"), false);
+    RuntimePlan planexe = this.run();
+
+    Assert.assertEquals(RuntimeInfo.Status.SUCCESS, 
+        planexe.getRuntimeInfo().getStatus());
+    Assert.assertTrue(getStep(planexe, "Job1").getRuntimeInfo().getLog()
+        .contains("Outputs already exist"));
+    Assert.assertEquals("done", FileUtils.readFileToString(out1));
+    Assert.assertEquals(1, FileUtils.readLines(calls).size());
+  }
+
+  // Steps are only run if some output is missing. The output is written
+  // to by the step's standard output if [stdout] is true
+  private void addStep(String name, int exitcode, File output, 
+      boolean stdout) {
+    PPlanStep step = new PPlanStep(NS + name, props);
+    step.setCodeBinding(code);
+    addArgument(step, "-name", name);
+    addArgument(step, "-code", String.valueOf(exitcode));
+    ExecutionFile file = new ExecutionFile(NS + output.getName());
+    file.setLocation(output.getAbsolutePath());
+    step.addOutputFile(file);
+    if(stdout) {
+      ArrayList<Object> values = new ArrayList<Object>();
+      values.add(file);
+      step.getInvocationArguments().put(">", values);
+    }
+    plan.addExecutionStep(step);
+  }
+
+  private void addArgument(PPlanStep step, String name, String value) {
+    ArrayList<Object> values = new ArrayList<Object>();
+    values.add(value);
+    step.getInvocationArguments().put(name, values);
+  }
+
+  private RuntimePlan run() throws InterruptedException {
+    LocalExecutionEngine engine = new LocalExecutionEngine(props);
+    engine.setExecutionLogger(logger);
+    engine.setExecutionMonitor(logger);
+    RuntimePlan planexe = new RuntimePlan(plan);
+    engine.execute(planexe);
+    Assert.assertTrue(logger.finished.await(10, TimeUnit.SECONDS));
+    return planexe;
+  }
+
+  private RuntimeStep getStep(RuntimePlan planexe, String name) {
+    for(RuntimeStep step : planexe.getQueue().getAllSteps())
+      if(step.getStep().getName().equals(name))
+        return step;
+    return null;
+  }
+
+  private RuntimeInfo.Status getStatus(RuntimePlan planexe, String name) {
+    return getStep(planexe, name).getRuntimeInfo().getStatus();
+  }
+
+  /**
+   * Logger that counts step updates, and keeps track of the end of the run
+   */
+  static class RecordingLogger implements ExecutionLoggerAPI, ExecutionMonitorAPI {
+    CountDownLatch finished = new CountDownLatch(1);
+    int stepUpdates = 0;
+    int batchUpdates = 0;
+
+    @Override
+    public void startLogging(RuntimePlan plan) {
+      // Nothing to set up
+    }
+
+    @Override
+    public void updateRuntimeInfo(RuntimePlan plan) {
+      RuntimeInfo.Status status = plan.getRuntimeInfo().getStatus();
+      if(status == RuntimeInfo.Status.SUCCESS || 
+          status == RuntimeInfo.Status.FAILURE)
+        finished.countDown();
+    }
+
+    @Override
+    public synchronized void updateRuntimeInfo(RuntimeStep step) {
+      stepUpdates++;
+    }
+
+    @Override
+    public synchronized void updateRuntimeInfo(ArrayList<RuntimeStep> steps) {
+      batchUpdates++;
+    }
+
+    @Override
+    public ArrayList<RuntimePlan> getRunList() {
+      return new ArrayList<RuntimePlan>();
+    }
+
+    @Override
+    public RuntimePlan getRunDetails(String runid) {
+      return null;
+    }
+
+    @Override
+    public boolean runExists(String runid) {
+      return false;
+    }
+
+    @Override
+    public boolean deleteRun(String runid) {
+      return false;
+    }
+
+    @Override
+    public RuntimePlan rePlan(RuntimePlan planexe) {
+      planexe.getRuntimeInfo().setStatus(RuntimeInfo.Status.FAILURE);
+      return planexe;
+    }
+
+    @Override
+    public boolean save() {
+      return true;
+    }
+
+    @Override
+    public boolean delete() {
+      return true;
+    }
+
+    @Override
+    public boolean start_read() {
+      return true;
+    }
+
+    @Override
+    public boolean start_write() {
+      return true;
+    }
+
+    @Override
+    public boolean save(KBAPI kb) {
+      return true;
+    }
+
+    @Override
+    public boolean saveAll() {
+      return true;
+    }
+
+    @Override
+    public boolean end() {
+      return true;
+    }
+
+    @Override
+    public boolean start_batch_operation() {
+      return true;
+    }
+
+    @Override
+    public void stop_batch_operation() {
+      // Nothing to do
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.planner.api;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.isi.wings.planner.api.PlannerStats.Counter;
+import edu.isi.wings.planner.api.PlannerStats.Phase;
+
+/**
+ * Counters recorded while phases of different planners are nested in the
+ * same thread
+ */
+public class PlannerStatsTest {
+
+  @Test
+  public void testNestedPhases() {
+    PlannerStats outer = new PlannerStats();
+    PlannerStats inner = new PlannerStats();
+
+    long ostart = outer.startPhase();
+    PlannerStats.record(Counter.SPARQL_QUERIES);
+
+    long istart = inner.startPhase();
+    PlannerStats.record(Counter.SPARQL_QUERIES, 2);
+    inner.endPhase(Phase.CONFIGURATION, istart, 1);
+
+    // Back to the enclosing phase
+    PlannerStats.record(Counter.SPARQL_QUERIES, 4);
+    outer.endPhase(Phase.INFERENCE, ostart, 1);
+
+    // No phase running
+    PlannerStats.record(Counter.SPARQL_QUERIES, 8);
+
+    Assert.assertEquals(5, outer.get(Counter.SPARQL_QUERIES));
+    Assert.assertEquals(2, inner.get(Counter.SPARQL_QUERIES));
+    Assert.assertEquals(1, outer.getCalls(Phase.INFERENCE));
+    Assert.assertEquals(0, outer.getCalls(Phase.CONFIGURATION));
+    Assert.assertEquals(1, inner.getCalls(Phase.CONFIGURATION));
+  }
+
+  @Test
+  public void testSamePhaseNested() {
+    PlannerStats stats = new PlannerStats();
+    long ostart = stats.startPhase();
+    long istart = stats.startPhase();
+    stats.endPhase(Phase.SPECIALIZATION, istart, 2);
+    PlannerStats.record(Counter.TEMPLATE_COPIES);
+    stats.endPhase(Phase.CONFIGURATION, ostart, 3);
+    PlannerStats.record(Counter.TEMPLATE_COPIES);
+
+    Assert.assertEquals(1, stats.get(Counter.TEMPLATE_COPIES));
+    Assert.assertEquals(2, stats.getCandidates(Phase.SPECIALIZATION));
+    Assert.assertEquals(3, stats.getCandidates(Phase.CONFIGURATION));
+  }
+}
@@ -19,11 +19,15 @@ package edu.isi.wings.workflows.tests;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import edu.isi.wings.workflow.template.classes.sets.Binding;
+import edu.isi.wings.workflow.template.classes.sets.ValueBinding;
 import edu.isi.wings.workflows.util.AWGUtil;
 
 public class SimpleTest {
@@ -46,6 +50,38 @@ public class SimpleTest {
 		AWGUtil.testTemplateElaboration(domdir, "http://www.isi.edu/DMDomain/ModelAndClassify.owl#ModelAndClassify");
 	}
 
+	@Test
+	public void testBatchPlanning() throws IOException {
+		AWGUtil.testBatchPlanning(domdir, "http://www.isi.edu/DMDomain/ModelAndClassify.owl#ModelAndClassify", 4);
+	}
+
+	@Test
+	public void testBatchMatchesSequential() throws IOException {
+		String ns = "http://www.isi.edu/DMDomain/ModelAndClassify.owl#";
+		String lib = "http://www.isi.edu/dc/dm/library.owl#";
+		String xsdint = "http://www.w3.org/2001/XMLSchema#int";
+		// Continuous and discrete data, which specialize differently
+		String[][] data = {
+				{ "iris-2010-05-04-110928-100.arff", "iris-2010-05-04-110933-100.arff", "4" },
+				{ "contact-lenses-2010-05-04-110805-100.arff", 
+					"contact-lenses-2010-05-04-110821-1000.arff", "4" },
+				{ "iris-2010-05-04-110928-100.arff", "iris-2010-05-04-110933-100.arff", "2" } };
+		ArrayList<HashMap<String, Binding>> bindings = new ArrayList<HashMap<String, Binding>>();
+		for (String[] run : data) {
+			HashMap<String, Binding> b = new HashMap<String, Binding>();
+			b.put(ns + "trainingData", new Binding(lib + run[0]));
+			b.put(ns + "testData", new Binding(lib + run[1]));
+			b.put(ns + "classIndex", new ValueBinding(Integer.valueOf(run[2]), xsdint));
+			bindings.add(b);
+		}
+		AWGUtil.testBatchMatchesSequential(domdir, ns + "ModelAndClassify", bindings);
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws IOException {
+		AWGUtil.testBinaryRoundTrip(domdir, "http://www.isi.edu/DMDomain/ModelAndClassify.owl#ModelAndClassify");
+	}
+
 	@Test
 	public void testSeedGeneration() throws IOException {
 		AWGUtil.testSeedGeneration(domdir, "http://www.isi.edu/DMDomain/seeds/Test2Seed.owl#Test2Seed", 
@@ -17,15 +17,41 @@
 
 package edu.isi.wings.workflows.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Properties;
 import java.util.UUID;
 
+import edu.isi.wings.catalog.data.classes.VariableBindingsList;
+import edu.isi.wings.catalog.data.classes.VariableBindingsListSet;
+import edu.isi.wings.common.CollectionsHelper;
 import edu.isi.wings.common.kb.PropertiesHelper;
+import edu.isi.wings.planner.api.BatchPlanListener;
+import edu.isi.wings.planner.api.WorkflowGenerationAPI;
 import edu.isi.wings.planner.cli.Wings;
 import edu.isi.wings.workflow.plan.api.ExecutionPlan;
+import edu.isi.wings.workflow.plan.api.ExecutionStep;
+import edu.isi.wings.workflow.plan.api.impl.pplan.PPlanBinary;
+import edu.isi.wings.workflow.plan.classes.ExecutionCode;
+import edu.isi.wings.workflow.plan.classes.ExecutionFile;
+import edu.isi.wings.workflow.template.TemplateFactory;
 import edu.isi.wings.workflow.template.api.Template;
+import edu.isi.wings.workflow.template.api.impl.kb.TemplateBinary;
+import edu.isi.wings.workflow.template.api.impl.kb.TemplateKB;
+import edu.isi.wings.workflow.template.classes.Link;
+import edu.isi.wings.workflow.template.classes.Metadata;
+import edu.isi.wings.workflow.template.classes.Node;
+import edu.isi.wings.workflow.template.classes.Port;
+import edu.isi.wings.workflow.template.classes.Role;
+import edu.isi.wings.workflow.template.classes.sets.Binding;
+import edu.isi.wings.workflow.template.classes.variables.ComponentVariable;
+import edu.isi.wings.workflow.template.classes.variables.Variable;
 import org.junit.Assert;
 
 import org.apache.jena.util.FileUtils;
@@ -113,4 +139,294 @@ public class AWGUtil {
 		//wings.runPlan(plans.get(0), true);
 	}
 
+	/**
+	 * Plan the same bindings alone and in a parallel batch, and check that
+	 * every binding of the batch got the explanations (and the rule
+	 * printouts) of its own planning only
+	 */
+	public static void testBatchPlanning(String domdir, String template, int n)
+			throws IOException {
+		String conf_path = domdir + "/wings.properties";
+		String requestid = UUID.randomUUID().toString();
+		Wings wings = new Wings(template, requestid, conf_path, true);
+
+		wings.initializePC();
+		wings.initializeRC();
+		wings.initializeWorkflowGenerator();
+		wings.setDC(wings.initializeDC());
+		wings.initializeItem();
+		WorkflowGenerationAPI wg = wings.getWG();
+
+		ArrayList<ArrayList<String>> single = planBatch(wg, wings.getTemplate(), 1);
+		ArrayList<ArrayList<String>> batch = planBatch(wg, wings.getTemplate(), n);
+
+		Assert.assertEquals(1, single.size());
+		Assert.assertEquals(n, batch.size());
+		ArrayList<String> expected = single.get(0);
+		Assert.assertNotNull(expected);
+		for (ArrayList<String> explanations : batch) {
+			Assert.assertNotNull(explanations);
+			Assert.assertEquals(expected.size(), explanations.size());
+			Assert.assertEquals(countPrintouts(expected), countPrintouts(explanations));
+		}
+	}
+
+	/**
+	 * Plan a batch of real data and parameter bindings, and check that each
+	 * binding gets the same expansions as when it is planned alone, the way
+	 * the portal's getExpansions does (bindings set before inference)
+	 */
+	public static void testBatchMatchesSequential(String domdir, String template,
+			ArrayList<HashMap<String, Binding>> bindings) throws IOException {
+		String conf_path = domdir + "/wings.properties";
+		String requestid = UUID.randomUUID().toString();
+		Wings wings = new Wings(template, requestid, conf_path, true);
+
+		wings.initializePC();
+		wings.initializeRC();
+		wings.initializeWorkflowGenerator();
+		wings.setDC(wings.initializeDC());
+		wings.initializeItem();
+		WorkflowGenerationAPI wg = wings.getWG();
+
+		final ArrayList<ArrayList<String>> batch = new ArrayList<ArrayList<String>>();
+		for (int i = 0; i < bindings.size(); i++)
+			batch.add(null);
+		wg.planBatch(wings.getTemplate(), bindings, new BatchPlanListener() {
+			@Override
+			public void planned(int index, ArrayList<Template> expansions,
+					ArrayList<String> explanations) {
+				batch.set(index, describeExpansions(expansions));
+			}
+		});
+
+		for (int i = 0; i < bindings.size(); i++) {
+			ArrayList<String> sequential = describeExpansions(
+					planSequentially(wg, wings.getTemplate(), bindings.get(i)));
+			Assert.assertFalse(sequential.isEmpty());
+			Assert.assertEquals(sequential, batch.get(i));
+		}
+	}
+
+	private static ArrayList<Template> planSequentially(WorkflowGenerationAPI wg,
+			Template template, HashMap<String, Binding> bindings) {
+		Template tpl = template.createCopy();
+		for (String key : bindings.keySet()) {
+			Variable var = tpl.getVariable(key);
+			if (var != null)
+				var.setBinding(bindings.get(key));
+		}
+		ArrayList<Template> bts = new ArrayList<Template>();
+		Template itpl = wg.getInferredTemplate(tpl);
+		for (Template t : wg.specializeTemplates(itpl)) {
+			if (t.getInputDataVariables().length == 0) {
+				bts.add(t);
+				continue;
+			}
+			VariableBindingsListSet bindingset = wg.selectInputDataObjects(t);
+			if (bindingset == null)
+				continue;
+			for (VariableBindingsList binding : 
+					CollectionsHelper.combineVariableDataObjectMappings(bindingset)) {
+				Template bt = wg.bindTemplate(t, binding);
+				if (bt != null)
+					bts.add(bt);
+			}
+		}
+		wg.setDataMetricsForInputDataObjects(bts);
+		ArrayList<Template> ets = new ArrayList<Template>();
+		for (Template bt : bts) {
+			for (Template ct : wg.configureTemplates(bt)) {
+				Template et = wg.getExpandedTemplate(ct);
+				if (et != null)
+					ets.add(et);
+			}
+		}
+		return ets;
+	}
+
+	// The components and input bindings of each expansion (their ids are
+	// generated, so they differ between runs)
+	private static ArrayList<String> describeExpansions(ArrayList<Template> expansions) {
+		ArrayList<String> items = new ArrayList<String>();
+		for (Template t : expansions) {
+			ArrayList<String> parts = new ArrayList<String>();
+			for (Node n : t.getNodes()) {
+				ComponentVariable c = n.getComponentVariable();
+				parts.add("component " + (c != null ? c.getBinding() : null));
+			}
+			for (Variable v : t.getInputVariables())
+				parts.add("input " + v.getName() + " " + v.getBinding());
+			Collections.sort(parts);
+			items.add(parts.toString());
+		}
+		Collections.sort(items);
+		return items;
+	}
+
+	private static ArrayList<ArrayList<String>> planBatch(WorkflowGenerationAPI wg,
+			Template template, int n) {
+		ArrayList<HashMap<String, Binding>> bindings = new ArrayList<HashMap<String, Binding>>();
+		final ArrayList<ArrayList<String>> results = new ArrayList<ArrayList<String>>();
+		for (int i = 0; i < n; i++) {
+			bindings.add(new HashMap<String, Binding>());
+			results.add(null);
+		}
+		wg.planBatch(template, bindings, new BatchPlanListener() {
+			@Override
+			public void planned(int index, ArrayList<Template> expansions,
+					ArrayList<String> explanations) {
+				results.set(index, new ArrayList<String>(explanations));
+			}
+		});
+		return results;
+	}
+
+	private static int countPrintouts(ArrayList<String> explanations) {
+		int count = 0;
+		for (String exp : explanations) {
+			if (exp.startsWith("Firing"))
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Plan a template, and check that its expanded templates and execution
+	 * plans read back from their binary form (see TemplateBinary and
+	 * PPlanBinary) the same as they were written
+	 */
+	public static void testBinaryRoundTrip(String domdir, String template)
+			throws IOException {
+		String conf_path = domdir + "/wings.properties";
+		String requestid = UUID.randomUUID().toString();
+		Wings wings = new Wings(template, requestid, conf_path, true);
+
+		wings.initializePC();
+		wings.initializeRC();
+		wings.initializeWorkflowGenerator();
+		wings.setDC(wings.initializeDC());
+		wings.initializeItem();
+		WorkflowGenerationAPI wg = wings.getWG();
+
+		ArrayList<HashMap<String, Binding>> bindings = new ArrayList<HashMap<String, Binding>>();
+		bindings.add(new HashMap<String, Binding>());
+		final ArrayList<Template> expansions = new ArrayList<Template>();
+		wg.planBatch(wings.getTemplate(), bindings, new BatchPlanListener() {
+			@Override
+			public void planned(int index, ArrayList<Template> templates,
+					ArrayList<String> explanations) {
+				if (templates != null)
+					expansions.addAll(templates);
+			}
+		});
+		Assert.assertFalse(expansions.isEmpty());
+
+		Properties props = TemplateFactory.createLegacyConfiguration();
+		for (Template expansion : expansions) {
+			TemplateKB tpl = (TemplateKB) expansion;
+			Assert.assertTrue(TemplateBinary.isSupported(tpl));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			TemplateBinary.write(tpl, out);
+			TemplateKB copy = TemplateBinary.read(props,
+					new ByteArrayInputStream(out.toByteArray()));
+			Assert.assertEquals(tpl.getID(), copy.getID());
+			Assert.assertEquals(describeTemplate(tpl), describeTemplate(copy));
+
+			ExecutionPlan plan = wg.getExecutionPlan(tpl);
+			Assert.assertNotNull(plan);
+			out = new ByteArrayOutputStream();
+			PPlanBinary.write(plan, out);
+			ExecutionPlan pcopy = PPlanBinary.read(props,
+					new ByteArrayInputStream(out.toByteArray()));
+			Assert.assertEquals(plan.getID(), pcopy.getID());
+			Assert.assertEquals(plan.isIncomplete(), pcopy.isIncomplete());
+			Assert.assertEquals(describePlan(plan), describePlan(pcopy));
+		}
+	}
+
+	private static ArrayList<String> describeTemplate(Template tpl) {
+		ArrayList<String> items = new ArrayList<String>();
+		for (Node n : tpl.getNodes()) {
+			ComponentVariable c = n.getComponentVariable();
+			items.add("node " + n.getID() + " " + n.isInactive() + " " + n.getDerivedFrom()
+					+ " " + n.getMachineIds() + " " + n.getComment()
+					+ (c != null ? " " + c.isConcrete() + " " + c : ""));
+			for (Port p : n.getInputPorts())
+				items.add("in " + n.getID() + " " + p.getID() + " " + describeRole(p.getRole()));
+			for (Port p : n.getOutputPorts())
+				items.add("out " + n.getID() + " " + p.getID() + " " + describeRole(p.getRole()));
+		}
+		for (Variable v : tpl.getVariables()) {
+			Binding b = v.getBinding();
+			items.add("variable " + v.getVariableType() + " " + v.getID() + " "
+					+ v.isAutoFill() + " " + v.isBreakpoint() + " " + v.getDerivedFrom()
+					+ " " + (b != null ? b.getID() + " " + b : null));
+		}
+		for (Link l : tpl.getLinks()) {
+			items.add("link " + l.getID() + " " + l
+					+ " " + (l.getOriginPort() != null ? l.getOriginPort().getID() : null)
+					+ " " + (l.getDestinationPort() != null ? l.getDestinationPort().getID() : null));
+		}
+		for (String varid : tpl.getInputRoles().keySet())
+			items.add("input " + varid + " " + describeRole(tpl.getInputRoles().get(varid)));
+		for (String varid : tpl.getOutputRoles().keySet())
+			items.add("output " + varid + " " + describeRole(tpl.getOutputRoles().get(varid)));
+
+		ArrayList<String> varids = new ArrayList<String>();
+		for (Variable v : tpl.getVariables())
+			varids.add(v.getID());
+		for (Object t : tpl.getConstraintEngine().getConstraints(varids))
+			items.add("constraint " + t);
+
+		Metadata m = tpl.getMetadata();
+		items.add("metadata " + m.getLastUpdateTime() + " " + m.getDocumentation() + " "
+				+ m.getTellme() + " " + m.getContributors() + " " + m.getCreationSources());
+		items.add("rules " + (tpl.getRules() != null ? tpl.getRules().getRulesText() : null));
+		Collections.sort(items);
+		return items;
+	}
+
+	private static String describeRole(Role r) {
+		if (r == null)
+			return null;
+		return r.getID() + " " + r.getRoleId() + " " + r.getType() + " " + r.getDimensionality();
+	}
+
+	private static ArrayList<String> describePlan(ExecutionPlan plan) {
+		ArrayList<String> items = new ArrayList<String>();
+		for (ExecutionStep step : plan.getAllExecutionSteps()) {
+			ExecutionCode code = step.getCodeBinding();
+			items.add("step " + step.getID() + " " + step.getMachineIds()
+					+ (code != null ? " " + code.getID() + " " + code.getLocation()
+							+ " " + code.getCodeDirectory() : ""));
+			items.add("inputs " + step.getID() + " " + describeFiles(step.getInputFiles()));
+			items.add("outputs " + step.getID() + " " + describeFiles(step.getOutputFiles()));
+			HashMap<String, ArrayList<Object>> args = step.getInvocationArguments();
+			for (String argname : args.keySet()) {
+				ArrayList<String> values = new ArrayList<String>();
+				for (Object value : args.get(argname)) {
+					if (value instanceof ExecutionFile)
+						values.add(describeFile((ExecutionFile) value));
+					else
+						values.add(String.valueOf(value));
+				}
+				items.add("argument " + step.getID() + " " + argname + " " + values);
+			}
+		}
+		Collections.sort(items);
+		return items;
+	}
+
+	private static ArrayList<String> describeFiles(Collection<ExecutionFile> files) {
+		ArrayList<String> items = new ArrayList<String>();
+		for (ExecutionFile file : files)
+			items.add(describeFile(file));
+		return items;
+	}
+
+	private static String describeFile(ExecutionFile file) {
+		return file.getID() + " " + file.getLocation() + " " + file.getBinding();
+	}
+
 }
@@ -7,6 +7,8 @@ import org.glassfish.jersey.media.multipart.MultiPartFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 
 import edu.isi.kcap.ontapi.OntFactory;
+import edu.isi.wings.catalog.CatalogRegistry;
+import edu.isi.wings.catalog.resource.classes.MachineMonitor;
 import edu.isi.wings.portal.filters.resources.CORSResponseFilter;
 import edu.isi.wings.portal.filters.resources.GZIPReaderInterceptor;
 import edu.isi.wings.portal.filters.resources.GZIPWriterInterceptor;
@@ -53,6 +55,8 @@ class WingsServer extends ResourceConfig {
     // Cleanup tasks
     System.out.println("Wings server going down");
     OntFactory.shutdown();
+    MachineMonitor.shutdown();
+    CatalogRegistry.shutdown();
   }
 
 }
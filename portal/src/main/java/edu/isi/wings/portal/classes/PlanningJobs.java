@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.isi.wings.portal.classes;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import edu.isi.wings.common.UuidGen;
+
+/**
+ * Planning requests that run in the background, on a bounded pool of
+ * planner threads, and whose results are fetched later by job id.
+ *
+ * Read from the portal properties:
+ *   planner.jobs.threads = 4      (planner threads, default: processors)
+ *   planner.jobs.queue = 100      (jobs waiting for a thread, beyond which
+ *                                  new jobs are rejected)
+ *   planner.jobs.ttl = 600        (seconds to keep the results of a job)
+ *
+ * A job that is submitted while an identical job (same key) is still
+ * queued or running is not run again: the running job is returned instead.
+ */
+public class PlanningJobs {
+  public enum Status {
+    QUEUED, RUNNING, DONE, FAILED
+  }
+
+  public static class Job {
+    String id;
+    String key;
+    String owner;
+    volatile Status status = Status.QUEUED;
+    volatile String result;
+    volatile String error;
+    volatile long finished = 0;
+    CountDownLatch done = new CountDownLatch(1);
+
+    Job(String id, String key, String owner) {
+      this.id = id;
+      this.key = key;
+      this.owner = owner;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    public String getResult() {
+      return result;
+    }
+
+    public String getError() {
+      return error;
+    }
+
+    /**
+     * Wait for the job to finish
+     * @return false if it is still queued or running after the timeout
+     */
+    public boolean await(long millis) throws InterruptedException {
+      return done.await(millis, TimeUnit.MILLISECONDS);
+    }
+
+    public Map<String, Object> toMap() {
+      LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
+      map.put("job_id", id);
+      map.put("status", status.name());
+      if(error != null)
+        map.put("error", error);
+      return map;
+    }
+
+    void run(Callable<String> task) {
+      status = Status.RUNNING;
+      try {
+        result = task.call();
+        status = Status.DONE;
+      }
+      catch (Exception e) {
+        logger.error("Planning job " + id + " failed", e);
+        error = e.getMessage() != null ? e.getMessage() : e.toString();
+        status = Status.FAILED;
+      }
+      finally {
+        finished = System.currentTimeMillis();
+        synchronized (PlanningJobs.class) {
+          if(inflight.get(key) == this)
+            inflight.remove(key);
+        }
+        done.countDown();
+      }
+    }
+  }
+
+  private static final Logger logger = Logger.getLogger(PlanningJobs.class);
+
+  private static ThreadPoolExecutor pool;
+
+  private static long ttl = 600;
+
+  private static ConcurrentHashMap<String, Job> jobs =
+      new ConcurrentHashMap<String, Job>();
+
+  // Queued and running jobs, by key
+  private static HashMap<String, Job> inflight = new HashMap<String, Job>();
+
+  /**
+   * Submit a planning job, or join the identical job already in flight
+   * @param owner
+   *            only the owner can fetch the job afterwards
+   * @param key
+   *            identifies the request (jobs with the same key are the same)
+   * @return null if the queue is full
+   */
+  public static synchronized Job submit(Properties props, String owner,
+      String key, final Callable<String> task) {
+    ThreadPoolExecutor pool = getPool(props);
+    removeExpiredJobs();
+
+    key = owner + " " + key;
+    Job job = inflight.get(key);
+    if(job != null)
+      return job;
+
+    final Job newjob = new Job(UuidGen.generateAUuid(""), key, owner);
+    try {
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          newjob.run(task);
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      return null;
+    }
+    jobs.put(newjob.id, newjob);
+    inflight.put(key, newjob);
+    return newjob;
+  }
+
+  public static Job getJob(String owner, String id) {
+    Job job = jobs.get(id);
+    if(job == null || !job.owner.equals(owner))
+      return null;
+    return job;
+  }
+
+  private static void removeExpiredJobs() {
+    long cutoff = System.currentTimeMillis() - ttl * 1000;
+    for(Iterator<Job> it = jobs.values().iterator(); it.hasNext(); ) {
+      Job job = it.next();
+      if(job.finished > 0 && job.finished < cutoff)
+        it.remove();
+    }
+  }
+
+  private static ThreadPoolExecutor getPool(Properties props) {
+    if(pool == null) {
+      int threads = getInt(props, "planner.jobs.threads",
+          Runtime.getRuntime().availableProcessors());
+      int queue = getInt(props, "planner.jobs.queue", 100);
+      ttl = props.containsKey("planner.jobs.ttl") ?
+          Long.parseLong(props.getProperty("planner.jobs.ttl").trim()) : ttl;
+      pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+          new ArrayBlockingQueue<Runnable>(queue), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "wings-planning-job");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+    return pool;
+  }
+
+  private static int getInt(Properties props, String key, int def) {
+    return props.containsKey(key) ?
+        Integer.parseInt(props.getProperty(key).trim()) : def;
+  }
+}
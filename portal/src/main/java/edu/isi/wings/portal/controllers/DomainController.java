@@ -36,6 +36,7 @@ import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.configuration.plist.PropertyListConfiguration;
 import org.apache.commons.io.FileUtils;
 
+import edu.isi.wings.catalog.CatalogRegistry;
 import edu.isi.wings.catalog.provenance.ProvenanceFactory;
 import edu.isi.wings.catalog.provenance.api.ProvenanceAPI;
 import edu.isi.wings.portal.classes.config.Config;
@@ -245,6 +246,7 @@ public class DomainController {
 		if(dominfo != null) {
 			this.user_domains.remove(domain);
 			Domain dom = new Domain(dominfo);
+			CatalogRegistry.invalidate(config.getProperties(dom));
 			if(!Domain.deleteDomain(dom, config, true))
 				return false;
 			
@@ -261,6 +263,7 @@ public class DomainController {
 		if(dominfo != null) {
 			this.user_domains.remove(domain);
 			Domain dom = new Domain(dominfo);
+			CatalogRegistry.invalidate(config.getProperties(dom));
 			Domain newdom = Domain.renameDomain(dom, newname, config);
 			if(newdom == null)
 				return false;
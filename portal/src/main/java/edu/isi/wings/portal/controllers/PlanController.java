@@ -18,36 +18,39 @@
 package edu.isi.wings.portal.controllers;
 
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.codec.digest.DigestUtils;
 
 import edu.isi.kcap.ontapi.KBObject;
-import edu.isi.wings.catalog.component.ComponentFactory;
+import edu.isi.wings.catalog.CatalogRegistry;
 import edu.isi.wings.catalog.component.api.ComponentReasoningAPI;
-import edu.isi.wings.catalog.data.DataFactory;
 import edu.isi.wings.catalog.data.api.DataReasoningAPI;
 import edu.isi.wings.catalog.data.classes.VariableBindings;
 import edu.isi.wings.catalog.data.classes.VariableBindingsList;
 import edu.isi.wings.catalog.data.classes.VariableBindingsListSet;
 import edu.isi.wings.catalog.data.classes.metrics.Metric;
 import edu.isi.wings.catalog.data.classes.metrics.Metrics;
-import edu.isi.wings.catalog.resource.ResourceFactory;
 import edu.isi.wings.catalog.resource.api.ResourceAPI;
 import edu.isi.wings.common.CollectionsHelper;
 import edu.isi.wings.common.UuidGen;
 import edu.isi.wings.execution.engine.api.impl.local.LocalExecutionEngine;
+import edu.isi.wings.planner.api.BatchPlanListener;
+import edu.isi.wings.planner.api.PlannerStats.Phase;
 import edu.isi.wings.planner.api.WorkflowGenerationAPI;
 import edu.isi.wings.planner.api.impl.kb.WorkflowGenerationKB;
 import edu.isi.wings.portal.classes.config.Config;
 import edu.isi.wings.portal.classes.util.TemplateBindings;
 import edu.isi.wings.portal.classes.JsonHandler;
-import edu.isi.wings.workflow.template.TemplateFactory;
+import edu.isi.wings.portal.classes.PlanningJobs;
 import edu.isi.wings.workflow.template.api.Template;
 import edu.isi.wings.workflow.template.api.TemplateCreationAPI;
 import edu.isi.wings.workflow.template.classes.Node;
@@ -74,6 +77,9 @@ public class PlanController {
 	
 	private Gson json;
 	private Properties props;
+	private boolean showstats = false;
+	private long budgetMillis = 0;
+	private int budgetCandidates = 0;
 
 	private String wliburl;
 	private String dcdomns;
@@ -87,10 +93,11 @@ public class PlanController {
 		this.json = JsonHandler.createTemplateGson();
 		this.props = config.getProperties();
 
-		tc = TemplateFactory.getCreationAPI(props);
-		cc = ComponentFactory.getReasoningAPI(props);
-		dc = DataFactory.getReasoningAPI(props);
-		rc = ResourceFactory.getAPI(props);
+		// Shared, long-lived catalogs of the domain
+		tc = CatalogRegistry.getTemplateCreationAPI(props);
+		cc = CatalogRegistry.getComponentReasoningAPI(props);
+		dc = CatalogRegistry.getDataReasoningAPI(props);
+		rc = CatalogRegistry.getResourceAPI(props);
 		  
 		wg = new WorkflowGenerationKB(props, dc, cc, rc, UuidGen.generateAUuid(""));
 
@@ -102,6 +109,12 @@ public class PlanController {
 		this.resontns = (String) props.get("ont.resource.url") + "#";
 		
     this.setMachineWhitelist();
+
+		// Default planning budget of the domain
+		if(props.containsKey("planner.budget.time"))
+		  this.budgetMillis = Long.parseLong(props.getProperty("planner.budget.time").trim());
+		if(props.containsKey("planner.budget.candidates"))
+		  this.budgetCandidates = Integer.parseInt(props.getProperty("planner.budget.candidates").trim());
 	}
 	
 	private void setMachineWhitelist() {
@@ -113,6 +126,24 @@ public class PlanController {
     }
 	}
 	
+	/**
+	 * Add the planner's per-phase timers and counters to the responses
+	 */
+	public void setShowStats(boolean showstats) {
+	  this.showstats = showstats;
+	}
+
+	/**
+	 * Bound the planning time (in milliseconds) and the number of candidates.
+	 * Values of 0 keep the defaults of the domain.
+	 */
+	public void setBudget(long millis, int maxCandidates) {
+	  if(millis > 0)
+	    this.budgetMillis = millis;
+	  if(maxCandidates > 0)
+	    this.budgetCandidates = maxCandidates;
+	}
+
 	public void printSuggestedDataJSON(TemplateBindings template_bindings,
 	    boolean noexplain, PrintWriter out) {
 		printPlannerJSON(template_bindings, "getData", noexplain, out);
@@ -128,6 +159,43 @@ public class PlanController {
 		printPlannerJSON(template_bindings, "getExpansions", noexplain, out);
 	}
 
+	/**
+	 * Run a planner operation ("getData", "getParameters" or "getExpansions")
+	 * as a background job
+	 * @return the job, or null if there are too many jobs queued already
+	 */
+	public PlanningJobs.Job submitPlanningJob(final String op,
+	    final TemplateBindings template_bindings, final boolean noexplain) {
+	  // Identical requests of the domain are coalesced onto the same job
+	  TreeMap<String, Object> request = new TreeMap<String, Object>();
+	  request.put("op", op);
+	  request.put("noexplain", noexplain);
+	  request.put("stats", showstats);
+	  request.put("budget", budgetMillis + " " + budgetCandidates);
+	  request.put("template", template_bindings.getTemplateId());
+	  request.put("data", new TreeMap<String, Object>(template_bindings.getDataBindings()));
+	  request.put("parameters", new TreeMap<String, Object>(template_bindings.getParameterBindings()));
+	  request.put("types", new TreeMap<String, Object>(template_bindings.getParameterTypes()));
+	  request.put("components", new TreeMap<String, Object>(template_bindings.getComponentBindings()));
+	  String key = DigestUtils.sha1Hex(json.toJson(request));
+
+	  return PlanningJobs.submit(props, config.getUserDomainUrl(), key,
+	      new Callable<String>() {
+	    @Override
+	    public String call() {
+	      StringWriter sw = new StringWriter();
+	      PrintWriter out = new PrintWriter(sw);
+	      printPlannerJSON(template_bindings, op, noexplain, out);
+	      out.flush();
+	      return sw.toString();
+	    }
+	  });
+	}
+
+	public PlanningJobs.Job getPlanningJob(String jobid) {
+	  return PlanningJobs.getJob(config.getUserDomainUrl(), jobid);
+	}
+
 	public void printElaboratedTemplateJSON(String tplid, String templatejson, String consjson, 
 	    PrintWriter out) {
 		Template tpl = JsonHandler.getTemplateFromJSON(this.json, templatejson, consjson);
@@ -136,12 +204,98 @@ public class PlanController {
 		
 		HashMap<String, Object> extra = new HashMap<String, Object>();
 		extra.put("explanations", wg.getExplanations());
+		if(showstats)
+		  extra.put("stats", wg.getStats().toMap());
 		out.println(JsonHandler.getTemplateJSON(json, tpl, extra));
 	}
 	
+	/**
+	 * Plan the expansions of a batch of template bindings, writing the
+	 * results of each binding as soon as they are ready. Bindings of the
+	 * same template and component bindings share the loaded template. Their
+	 * data and parameter bindings are set before inference, as in
+	 * printPlannerJSON, so each gets the expansions getExpansions would give.
+	 */
+	public void printExpansionsBatchJSON(final ArrayList<TemplateBindings> batch,
+	    final boolean noexplain, final PrintWriter out) {
+	  LinkedHashMap<String, ArrayList<Integer>> groups = 
+	      new LinkedHashMap<String, ArrayList<Integer>>();
+	  for(int i=0; i<batch.size(); i++) {
+	    TemplateBindings tb = batch.get(i);
+	    String key = tb.getTemplateId() + " " + 
+	        new TreeMap<String, String>(tb.getComponentBindings());
+	    if(!groups.containsKey(key))
+	      groups.put(key, new ArrayList<Integer>());
+	    groups.get(key).add(i);
+	  }
+
+	  wg.setBudget(budgetMillis, budgetCandidates);
+	  final boolean[] first = new boolean[] { true };
+	  out.print("{\"results\":[");
+	  for(final ArrayList<Integer> indexes : groups.values()) {
+	    final TemplateBindings gtb = batch.get(indexes.get(0));
+	    final String tplid = gtb.getTemplateId();
+	    BatchPlanListener listener = new BatchPlanListener() {
+	      @Override
+	      public void planned(int index, ArrayList<Template> expansions,
+	          ArrayList<String> explanations) {
+	        if(!first[0])
+	          out.print(",");
+	        first[0] = false;
+	        printBatchResultJSON(indexes.get(index), tplid, expansions, 
+	            noexplain ? null : explanations, out);
+	      }
+	    };
+
+	    Template tpl = tc.getTemplate(tplid);
+	    if(tpl == null) {
+	      ArrayList<String> explanations = new ArrayList<String>();
+	      explanations.add("ERROR: Template " + tplid + " not found");
+	      for(int i=0; i<indexes.size(); i++)
+	        listener.planned(i, new ArrayList<Template>(), explanations);
+	      continue;
+	    }
+	    this.addComponentBindings(tpl, gtb);
+
+	    ArrayList<HashMap<String, Binding>> bindings = 
+	        new ArrayList<HashMap<String, Binding>>();
+	    for(int index : indexes)
+	      bindings.add(this.getVariableBindings(batch.get(index)));
+	    wg.planBatch(tpl, bindings, listener);
+	  }
+	  out.print("],\"success\":true");
+	  if(!noexplain)
+	    out.print(",\"explanations\":" + json.toJson(wg.getExplanations()));
+	  if(wg.isTruncated())
+	    out.print(",\"truncated\":true");
+	  if(showstats)
+	    out.print(",\"stats\":" + json.toJson(wg.getStats().toMap()));
+	  out.print("}");
+	  out.flush();
+	}
+
+	private void printBatchResultJSON(int index, String tplid, 
+	    ArrayList<Template> ets, ArrayList<String> explanations, PrintWriter out) {
+	  long start = System.nanoTime();
+	  ArrayList<Object> template_stores = new ArrayList<Object>();
+	  for(Template t : ets)
+	    template_stores.add(this.getTemplateDetails(t));
+	  HashMap<String, Object> map = new HashMap<String, Object>();
+	  map.put("index", index);
+	  map.put("template_id", tplid);
+	  map.put("success", !ets.isEmpty());
+	  map.put("templates", template_stores);
+	  if(explanations != null)
+	    map.put("explanations", explanations);
+	  json.toJson(map, out);
+	  out.flush();
+	  wg.getStats().addPhase(Phase.SERIALIZATION, System.nanoTime() - start, ets.size());
+	}
+	
 	private void printPlannerJSON(TemplateBindings template_bindings,
 	    String op, boolean noexplain, PrintWriter out) {
 	  
+	  wg.setBudget(budgetMillis, budgetCandidates);
 	  String tplid = template_bindings.getTemplateId();
 		Template tpl = tc.getTemplate(tplid);
 		this.addTemplateBindings(tpl, template_bindings);
@@ -163,6 +317,8 @@ public class PlanController {
       bts = candidates;
     else {
   		for(Template t : candidates) {
+  		  if(!bts.isEmpty() && wg.checkBudget(bts.size()))
+  		    break;
   		  // If template has no input data variables, skip
   		  if(t.getInputDataVariables().length == 0) {
   		    bts.add(t);
@@ -211,8 +367,11 @@ public class PlanController {
 		wg.setDataMetricsForInputDataObjects(bts);
 
 		ArrayList<Template> cts = new ArrayList<Template>();
-		for(Template bt : bts)
+		for(Template bt : bts) {
+		  if(!cts.isEmpty() && wg.checkBudget(cts.size()))
+		    break;
 		  cts.addAll(wg.configureTemplates(bt));
+		}
 		if(cts.size() == 0) {
 		  printError(out);
 		  return;
@@ -223,8 +382,11 @@ public class PlanController {
     }
     
 		ArrayList<Template> ets = new ArrayList<Template>();
-		for(Template ct : cts)
+		for(Template ct : cts) {
+		  if(!ets.isEmpty() && wg.checkBudget(ets.size()))
+		    break;
 			ets.add(wg.getExpandedTemplate(ct));
+		}
 		if(ets.size() == 0) {
 			printError(out);
 			return;
@@ -249,10 +411,12 @@ public class PlanController {
 	
 	private void printTemplatesJSON(ArrayList<Template> ts, String tplid,
 	    Template seedtpl, boolean noexplain, PrintWriter out) {
+		long start = System.nanoTime();
 		ArrayList<Object> template_stores = new ArrayList<Object>();
 		for(Template t : ts) {
 			template_stores.add(this.getTemplateDetails(t));
 		}
+		wg.getStats().addPhase(Phase.SERIALIZATION, System.nanoTime() - start, ts.size());
 		HashMap<String, Object> map = new HashMap<String, Object>();
 		if(!noexplain)
 		  map.put("explanations", wg.getExplanations());
@@ -269,7 +433,9 @@ public class PlanController {
 		if(!noexplain)
 		  map.put("explanations", wg.getExplanations());
 		map.put("error",  false);
+		long start = System.nanoTime();
 		map.put("bindings", getDataBindings(sets));
+		wg.getStats().addPhase(Phase.SERIALIZATION, System.nanoTime() - start, sets.size());
 		map.put("output",  "");
 		this.printEncodedResults(map, out); 
 	}
@@ -279,7 +445,9 @@ public class PlanController {
 		if(!noexplain)
 		  map.put("explanations", wg.getExplanations());
 		map.put("error",  false);
+		long start = System.nanoTime();
 		map.put("bindings", getParameterBindings(cts));
+		wg.getStats().addPhase(Phase.SERIALIZATION, System.nanoTime() - start, cts.size());
 		map.put("output",  "");
 		this.printEncodedResults(map, out); 
 	}
@@ -302,6 +470,10 @@ public class PlanController {
 		HashMap<String, Object> results = new HashMap<String, Object>();
 		results.put("success", (Boolean)!error);
 		results.put("data", map);
+		if(wg.isTruncated())
+		  results.put("truncated", true);
+		if(showstats)
+		  results.put("stats", wg.getStats().toMap());
 		json.toJson(results, out);
 	}
 	
@@ -407,6 +579,20 @@ public class PlanController {
 
 	
 	private void addTemplateBindings(Template tpl, TemplateBindings tb) {
+	  HashMap<String, Binding> bindings = this.getVariableBindings(tb);
+	  for(String key : bindings.keySet()) {
+	    Variable var = tpl.getVariable(key);
+	    if(var != null)
+	      var.setBinding(bindings.get(key));
+	  }
+	  this.addComponentBindings(tpl, tb);
+	}
+
+	/**
+	 * Get the data and parameter bindings, keyed by variable id
+	 */
+	private HashMap<String, Binding> getVariableBindings(TemplateBindings tb) {
+	  HashMap<String, Binding> bindings = new HashMap<String, Binding>();
 
 	  // Set data bindings
 		for(String key : tb.getDataBindings().keySet()) {
@@ -421,9 +607,7 @@ public class PlanController {
 		      b.add(new Binding(bid));
 		    }
 		  }
-		  Variable var = tpl.getVariable(key);
-		  if(var != null)
-		    var.setBinding(b);
+		  bindings.put(key, b);
 		}
 		
 		// Set parameter bindings
@@ -432,13 +616,12 @@ public class PlanController {
       String datatype = tb.getParameterTypes().get(key);
       if(datatype == null)
         continue;
-      ValueBinding b = new ValueBinding(value, datatype);
-      Variable var = tpl.getVariable(key);
-      if(var != null) 
-        var.setBinding(b);
+      bindings.put(key, new ValueBinding(value, datatype));
     }
-    
-    // Set component bindings
+    return bindings;
+	}
+
+	private void addComponentBindings(Template tpl, TemplateBindings tb) {
     for(String key : tb.getComponentBindings().keySet()) {
       String cid = tb.getComponentBindings().get(key);
       Binding b = new Binding(cid);
@@ -21,7 +21,10 @@ import java.util.Properties;
 
 import edu.isi.wings.catalog.resource.ResourceFactory;
 import edu.isi.wings.catalog.resource.api.ResourceAPI;
+import edu.isi.wings.catalog.resource.classes.GridkitCloud;
 import edu.isi.wings.catalog.resource.classes.Machine;
+import edu.isi.wings.catalog.resource.classes.MachineDetails;
+import edu.isi.wings.catalog.resource.classes.MachineMonitor;
 import edu.isi.wings.catalog.resource.classes.Software;
 import edu.isi.wings.catalog.resource.classes.SoftwareVersion;
 import edu.isi.wings.portal.classes.config.Config;
@@ -46,6 +49,7 @@ public class ResourceController {
     this.props = config.getProperties();
 
     api = ResourceFactory.getAPI(props);
+    MachineMonitor.start(props);
 
     this.rns = (String) props.get("ont.resource.url") + "#";
     this.libns = (String) props.get("lib.resource.url") + "#";
@@ -74,7 +78,11 @@ public class ResourceController {
   
   public String checkMachine(String resid) {
     Machine machine = this.api.getMachine(resid);
-    return json.toJson(machine.getMachineDetails());
+    // Copy the cached details, as they are shared with other requests
+    MachineDetails details = new MachineDetails(
+        MachineMonitor.getMachineDetails(machine));
+    details.setTransferStats(GridkitCloud.getTransferStats(machine));
+    return json.toJson(details);
   }
 
 
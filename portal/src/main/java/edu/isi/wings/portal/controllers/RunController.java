@@ -51,6 +51,7 @@ import edu.isi.wings.catalog.resource.classes.GridkitCloud;
 import edu.isi.wings.catalog.resource.classes.Machine;
 import edu.isi.wings.common.URIEntity;
 import edu.isi.wings.common.UuidGen;
+import edu.isi.wings.common.kb.CompactGraphStore;
 import edu.isi.wings.execution.engine.api.PlanExecutionEngine;
 import edu.isi.wings.execution.engine.classes.RuntimeInfo;
 import edu.isi.wings.execution.engine.classes.RuntimeInfo.Status;
@@ -63,11 +64,14 @@ import edu.isi.wings.portal.classes.config.Config;
 import edu.isi.wings.portal.classes.JsonHandler;
 import edu.isi.wings.workflow.plan.api.ExecutionPlan;
 import edu.isi.wings.workflow.plan.api.ExecutionStep;
+import edu.isi.wings.workflow.plan.api.impl.pplan.PPlanBinary;
 import edu.isi.wings.workflow.plan.classes.ExecutionCode;
 import edu.isi.wings.workflow.plan.classes.ExecutionFile;
 import edu.isi.wings.workflow.template.TemplateFactory;
 import edu.isi.wings.workflow.template.api.Template;
 import edu.isi.wings.workflow.template.api.TemplateCreationAPI;
+import edu.isi.wings.workflow.template.api.impl.kb.TemplateBinary;
+import edu.isi.wings.workflow.template.api.impl.kb.TemplateKB;
 import edu.isi.wings.workflow.template.classes.variables.Variable;
 
 import com.google.gson.Gson;
@@ -250,14 +254,19 @@ public class RunController {
     
     String seedid = UuidGen.generateURIUuid((URIEntity) seedtpl);
     if (plan != null) {
-      // Save the expanded template, seeded template and plan
-      if (!xtpl.save())
+      // Save the expanded template, seeded template and plan. With binary
+      // storage, the expanded template and plan RDF is only written when
+      // it is needed (see publishRun)
+      boolean binary = CompactGraphStore.isEnabled(props);
+      if (!(binary && xtpl instanceof TemplateKB
+            && TemplateBinary.save(props, (TemplateKB) xtpl))
+          && !xtpl.save())
         return "";
       
       if (!seedtpl.saveAs(seedid))
         return "";
       
-      if(plan.save()) {
+      if((binary && PPlanBinary.save(props, plan)) || plan.save()) {
         RuntimePlan rplan = new RuntimePlan(plan);
         rplan.setExpandedTemplateID(xtpl.getID());
         rplan.setOriginalTemplateID(origtplid);
@@ -299,6 +308,11 @@ public class RunController {
 
         //opmm.setPublishExportPrefix(puburl);
 
+        // The export reads the RDF graphs of the expanded template and plan
+        TemplateBinary.materialize(props, plan.getExpandedTemplateID());
+        if (plan.getPlan() != null)
+          PPlanBinary.materialize(props, plan.getPlan().getID());
+
         String rname = runid.substring(runid.indexOf('#') + 1);
         //String runurl = opmm.getRunUrl(rname);
 
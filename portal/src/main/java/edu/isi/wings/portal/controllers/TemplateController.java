@@ -28,6 +28,7 @@ import java.util.Properties;
 
 import org.apache.jena.util.FileUtils;
 
+import edu.isi.wings.catalog.CatalogRegistry;
 import edu.isi.wings.catalog.component.ComponentFactory;
 import edu.isi.wings.catalog.component.api.ComponentCreationAPI;
 import edu.isi.wings.catalog.component.classes.Component;
@@ -74,6 +75,9 @@ public class TemplateController {
 		cc = ComponentFactory.getCreationAPI(props, true);
 		dc = DataFactory.getCreationAPI(props);
 		prov = ProvenanceFactory.getAPI(props);
+		
+		// Get the planner's catalogs ready while the user edits templates
+		CatalogRegistry.prewarm(props);
 	}
 	
 	public String getViewerJSON(String tplid) {
@@ -3,18 +3,27 @@ package edu.isi.wings.portal.resources;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 
 import javax.annotation.PostConstruct;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.FormParam;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.StreamingOutput;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.gson.Gson;
 
+import edu.isi.wings.portal.classes.PlanningJobs;
 import edu.isi.wings.portal.classes.util.TemplateBindings;
 import edu.isi.wings.portal.controllers.PlanController;
 
@@ -23,11 +32,34 @@ public class PlannerResource extends WingsResource {
   PlanController wp;
   boolean noexplain = false;
   
+  // Add planner timers and counters to the response (?stats=true)
+  @QueryParam("stats")
+  boolean stats;
+
+  // Planning budget: milliseconds and complete candidates (0 = domain default)
+  @QueryParam("max_time")
+  long maxTime;
+
+  @QueryParam("max_candidates")
+  int maxCandidates;
+
+  // Seconds for clients to wait when the planner queue is full
+  private static final String RETRY_AFTER = "5";
+
+  // Most seconds a request for a job result is held open for (each one
+  // holds a servlet thread while it waits)
+  private static final int MAX_WAIT = 10;
+
+  private Gson gson = new Gson();
+  
   @PostConstruct
   public void init() {
     super.init();
-    if(this.hasPermissions())
+    if(this.hasPermissions()) {
       this.wp = new PlanController(config);
+      this.wp.setShowStats(stats);
+      this.wp.setBudget(maxTime, maxCandidates);
+    }
   }
   
   @POST
@@ -49,6 +81,29 @@ public class PlannerResource extends WingsResource {
     return null;
   }
   
+  /**
+   * Plan the expansions of a list of template bindings (parameter and data
+   * sweeps). The result of each binding is streamed as soon as it is ready.
+   */
+  @POST
+  @Path("getExpansionsBatch")
+  @Produces(MediaType.APPLICATION_JSON)
+  public StreamingOutput getExpansionsBatch(
+      @JsonProperty("template_bindings") final ArrayList<TemplateBindings> tbindings) {
+    if(this.wp != null) {
+      return new StreamingOutput() {
+        @Override
+        public void write(OutputStream os) throws IOException,
+            WebApplicationException {
+          PrintWriter out = new PrintWriter(os);
+          wp.printExpansionsBatchJSON(tbindings, noexplain, out);
+          out.flush();
+        }
+      };
+    }
+    return null;
+  }
+  
   @POST
   @Path("getData")
   @Produces(MediaType.APPLICATION_JSON)
@@ -87,6 +142,82 @@ public class PlannerResource extends WingsResource {
     return null;
   }
 
+  /**
+   * Submit a planner operation (getExpansions, getData or getParameters)
+   * as a background job. Returns the job id and status, to be polled at
+   * jobs/{jobid} and fetched at jobs/{jobid}/result.
+   */
+  @POST
+  @Path("jobs/{op}")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response submitJob(
+      @PathParam("op") String op,
+      @JsonProperty("template_bindings") final TemplateBindings tbindings) {
+    if(this.wp == null)
+      return Response.status(Status.FORBIDDEN).build();
+    if(!op.equals("getExpansions") && !op.equals("getData") &&
+        !op.equals("getParameters"))
+      return Response.status(Status.NOT_FOUND).build();
+
+    PlanningJobs.Job job = wp.submitPlanningJob(op, tbindings, noexplain);
+    if(job == null)
+      return Response.status(Status.SERVICE_UNAVAILABLE)
+          .header("Retry-After", RETRY_AFTER).build();
+    return Response.status(Status.ACCEPTED)
+        .entity(gson.toJson(job.toMap())).build();
+  }
+
+  @GET
+  @Path("jobs/{jobid}")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getJob(@PathParam("jobid") String jobid) {
+    if(this.wp == null)
+      return Response.status(Status.FORBIDDEN).build();
+    PlanningJobs.Job job = wp.getPlanningJob(jobid);
+    if(job == null)
+      return Response.status(Status.NOT_FOUND).build();
+    return Response.ok(gson.toJson(job.toMap())).build();
+  }
+
+  /**
+   * The result of a job, as returned by the synchronous operation. Returns
+   * the job status (with 202 Accepted) right away if it has not finished,
+   * unless the client asks to wait up to [wait] seconds (at most MAX_WAIT).
+   */
+  @GET
+  @Path("jobs/{jobid}/result")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getJobResult(@PathParam("jobid") String jobid,
+      @DefaultValue("0") @QueryParam("wait") int wait) {
+    if(this.wp == null)
+      return Response.status(Status.FORBIDDEN).build();
+    final PlanningJobs.Job job = wp.getPlanningJob(jobid);
+    if(job == null)
+      return Response.status(Status.NOT_FOUND).build();
+    try {
+      wait = Math.max(0, Math.min(wait, MAX_WAIT));
+      if(!job.await(wait * 1000L))
+        return Response.status(Status.ACCEPTED)
+            .entity(gson.toJson(job.toMap())).build();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Response.status(Status.SERVICE_UNAVAILABLE).build();
+    }
+    if(job.getStatus() == PlanningJobs.Status.FAILED)
+      return Response.status(Status.INTERNAL_SERVER_ERROR)
+          .entity(gson.toJson(job.toMap())).build();
+    return Response.ok(new StreamingOutput() {
+      @Override
+      public void write(OutputStream os) throws IOException,
+          WebApplicationException {
+        PrintWriter out = new PrintWriter(os);
+        out.print(job.getResult());
+        out.flush();
+      }
+    }).build();
+  }
+
   @POST
   @Path("elaborateTemplateJSON")
   @Produces(MediaType.APPLICATION_JSON)
@@ -17,8 +17,10 @@
 
 package edu.isi.wings.portal.servlets;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Properties;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,7 +32,13 @@ import javax.servlet.http.HttpServletResponse;
 import edu.isi.kcap.ontapi.KBAPI;
 import edu.isi.kcap.ontapi.OntFactory;
 import edu.isi.kcap.ontapi.OntSpec;
+import edu.isi.wings.common.kb.CompactGraphStore;
 import edu.isi.wings.portal.classes.config.Config;
+import edu.isi.wings.portal.classes.domains.Domain;
+import edu.isi.wings.portal.classes.domains.DomainInfo;
+import edu.isi.wings.portal.controllers.DomainController;
+import edu.isi.wings.workflow.plan.api.impl.pplan.PPlanBinary;
+import edu.isi.wings.workflow.template.api.impl.kb.TemplateBinary;
 
 /**
  * Servlet exports graph in TDB
@@ -66,6 +74,8 @@ public class ExportGraph extends HttpServlet {
 		String uri = config.getServerUrl() + request.getRequestURI();
 		OntFactory tdbfac = new OntFactory(OntFactory.JENA, config.getTripleStoreDir());
 		try {
+			this.materializeRunGraph(config, uri);
+			
 		  Pattern complibpat = Pattern.compile(".+\\/components\\/(.+)\\.owl");
 			KBAPI kb = tdbfac.getKB(uri, OntSpec.PLAIN);
 			
@@ -100,6 +110,37 @@ public class ExportGraph extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Expanded templates and plans of runs may only have been stored in
+	 * binary form (storage.binary). Write out the RDF graph of the requested
+	 * run graph if it is pending, so that it can be exported
+	 */
+	private void materializeRunGraph(Config config, String uri) {
+		Pattern rungraphpat = Pattern.compile(
+				".+\\/users\\/([^\\/]+)\\/([^\\/]+)\\/executions\\/[^\\/]+\\.owl$");
+		Matcher mat = rungraphpat.matcher(uri);
+		if(!mat.find())
+			return;
+		
+		// Domain properties of the graph's owner (who may not be the viewer)
+		File userdir = new File(config.getStorageDirectory() + File.separator
+				+ config.getUsersRelativeDir() + File.separator + mat.group(1));
+		if(!new File(userdir, "user.properties").exists())
+			return;
+		config.setUserDir(userdir.getAbsolutePath());
+		config.setDomainId(mat.group(2));
+		DomainInfo dominfo = new DomainController(config).getDomainInfo(mat.group(2));
+		if(dominfo == null)
+			return;
+		Properties props = config.getProperties(new Domain(dominfo));
+		
+		String kind = CompactGraphStore.getPendingKind(props, uri);
+		if(CompactGraphStore.TEMPLATE.equals(kind))
+			TemplateBinary.materialize(props, uri);
+		else if(CompactGraphStore.PLAN.equals(kind))
+			PPlanBinary.materialize(props, uri);
+	}
+
 	/**
 	 * @see HttpServlet#doPost(HttpServletRequest request, HttpServletResponse
 	 *      response)